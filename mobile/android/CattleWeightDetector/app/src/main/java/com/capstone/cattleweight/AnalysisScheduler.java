@@ -0,0 +1,222 @@
+package com.capstone.cattleweight;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Penjadwal analisis "keep latest" antara sumber frame dan model.
+ *
+ * Hanya frame terbaru yang dianalisis; frame yang datang saat model sibuk, sebelum
+ * interval inferensi berikutnya, atau yang umurnya sudah melewati latency budget dibuang.
+ * Interval inferensi menyesuaikan diri: naik kalau inferensi selesai melewati budget
+ * (antrian menumpuk) atau device mulai panas (thermal status), turun pelan kembali ke
+ * maxFps kalau kondisi pulih.
+ *
+ * Dipakai dengan CameraX ImageAnalysis (STRATEGY_KEEP_ONLY_LATEST): panggil
+ * {@link #tryBegin(long)} di analyzer, lalu {@link #end(long)} setelah inferensi.
+ * Waktu frame sebaiknya timestamp sensor (basis elapsedRealtime) supaya waktu tunggu di
+ * antrian kamera ikut terhitung.
+ *
+ * Hasil hanya boleh ditampilkan kalau {@link #isFresh(long)}: umur frame tidak lebih dari
+ * satu periode inferensi.
+ */
+public class AnalysisScheduler {
+
+    private static final String TAG = "AnalysisScheduler";
+
+    public static final float DEFAULT_MAX_FPS = 10f;
+    public static final float DEFAULT_MIN_FPS = 1f;
+    public static final long DEFAULT_LATENCY_BUDGET_MS = 200;
+
+    // Backoff karena antrian: naik cepat, turun pelan
+    private static final float BACKOFF_UP = 1.5f;
+    private static final float BACKOFF_DOWN = 0.9f;
+    private static final float MAX_BACKOFF = 8f;
+    // Selesai di bawah fraksi budget ini dianggap longgar
+    private static final float RELAXED_FRACTION = 0.6f;
+    private static final double LATENCY_SMOOTHING = 0.2;
+    private static final long FPS_WINDOW_NANOS = 1_000_000_000L;
+
+    private final float maxFps;
+    private final float minFps;
+    private final long latencyBudgetNanos;
+
+    // State gate, dijaga lock objek
+    private boolean busy;
+    private long lastStartNanos;
+    private long startNanos;
+    private double averageLatencyNanos;
+    private float backoff = 1f;
+    private volatile float thermalFactor = 1f;
+    private volatile long periodNanos;
+
+    // Statistik
+    private long droppedFrames;
+    private long analyzedFrames;
+    private long windowStartNanos;
+    private int windowCount;
+    private volatile float effectiveFps;
+
+    private PowerManager powerManager;
+    private Object thermalListener;
+
+    public AnalysisScheduler() {
+        this(DEFAULT_MAX_FPS, DEFAULT_MIN_FPS, DEFAULT_LATENCY_BUDGET_MS);
+    }
+
+    public AnalysisScheduler(float maxFps, float minFps, long latencyBudgetMs) {
+        this.maxFps = maxFps;
+        this.minFps = Math.min(minFps, maxFps);
+        this.latencyBudgetNanos = latencyBudgetMs * 1_000_000L;
+        this.periodNanos = (long) (1_000_000_000L / maxFps);
+        this.windowStartNanos = SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Ikuti thermal status (Android 10+) untuk menurunkan laju inferensi saat panas
+     */
+    public void startThermalMonitoring(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || thermalListener != null) {
+            return;
+        }
+        powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (powerManager == null) {
+            return;
+        }
+        PowerManager.OnThermalStatusChangedListener listener = this::onThermalStatus;
+        powerManager.addThermalStatusListener(listener);
+        thermalListener = listener;
+        onThermalStatus(powerManager.getCurrentThermalStatus());
+    }
+
+    public void stopThermalMonitoring() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && powerManager != null && thermalListener != null) {
+            powerManager.removeThermalStatusListener((PowerManager.OnThermalStatusChangedListener) thermalListener);
+        }
+        thermalListener = null;
+        thermalFactor = 1f;
+    }
+
+    private void onThermalStatus(int status) {
+        float factor;
+        if (status >= PowerManager.THERMAL_STATUS_CRITICAL) {
+            factor = 4f;
+        } else if (status >= PowerManager.THERMAL_STATUS_SEVERE) {
+            factor = 2.5f;
+        } else if (status >= PowerManager.THERMAL_STATUS_MODERATE) {
+            factor = 1.5f;
+        } else {
+            factor = 1f;
+        }
+        if (factor != thermalFactor) {
+            Log.i(TAG, "Thermal status " + status + ", rate factor 1/" + factor);
+        }
+        thermalFactor = factor;
+        synchronized (this) {
+            updatePeriod();
+        }
+    }
+
+    /**
+     * Putuskan apakah frame ini dianalisis.
+     *
+     * @param frameNanos waktu frame dalam basis SystemClock.elapsedRealtimeNanos
+     * @return true kalau inferensi boleh dimulai; wajib diikuti {@link #end(long)}
+     */
+    public synchronized boolean tryBegin(long frameNanos) {
+        long now = SystemClock.elapsedRealtimeNanos();
+        if (busy || now - lastStartNanos < periodNanos || now - frameNanos > latencyBudgetNanos) {
+            droppedFrames++;
+            return false;
+        }
+        busy = true;
+        startNanos = now;
+        lastStartNanos = now;
+        return true;
+    }
+
+    /**
+     * Inferensi untuk frame dari {@link #tryBegin(long)} selesai
+     */
+    public synchronized void end(long frameNanos) {
+        if (!busy) {
+            return;
+        }
+        busy = false;
+        long now = SystemClock.elapsedRealtimeNanos();
+        long latency = now - startNanos;
+        averageLatencyNanos = analyzedFrames == 0 ? latency
+                : averageLatencyNanos + LATENCY_SMOOTHING * (latency - averageLatencyNanos);
+        analyzedFrames++;
+
+        // Umur hasil saat selesai = tunggu di antrian + inferensi
+        long age = now - frameNanos;
+        if (age > latencyBudgetNanos) {
+            backoff = Math.min(MAX_BACKOFF, backoff * BACKOFF_UP);
+        } else if (age < latencyBudgetNanos * RELAXED_FRACTION) {
+            backoff = Math.max(1f, backoff * BACKOFF_DOWN);
+        }
+        updatePeriod();
+
+        windowCount++;
+        long windowNanos = now - windowStartNanos;
+        if (windowNanos >= FPS_WINDOW_NANOS) {
+            effectiveFps = windowCount * 1_000_000_000f / windowNanos;
+            windowCount = 0;
+            windowStartNanos = now;
+        }
+    }
+
+    // Periode = max(interval maxFps, latensi rata-rata) x backoff x thermal, dibatasi minFps
+    private void updatePeriod() {
+        double period = Math.max(1_000_000_000.0 / maxFps, averageLatencyNanos) * backoff * thermalFactor;
+        periodNanos = (long) Math.min(period, 1_000_000_000.0 / minFps);
+    }
+
+    /**
+     * Hasil dari frame ini masih boleh ditampilkan (umur <= satu periode inferensi)
+     */
+    public boolean isFresh(long frameNanos) {
+        return SystemClock.elapsedRealtimeNanos() - frameNanos <= getPeriodNanos();
+    }
+
+    /**
+     * Periode inferensi sekarang, minimal latensi rata-rata
+     */
+    public long getPeriodNanos() {
+        return Math.max(periodNanos, (long) averageLatencyNanos);
+    }
+
+    public float getTargetFps() {
+        return 1_000_000_000f / periodNanos;
+    }
+
+    /**
+     * Inferensi per detik yang benar-benar selesai (jendela 1 s)
+     */
+    public float getEffectiveFps() {
+        if (SystemClock.elapsedRealtimeNanos() - windowStartNanos > 2 * FPS_WINDOW_NANOS) {
+            return 0f;
+        }
+        return effectiveFps;
+    }
+
+    public double getAverageLatencyMs() {
+        return averageLatencyNanos / 1_000_000.0;
+    }
+
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public synchronized long getAnalyzedFrames() {
+        return analyzedFrames;
+    }
+
+    public void stop() {
+        stopThermalMonitoring();
+    }
+}
@@ -0,0 +1,230 @@
+package com.capstone.cattleweight;
+
+/**
+ * Auto-capture: capture otomatis saat jarak LiDAR stabil dan frame tajam.
+ *
+ * Sampel LiDAR dilewatkan median filter kecil (buang spike), lalu jarak dianggap
+ * stabil kalau rentang (max - min) hasil filter selama STABLE_WINDOW tidak
+ * melebihi toleransi. Sampel terbaru harus segar (maks. 2x periode sampel), jadi
+ * setelah LiDAR putus sampel terakhir tidak lagi dianggap stabil.
+ *
+ * Ketajaman frame dihitung dengan variance of Laplacian pada luma yang
+ * di-subsample (lihat FrameQualityBenchmark di modul evaluation). Kalau keduanya
+ * lolos dan rate limit terpenuhi, listener dipanggil.
+ *
+ * Pure Java dan tanpa alokasi per sampel/frame, jadi bisa diuji di JVM.
+ */
+public class AutoCaptureTrigger {
+
+    public static final int MIN_DISTANCE_CM = 20;
+    public static final int MAX_DISTANCE_CM = 800;
+    public static final int DEFAULT_MIN_STRENGTH = 100;             // TF-Luna: < 100 tidak andal
+    public static final int DEFAULT_TOLERANCE_CM = 3;
+    public static final long DEFAULT_STABLE_WINDOW_NANOS = 500_000_000L;
+    public static final long DEFAULT_SAMPLE_PERIOD_NANOS = 100_000_000L;    // polling WiFi 10 Hz
+    public static final double DEFAULT_MIN_SHARPNESS = 40.0;
+    public static final long DEFAULT_MIN_INTERVAL_NANOS = 3_000_000_000L;
+    public static final int SHARPNESS_STEP = 4;                     // 1/4 resolusi
+
+    private static final int MEDIAN_SIZE = 5;
+    private static final int HISTORY_SIZE = 128;
+    private static final long NO_CAPTURE = Long.MIN_VALUE;
+
+    public interface Listener {
+        /**
+         * Dipanggil dari thread frame saat kondisi capture terpenuhi
+         */
+        void onAutoCapture(long frameNanos, int distanceCm, double sharpness);
+    }
+
+    private final Listener listener;
+    private int minStrength = DEFAULT_MIN_STRENGTH;
+    private int toleranceCm = DEFAULT_TOLERANCE_CM;
+    private long stableWindowNanos = DEFAULT_STABLE_WINDOW_NANOS;
+    private long maxSampleAgeNanos = 2 * DEFAULT_SAMPLE_PERIOD_NANOS;
+    private double minSharpness = DEFAULT_MIN_SHARPNESS;
+    private long minIntervalNanos = DEFAULT_MIN_INTERVAL_NANOS;
+
+    // Median filter: sampel mentah terakhir
+    private final int[] medianWindow = new int[MEDIAN_SIZE];
+    private final int[] medianScratch = new int[MEDIAN_SIZE];
+    private int medianCount = 0;
+    private int medianNext = 0;
+
+    // Riwayat jarak hasil filter (ring buffer berindeks waktu)
+    private final long[] historyTimes = new long[HISTORY_SIZE];
+    private final int[] historyDistances = new int[HISTORY_SIZE];
+    private int historyHead = 0;
+    private int historySize = 0;
+
+    private boolean enabled = false;
+    private long lastCaptureNanos = NO_CAPTURE;
+    private double lastSharpness = 0;
+
+    public AutoCaptureTrigger(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (enabled) {
+            lastCaptureNanos = NO_CAPTURE;
+        }
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized void setThresholds(int minStrength, int toleranceCm, long stableWindowNanos,
+                                           double minSharpness, long minIntervalNanos) {
+        this.minStrength = minStrength;
+        this.toleranceCm = toleranceCm;
+        this.stableWindowNanos = stableWindowNanos;
+        this.minSharpness = minSharpness;
+        this.minIntervalNanos = minIntervalNanos;
+    }
+
+    /**
+     * Periode sampel LiDAR yang diharapkan (USB: 1/frame rate, WiFi: interval polling)
+     */
+    public synchronized void setExpectedSamplePeriod(long periodNanos) {
+        this.maxSampleAgeNanos = 2 * periodNanos;
+    }
+
+    /**
+     * Masukkan sampel LiDAR. Sampel di luar jangkauan atau sinyal lemah
+     * memutus riwayat, jadi stabilitas harus dibangun ulang dari awal.
+     */
+    public synchronized void onLidarSample(long timeNanos, int distanceCm, int strength) {
+        if (distanceCm < MIN_DISTANCE_CM || distanceCm > MAX_DISTANCE_CM || strength < minStrength) {
+            reset();
+            return;
+        }
+
+        medianWindow[medianNext] = distanceCm;
+        medianNext = (medianNext + 1) % MEDIAN_SIZE;
+        if (medianCount < MEDIAN_SIZE) {
+            medianCount++;
+        }
+        int filtered = median(medianWindow, medianCount, medianScratch);
+
+        historyTimes[historyHead] = timeNanos;
+        historyDistances[historyHead] = filtered;
+        historyHead = (historyHead + 1) % HISTORY_SIZE;
+        if (historySize < HISTORY_SIZE) {
+            historySize++;
+        }
+    }
+
+    /**
+     * Cek frame NV21/luma. Dipanggil dari thread frame kamera.
+     *
+     * @return true kalau capture dipicu oleh frame ini
+     */
+    public boolean onFrame(long frameNanos, byte[] luma, int width, int height, int stride) {
+        int distance;
+        synchronized (this) {
+            if (!enabled) {
+                return false;
+            }
+            if (lastCaptureNanos != NO_CAPTURE && frameNanos - lastCaptureNanos < minIntervalNanos) {
+                return false;
+            }
+            distance = stableDistance(frameNanos);
+            if (distance < 0) {
+                return false;
+            }
+        }
+
+        // Kernel ketajaman di luar lock; sampel LiDAR tetap bisa masuk
+        double sharpness = FrameQuality.laplacianVariance(luma, 0, width, height, stride, SHARPNESS_STEP);
+
+        synchronized (this) {
+            lastSharpness = sharpness;
+            if (!enabled || sharpness < minSharpness) {
+                return false;
+            }
+            if (lastCaptureNanos != NO_CAPTURE && frameNanos - lastCaptureNanos < minIntervalNanos) {
+                return false;
+            }
+            lastCaptureNanos = frameNanos;
+        }
+        listener.onAutoCapture(frameNanos, distance, sharpness);
+        return true;
+    }
+
+    /**
+     * Jarak stabil pada waktu ini (cm), -1 kalau jarak belum stabil selama stable window.
+     * Dipakai juga untuk membuka jendela agregasi estimasi bobot.
+     */
+    public synchronized int getStableDistance(long timeNanos) {
+        return stableDistance(timeNanos);
+    }
+
+    public synchronized double getLastSharpness() {
+        return lastSharpness;
+    }
+
+    public synchronized void reset() {
+        medianCount = 0;
+        medianNext = 0;
+        historyHead = 0;
+        historySize = 0;
+    }
+
+    /**
+     * Jarak rata-rata kalau stabil selama stableWindowNanos sebelum frame, -1 kalau tidak.
+     * Butuh sampel terbaru yang segar dan minimal 2 sampel yang menutupi jendela.
+     */
+    private int stableDistance(long frameNanos) {
+        if (historySize < MEDIAN_SIZE) {
+            return -1;
+        }
+        long from = frameNanos - stableWindowNanos;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        long sum = 0;
+        int count = 0;
+        boolean coversWindow = false;
+        for (int i = 1; i <= historySize; i++) {
+            int index = (historyHead - i + HISTORY_SIZE) % HISTORY_SIZE;
+            long t = historyTimes[index];
+            if (t > frameNanos) {
+                continue;
+            }
+            if (count == 0 && frameNanos - t > maxSampleAgeNanos) {
+                // Sampel terbaru sudah basi (LiDAR putus/tertunda)
+                return -1;
+            }
+            int d = historyDistances[index];
+            min = Math.min(min, d);
+            max = Math.max(max, d);
+            sum += d;
+            count++;
+            if (t <= from) {
+                // Sampel tertua yang dipakai sudah di awal jendela
+                coversWindow = true;
+                break;
+            }
+        }
+        if (!coversWindow || count < 2 || max - min > toleranceCm) {
+            return -1;
+        }
+        return (int) Math.round((double) sum / count);
+    }
+
+    // Median untuk window kecil: insertion sort ke scratch array
+    static int median(int[] values, int count, int[] scratch) {
+        for (int i = 0; i < count; i++) {
+            int v = values[i];
+            int j = i - 1;
+            while (j >= 0 && scratch[j] > v) {
+                scratch[j + 1] = scratch[j];
+                j--;
+            }
+            scratch[j + 1] = v;
+        }
+        return scratch[count / 2];
+    }
+}
@@ -0,0 +1,437 @@
+package com.capstone.cattleweight;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Re-scoring offline seluruh dataset dengan model baru.
+ *
+ * Thread koordinator membaca baris cattle_dataset.db per halaman (hanya yang belum punya
+ * skor untuk versi model ini) ke antrian kerja yang dibatasi. N worker masing-masing punya
+ * Interpreter sendiri (1 thread per interpreter, jadi N core terpakai): decode JPEG dengan
+ * inSampleSize mendekati ukuran input model, preprocessing ke buffer input, inferensi.
+ * Hasil dikumpulkan koordinator dan ditulis ke tabel model_scores per batch (group commit).
+ * Semua akses DB dari thread koordinator saja.
+ *
+ * Model (versi dari {@link WeightModelManager}, file unduhan atau asset bawaan) di-memory-map
+ * sekali oleh koordinator dan dipakai bersama semua interpreter worker; kalau gagal dimuat,
+ * error dilaporkan sekali dan tidak ada worker yang dijalankan.
+ *
+ * Hasil disimpan dengan kunci isi model ({@link WeightModelManager#contentKey}), bukan nama
+ * versi, jadi asset "bundled" yang berubah di APK baru dinilai ulang. Gambar yang tidak bisa
+ * dibaca dicatat sebagai baris tanpa bobot supaya tidak dicoba lagi setiap kali job jalan.
+ *
+ * Karena baris yang sudah dinilai dilewati, job yang dihentikan (cancel / app ditutup)
+ * bisa dijalankan ulang dan melanjutkan dari baris yang belum selesai.
+ */
+public class BatchRescoringJob {
+
+    private static final String TAG = "BatchRescoringJob";
+
+    private static final int PAGE_SIZE = 64;
+    private static final int BATCH_SIZE = 32;
+    private static final long COMMIT_INTERVAL_MS = 1000;
+    private static final long POLL_MS = 50;
+    private static final int MAX_WORKERS = 4;
+
+    public interface Listener {
+        void onProgress(int done, int total);
+        void onFinished(Report report);
+        void onError(String error);
+    }
+
+    /**
+     * Ringkasan throughput dan waktu per tahap (rata-rata per gambar)
+     */
+    public static class Report {
+        public int scored;
+        public int failed;
+        public long elapsedMs;
+        public double imagesPerSecond;
+        public double decodeMs;
+        public double preprocessMs;
+        public double inferenceMs;
+        public double commitMsPerBatch;
+        public int workers;
+        public boolean cancelled;
+
+        @Override
+        public String toString() {
+            return String.format(java.util.Locale.US,
+                    "%d scored, %d failed in %d ms (%.1f img/s, %d workers); per image: decode %.1f ms, " +
+                            "preprocess %.1f ms, inference %.1f ms; commit %.1f ms/batch%s",
+                    scored, failed, elapsedMs, imagesPerSecond, workers, decodeMs, preprocessMs,
+                    inferenceMs, commitMsPerBatch, cancelled ? " (cancelled)" : "");
+        }
+    }
+
+    private static class WorkResult {
+        // Skor, atau penanda gambar tidak terbaca (disimpan); null kalau gagal sementara
+        CattleDatasetDatabase.ModelScore score;
+        boolean failed;
+    }
+
+    // Sentinel antrian
+    private static final CattleDatasetDatabase.CattleDatasetEntry END_OF_WORK =
+            new CattleDatasetDatabase.CattleDatasetEntry(-1, null, 0, 0, 0, null, 0);
+    private static final WorkResult END_OF_RESULTS = new WorkResult();
+
+    private final Context context;
+    private final CattleDatasetDatabase database;
+    private final WeightModelManager modelManager;
+    private final String modelVersion;
+    private final int workerCount;
+    private final Listener listener;
+
+    private final BlockingQueue<CattleDatasetDatabase.CattleDatasetEntry> workQueue;
+    private final BlockingQueue<WorkResult> resultQueue;
+
+    private final AtomicInteger scored = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong decodeNanos = new AtomicLong();
+    private final AtomicLong preprocessNanos = new AtomicLong();
+    private final AtomicLong inferenceNanos = new AtomicLong();
+    private long commitNanos;
+    private int commits;
+    private final AtomicBoolean modelFailureReported = new AtomicBoolean();
+    // Dipetakan koordinator sebelum worker dijalankan
+    private volatile ByteBuffer model;
+    // Kunci isi model untuk model_scores (thread koordinator)
+    private String modelKey;
+
+    private volatile boolean running = false;
+    private volatile boolean cancelled = false;
+    private Thread coordinatorThread;
+
+    /**
+     * @param modelVersion versi model di modelManager; kunci hasil di model_scores diturunkan
+     *                     dari isi modelnya
+     * @param workers      jumlah interpreter paralel (0 = otomatis dari jumlah core)
+     */
+    public BatchRescoringJob(Context context, CattleDatasetDatabase database, WeightModelManager modelManager,
+                             String modelVersion, int workers, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.database = database;
+        this.modelManager = modelManager;
+        this.modelVersion = modelVersion;
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.workerCount = workers > 0 ? workers : Math.max(1, Math.min(MAX_WORKERS, cores - 1));
+        this.listener = listener;
+        this.workQueue = new ArrayBlockingQueue<>(workerCount * 2);
+        this.resultQueue = new ArrayBlockingQueue<>(workerCount * 2 + BATCH_SIZE);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        cancelled = false;
+        coordinatorThread = new Thread(this::coordinatorLoop, "RescoreCoordinator");
+        coordinatorThread.start();
+    }
+
+    /**
+     * Berhenti; hasil yang sudah selesai tetap di-commit
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void coordinatorLoop() {
+        long startNanos = System.nanoTime();
+        List<Thread> workers = new ArrayList<>(workerCount);
+        List<CattleDatasetDatabase.ModelScore> pending = new ArrayList<>(BATCH_SIZE);
+        long[] lastCommitMs = {System.currentTimeMillis()};
+        int total = 0;
+        try {
+            try {
+                model = modelManager.mapModel(modelVersion);
+            } catch (IOException e) {
+                reportModelFailure(e);
+                return;
+            }
+            modelKey = WeightModelManager.contentKey(modelVersion, model);
+            total = database.getUnscoredCount(modelKey);
+            Log.i(TAG, "Re-scoring " + total + " capture(s) with " + modelKey + ", " + workerCount + " worker(s)");
+
+            // Interpreter dibuat di thread worker masing-masing (warm-up paralel)
+            for (int i = 0; i < workerCount; i++) {
+                Thread worker = new Thread(this::workerLoop, "RescoreWorker-" + i);
+                worker.start();
+                workers.add(worker);
+            }
+
+            List<CattleDatasetDatabase.CattleDatasetEntry> page = new ArrayList<>();
+            int index = 0;
+            long lastId = 0;
+            while (!cancelled) {
+                if (index == page.size()) {
+                    page = database.getUnscoredPage(modelKey, lastId, PAGE_SIZE);
+                    index = 0;
+                    if (page.isEmpty()) {
+                        break;
+                    }
+                    lastId = page.get(page.size() - 1).id;
+                }
+                if (workQueue.offer(page.get(index), POLL_MS, TimeUnit.MILLISECONDS)) {
+                    index++;
+                }
+                drainResults(pending, lastCommitMs, total);
+            }
+
+            if (cancelled) {
+                // Baris yang belum diproses tetap tanpa skor dan diambil lagi saat job diulang
+                workQueue.clear();
+            }
+            // Satu sentinel per worker; tetap kuras hasil supaya worker tidak tertahan
+            int sentinels = 0;
+            while (sentinels < workerCount) {
+                if (workQueue.offer(END_OF_WORK, POLL_MS, TimeUnit.MILLISECONDS)) {
+                    sentinels++;
+                }
+                drainResults(pending, lastCommitMs, total);
+            }
+            int finishedWorkers = 0;
+            while (finishedWorkers < workerCount) {
+                WorkResult result = resultQueue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (result == END_OF_RESULTS) {
+                    finishedWorkers++;
+                } else if (result != null) {
+                    collect(result, pending);
+                }
+                if (pending.size() >= BATCH_SIZE) {
+                    commit(pending, lastCommitMs, total);
+                }
+            }
+            commit(pending, lastCommitMs, total);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            Log.e(TAG, "Re-scoring failed", e);
+            cancelled = true;
+            if (listener != null) {
+                listener.onError(e.getMessage());
+            }
+        } finally {
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            running = false;
+            if (listener != null) {
+                listener.onFinished(buildReport(System.nanoTime() - startNanos));
+            }
+        }
+    }
+
+    private void drainResults(List<CattleDatasetDatabase.ModelScore> pending, long[] lastCommitMs, int total) {
+        WorkResult result;
+        while ((result = resultQueue.poll()) != null) {
+            if (result == END_OF_RESULTS) {
+                // Worker berhenti lebih awal (model gagal dimuat): kembalikan untuk hitungan akhir
+                resultQueue.offer(result);
+                break;
+            }
+            collect(result, pending);
+        }
+        if (pending.size() >= BATCH_SIZE
+                || (!pending.isEmpty() && System.currentTimeMillis() - lastCommitMs[0] >= COMMIT_INTERVAL_MS)) {
+            commit(pending, lastCommitMs, total);
+        }
+    }
+
+    private void collect(WorkResult result, List<CattleDatasetDatabase.ModelScore> pending) {
+        if (result.failed) {
+            failed.incrementAndGet();
+        }
+        if (result.score != null) {
+            pending.add(result.score);
+        }
+    }
+
+    // Group commit: satu transaksi per batch hasil
+    private void commit(List<CattleDatasetDatabase.ModelScore> pending, long[] lastCommitMs, int total) {
+        lastCommitMs[0] = System.currentTimeMillis();
+        if (pending.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        database.insertScoresBatch(modelKey, pending);
+        commitNanos += System.nanoTime() - start;
+        commits++;
+        int committed = 0;
+        for (CattleDatasetDatabase.ModelScore score : pending) {
+            if (!score.unreadable) {
+                committed++;
+            }
+        }
+        scored.addAndGet(committed);
+        pending.clear();
+        if (listener != null) {
+            listener.onProgress(scored.get() + failed.get(), total);
+        }
+    }
+
+    private void workerLoop() {
+        WeightEstimationEngine engine = null;
+        try {
+            engine = new WeightEstimationEngine(model, modelVersion, 1);
+            TensorPreprocessor preprocessor = engine.createPreprocessor();
+            WeightEstimationEngine.Estimate estimate = new WeightEstimationEngine.Estimate();
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            Bitmap reusable = null;
+            int[] pixels = new int[0];
+
+            while (true) {
+                CattleDatasetDatabase.CattleDatasetEntry entry = workQueue.take();
+                if (entry == END_OF_WORK) {
+                    break;
+                }
+                WorkResult result = new WorkResult();
+                try {
+                    long t0 = System.nanoTime();
+                    Bitmap bitmap = decodeScaled(entry.imagePath, engine.getInputWidth(),
+                            engine.getInputHeight(), options, reusable);
+                    long t1 = System.nanoTime();
+                    if (bitmap == null) {
+                        result.failed = true;
+                        result.score = CattleDatasetDatabase.ModelScore.unreadable(entry.id);
+                    } else {
+                        reusable = bitmap;
+                        int width = bitmap.getWidth();
+                        int height = bitmap.getHeight();
+                        if (pixels.length < width * height) {
+                            pixels = new int[width * height];
+                        }
+                        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+                        preprocessor.argbToTensor(pixels, width, height, engine.getImageInput());
+                        long t2 = System.nanoTime();
+                        engine.estimate(entry.distance, estimate);
+                        long t3 = System.nanoTime();
+
+                        decodeNanos.addAndGet(t1 - t0);
+                        preprocessNanos.addAndGet(t2 - t1);
+                        inferenceNanos.addAndGet(t3 - t2);
+                        result.score = new CattleDatasetDatabase.ModelScore(entry.id, estimate.weightKg,
+                                estimate.confidence, estimate.getLatencyMs());
+                    }
+                } catch (IOException e) {
+                    // File hilang / tidak bisa dibuka: catat supaya tidak dicoba lagi
+                    Log.w(TAG, "Capture " + entry.id + " unreadable: " + e.getMessage());
+                    result.failed = true;
+                    result.score = CattleDatasetDatabase.ModelScore.unreadable(entry.id);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Capture " + entry.id + " failed: " + e.getMessage());
+                    result.failed = true;
+                }
+                resultQueue.put(result);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            // Interpreter gagal dibangun dari model ini
+            reportModelFailure(e);
+        } finally {
+            if (engine != null) {
+                engine.close();
+            }
+            resultQueue.offer(END_OF_RESULTS);
+        }
+    }
+
+    // Semua worker memakai model yang sama: laporkan sekali, bukan sekali per worker
+    private void reportModelFailure(Exception e) {
+        cancelled = true;
+        if (!modelFailureReported.compareAndSet(false, true)) {
+            return;
+        }
+        Log.e(TAG, "Model " + modelVersion + " not available", e);
+        if (listener != null) {
+            listener.onError("Model not available: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Decode JPEG dengan inSampleSize pangkat dua terbesar yang masih >= ukuran model,
+     * memakai ulang Bitmap worker sebelumnya kalau muat (inBitmap)
+     */
+    private Bitmap decodeScaled(String path, int targetWidth, int targetHeight,
+                                BitmapFactory.Options options, Bitmap reusable) throws IOException {
+        options.inJustDecodeBounds = true;
+        options.inBitmap = null;
+        try (InputStream in = open(path)) {
+            BitmapFactory.decodeStream(in, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= targetWidth
+                && options.outHeight / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        options.inBitmap = reusable;
+        try (InputStream in = open(path)) {
+            return BitmapFactory.decodeStream(in, null, options);
+        } catch (IllegalArgumentException e) {
+            // inBitmap tidak cocok (ukuran berbeda): decode ke Bitmap baru
+            options.inBitmap = null;
+            try (InputStream in = open(path)) {
+                return BitmapFactory.decodeStream(in, null, options);
+            }
+        }
+    }
+
+    private InputStream open(String path) throws IOException {
+        if (path.startsWith("content://") || path.startsWith("file://")) {
+            InputStream in = context.getContentResolver().openInputStream(Uri.parse(path));
+            if (in == null) {
+                throw new IOException("Cannot open " + path);
+            }
+            return in;
+        }
+        return new FileInputStream(path);
+    }
+
+    private Report buildReport(long elapsedNanos) {
+        Report report = new Report();
+        report.scored = scored.get();
+        report.failed = failed.get();
+        report.elapsedMs = elapsedNanos / 1_000_000L;
+        report.workers = workerCount;
+        report.cancelled = cancelled;
+        report.imagesPerSecond = elapsedNanos > 0 ? report.scored * 1e9 / elapsedNanos : 0;
+        if (report.scored > 0) {
+            report.decodeMs = decodeNanos.get() / 1e6 / report.scored;
+            report.preprocessMs = preprocessNanos.get() / 1e6 / report.scored;
+            report.inferenceMs = inferenceNanos.get() / 1e6 / report.scored;
+        }
+        report.commitMsPerBatch = commits > 0 ? commitNanos / 1e6 / commits : 0;
+        Log.i(TAG, "Re-scoring " + modelVersion + ": " + report);
+        return report;
+    }
+}
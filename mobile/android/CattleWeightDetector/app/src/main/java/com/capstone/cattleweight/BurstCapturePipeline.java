@@ -0,0 +1,331 @@
+package com.capstone.cattleweight;
+
+import android.util.Log;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Burst capture: N frame dengan interval tetap, tiap frame dipasangkan dengan
+ * window LiDAR-nya.
+ *
+ * Tiga tahap berjalan paralel di thread terpisah:
+ *   1. grab    - thread kamera menyalin frame NV21 ke buffer dari pool
+ *   2. encode  - pairing LiDAR + NV21 -> JPEG ke buffer dari pool
+ *   3. persist - tulis JPEG ke ImageSink lalu simpan metadata ke DB per batch
+ *
+ * Frame burst tidak di-dedupe (urutan frame memang disengaja), tapi perceptual hash-nya
+ * disimpan dan dimasukkan ke DuplicateIndex supaya capture berikutnya bisa dibandingkan.
+ *
+ * Antrian di antara tahap dibatasi (bounded). Kalau tahap belakang lambat,
+ * pool buffer habis dan frame kamera berikutnya di-skip sampai ada buffer
+ * kosong (backpressure), jadi memori tetap konstan.
+ */
+public class BurstCapturePipeline {
+
+    private static final String TAG = "BurstCapturePipeline";
+    private static final int POOL_SIZE = 4;
+    private static final int BATCH_SIZE = 8;
+    private static final int INITIAL_JPEG_BYTES = 256 * 1024;
+
+    public interface BurstCallback {
+        void onProgress(int grabbed, int saved, int total);
+        void onFinished(int saved, int rejected, long elapsedMs);
+        void onError(String error);
+    }
+
+    private static class RawFrame {
+        byte[] nv21;
+        int width;
+        int height;
+        long timestampNanos;
+    }
+
+    private static class EncodedFrame extends OutputStream {
+        byte[] data = new byte[INITIAL_JPEG_BYTES];
+        int length;
+        long perceptualHash;
+        LidarFramePairer.Pairing pairing;
+
+        void reset() {
+            length = 0;
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(length + 1);
+            data[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(length + len);
+            System.arraycopy(b, off, data, length, len);
+            length += len;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > data.length) {
+                byte[] grown = new byte[Math.max(capacity, data.length * 2)];
+                System.arraycopy(data, 0, grown, 0, length);
+                data = grown;
+            }
+        }
+    }
+
+    // Sentinel untuk menghentikan thread encode/persist
+    private static final RawFrame END_OF_RAW = new RawFrame();
+    private static final EncodedFrame END_OF_ENCODED = new EncodedFrame();
+
+    private final int totalFrames;
+    private final long intervalNanos;
+    private final JpegEncoder encoder;
+    private final LidarFramePairer pairer;
+    private final ImageSink sink;
+    private final CattleDatasetDatabase database;
+    private final DuplicateIndex duplicateIndex;
+    private final BurstCallback callback;
+
+    private final BlockingQueue<RawFrame> freeRaw = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final BlockingQueue<RawFrame> encodeQueue = new ArrayBlockingQueue<>(POOL_SIZE + 1);
+    private final BlockingQueue<EncodedFrame> freeEncoded = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final BlockingQueue<EncodedFrame> persistQueue = new ArrayBlockingQueue<>(POOL_SIZE + 1);
+
+    private final AtomicInteger grabbed = new AtomicInteger();
+    private final AtomicInteger saved = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+    private volatile boolean running = false;
+    private volatile boolean grabbing = false;
+    private long lastGrabNanos;
+    private long startNanos;
+    private Thread encodeThread;
+    private Thread persistThread;
+
+    public BurstCapturePipeline(int totalFrames, long intervalNanos, JpegEncoder encoder,
+                                LidarFramePairer pairer, ImageSink sink,
+                                CattleDatasetDatabase database, DuplicateIndex duplicateIndex,
+                                BurstCallback callback) {
+        this.totalFrames = totalFrames;
+        this.intervalNanos = intervalNanos;
+        this.encoder = encoder;
+        this.pairer = pairer;
+        this.sink = sink;
+        this.database = database;
+        this.duplicateIndex = duplicateIndex;
+        this.callback = callback;
+        for (int i = 0; i < POOL_SIZE; i++) {
+            freeRaw.add(new RawFrame());
+            freeEncoded.add(new EncodedFrame());
+        }
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        grabbing = true;
+        startNanos = System.nanoTime();
+        lastGrabNanos = 0;
+        encodeThread = new Thread(this::encodeLoop, "BurstEncode");
+        persistThread = new Thread(this::persistLoop, "BurstPersist");
+        encodeThread.start();
+        persistThread.start();
+        Log.d(TAG, "Burst started: " + totalFrames + " frames every " + (intervalNanos / 1_000_000) + " ms");
+    }
+
+    /**
+     * Stop lebih awal; frame yang sudah di-grab tetap disimpan
+     */
+    public void stop() {
+        finishGrabbing();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Tahap grab: dipanggil dari thread frame kamera untuk setiap frame NV21
+     */
+    public void onFrame(long timestampNanos, byte[] nv21, int width, int height) {
+        if (!grabbing) {
+            return;
+        }
+        if (lastGrabNanos != 0 && timestampNanos - lastGrabNanos < intervalNanos) {
+            return;
+        }
+
+        RawFrame frame = freeRaw.poll();
+        if (frame == null) {
+            // Backpressure: encode/persist masih sibuk, tunggu frame berikutnya
+            return;
+        }
+
+        int size = width * height * 3 / 2;
+        if (frame.nv21 == null || frame.nv21.length != size) {
+            frame.nv21 = new byte[size];
+        }
+        System.arraycopy(nv21, 0, frame.nv21, 0, size);
+        frame.width = width;
+        frame.height = height;
+        frame.timestampNanos = timestampNanos;
+        lastGrabNanos = timestampNanos;
+
+        synchronized (this) {
+            if (!grabbing) {
+                // stop() dipanggil saat frame sedang disalin
+                freeRaw.add(frame);
+                return;
+            }
+            encodeQueue.add(frame);  // Tidak pernah penuh: kapasitas > jumlah buffer di pool
+            if (grabbed.incrementAndGet() >= totalFrames) {
+                finishGrabbing();
+            }
+        }
+        callback.onProgress(grabbed.get(), saved.get(), totalFrames);
+    }
+
+    private synchronized void finishGrabbing() {
+        if (grabbing) {
+            grabbing = false;
+            encodeQueue.add(END_OF_RAW);
+        }
+    }
+
+    private void encodeLoop() {
+        try {
+            while (true) {
+                RawFrame raw = encodeQueue.take();
+                if (raw == END_OF_RAW) {
+                    break;
+                }
+
+                LidarFramePairer.Pairing pairing = pairer.pair(raw.timestampNanos);
+                if (pairing == null || !pairing.accepted) {
+                    rejected.incrementAndGet();
+                    freeRaw.add(raw);
+                    continue;
+                }
+
+                EncodedFrame encoded = freeEncoded.take();
+                encoded.reset();
+                encoded.pairing = pairing;
+                encoded.perceptualHash = PerceptualHash.dHash(raw.nv21, 0, raw.width, raw.height, raw.width);
+                boolean ok;
+                try {
+                    ok = encoder.encode(raw.nv21, raw.width, raw.height, encoded);
+                } catch (Exception e) {
+                    Log.e(TAG, "Encode failed", e);
+                    ok = false;
+                }
+                freeRaw.add(raw);
+
+                if (ok) {
+                    persistQueue.put(encoded);  // Blok kalau persist tertinggal
+                } else {
+                    rejected.incrementAndGet();
+                    freeEncoded.add(encoded);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // offer: kalau persist sudah mati, antriannya bisa penuh
+            persistQueue.offer(END_OF_ENCODED);
+        }
+    }
+
+    private void persistLoop() {
+        List<EncodedFrame> batch = new ArrayList<>(BATCH_SIZE);
+        List<CattleDatasetDatabase.CattleDatasetEntry> rows = new ArrayList<>(BATCH_SIZE);
+        boolean done = false;
+        try {
+            while (!done) {
+                EncodedFrame first = persistQueue.take();
+                if (first == END_OF_ENCODED) {
+                    break;
+                }
+                batch.add(first);
+                persistQueue.drainTo(batch, BATCH_SIZE - 1);
+                if (batch.get(batch.size() - 1) == END_OF_ENCODED) {
+                    batch.remove(batch.size() - 1);
+                    done = true;
+                }
+                persistBatch(batch, rows);
+                for (EncodedFrame frame : batch) {
+                    frame.pairing = null;
+                    freeEncoded.add(frame);
+                }
+                batch.clear();
+                rows.clear();
+                callback.onProgress(grabbed.get(), saved.get(), totalFrames);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            Log.e(TAG, "Burst persist failed", e);
+            callback.onError(e.getMessage());
+        } finally {
+            // Kalau persist berhenti karena error, encode bisa terblok di put()/take() selamanya
+            finishGrabbing();
+            encodeThread.interrupt();
+            running = false;
+            long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+            Log.d(TAG, "Burst finished: " + saved.get() + " saved, " + rejected.get() +
+                    " rejected in " + elapsedMs + " ms");
+            callback.onFinished(saved.get(), rejected.get(), elapsedMs);
+        }
+    }
+
+    private void persistBatch(List<EncodedFrame> batch,
+                              List<CattleDatasetDatabase.CattleDatasetEntry> rows) throws Exception {
+        // Group commit 1: semua baris metadata dalam satu transaksi untuk dapat ID
+        for (EncodedFrame frame : batch) {
+            LidarData lidar = frame.pairing.data;
+            CattleDatasetDatabase.CattleDatasetEntry row = new CattleDatasetDatabase.CattleDatasetEntry(
+                    0, null, lidar.getJarak(), lidar.getKekuatan(), lidar.getSuhu(), null,
+                    frame.pairing.getErrorMs());
+            row.perceptualHash = frame.perceptualHash;
+            rows.add(row);
+        }
+        long[] ids = database.insertDatasetBatch(rows);
+
+        String[] paths = new String[ids.length];
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                if (ids[i] <= 0) {
+                    continue;
+                }
+                EncodedFrame frame = batch.get(i);
+                LidarData lidar = frame.pairing.data;
+                String filename = ids[i] + "_cattle_" + lidar.getJarak() + "_" +
+                        lidar.getKekuatan() + "_.jpg";
+                paths[i] = sink.save(filename, out -> out.write(frame.data, 0, frame.length));
+                saved.incrementAndGet();
+                if (duplicateIndex != null) {
+                    duplicateIndex.add(ids[i], frame.perceptualHash, lidar.getJarak());
+                }
+            }
+        } finally {
+            // Group commit 2: semua path gambar dalam satu transaksi; baris yang gambarnya
+            // gagal disimpan dihapus supaya tidak tertinggal dengan image_path NULL
+            database.updateImagePaths(ids, paths);
+            long[] unsaved = new long[ids.length];
+            boolean anyUnsaved = false;
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] > 0 && paths[i] == null) {
+                    unsaved[i] = ids[i];
+                    anyUnsaved = true;
+                }
+            }
+            if (anyUnsaved) {
+                database.deleteDatasets(unsaved);
+            }
+        }
+    }
+}
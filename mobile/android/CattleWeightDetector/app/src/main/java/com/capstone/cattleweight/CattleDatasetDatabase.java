@@ -5,6 +5,10 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import org.json.JSONArray;
+import org.json.JSONException;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -12,10 +16,15 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 
+/**
+ * One helper per process, shared by the camera executor, burst persist thread and
+ * re-scoring workers. Its connection stays open: closing it per call lets one thread
+ * close the database under another ("attempt to re-open an already-closed object").
+ */
 public class CattleDatasetDatabase extends SQLiteOpenHelper {
     
     private static final String DATABASE_NAME = "cattle_dataset.db";
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 6;
     
     // Table name
     private static final String TABLE_DATASET = "dataset";
@@ -27,11 +36,37 @@ public class CattleDatasetDatabase extends SQLiteOpenHelper {
     private static final String COLUMN_SIGNAL = "signal_strength";
     private static final String COLUMN_TEMPERATURE = "temperature";
     private static final String COLUMN_TIMESTAMP = "timestamp";
+    private static final String COLUMN_PAIRING_ERROR = "pairing_error_ms";
+    // Multi-camera rows: JSON array of image paths (index = camera view) and timestamp spread
+    private static final String COLUMN_VIEW_PATHS = "view_paths";
+    private static final String COLUMN_SYNC_SKEW = "sync_skew_ms";
+    // 64-bit dHash of the luma plane and the earlier near-identical capture, if any
+    private static final String COLUMN_PHASH = "phash";
+    private static final String COLUMN_DUPLICATE_OF = "duplicate_of";
+    
+    // Model re-scoring results: one row per (capture, model content key). A row with a NULL
+    // weight marks a capture whose image could not be decoded, so re-runs do not retry it.
+    private static final String TABLE_SCORES = "model_scores";
+    private static final String COLUMN_DATASET_ID = "dataset_id";
+    private static final String COLUMN_MODEL_VERSION = "model_version";
+    private static final String COLUMN_WEIGHT = "weight_kg";
+    private static final String COLUMN_CONFIDENCE = "confidence";
+    private static final String COLUMN_LATENCY = "latency_ms";
+    private static final String COLUMN_SCORED_AT = "scored_at";
+    
+    private static CattleDatasetDatabase instance;
     
-    public CattleDatasetDatabase(Context context) {
+    private CattleDatasetDatabase(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
     
+    public static synchronized CattleDatasetDatabase get(Context context) {
+        if (instance == null) {
+            instance = new CattleDatasetDatabase(context.getApplicationContext());
+        }
+        return instance;
+    }
+    
     @Override
     public void onCreate(SQLiteDatabase db) {
         String createTable = "CREATE TABLE " + TABLE_DATASET + " (" +
@@ -40,19 +75,67 @@ public class CattleDatasetDatabase extends SQLiteOpenHelper {
                 COLUMN_DISTANCE + " INTEGER, " +
                 COLUMN_SIGNAL + " INTEGER, " +
                 COLUMN_TEMPERATURE + " REAL, " +
-                COLUMN_TIMESTAMP + " TEXT" +
+                COLUMN_TIMESTAMP + " TEXT, " +
+                COLUMN_PAIRING_ERROR + " REAL, " +
+                COLUMN_VIEW_PATHS + " TEXT, " +
+                COLUMN_SYNC_SKEW + " REAL, " +
+                COLUMN_PHASH + " INTEGER, " +
+                COLUMN_DUPLICATE_OF + " INTEGER" +
                 ")";
         db.execSQL(createTable);
+        createScoresTable(db);
+    }
+    
+    private static void createScoresTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_SCORES + " (" +
+                COLUMN_DATASET_ID + " INTEGER NOT NULL, " +
+                COLUMN_MODEL_VERSION + " TEXT NOT NULL, " +
+                COLUMN_WEIGHT + " REAL, " +
+                COLUMN_CONFIDENCE + " REAL, " +
+                COLUMN_LATENCY + " REAL, " +
+                COLUMN_SCORED_AT + " TEXT, " +
+                "PRIMARY KEY (" + COLUMN_DATASET_ID + ", " + COLUMN_MODEL_VERSION + ")" +
+                ")");
     }
     
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_DATASET);
-        onCreate(db);
+        if (oldVersion < 2) {
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_DATASET);
+            onCreate(db);
+            return;
+        }
+        // Keep captured data from v2 onwards: add new columns incrementally
+        if (oldVersion < 3) {
+            db.execSQL("ALTER TABLE " + TABLE_DATASET + " ADD COLUMN " + 
+                    COLUMN_PAIRING_ERROR + " REAL");
+        }
+        if (oldVersion < 4) {
+            db.execSQL("ALTER TABLE " + TABLE_DATASET + " ADD COLUMN " + 
+                    COLUMN_VIEW_PATHS + " TEXT");
+            db.execSQL("ALTER TABLE " + TABLE_DATASET + " ADD COLUMN " + 
+                    COLUMN_SYNC_SKEW + " REAL");
+        }
+        if (oldVersion < 5) {
+            createScoresTable(db);
+        }
+        if (oldVersion < 6) {
+            db.execSQL("ALTER TABLE " + TABLE_DATASET + " ADD COLUMN " + 
+                    COLUMN_PHASH + " INTEGER");
+            db.execSQL("ALTER TABLE " + TABLE_DATASET + " ADD COLUMN " + 
+                    COLUMN_DUPLICATE_OF + " INTEGER");
+        }
     }
     
     // Insert new dataset entry
-    public long insertDataset(String imagePath, int distance, int signal, double temperature) {
+    public long insertDataset(String imagePath, int distance, int signal, double temperature, 
+                              double pairingErrorMs) {
+        return insertDataset(imagePath, distance, signal, temperature, pairingErrorMs, null, 0);
+    }
+    
+    // Insert with the frame's perceptual hash; duplicateOf > 0 tags a near-duplicate capture
+    public long insertDataset(String imagePath, int distance, int signal, double temperature, 
+                              double pairingErrorMs, Long perceptualHash, long duplicateOf) {
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
         
@@ -64,12 +147,83 @@ public class CattleDatasetDatabase extends SQLiteOpenHelper {
         values.put(COLUMN_SIGNAL, signal);
         values.put(COLUMN_TEMPERATURE, temperature);
         values.put(COLUMN_TIMESTAMP, timestamp);
+        values.put(COLUMN_PAIRING_ERROR, pairingErrorMs);
+        values.put(COLUMN_PHASH, perceptualHash);
+        if (duplicateOf > 0) {
+            values.put(COLUMN_DUPLICATE_OF, duplicateOf);
+        }
         
         long id = db.insert(TABLE_DATASET, null, values);
-        db.close();
         return id;
     }
     
+    // Insert several entries in one transaction (burst capture group commit)
+    public long[] insertDatasetBatch(List<CattleDatasetEntry> entries) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        long[] ids = new long[entries.size()];
+        
+        String now = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault())
+                .format(new Date());
+        
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < entries.size(); i++) {
+                CattleDatasetEntry entry = entries.get(i);
+                values.clear();
+                values.put(COLUMN_IMAGE_PATH, entry.imagePath);
+                values.put(COLUMN_DISTANCE, entry.distance);
+                values.put(COLUMN_SIGNAL, entry.signal);
+                values.put(COLUMN_TEMPERATURE, entry.temperature);
+                values.put(COLUMN_TIMESTAMP, entry.timestamp != null ? entry.timestamp : now);
+                values.put(COLUMN_PAIRING_ERROR, entry.pairingErrorMs);
+                values.put(COLUMN_PHASH, entry.perceptualHash);
+                ids[i] = db.insert(TABLE_DATASET, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return ids;
+    }
+    
+    // Update several image paths in one transaction
+    public void updateImagePaths(long[] ids, String[] imagePaths) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement statement = db.compileStatement("UPDATE " + TABLE_DATASET + 
+                    " SET " + COLUMN_IMAGE_PATH + " = ? WHERE " + COLUMN_ID + " = ?");
+            for (int i = 0; i < ids.length; i++) {
+                if (imagePaths[i] == null) {
+                    continue;
+                }
+                statement.clearBindings();
+                statement.bindString(1, imagePaths[i]);
+                statement.bindLong(2, ids[i]);
+                statement.executeUpdateDelete();
+            }
+            statement.close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+    
+    // Link all camera views of one synchronized capture to its row (first view = image_path)
+    public void updateViewPaths(long id, String[] viewPaths, double syncSkewMs) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        JSONArray paths = new JSONArray();
+        for (String path : viewPaths) {
+            paths.put(path);
+        }
+        values.put(COLUMN_IMAGE_PATH, viewPaths.length > 0 ? viewPaths[0] : null);
+        values.put(COLUMN_VIEW_PATHS, paths.toString());
+        values.put(COLUMN_SYNC_SKEW, syncSkewMs);
+        db.update(TABLE_DATASET, values, COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
+    }
+    
     // Get total dataset count
     public int getDatasetCount() {
         SQLiteDatabase db = this.getReadableDatabase();
@@ -79,17 +233,37 @@ public class CattleDatasetDatabase extends SQLiteOpenHelper {
             count = cursor.getInt(0);
         }
         cursor.close();
-        db.close();
         return count;
     }
     
+    // Remove rows whose image could not be saved (ids <= 0 are ignored)
+    public void deleteDatasets(long[] ids) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement statement = db.compileStatement("DELETE FROM " + TABLE_DATASET + 
+                    " WHERE " + COLUMN_ID + " = ?");
+            for (long id : ids) {
+                if (id <= 0) {
+                    continue;
+                }
+                statement.clearBindings();
+                statement.bindLong(1, id);
+                statement.executeUpdateDelete();
+            }
+            statement.close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+    
     // Update image path after saving to gallery
     public void updateImagePath(long id, String imagePath) {
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
         values.put(COLUMN_IMAGE_PATH, imagePath);
         db.update(TABLE_DATASET, values, COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
-        db.close();
     }
     
     // Get all dataset (for export)
@@ -108,17 +282,149 @@ public class CattleDatasetDatabase extends SQLiteOpenHelper {
                     cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_DISTANCE)),
                     cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_SIGNAL)),
                     cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_TEMPERATURE)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_TIMESTAMP))
+                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_TIMESTAMP)),
+                    cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_PAIRING_ERROR))
                 );
+                entry.viewPaths = parseViewPaths(
+                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_VIEW_PATHS)));
+                entry.syncSkewMs = cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_SYNC_SKEW));
+                int phash = cursor.getColumnIndexOrThrow(COLUMN_PHASH);
+                entry.perceptualHash = cursor.isNull(phash) ? null : cursor.getLong(phash);
+                entry.duplicateOf = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_DUPLICATE_OF));
                 datasetList.add(entry);
             } while (cursor.moveToNext());
         }
         
         cursor.close();
-        db.close();
         return datasetList;
     }
     
+    // Feed every hashed capture into the in-memory near-duplicate index
+    public int loadPerceptualHashes(DuplicateIndex index) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_ID + ", " + COLUMN_PHASH + ", " + 
+                COLUMN_DISTANCE + " FROM " + TABLE_DATASET + " WHERE " + COLUMN_PHASH + 
+                " IS NOT NULL", null);
+        int count = 0;
+        while (cursor.moveToNext()) {
+            index.add(cursor.getLong(0), cursor.getLong(1), cursor.getInt(2));
+            count++;
+        }
+        cursor.close();
+        return count;
+    }
+    
+    // Next page of captures (id ascending, after afterId) not yet scored by modelVersion
+    // (a model content key, see WeightModelManager.contentKey). Rows scored or marked
+    // unreadable by an interrupted run are skipped, so a re-run resumes where it stopped.
+    public List<CattleDatasetEntry> getUnscoredPage(String modelVersion, long afterId, int limit) {
+        List<CattleDatasetEntry> page = new ArrayList<>(limit);
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT d." + COLUMN_ID + ", d." + COLUMN_IMAGE_PATH + ", d." + 
+                COLUMN_DISTANCE + ", d." + COLUMN_SIGNAL + ", d." + COLUMN_TEMPERATURE + ", d." + 
+                COLUMN_TIMESTAMP + ", d." + COLUMN_PAIRING_ERROR +
+                " FROM " + TABLE_DATASET + " d WHERE d." + COLUMN_ID + " > ?" +
+                " AND d." + COLUMN_IMAGE_PATH + " IS NOT NULL" +
+                " AND NOT EXISTS (SELECT 1 FROM " + TABLE_SCORES + " s WHERE s." + COLUMN_DATASET_ID + 
+                " = d." + COLUMN_ID + " AND s." + COLUMN_MODEL_VERSION + " = ?)" +
+                " ORDER BY d." + COLUMN_ID + " LIMIT " + limit,
+                new String[]{String.valueOf(afterId), modelVersion});
+        while (cursor.moveToNext()) {
+            page.add(new CattleDatasetEntry(cursor.getInt(0), cursor.getString(1), cursor.getInt(2),
+                    cursor.getInt(3), cursor.getDouble(4), cursor.getString(5), cursor.getDouble(6)));
+        }
+        cursor.close();
+        return page;
+    }
+    
+    // Number of captures with an image that modelVersion has not scored yet
+    public int getUnscoredCount(String modelVersion) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + TABLE_DATASET + " d WHERE d." + 
+                COLUMN_IMAGE_PATH + " IS NOT NULL AND NOT EXISTS (SELECT 1 FROM " + TABLE_SCORES + 
+                " s WHERE s." + COLUMN_DATASET_ID + " = d." + COLUMN_ID + " AND s." + 
+                COLUMN_MODEL_VERSION + " = ?)", new String[]{modelVersion});
+        int count = 0;
+        if (cursor.moveToFirst()) {
+            count = cursor.getInt(0);
+        }
+        cursor.close();
+        return count;
+    }
+    
+    // Store re-scoring results in one transaction (group commit)
+    public void insertScoresBatch(String modelVersion, List<ModelScore> scores) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        String now = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault())
+                .format(new Date());
+        db.beginTransaction();
+        try {
+            SQLiteStatement statement = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_SCORES + 
+                    " (" + COLUMN_DATASET_ID + ", " + COLUMN_MODEL_VERSION + ", " + COLUMN_WEIGHT + ", " + 
+                    COLUMN_CONFIDENCE + ", " + COLUMN_LATENCY + ", " + COLUMN_SCORED_AT + 
+                    ") VALUES (?, ?, ?, ?, ?, ?)");
+            for (ModelScore score : scores) {
+                statement.clearBindings();
+                statement.bindLong(1, score.datasetId);
+                statement.bindString(2, modelVersion);
+                if (score.unreadable) {
+                    statement.bindNull(3);
+                    statement.bindNull(4);
+                    statement.bindNull(5);
+                } else {
+                    statement.bindDouble(3, score.weightKg);
+                    statement.bindDouble(4, score.confidence);
+                    statement.bindDouble(5, score.latencyMs);
+                }
+                statement.bindString(6, now);
+                statement.executeInsert();
+            }
+            statement.close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+    
+    private static String[] parseViewPaths(String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            JSONArray paths = new JSONArray(json);
+            String[] result = new String[paths.length()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = paths.optString(i, null);
+            }
+            return result;
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+    
+    // Model output for one capture (re-scoring)
+    public static class ModelScore {
+        public long datasetId;
+        public float weightKg;
+        public float confidence;
+        public double latencyMs;
+        // Image missing or not decodable: stored with a NULL weight
+        public boolean unreadable;
+        
+        public ModelScore(long datasetId, float weightKg, float confidence, double latencyMs) {
+            this.datasetId = datasetId;
+            this.weightKg = weightKg;
+            this.confidence = confidence;
+            this.latencyMs = latencyMs;
+        }
+        
+        public static ModelScore unreadable(long datasetId) {
+            ModelScore score = new ModelScore(datasetId, 0f, 0f, 0);
+            score.unreadable = true;
+            return score;
+        }
+    }
+    
     // Dataset Entry class
     public static class CattleDatasetEntry {
         public int id;
@@ -127,15 +433,23 @@ public class CattleDatasetDatabase extends SQLiteOpenHelper {
         public int signal;
         public double temperature;
         public String timestamp;
+        public double pairingErrorMs;
+        // Only set for multi-camera captures
+        public String[] viewPaths;
+        public double syncSkewMs;
+        // dHash of the saved image (first view for multi-camera); null for rows saved before v6
+        public Long perceptualHash;
+        public long duplicateOf;
         
         public CattleDatasetEntry(int id, String imagePath, int distance, int signal, 
-                                 double temperature, String timestamp) {
+                                 double temperature, String timestamp, double pairingErrorMs) {
             this.id = id;
             this.imagePath = imagePath;
             this.distance = distance;
             this.signal = signal;
             this.temperature = temperature;
             this.timestamp = timestamp;
+            this.pairingErrorMs = pairingErrorMs;
         }
     }
 }
@@ -1,8 +1,10 @@
 package com.capstone.cattleweight;
 
 import android.Manifest;
-import android.content.ContentValues;
+import android.app.Activity;
+import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.ImageFormat;
@@ -10,15 +12,16 @@ import android.graphics.Matrix;
 import android.graphics.Rect;
 import android.graphics.YuvImage;
 import android.net.Uri;
-import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
-import android.provider.MediaStore;
+import android.os.SystemClock;
+import android.provider.OpenableColumns;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.CompoundButton;
 import android.widget.TextView;
 import android.widget.Toast;
 import android.view.TextureView;
@@ -26,9 +29,11 @@ import androidx.appcompat.widget.SwitchCompat;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.camera.core.AspectRatio;
 import androidx.camera.core.Camera;
 import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.ImageCapture;
 import androidx.camera.core.ImageCaptureException;
 import androidx.camera.core.ImageProxy;
@@ -41,9 +46,10 @@ import androidx.fragment.app.Fragment;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.jiangdg.ausbc.widget.FrameMetricsView;
 
-import java.io.ByteArrayOutputStream;
-import java.io.OutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -55,7 +61,23 @@ public class DatasetFragment extends Fragment {
     
     private static final String TAG = "DatasetFragment";
     private static final int CAMERA_PERMISSION_CODE = 101;
+    private static final int MODEL_FILE_REQUEST_CODE = 102;
     private static final String SERVER_URL = "http://192.168.1.100:5000";
+    private static final int JPEG_QUALITY = 90;
+    // Stills are scaled to 8x8 samples per dHash cell (9x8 grid) before hashing
+    private static final int HASH_SAMPLE_WIDTH = 72;
+    private static final int HASH_SAMPLE_HEIGHT = 64;
+    // Max frame/LiDAR pairing error: USB streams at ~100 Hz, WiFi polls every 100 ms
+    private static final long USB_MAX_PAIRING_ERROR_NANOS = 50_000_000L;
+    private static final long WIFI_MAX_PAIRING_ERROR_NANOS = 200_000_000L;
+    // Pre-trigger ring: pick the best frame from 2 s before to 250 ms after the tap
+    private static final long PRE_TRIGGER_NANOS = 2_000_000_000L;
+    private static final long POST_TRIGGER_NANOS = 250_000_000L;
+    // Burst mode (long-press capture): N frames at a fixed interval
+    private static final int BURST_FRAMES = 30;
+    private static final long BURST_INTERVAL_NANOS = 100_000_000L;
+    // Multi-camera capture: wait this long for a frame set within the sync tolerance
+    private static final long MULTI_VIEW_GRAB_TIMEOUT_MS = 500;
     
     // UI Components
     private PreviewView cameraPreview;
@@ -63,13 +85,18 @@ public class DatasetFragment extends Fragment {
     private FloatingActionButton btnCapture;
     private SwitchCompat switchLidarMode;
     private SwitchCompat switchCameraMode;
+    private SwitchCompat switchAutoCapture;
+    private SwitchCompat switchRoiCrop;
     private TextView tvCameraStatus, tvSaveStatus, tvDistance, tvSignalStrength, tvTemperature;
-    private TextView tvConnectionStatus, tvTimestamp, tvDatasetCount;
+    private TextView tvConnectionStatus, tvTimestamp, tvDatasetCount, tvModelInfo;
+    private FrameMetricsView frameMetricsView;
     
     // Camera - Built-in (CameraX)
     private Camera camera;
     private ImageCapture imageCapture;
+    private ImageAnalysis imageAnalysis;
     private ExecutorService cameraExecutor;
+    private ExecutorService analysisExecutor;
     private CameraSelector currentCameraSelector;
     private int currentCameraIndex = 0;
     private java.util.List<androidx.camera.core.CameraInfo> availableCameras;
@@ -77,16 +104,38 @@ public class DatasetFragment extends Fragment {
     // Camera - USB (UVC)
     private UvcCameraManager uvcCameraManager;
     private boolean isUsingUsbCamera = false;
+    // Camera mode/bandwidth sized so the USB LiDAR on the same hub loses no samples
+    private final UsbBandwidthPlanner bandwidthPlanner = new UsbBandwidthPlanner();
+    // Two or more UVC cameras (side + top view): synchronized multi-view capture
+    private MultiCameraRig multiCameraRig;
     
     // LiDAR - WiFi mode
     private LidarDataReceiver lidarReceiver;
     // LiDAR - USB mode
     private UsbSerialLidarReader usbLidarReader;
     private LidarData currentLidarData;
+    private final LidarFramePairer lidarPairer = new LidarFramePairer();
     private boolean isUsbMode = false;
     
     // Database
     private CattleDatasetDatabase database;
+    private ImageSink imageSink;
+    
+    // Pre-trigger frame ring (last ~2 s of frames as JPEG)
+    private JpegEncoder jpegEncoder;
+    private JpegEncoder fullFrameEncoder;
+    private PreTriggerFrameRing frameRing;
+    private volatile BurstCapturePipeline burstPipeline;
+    private BatchRescoringJob rescoringJob;
+    private WeightModelManager.Listener modelListener;
+    private AutoCaptureTrigger autoTrigger;
+    private byte[] analysisNv21;
+    private byte[] uvcNv21;
+    // Foreground ROI against the learned empty chute; shared by ring and burst encoders
+    private final ForegroundRoiDetector roiDetector = new ForegroundRoiDetector();
+    private File filesDir;
+    // Perceptual hashes of saved captures: auto capture skips near-duplicates, manual tags them
+    private final DuplicateIndex duplicateIndex = new DuplicateIndex();
     
     private int datasetCount = 0;
     
@@ -101,9 +150,26 @@ public class DatasetFragment extends Fragment {
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
         
-        database = new CattleDatasetDatabase(requireContext());
+        database = CattleDatasetDatabase.get(requireContext());
+        imageSink = new MediaStoreImageSink(requireContext());
+        jpegEncoder = (nv21, width, height, out) -> 
+                new YuvImage(nv21, ImageFormat.NV21, width, height, null)
+                        .compressToJpeg(roiCrop(nv21, width, height), JPEG_QUALITY, out);
+        // The ROI background is learned from the main camera only; other views are saved uncropped
+        fullFrameEncoder = (nv21, width, height, out) -> 
+                new YuvImage(nv21, ImageFormat.NV21, width, height, null)
+                        .compressToJpeg(new Rect(0, 0, width, height), JPEG_QUALITY, out);
+        frameRing = new PreTriggerFrameRing(jpegEncoder);
+        
+        // Auto capture when LiDAR distance is stable and the frame is sharp
+        autoTrigger = new AutoCaptureTrigger((frameNanos, distanceCm, sharpness) -> 
+                new Handler(Looper.getMainLooper()).post(() -> autoCapture(frameNanos, distanceCm)));
+        
         initializeViews(view);
         cameraExecutor = Executors.newSingleThreadExecutor();
+        analysisExecutor = Executors.newSingleThreadExecutor();
+        // Saves run on the same executor, so they always see the fully loaded index
+        cameraExecutor.execute(this::loadDuplicateIndex);
         
         if (checkCameraPermission()) {
             startCamera();
@@ -111,14 +177,31 @@ public class DatasetFragment extends Fragment {
             requestCameraPermission();
         }
         
+        lidarPairer.setMaxErrorNanos(WIFI_MAX_PAIRING_ERROR_NANOS);
         initializeLidarReceiver();
         loadDatasetCount();
         
         btnCapture.setOnClickListener(v -> captureAndSaveData());
+        btnCapture.setOnLongClickListener(v -> {
+            startBurstCapture();
+            return true;
+        });
+        
+        filesDir = requireContext().getFilesDir();
+        loadRoiBackground();
+        
+        switchAutoCapture.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            autoTrigger.setEnabled(isChecked);
+            Toast.makeText(requireContext(), 
+                    isChecked ? "Auto capture ON" : "Auto capture OFF", 
+                    Toast.LENGTH_SHORT).show();
+        });
         
         // Initialize UVC camera here instead of in initializeViews
         // This gives USB system time to enumerate devices
         initializeUvcCamera();
+        
+        initializeModelInfo();
     }
     
     private void initializeViews(View view) {
@@ -127,6 +210,8 @@ public class DatasetFragment extends Fragment {
         btnCapture = view.findViewById(R.id.btnCapture);
         switchLidarMode = view.findViewById(R.id.switchLidarMode);
         switchCameraMode = view.findViewById(R.id.switchCameraMode);
+        switchAutoCapture = view.findViewById(R.id.switchAutoCapture);
+        switchRoiCrop = view.findViewById(R.id.switchRoiCrop);
         tvCameraStatus = view.findViewById(R.id.tvCameraStatus);
         tvSaveStatus = view.findViewById(R.id.tvSaveStatus);
         tvDistance = view.findViewById(R.id.tvDistance);
@@ -135,6 +220,24 @@ public class DatasetFragment extends Fragment {
         tvConnectionStatus = view.findViewById(R.id.tvConnectionStatus);
         tvTimestamp = view.findViewById(R.id.tvTimestamp);
         tvDatasetCount = view.findViewById(R.id.tvDatasetCount);
+        tvModelInfo = view.findViewById(R.id.tvModelInfo);
+        frameMetricsView = view.findViewById(R.id.frameMetricsView);
+        
+        // Long-press camera status toggles the frame pipeline metrics overlay
+        tvCameraStatus.setOnLongClickListener(v -> {
+            frameMetricsView.setVisibility(
+                    frameMetricsView.getVisibility() == View.VISIBLE ? View.GONE : View.VISIBLE);
+            return true;
+        });
+        
+        // Long-press dataset count re-scores every capture with the selected weight model
+        tvDatasetCount.setOnLongClickListener(v -> {
+            confirmRescoring();
+            return true;
+        });
+        
+        // Tap model info to install a new weight model or go back to the bundled one
+        tvModelInfo.setOnClickListener(v -> showModelDialog());
         
         // Set switch listener
         switchLidarMode.setOnCheckedChangeListener((buttonView, isChecked) -> {
@@ -207,9 +310,25 @@ public class DatasetFragment extends Fragment {
                     .setTargetResolution(new android.util.Size(960, 1280))
                     .build();
             
+            // Upright YUV frames feed the pre-trigger ring
+            imageAnalysis = new ImageAnalysis.Builder()
+                    .setTargetResolution(new android.util.Size(960, 1280))
+                    .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                    .setOutputImageRotationEnabled(true)
+                    .build();
+            imageAnalysis.setAnalyzer(analysisExecutor, this::offerAnalysisFrame);
+            
             cameraProvider.unbindAll();
-            camera = cameraProvider.bindToLifecycle(
-                    getViewLifecycleOwner(), currentCameraSelector, preview, imageCapture);
+            try {
+                camera = cameraProvider.bindToLifecycle(
+                        getViewLifecycleOwner(), currentCameraSelector, preview, imageCapture, imageAnalysis);
+            } catch (IllegalArgumentException e) {
+                // Device can't run 3 use cases together - capture without the ring
+                Log.w(TAG, "ImageAnalysis not supported with capture, pre-trigger ring disabled", e);
+                imageAnalysis = null;
+                camera = cameraProvider.bindToLifecycle(
+                        getViewLifecycleOwner(), currentCameraSelector, preview, imageCapture);
+            }
             
             tvCameraStatus.setText("📷 Camera Active");
             tvCameraStatus.setTextColor(0xFF4CAF50);
@@ -357,8 +476,22 @@ public class DatasetFragment extends Fragment {
                         Toast.makeText(requireContext(), "✅ USB Camera preview started", Toast.LENGTH_SHORT).show();
                     });
                 }
+
+                @Override
+                public void onCameraReconnecting() {
+                    Log.d(TAG, "USB Camera reconnecting");
+                    new Handler(Looper.getMainLooper()).post(() -> {
+                        // Keep the USB view, the manager reopens the camera by itself
+                        tvCameraStatus.setText("🔄 USB Camera reconnecting...");
+                        tvCameraStatus.setTextColor(0xFFFF9800); // Orange
+                    });
+                }
             });
             
+            // Feed NV21 preview frames into the pre-trigger ring
+            uvcCameraManager.setFrameCallback(this::offerUvcFrame);
+            uvcCameraManager.setBandwidthPlanner(bandwidthPlanner);
+            
             // Set preview texture
             uvcCameraManager.setPreviewTexture(uvcCameraView);
         }
@@ -368,6 +501,14 @@ public class DatasetFragment extends Fragment {
      * Switch between built-in camera (CameraX) and USB camera (UVC)
      */
     private void switchCameraSource() {
+        // Frames from the previous camera must not be picked
+        frameRing.clear();
+        if (burstPipeline != null) {
+            burstPipeline.stop();
+        }
+        // Each camera sees the chute from its own position
+        loadRoiBackground();
+        
         if (isUsingUsbCamera) {
             // Switch to USB camera
             Log.d(TAG, "Switching to USB camera...");
@@ -390,7 +531,10 @@ public class DatasetFragment extends Fragment {
                 }
             }
             
-            if (uvcCameraManager != null) {
+            if (MultiCameraRig.countCameras(requireContext()) > 1) {
+                // Several cameras: open all of them, capture saves every view in one row
+                startMultiCameraRig();
+            } else if (uvcCameraManager != null) {
                 // Request permission (will trigger onConnect callback)
                 uvcCameraManager.requestCameraPermission();
             } else {
@@ -407,6 +551,11 @@ public class DatasetFragment extends Fragment {
             cameraPreview.setVisibility(View.VISIBLE);
             uvcCameraView.setVisibility(View.GONE);
             
+            if (multiCameraRig != null) {
+                multiCameraRig.stop();
+                multiCameraRig = null;
+            }
+            
             // CRITICAL FIX: Close USB camera completely (not just stop preview)
             if (uvcCameraManager != null) {
                 uvcCameraManager.closeCamera();
@@ -418,7 +567,42 @@ public class DatasetFragment extends Fragment {
         }
     }
     
+    /**
+     * Open all attached UVC cameras for synchronized multi-view capture
+     */
+    private void startMultiCameraRig() {
+        if (multiCameraRig != null) {
+            return;
+        }
+        multiCameraRig = new MultiCameraRig(requireContext(), new MultiCameraRig.Listener() {
+            @Override
+            public void onViewsChanged(int openViews, int expectedViews) {
+                if (!isAdded()) {
+                    return;
+                }
+                tvCameraStatus.setText("📷 USB Cameras: " + openViews + "/" + expectedViews);
+                tvCameraStatus.setTextColor(openViews == expectedViews ? 0xFF4CAF50 : 0xFFFFC107);
+            }
+            
+            @Override
+            public void onError(String error) {
+                Log.e(TAG, "Multi-camera error: " + error);
+                if (isAdded()) {
+                    Toast.makeText(requireContext(), "USB Camera Error:\n" + error, Toast.LENGTH_LONG).show();
+                }
+            }
+        });
+        multiCameraRig.start();
+        tvCameraStatus.setText("📷 USB Cameras: 0/" + multiCameraRig.getExpectedViews());
+    }
+    
     private void switchLidarMode() {
+        // Samples from the previous source must not be paired with new frames
+        lidarPairer.clear();
+        autoTrigger.reset();
+        lidarPairer.setMaxErrorNanos(isUsbMode 
+                ? USB_MAX_PAIRING_ERROR_NANOS : WIFI_MAX_PAIRING_ERROR_NANOS);
+        
         // Stop current mode
         if (lidarReceiver != null) {
             lidarReceiver.stopReceiving();
@@ -429,6 +613,9 @@ public class DatasetFragment extends Fragment {
             usbLidarReader = null;
         }
         
+        // Only the USB LiDAR shares the bus with the camera
+        bandwidthPlanner.setExpectedLidarRate(0);
+        
         // Start new mode
         if (isUsbMode) {
             initializeUsbLidar();
@@ -442,6 +629,9 @@ public class DatasetFragment extends Fragment {
             @Override
             public void onDataReceived(LidarData data) {
                 currentLidarData = data;
+                lidarPairer.add(data);
+                bandwidthPlanner.onLidarSample();
+                autoTrigger.onLidarSample(data.getReceivedNanos(), data.getJarak(), data.getKekuatan());
                 new Handler(Looper.getMainLooper()).post(() -> updateLidarUI(data));
             }
             
@@ -456,10 +646,14 @@ public class DatasetFragment extends Fragment {
                         tvConnectionStatus.setTextColor(0xFFF44336);
                     }
                 });
+                if (!connected) {
+                    autoTrigger.reset();
+                }
             }
             
             @Override
             public void onError(String error) {
+                autoTrigger.reset();
                 new Handler(Looper.getMainLooper()).post(() -> {
                     tvConnectionStatus.setText("⚠️ USB Error: " + error);
                     tvConnectionStatus.setTextColor(0xFFFF9800);
@@ -468,6 +662,8 @@ public class DatasetFragment extends Fragment {
         });
         
         usbLidarReader.startReading();
+        bandwidthPlanner.setExpectedLidarRate(usbLidarReader.getFrameRate());
+        autoTrigger.setExpectedSamplePeriod(1_000_000_000L / usbLidarReader.getFrameRate());
     }
     
     private void initializeLidarReceiver() {
@@ -475,6 +671,8 @@ public class DatasetFragment extends Fragment {
             @Override
             public void onDataReceived(LidarData data) {
                 currentLidarData = data;
+                lidarPairer.add(data);
+                autoTrigger.onLidarSample(data.getReceivedNanos(), data.getJarak(), data.getKekuatan());
                 new Handler(Looper.getMainLooper()).post(() -> updateLidarUI(data));
             }
             
@@ -489,10 +687,14 @@ public class DatasetFragment extends Fragment {
                         tvConnectionStatus.setTextColor(0xFFF44336);
                     }
                 });
+                if (!connected) {
+                    autoTrigger.reset();
+                }
             }
             
             @Override
             public void onError(String error) {
+                autoTrigger.reset();
                 new Handler(Looper.getMainLooper()).post(() -> {
                     tvConnectionStatus.setText("⚠️ Error: " + error);
                     tvConnectionStatus.setTextColor(0xFFFF9800);
@@ -500,6 +702,7 @@ public class DatasetFragment extends Fragment {
             }
         });
         
+        autoTrigger.setExpectedSamplePeriod(AutoCaptureTrigger.DEFAULT_SAMPLE_PERIOD_NANOS);
         lidarReceiver.startReceiving();
     }
     
@@ -511,6 +714,13 @@ public class DatasetFragment extends Fragment {
     }
     
     private void captureAndSaveData() {
+        // Tap during a burst stops it early
+        BurstCapturePipeline burst = burstPipeline;
+        if (burst != null && burst.isRunning()) {
+            burst.stop();
+            return;
+        }
+        
         if (currentLidarData == null) {
             Toast.makeText(requireContext(), "LiDAR not ready!", Toast.LENGTH_SHORT).show();
             return;
@@ -521,6 +731,289 @@ public class DatasetFragment extends Fragment {
         tvSaveStatus.setTextColor(0xFFFFC107);
         btnCapture.setEnabled(false);
         
+        // Wait briefly so frames just after the tap are candidates too, then pick
+        long triggerNanos = SystemClock.elapsedRealtimeNanos();
+        new Handler(Looper.getMainLooper()).postDelayed(
+                () -> captureBestFrame(triggerNanos, false), POST_TRIGGER_NANOS / 1_000_000L);
+    }
+    
+    /**
+     * Capture fired by AutoCaptureTrigger; same ring selection as a manual tap
+     */
+    private void autoCapture(long frameNanos, int distanceCm) {
+        if (!isAdded() || !btnCapture.isEnabled()) {
+            return;
+        }
+        BurstCapturePipeline burst = burstPipeline;
+        if (burst != null && burst.isRunning()) {
+            return;
+        }
+        
+        Log.d(TAG, "Auto capture at " + distanceCm + " cm");
+        tvSaveStatus.setVisibility(View.VISIBLE);
+        tvSaveStatus.setText("🤖 Auto Capturing...");
+        tvSaveStatus.setTextColor(0xFFFFC107);
+        btnCapture.setEnabled(false);
+        
+        new Handler(Looper.getMainLooper()).postDelayed(
+                () -> captureBestFrame(frameNanos, true), POST_TRIGGER_NANOS / 1_000_000L);
+    }
+    
+    /**
+     * Start burst capture: grab, encode and save overlap on separate threads.
+     * Frames come from the same analysis/UVC callbacks that feed the ring.
+     */
+    private void startBurstCapture() {
+        if (burstPipeline != null && burstPipeline.isRunning()) {
+            return;
+        }
+        if (currentLidarData == null) {
+            Toast.makeText(requireContext(), "LiDAR not ready!", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (!isUsingUsbCamera && imageAnalysis == null) {
+            Toast.makeText(requireContext(), "Burst not supported on this camera", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        
+        tvSaveStatus.setVisibility(View.VISIBLE);
+        tvSaveStatus.setText("📸 Burst 0/" + BURST_FRAMES);
+        tvSaveStatus.setTextColor(0xFFFFC107);
+        
+        BurstCapturePipeline burst = new BurstCapturePipeline(BURST_FRAMES, BURST_INTERVAL_NANOS, 
+                jpegEncoder, lidarPairer, imageSink, database, duplicateIndex, 
+                new BurstCapturePipeline.BurstCallback() {
+            @Override
+            public void onProgress(int grabbed, int saved, int total) {
+                new Handler(Looper.getMainLooper()).post(() -> 
+                        tvSaveStatus.setText("📸 Burst " + grabbed + "/" + total + " (saved " + saved + ")"));
+            }
+            
+            @Override
+            public void onFinished(int saved, int rejected, long elapsedMs) {
+                new Handler(Looper.getMainLooper()).post(() -> {
+                    datasetCount += saved;
+                    double rate = elapsedMs > 0 ? saved * 1000.0 / elapsedMs : 0;
+                    tvSaveStatus.setText(String.format(Locale.US, 
+                            "✅ Burst: %d saved, %d rejected (%.1f/s)", saved, rejected, rate));
+                    tvSaveStatus.setTextColor(0xFF4CAF50);
+                    tvDatasetCount.setText("📊 Total Data: " + datasetCount);
+                    
+                    new Handler(Looper.getMainLooper()).postDelayed(() -> {
+                        tvSaveStatus.setVisibility(View.GONE);
+                    }, 3000);
+                });
+            }
+            
+            @Override
+            public void onError(String error) {
+                new Handler(Looper.getMainLooper()).post(() -> {
+                    tvSaveStatus.setText("❌ Burst Failed");
+                    tvSaveStatus.setTextColor(0xFFF44336);
+                    Toast.makeText(requireContext(), "Burst failed: " + error, 
+                            Toast.LENGTH_SHORT).show();
+                });
+            }
+        });
+        burstPipeline = burst;
+        burst.start();
+    }
+    
+    /**
+     * Ask before re-scoring the dataset with the selected weight model, or offer to
+     * stop a running job. Captures already scored by that version are skipped, so a
+     * stopped job continues where it left off.
+     */
+    private void confirmRescoring() {
+        if (rescoringJob != null && rescoringJob.isRunning()) {
+            BatchRescoringJob running = rescoringJob;
+            new AlertDialog.Builder(requireContext())
+                    .setTitle("Re-scoring dataset")
+                    .setMessage("Stop re-scoring? Finished scores are kept.")
+                    .setPositiveButton("Stop", (dialog, which) -> running.cancel())
+                    .setNegativeButton("Keep running", null)
+                    .show();
+            return;
+        }
+        WeightModelManager models = WeightModelManager.get(requireContext());
+        String version = models.getSelectedVersion();
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Re-score dataset")
+                .setMessage("Estimate the weight of all " + datasetCount + " captures with model \"" 
+                        + version + "\"?")
+                .setPositiveButton("Start", (dialog, which) -> startRescoring(models, version))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+    
+    /**
+     * Show the active weight model and its load metrics, and keep them current while
+     * the view exists. Loading the model is started here too in case the detection
+     * screen has not been opened yet.
+     */
+    private void initializeModelInfo() {
+        WeightModelManager models = WeightModelManager.get(requireContext());
+        modelListener = new WeightModelManager.Listener() {
+            @Override
+            public void onModelReady(String version, WeightModelManager.Metrics metrics) {
+                showModelInfo(metrics);
+            }
+            
+            @Override
+            public void onModelFailed(String version, Exception e) {
+                WeightModelManager.Metrics metrics = models.getMetrics();
+                if (metrics.version == null) {
+                    // No model at all, e.g. a build without assets/cattle_weight.tflite
+                    tvModelInfo.setText("🧠 Model: none (tap to install)");
+                } else {
+                    showModelInfo(metrics);
+                }
+                if (isAdded()) {
+                    Toast.makeText(requireContext(), "Model \"" + version + "\" failed: " + e.getMessage(), 
+                            Toast.LENGTH_LONG).show();
+                }
+            }
+        };
+        models.addListener(modelListener);
+        models.loadAfterFirstFrame();
+        showModelInfo(models.getMetrics());
+    }
+    
+    private void showModelInfo(WeightModelManager.Metrics metrics) {
+        if (tvModelInfo == null) {
+            return;
+        }
+        if (metrics.version == null) {
+            tvModelInfo.setText("🧠 Model: loading...");
+            return;
+        }
+        tvModelInfo.setText(String.format(Locale.US, 
+                "🧠 Model: %s (tap to change)\nmap %.1f ms • build %.1f ms • warm-up %.1f ms\n"
+                        + "cold start %.0f ms • first estimate %s • swaps %d", 
+                metrics.version, metrics.mapMs, metrics.buildMs, metrics.warmUpMs, metrics.coldStartMs, 
+                metrics.timeToFirstEstimateMs >= 0 
+                        ? String.format(Locale.US, "%.0f ms", metrics.timeToFirstEstimateMs) : "--", 
+                metrics.swaps));
+    }
+    
+    private void showModelDialog() {
+        WeightModelManager models = WeightModelManager.get(requireContext());
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Weight model: " + models.getSelectedVersion())
+                .setItems(new String[]{"Install model file (.tflite)...", "Use bundled model"}, 
+                        (dialog, which) -> {
+                    if (which == 0) {
+                        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+                        intent.addCategory(Intent.CATEGORY_OPENABLE);
+                        intent.setType("*/*");
+                        startActivityForResult(intent, MODEL_FILE_REQUEST_CODE);
+                    } else {
+                        tvModelInfo.setText("🧠 Loading bundled model...");
+                        models.installBundled();
+                    }
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+    
+    @Override
+    public void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode != MODEL_FILE_REQUEST_CODE || resultCode != Activity.RESULT_OK 
+                || data == null || data.getData() == null) {
+            return;
+        }
+        Uri uri = data.getData();
+        String version = WeightModelManager.versionFor(queryDisplayName(uri));
+        tvModelInfo.setText("🧠 Installing " + version + "...");
+        // Copied, built and swapped in on the model loader thread; the listener reports the result
+        WeightModelManager.get(requireContext()).install(uri, version);
+    }
+    
+    @Nullable
+    private String queryDisplayName(Uri uri) {
+        try (Cursor cursor = requireContext().getContentResolver().query(uri, 
+                new String[]{OpenableColumns.DISPLAY_NAME}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                return cursor.getString(0);
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Cannot read model file name", e);
+        }
+        return null;
+    }
+    
+    private void startRescoring(WeightModelManager models, String version) {
+        tvSaveStatus.setVisibility(View.VISIBLE);
+        tvSaveStatus.setText("🔁 Re-scoring...");
+        tvSaveStatus.setTextColor(0xFFFFC107);
+        
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        BatchRescoringJob job = new BatchRescoringJob(requireContext(), database, models, version, 0, 
+                new BatchRescoringJob.Listener() {
+            private boolean failed = false;
+            
+            @Override
+            public void onProgress(int done, int total) {
+                mainHandler.post(() -> tvSaveStatus.setText("🔁 Re-scoring " + done + "/" + total));
+            }
+            
+            @Override
+            public void onFinished(BatchRescoringJob.Report report) {
+                mainHandler.post(() -> {
+                    if (failed) {
+                        return;
+                    }
+                    tvSaveStatus.setText(String.format(Locale.US, 
+                            "✅ Re-scored %d (%d failed, %.1f/s)%s", report.scored, report.failed, 
+                            report.imagesPerSecond, report.cancelled ? ", stopped" : ""));
+                    tvSaveStatus.setTextColor(0xFF4CAF50);
+                    mainHandler.postDelayed(() -> tvSaveStatus.setVisibility(View.GONE), 3000);
+                });
+            }
+            
+            @Override
+            public void onError(String error) {
+                mainHandler.post(() -> {
+                    failed = true;
+                    tvSaveStatus.setText("❌ Re-scoring Failed");
+                    tvSaveStatus.setTextColor(0xFFF44336);
+                    if (isAdded()) {
+                        Toast.makeText(requireContext(), "Re-scoring failed: " + error, 
+                                Toast.LENGTH_LONG).show();
+                    }
+                });
+            }
+        });
+        rescoringJob = job;
+        job.start();
+    }
+    
+    /**
+     * Save the best frame from the pre-trigger ring, or fall back to
+     * capturing the next frame when the ring has no usable candidate.
+     * Auto captures that near-duplicate an earlier capture are skipped.
+     */
+    private void captureBestFrame(long triggerNanos, boolean auto) {
+        if (!isAdded()) {
+            return;
+        }
+        
+        MultiCameraRig rig = multiCameraRig;
+        if (isUsingUsbCamera && rig != null) {
+            cameraExecutor.execute(() -> captureMultiView(rig, auto));
+            return;
+        }
+        
+        PreTriggerFrameRing.Frame frame = frameRing.selectBest(
+                triggerNanos - PRE_TRIGGER_NANOS, triggerNanos + POST_TRIGGER_NANOS, lidarPairer);
+        if (frame != null) {
+            Log.d(TAG, String.format(Locale.US, "Ring frame picked: %.0f ms from tap, score %.2f", 
+                    (frame.getTimestampNanos() - triggerNanos) / 1_000_000.0, frame.getScore()));
+            cameraExecutor.execute(() -> saveRingFrameToGallery(frame, auto));
+            return;
+        }
+        
         // Check which camera is being used
         if (isUsingUsbCamera && uvcCameraManager != null && uvcCameraManager.isPreviewing()) {
             // Capture from USB camera
@@ -541,7 +1034,11 @@ public class DatasetFragment extends Fragment {
         imageCapture.takePicture(cameraExecutor, new ImageCapture.OnImageCapturedCallback() {
             @Override
             public void onCaptureSuccess(@NonNull ImageProxy image) {
-                saveToGallery(image, currentLidarData);
+                long frameNanos = toElapsedRealtimeNanos(image.getImageInfo().getTimestamp());
+                LidarFramePairer.Pairing pairing = pairWithFrame(frameNanos);
+                if (pairing != null) {
+                    saveToGallery(image, pairing);
+                }
                 image.close();
             }
             
@@ -573,12 +1070,17 @@ public class DatasetFragment extends Fragment {
         }
         
         try {
-            // Capture still image from UVC camera
+            // Capture still image from UVC camera (frame time = grab time)
+            long frameNanos = SystemClock.elapsedRealtimeNanos();
             Bitmap bitmap = uvcCameraManager.captureStillImage();
             
             if (bitmap != null) {
                 Log.d(TAG, "USB camera image captured");
-                saveUsbCameraToGallery(bitmap, currentLidarData);
+                LidarFramePairer.Pairing pairing = pairWithFrame(frameNanos);
+                if (pairing != null) {
+                    // Same executor as the other saves, so the duplicate index is loaded
+                    cameraExecutor.execute(() -> saveUsbCameraToGallery(bitmap, pairing));
+                }
             } else {
                 Log.e(TAG, "Failed to capture image from USB camera");
                 new Handler(Looper.getMainLooper()).post(() -> {
@@ -599,17 +1101,65 @@ public class DatasetFragment extends Fragment {
         }
     }
     
-    private void saveToGallery(ImageProxy image, LidarData lidarData) {
+    /**
+     * Pair a frame with the LiDAR samples around its timestamp.
+     * Returns null (and resets the UI) when the pairing error is too large.
+     */
+    private LidarFramePairer.Pairing pairWithFrame(long frameNanos) {
+        LidarFramePairer.Pairing pairing = lidarPairer.pair(frameNanos);
+        if (pairing != null && pairing.accepted) {
+            Log.d(TAG, String.format(Locale.US, "Frame paired: %d cm, error %.1f ms%s", 
+                    pairing.data.getJarak(), pairing.getErrorMs(), 
+                    pairing.interpolated ? " (interpolated)" : ""));
+            return pairing;
+        }
+        
+        String reason = pairing == null ? "no LiDAR samples" 
+                : String.format(Locale.US, "%.0f ms off", pairing.getErrorMs());
+        Log.w(TAG, "Capture rejected, LiDAR out of sync: " + reason);
+        new Handler(Looper.getMainLooper()).post(() -> {
+            tvSaveStatus.setText("❌ LiDAR out of sync (" + reason + ")");
+            tvSaveStatus.setTextColor(0xFFF44336);
+            btnCapture.setEnabled(true);
+        });
+        return null;
+    }
+    
+    /**
+     * Convert a CameraX sensor timestamp to the elapsedRealtime clock used for
+     * LiDAR samples. Some devices report sensor time in the uptime (nanoTime) base.
+     */
+    private static long toElapsedRealtimeNanos(long sensorNanos) {
+        long realtime = SystemClock.elapsedRealtimeNanos();
+        long uptime = System.nanoTime();
+        if (Math.abs(sensorNanos - uptime) < Math.abs(sensorNanos - realtime)) {
+            return sensorNanos + (realtime - uptime);
+        }
+        return sensorNanos;
+    }
+    
+    /**
+     * Save a CameraX still (fallback when the ring has no usable frame). Manual capture,
+     * so a near-duplicate is saved and tagged rather than skipped.
+     */
+    private void saveToGallery(ImageProxy image, LidarFramePairer.Pairing pairing) {
+        LidarData lidarData = pairing.data;
         try {
-            // Convert ImageProxy to Bitmap
-            Bitmap bitmap = imageProxyToBitmap(image);
+            ByteBuffer jpeg = image.getPlanes()[0].getBuffer();
+            jpeg.rewind();
+            long hash = jpegPerceptualHash(jpeg);
+            jpeg.rewind();
+            DuplicateIndex.Match duplicate = duplicateIndex.findDuplicate(hash, lidarData.getJarak());
             
             // Save metadata to database first to get ID
-            long id = saveMetadataToDatabase(null, lidarData);
+            long id = database.insertDataset(null, lidarData.getJarak(), lidarData.getKekuatan(), 
+                    lidarData.getSuhu(), pairing.getErrorMs(), hash, 
+                    duplicate != null ? duplicate.id : 0);
             
             if (id <= 0) {
                 throw new Exception("Failed to save metadata to database");
             }
+            duplicateIndex.add(id, hash, lidarData.getJarak());
             
             // Create filename with format: id_cattle_[jarak]_[signalstrength]_
             String filename = id + "_cattle_" + lidarData.getJarak() + "_" + 
@@ -619,60 +1169,32 @@ public class DatasetFragment extends Fragment {
                 tvSaveStatus.setText("💾 Saving...");
             });
             
-            // Convert bitmap to JPEG bytes
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
-            byte[] imageBytes = out.toByteArray();
+            // Stream JPEG straight into MediaStore (no intermediate byte[] copies)
+            String imagePath = imageSink.save(filename, out -> writeImageProxyJpeg(image, out));
             
-            // Save to Gallery using MediaStore
-            ContentValues values = new ContentValues();
-            values.put(MediaStore.Images.Media.DISPLAY_NAME, filename);
-            values.put(MediaStore.Images.Media.MIME_TYPE, "image/jpeg");
+            // Update image path in database
+            database.updateImagePath(id, imagePath);
             
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                values.put(MediaStore.Images.Media.RELATIVE_PATH, "Pictures/CattleDataset");
-                values.put(MediaStore.Images.Media.IS_PENDING, 1);
-            }
-            
-            Uri uri = requireContext().getContentResolver().insert(
-                    MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
-            
-            if (uri != null) {
-                OutputStream outputStream = requireContext().getContentResolver().openOutputStream(uri);
-                if (outputStream != null) {
-                    outputStream.write(imageBytes);
-                    outputStream.close();
-                    
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                        values.clear();
-                        values.put(MediaStore.Images.Media.IS_PENDING, 0);
-                        requireContext().getContentResolver().update(uri, values, null, null);
-                    }
-                    
-                    // Update image path in database
-                    database.updateImagePath(id, uri.toString());
-                    
-                    // Show success message
-                    datasetCount++;
-                    new Handler(Looper.getMainLooper()).post(() -> {
-                        tvSaveStatus.setText("✅ Saved!");
-                        tvSaveStatus.setTextColor(0xFF4CAF50);
-                        tvDatasetCount.setText("📊 Total Data: " + datasetCount);
-                        btnCapture.setEnabled(true);
-                        Toast.makeText(requireContext(), "Data saved successfully!", 
-                                Toast.LENGTH_SHORT).show();
-                        
-                        // Hide status after 2 seconds
-                        new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                            tvSaveStatus.setVisibility(View.GONE);
-                        }, 2000);
-                    });
+            // Show success message
+            datasetCount++;
+            new Handler(Looper.getMainLooper()).post(() -> {
+                tvSaveStatus.setText("✅ Saved!");
+                tvSaveStatus.setTextColor(0xFF4CAF50);
+                tvDatasetCount.setText("📊 Total Data: " + datasetCount);
+                btnCapture.setEnabled(true);
+                if (duplicate != null) {
+                    Toast.makeText(requireContext(), "Saved, but looks like data #" + duplicate.id, 
+                            Toast.LENGTH_LONG).show();
                 } else {
-                    throw new Exception("Failed to open output stream");
+                    Toast.makeText(requireContext(), "Data saved successfully!", 
+                            Toast.LENGTH_SHORT).show();
                 }
-            } else {
-                throw new Exception("Failed to create MediaStore entry");
-            }
+                
+                // Hide status after 2 seconds
+                new Handler(Looper.getMainLooper()).postDelayed(() -> {
+                    tvSaveStatus.setVisibility(View.GONE);
+                }, 2000);
+            });
             
         } catch (Exception e) {
             Log.e(TAG, "Save failed", e);
@@ -687,16 +1209,23 @@ public class DatasetFragment extends Fragment {
     }
     
     /**
-     * Save USB camera bitmap to gallery
+     * Save USB camera bitmap to gallery. A near-duplicate is saved and tagged.
      */
-    private void saveUsbCameraToGallery(Bitmap bitmap, LidarData lidarData) {
+    private void saveUsbCameraToGallery(Bitmap bitmap, LidarFramePairer.Pairing pairing) {
+        LidarData lidarData = pairing.data;
         try {
+            long hash = perceptualHash(bitmap);
+            DuplicateIndex.Match duplicate = duplicateIndex.findDuplicate(hash, lidarData.getJarak());
+            
             // Save metadata first to get ID
-            long id = saveMetadataToDatabase(null, lidarData);
+            long id = database.insertDataset(null, lidarData.getJarak(), lidarData.getKekuatan(), 
+                    lidarData.getSuhu(), pairing.getErrorMs(), hash, 
+                    duplicate != null ? duplicate.id : 0);
             
             if (id <= 0) {
                 throw new Exception("Failed to save metadata to database");
             }
+            duplicateIndex.add(id, hash, lidarData.getJarak());
             
             // Create filename with database ID
             String filename = id + "_cattle_" + lidarData.getJarak() + "_" + 
@@ -706,65 +1235,221 @@ public class DatasetFragment extends Fragment {
                 tvSaveStatus.setText("💾 Saving...");
             });
             
-            // Convert bitmap to JPEG bytes
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
-            byte[] imageBytes = out.toByteArray();
+            // Compress directly into the MediaStore stream
+            String imagePath = imageSink.save(filename, 
+                    out -> bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out));
+            
+            // Update database with image path
+            database.updateImagePath(id, imagePath);
+            
+            datasetCount++;
+            new Handler(Looper.getMainLooper()).post(() -> {
+                tvSaveStatus.setText("✅ USB Camera Saved!");
+                tvSaveStatus.setTextColor(0xFF4CAF50);
+                tvDatasetCount.setText("📊 Total Data: " + datasetCount);
+                btnCapture.setEnabled(true);
+                if (duplicate != null) {
+                    Toast.makeText(requireContext(), "Saved, but looks like data #" + duplicate.id, 
+                            Toast.LENGTH_LONG).show();
+                } else {
+                    Toast.makeText(requireContext(), "GroundChat photo saved!", 
+                            Toast.LENGTH_SHORT).show();
+                }
+                
+                // Hide status after 2 seconds
+                new Handler(Looper.getMainLooper()).postDelayed(() -> {
+                    tvSaveStatus.setVisibility(View.GONE);
+                }, 2000);
+            });
+            
+        } catch (Exception e) {
+            Log.e(TAG, "USB camera save failed", e);
+            new Handler(Looper.getMainLooper()).post(() -> {
+                tvSaveStatus.setText("❌ USB Save Failed");
+                tvSaveStatus.setTextColor(0xFFF44336);
+                btnCapture.setEnabled(true);
+                Toast.makeText(requireContext(), "Save failed: " + e.getMessage(), 
+                        Toast.LENGTH_SHORT).show();
+            });
+        }
+    }
+    
+    /**
+     * Save a frame picked from the pre-trigger ring (already JPEG-encoded).
+     * A near-duplicate of an earlier capture is skipped when auto, else saved and tagged.
+     */
+    private void saveRingFrameToGallery(PreTriggerFrameRing.Frame frame, boolean auto) {
+        LidarFramePairer.Pairing pairing = frame.getPairing();
+        LidarData lidarData = pairing.data;
+        try {
+            long hash = frame.getPerceptualHash();
+            long queryStart = System.nanoTime();
+            DuplicateIndex.Match duplicate = duplicateIndex.findDuplicate(hash, lidarData.getJarak());
+            if (duplicate != null) {
+                Log.d(TAG, String.format(Locale.US, "Near-duplicate of #%d (%d bits, %d cm) in %.3f ms", 
+                        duplicate.id, duplicate.hammingDistance, duplicate.distanceCm, 
+                        (System.nanoTime() - queryStart) / 1_000_000.0));
+            }
+            if (duplicate != null && auto) {
+                new Handler(Looper.getMainLooper()).post(() -> {
+                    tvSaveStatus.setText("⏭ Skipped: same as #" + duplicate.id);
+                    tvSaveStatus.setTextColor(0xFFFFC107);
+                    btnCapture.setEnabled(true);
+                    
+                    new Handler(Looper.getMainLooper()).postDelayed(() -> {
+                        tvSaveStatus.setVisibility(View.GONE);
+                    }, 2000);
+                });
+                return;
+            }
             
-            // Save to MediaStore
-            ContentValues values = new ContentValues();
-            values.put(MediaStore.Images.Media.DISPLAY_NAME, filename);
-            values.put(MediaStore.Images.Media.MIME_TYPE, "image/jpeg");
+            long id = database.insertDataset(null, lidarData.getJarak(), lidarData.getKekuatan(), 
+                    lidarData.getSuhu(), pairing.getErrorMs(), hash, 
+                    duplicate != null ? duplicate.id : 0);
             
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                values.put(MediaStore.Images.Media.RELATIVE_PATH, "Pictures/CattleDataset");
-                values.put(MediaStore.Images.Media.IS_PENDING, 1);
+            if (id <= 0) {
+                throw new Exception("Failed to save metadata to database");
             }
+            duplicateIndex.add(id, hash, lidarData.getJarak());
             
-            Uri collection = MediaStore.Images.Media.getContentUri(
-                    MediaStore.VOLUME_EXTERNAL_PRIMARY);
-            Uri uri = requireContext().getContentResolver().insert(collection, values);
+            String filename = id + "_cattle_" + lidarData.getJarak() + "_" + 
+                            lidarData.getKekuatan() + "_.jpg";
             
-            if (uri != null) {
-                OutputStream outputStream = requireContext().getContentResolver().openOutputStream(uri);
-                if (outputStream != null) {
-                    outputStream.write(imageBytes);
-                    outputStream.close();
-                    
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                        values.clear();
-                        values.put(MediaStore.Images.Media.IS_PENDING, 0);
-                        requireContext().getContentResolver().update(uri, values, null, null);
-                    }
-                    
-                    // Update database with image path
-                    database.updateImagePath(id, uri.toString());
-                    
-                    datasetCount++;
-                    new Handler(Looper.getMainLooper()).post(() -> {
-                        tvSaveStatus.setText("✅ USB Camera Saved!");
-                        tvSaveStatus.setTextColor(0xFF4CAF50);
-                        tvDatasetCount.setText("📊 Total Data: " + datasetCount);
-                        btnCapture.setEnabled(true);
-                        Toast.makeText(requireContext(), "GroundChat photo saved!", 
-                                Toast.LENGTH_SHORT).show();
-                        
-                        // Hide status after 2 seconds
-                        new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                            tvSaveStatus.setVisibility(View.GONE);
-                        }, 2000);
-                    });
+            new Handler(Looper.getMainLooper()).post(() -> {
+                tvSaveStatus.setText("💾 Saving...");
+            });
+            
+            String imagePath = imageSink.save(filename, 
+                    out -> out.write(frame.getJpeg(), 0, frame.getLength()));
+            
+            database.updateImagePath(id, imagePath);
+            
+            datasetCount++;
+            new Handler(Looper.getMainLooper()).post(() -> {
+                tvSaveStatus.setText("✅ Saved! (best frame)");
+                tvSaveStatus.setTextColor(0xFF4CAF50);
+                tvDatasetCount.setText("📊 Total Data: " + datasetCount);
+                btnCapture.setEnabled(true);
+                if (duplicate != null) {
+                    Toast.makeText(requireContext(), "Saved, but looks like data #" + duplicate.id, 
+                            Toast.LENGTH_LONG).show();
                 } else {
-                    throw new Exception("Failed to open output stream");
+                    Toast.makeText(requireContext(), "Data saved successfully!", 
+                            Toast.LENGTH_SHORT).show();
                 }
-            } else {
-                throw new Exception("Failed to create MediaStore entry");
+                
+                // Hide status after 2 seconds
+                new Handler(Looper.getMainLooper()).postDelayed(() -> {
+                    tvSaveStatus.setVisibility(View.GONE);
+                }, 2000);
+            });
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Ring frame save failed", e);
+            new Handler(Looper.getMainLooper()).post(() -> {
+                tvSaveStatus.setText("❌ Save Failed");
+                tvSaveStatus.setTextColor(0xFFF44336);
+                btnCapture.setEnabled(true);
+                Toast.makeText(requireContext(), "Save failed: " + e.getMessage(), 
+                        Toast.LENGTH_SHORT).show();
+            });
+        } finally {
+            frameRing.release(frame);
+        }
+    }
+    
+    /**
+     * Grab one frame per camera with the nearest timestamps, pair the set
+     * with LiDAR once and save all views under a single dataset row.
+     * Views are saved as full frames: each camera sees the chute from a different
+     * angle, so the main camera's ROI crop does not apply to them.
+     * Near-duplicates are detected on the first view, like single-camera captures.
+     */
+    private void captureMultiView(MultiCameraRig rig, boolean auto) {
+        MultiCameraRig.SyncedCapture capture;
+        try {
+            capture = rig.grab(MultiCameraRig.DEFAULT_MAX_SKEW_NANOS, MULTI_VIEW_GRAB_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (capture == null) {
+            Log.w(TAG, "Multi-view capture rejected: cameras not streaming or out of sync");
+            new Handler(Looper.getMainLooper()).post(() -> {
+                tvSaveStatus.setText("❌ Cameras out of sync");
+                tvSaveStatus.setTextColor(0xFFF44336);
+                btnCapture.setEnabled(true);
+            });
+            return;
+        }
+        LidarFramePairer.Pairing pairing = pairWithFrame(capture.timestampNanos);
+        if (pairing == null) {
+            return;
+        }
+        
+        LidarData lidarData = pairing.data;
+        try {
+            MultiCameraRig.ViewFrame first = capture.views.get(0);
+            long hash = PerceptualHash.dHash(first.nv21, 0, first.width, first.height, first.width);
+            DuplicateIndex.Match duplicate = duplicateIndex.findDuplicate(hash, lidarData.getJarak());
+            if (duplicate != null && auto) {
+                Log.d(TAG, "Multi-view near-duplicate of #" + duplicate.id + " skipped");
+                new Handler(Looper.getMainLooper()).post(() -> {
+                    tvSaveStatus.setText("⏭ Skipped: same as #" + duplicate.id);
+                    tvSaveStatus.setTextColor(0xFFFFC107);
+                    btnCapture.setEnabled(true);
+                    
+                    new Handler(Looper.getMainLooper()).postDelayed(() -> {
+                        tvSaveStatus.setVisibility(View.GONE);
+                    }, 2000);
+                });
+                return;
+            }
+            
+            long id = database.insertDataset(null, lidarData.getJarak(), lidarData.getKekuatan(), 
+                    lidarData.getSuhu(), pairing.getErrorMs(), hash, 
+                    duplicate != null ? duplicate.id : 0);
+            if (id <= 0) {
+                throw new Exception("Failed to save metadata to database");
+            }
+            duplicateIndex.add(id, hash, lidarData.getJarak());
+            
+            new Handler(Looper.getMainLooper()).post(() -> {
+                tvSaveStatus.setText("💾 Saving " + capture.views.size() + " views...");
+            });
+            
+            String[] viewPaths = new String[capture.views.size()];
+            for (int i = 0; i < viewPaths.length; i++) {
+                MultiCameraRig.ViewFrame view = capture.views.get(i);
+                String filename = id + "_cattle_" + lidarData.getJarak() + "_" + 
+                                lidarData.getKekuatan() + "_v" + view.index + "_.jpg";
+                viewPaths[i] = imageSink.save(filename, 
+                        out -> fullFrameEncoder.encode(view.nv21, view.width, view.height, out));
             }
+            database.updateViewPaths(id, viewPaths, capture.getSkewMs());
+            Log.d(TAG, String.format(Locale.US, "Multi-view saved: %d views, skew %.1f ms", 
+                    viewPaths.length, capture.getSkewMs()));
+            
+            datasetCount++;
+            new Handler(Looper.getMainLooper()).post(() -> {
+                tvSaveStatus.setText("✅ Saved " + viewPaths.length + " views!");
+                tvSaveStatus.setTextColor(0xFF4CAF50);
+                tvDatasetCount.setText("📊 Total Data: " + datasetCount);
+                btnCapture.setEnabled(true);
+                if (duplicate != null) {
+                    Toast.makeText(requireContext(), "Saved, but looks like data #" + duplicate.id, 
+                            Toast.LENGTH_LONG).show();
+                }
+                
+                new Handler(Looper.getMainLooper()).postDelayed(() -> {
+                    tvSaveStatus.setVisibility(View.GONE);
+                }, 2000);
+            });
             
         } catch (Exception e) {
-            Log.e(TAG, "USB camera save failed", e);
+            Log.e(TAG, "Multi-view save failed", e);
             new Handler(Looper.getMainLooper()).post(() -> {
-                tvSaveStatus.setText("❌ USB Save Failed");
+                tvSaveStatus.setText("❌ Save Failed");
                 tvSaveStatus.setTextColor(0xFFF44336);
                 btnCapture.setEnabled(true);
                 Toast.makeText(requireContext(), "Save failed: " + e.getMessage(), 
@@ -773,14 +1458,216 @@ public class DatasetFragment extends Fragment {
         }
     }
     
-    private long saveMetadataToDatabase(String imagePath, LidarData lidarData) {
-        long id = database.insertDataset(
-                imagePath,
-                lidarData.getJarak(),
-                lidarData.getKekuatan(),
-                lidarData.getSuhu()
-        );
-        return id;
+    /**
+     * CameraX analysis frame -> NV21 -> pre-trigger ring
+     */
+    private void offerAnalysisFrame(@NonNull ImageProxy image) {
+        try {
+            int width = image.getWidth();
+            int height = image.getHeight();
+            int size = width * height * 3 / 2;
+            if (analysisNv21 == null || analysisNv21.length != size) {
+                analysisNv21 = new byte[size];
+            }
+            yuv420ToNv21(image, analysisNv21);
+            learnRoiBackground(analysisNv21, width, height);
+            long frameNanos = toElapsedRealtimeNanos(image.getImageInfo().getTimestamp());
+            frameRing.offer(frameNanos, analysisNv21, width, height);
+            autoTrigger.onFrame(frameNanos, analysisNv21, width, height, width);
+            BurstCapturePipeline burst = burstPipeline;
+            if (burst != null) {
+                burst.onFrame(frameNanos, analysisNv21, width, height);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Analysis frame skipped", e);
+        } finally {
+            image.close();
+        }
+    }
+    
+    /**
+     * UVC NV21 frame (native frame thread) -> pre-trigger ring
+     */
+    private void offerUvcFrame(ByteBuffer frame) {
+        UvcCameraManager manager = uvcCameraManager;
+        if (manager == null) {
+            return;
+        }
+        int width = manager.getPreviewWidth();
+        int height = manager.getPreviewHeight();
+        int size = width * height * 3 / 2;
+        if (size == 0 || frame.remaining() < size) {
+            return;
+        }
+        if (uvcNv21 == null || uvcNv21.length != size) {
+            uvcNv21 = new byte[size];
+        }
+        frame.get(uvcNv21, 0, size);
+        learnRoiBackground(uvcNv21, width, height);
+        long frameNanos = SystemClock.elapsedRealtimeNanos();
+        frameRing.offer(frameNanos, uvcNv21, width, height);
+        autoTrigger.onFrame(frameNanos, uvcNv21, width, height, width);
+        BurstCapturePipeline burst = burstPipeline;
+        if (burst != null) {
+            burst.onFrame(frameNanos, uvcNv21, width, height);
+        }
+    }
+    
+    private final CompoundButton.OnCheckedChangeListener roiSwitchListener = (buttonView, isChecked) -> {
+        synchronized (roiDetector) {
+            if (isChecked) {
+                roiDetector.startLearning(ForegroundRoiDetector.DEFAULT_LEARN_FRAMES);
+            } else {
+                roiDetector.clearBackground();
+                if (!roiBackgroundFile().delete()) {
+                    Log.d(TAG, "No ROI background to delete");
+                }
+            }
+        }
+        Toast.makeText(requireContext(), 
+                isChecked ? "ROI: keep the chute empty while the background is learned" : "ROI crop OFF", 
+                Toast.LENGTH_SHORT).show();
+    };
+    
+    private File roiBackgroundFile() {
+        return new File(filesDir, isUsingUsbCamera 
+                ? ForegroundRoiDetector.UVC_BACKGROUND_FILE : ForegroundRoiDetector.BUILTIN_BACKGROUND_FILE);
+    }
+    
+    /**
+     * Restore the empty-chute background of the current camera and reflect it on the switch
+     */
+    private void loadRoiBackground() {
+        boolean loaded;
+        synchronized (roiDetector) {
+            roiDetector.clearBackground();
+            try {
+                loaded = roiDetector.loadBackground(roiBackgroundFile());
+            } catch (IOException e) {
+                Log.w(TAG, "ROI background unreadable", e);
+                loaded = false;
+            }
+        }
+        if (switchRoiCrop != null) {
+            switchRoiCrop.setOnCheckedChangeListener(null);
+            switchRoiCrop.setChecked(loaded);
+            switchRoiCrop.setOnCheckedChangeListener(roiSwitchListener);
+        }
+    }
+    
+    /**
+     * Feed frames to the ROI detector while it learns the empty chute (frame thread)
+     */
+    private void learnRoiBackground(byte[] nv21, int width, int height) {
+        synchronized (roiDetector) {
+            if (!roiDetector.isLearning()) {
+                return;
+            }
+            roiDetector.process(nv21, width, height);
+            if (!roiDetector.isBackgroundReady()) {
+                return;
+            }
+            try {
+                roiDetector.saveBackground(roiBackgroundFile());
+            } catch (IOException e) {
+                Log.w(TAG, "ROI background not saved", e);
+            }
+        }
+        new Handler(Looper.getMainLooper()).post(() -> {
+            if (isAdded()) {
+                Toast.makeText(requireContext(), "ROI background learned", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+    
+    /**
+     * Crop rectangle for the JPEG: the animal's bounding box once the empty chute
+     * is known, otherwise the full frame. Runs on the ring and burst encode threads.
+     */
+    private Rect roiCrop(byte[] nv21, int width, int height) {
+        synchronized (roiDetector) {
+            if (roiDetector.isBackgroundReady() && roiDetector.process(nv21, width, height)) {
+                int left = roiDetector.getLeft();
+                int top = roiDetector.getTop();
+                return new Rect(left, top, left + roiDetector.getWidth(), top + roiDetector.getHeight());
+            }
+        }
+        return new Rect(0, 0, width, height);
+    }
+    
+    /**
+     * Copy YUV_420_888 planes into an NV21 buffer (handles row/pixel strides)
+     */
+    private static void yuv420ToNv21(ImageProxy image, byte[] nv21) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        ImageProxy.PlaneProxy[] planes = image.getPlanes();
+        
+        ByteBuffer yBuffer = planes[0].getBuffer();
+        int yRowStride = planes[0].getRowStride();
+        int pos = 0;
+        if (yRowStride == width) {
+            yBuffer.get(nv21, 0, width * height);
+            pos = width * height;
+        } else {
+            for (int row = 0; row < height; row++) {
+                yBuffer.position(row * yRowStride);
+                yBuffer.get(nv21, pos, width);
+                pos += width;
+            }
+        }
+        
+        ByteBuffer uBuffer = planes[1].getBuffer();
+        ByteBuffer vBuffer = planes[2].getBuffer();
+        int uvRowStride = planes[1].getRowStride();
+        int uvPixelStride = planes[1].getPixelStride();
+        for (int row = 0; row < height / 2; row++) {
+            int rowStart = row * uvRowStride;
+            for (int col = 0; col < width / 2; col++) {
+                int index = rowStart + col * uvPixelStride;
+                nv21[pos++] = vBuffer.get(index);
+                nv21[pos++] = uBuffer.get(index);
+            }
+        }
+    }
+    
+    /**
+     * dHash of a still, computed on a copy scaled to a few samples per hash cell so it
+     * compares with the luma hashes of ring and multi-view frames
+     */
+    private static long perceptualHash(Bitmap bitmap) {
+        Bitmap small = Bitmap.createScaledBitmap(bitmap, HASH_SAMPLE_WIDTH, HASH_SAMPLE_HEIGHT, true);
+        int[] pixels = new int[HASH_SAMPLE_WIDTH * HASH_SAMPLE_HEIGHT];
+        small.getPixels(pixels, 0, HASH_SAMPLE_WIDTH, 0, 0, HASH_SAMPLE_WIDTH, HASH_SAMPLE_HEIGHT);
+        if (small != bitmap) {
+            small.recycle();
+        }
+        return PerceptualHash.dHash(pixels, HASH_SAMPLE_WIDTH, HASH_SAMPLE_HEIGHT);
+    }
+    
+    /**
+     * dHash of a JPEG still in sensor orientation (same as the ring's luma frames);
+     * decoded subsampled since only the hash grid is needed
+     */
+    private static long jpegPerceptualHash(ByteBuffer jpeg) throws IOException {
+        byte[] bytes = new byte[jpeg.remaining()];
+        jpeg.get(bytes);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 8;
+        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        if (bitmap == null) {
+            throw new IOException("Cannot decode captured JPEG");
+        }
+        long hash = perceptualHash(bitmap);
+        bitmap.recycle();
+        return hash;
+    }
+    
+    private void loadDuplicateIndex() {
+        long start = SystemClock.elapsedRealtime();
+        int count = database.loadPerceptualHashes(duplicateIndex);
+        Log.d(TAG, "Duplicate index: " + count + " hashes in " + 
+                (SystemClock.elapsedRealtime() - start) + " ms");
     }
     
     private void loadDatasetCount() {
@@ -790,20 +1677,47 @@ public class DatasetFragment extends Fragment {
         });
     }
     
-    private Bitmap imageProxyToBitmap(ImageProxy image) {
+    /**
+     * Write the captured JPEG to the sink. Upright frames are streamed as-is
+     * from the plane buffer; rotated frames are decoded, rotated and re-encoded.
+     */
+    private void writeImageProxyJpeg(ImageProxy image, ImageSinkStream out) throws IOException {
         ImageProxy.PlaneProxy planeProxy = image.getPlanes()[0];
         ByteBuffer buffer = planeProxy.getBuffer();
-        byte[] bytes = new byte[buffer.remaining()];
-        buffer.get(bytes);
-        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        buffer.rewind();
         
-        // Rotate bitmap based on image rotation info
         int rotationDegrees = image.getImageInfo().getRotationDegrees();
+        if (rotationDegrees == 0) {
+            out.write(buffer);
+            return;
+        }
+        
+        Bitmap bitmap = imageProxyToBitmap(buffer, rotationDegrees);
+        bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        bitmap.recycle();
+    }
+    
+    private Bitmap imageProxyToBitmap(ByteBuffer buffer, int rotationDegrees) {
+        Bitmap bitmap;
+        if (buffer.hasArray()) {
+            bitmap = BitmapFactory.decodeByteArray(buffer.array(), 
+                    buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        }
+        
+        // Rotate bitmap based on image rotation info
         if (rotationDegrees != 0) {
             Matrix matrix = new Matrix();
             matrix.postRotate(rotationDegrees);
-            bitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), 
+            Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), 
                     bitmap.getHeight(), matrix, true);
+            if (rotated != bitmap) {
+                bitmap.recycle();
+            }
+            bitmap = rotated;
         }
         
         return bitmap;
@@ -828,6 +1742,18 @@ public class DatasetFragment extends Fragment {
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        if (burstPipeline != null) {
+            burstPipeline.stop();
+            burstPipeline = null;
+        }
+        if (rescoringJob != null) {
+            rescoringJob.cancel();
+            rescoringJob = null;
+        }
+        if (modelListener != null) {
+            WeightModelManager.get(requireContext()).removeListener(modelListener);
+            modelListener = null;
+        }
         // Stop LiDAR receivers FIRST before cleaning up resources
         if (lidarReceiver != null) {
             lidarReceiver.stopReceiving();
@@ -838,6 +1764,10 @@ public class DatasetFragment extends Fragment {
             usbLidarReader = null;
         }
         // Clean up camera resources
+        if (multiCameraRig != null) {
+            multiCameraRig.stop();
+            multiCameraRig = null;
+        }
         if (uvcCameraManager != null) {
             uvcCameraManager.release();
             uvcCameraManager = null;
@@ -846,5 +1776,9 @@ public class DatasetFragment extends Fragment {
             cameraExecutor.shutdown();
             cameraExecutor = null;
         }
+        if (analysisExecutor != null) {
+            analysisExecutor.shutdown();
+            analysisExecutor = null;
+        }
     }
 }
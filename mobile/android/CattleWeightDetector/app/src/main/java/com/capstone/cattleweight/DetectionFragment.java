@@ -2,10 +2,14 @@ package com.capstone.cattleweight;
 
 import android.Manifest;
 import android.content.pm.PackageManager;
+import android.hardware.camera2.CameraCharacteristics;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.Size;
+import android.util.SizeF;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -14,9 +18,14 @@ import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.OptIn;
 import androidx.appcompat.widget.SwitchCompat;
+import androidx.camera.camera2.interop.Camera2CameraInfo;
+import androidx.camera.camera2.interop.ExperimentalCamera2Interop;
 import androidx.camera.core.Camera;
 import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
 import androidx.camera.core.Preview;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
@@ -26,6 +35,9 @@ import androidx.fragment.app.Fragment;
 
 import com.google.common.util.concurrent.ListenableFuture;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -34,6 +46,8 @@ public class DetectionFragment extends Fragment {
     private static final String TAG = "DetectionFragment";
     private static final int CAMERA_PERMISSION_CODE = 100;
     private static final String SERVER_URL = "http://192.168.1.100:5000";
+    // Di bawah ini hasil model diganti estimasi geometri (kalau geometri lebih yakin)
+    private static final float MODEL_MIN_CONFIDENCE = 0.5f;
     
     // UI Components
     private PreviewView cameraPreview;
@@ -44,6 +58,30 @@ public class DetectionFragment extends Fragment {
     private Camera camera;
     private ExecutorService cameraExecutor;
     
+    // Estimasi bobot (model TFLite, dijalankan di cameraExecutor)
+    private WeightModelManager modelManager;
+    private WeightModelManager.Lease modelLease;
+    private TensorPreprocessor preprocessor;
+    // Crop input model ke area sapi (background chute dari halaman Dataset)
+    private final ForegroundRoiDetector roiDetector = new ForegroundRoiDetector();
+    private final int[] roiCrop = new int[4];
+    private final WeightEstimationEngine.Estimate estimate = new WeightEstimationEngine.Estimate();
+    // Cadangan tanpa model: siluet + jarak LiDAR (rumus Schaeffer)
+    private final GeometricWeightEstimator geometricEstimator = new GeometricWeightEstimator();
+    private final GeometricWeightEstimator.Measurement measurement = new GeometricWeightEstimator.Measurement();
+    private volatile float latestDistanceCm = -1f;
+    private volatile int latestStrength = 0;
+    // Jendela LiDAR stabil: hasil beberapa frame digabung sampai konvergen, lalu inferensi berhenti
+    private final AutoCaptureTrigger lidarStability = new AutoCaptureTrigger(null);
+    private final WeightAggregator aggregator = new WeightAggregator(null);
+    private boolean showingConverged = false;
+    private AnalysisScheduler analysisScheduler;
+    // Timestamp ImageProxy berbasis elapsedRealtime (SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME)
+    private volatile boolean sensorTimestampRealtime = false;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private long shownFrameNanos;
+    private final Runnable expireEstimate = this::expireEstimateUI;
+    
     // LiDAR
     private LidarDataReceiver lidarReceiver;
     private UsbSerialLidarReader usbLidarReader;
@@ -63,6 +101,20 @@ public class DetectionFragment extends Fragment {
         
         initializeViews(view);
         cameraExecutor = Executors.newSingleThreadExecutor();
+        modelManager = WeightModelManager.get(requireContext());
+        modelManager.addListener(modelListener);
+        modelManager.loadAfterFirstFrame();
+        File roiBackground = new File(requireContext().getFilesDir(), ForegroundRoiDetector.BUILTIN_BACKGROUND_FILE);
+        cameraExecutor.execute(() -> {
+            try {
+                roiDetector.loadBackground(roiBackground);
+            } catch (IOException e) {
+                Log.w(TAG, "ROI background unreadable", e);
+            }
+        });
+        geometricEstimator.setHorizontalFov(GeometricWeightEstimator.DEFAULT_HORIZONTAL_FOV_DEG, 640);
+        analysisScheduler = new AnalysisScheduler();
+        analysisScheduler.startThermalMonitoring(requireContext().getApplicationContext());
         
         if (checkCameraPermission()) {
             startCamera();
@@ -111,13 +163,20 @@ public class DetectionFragment extends Fragment {
                 Preview preview = new Preview.Builder().build();
                 preview.setSurfaceProvider(cameraPreview.getSurfaceProvider());
                 
+                // Hanya frame terbaru yang dianalisis; plane YUV langsung ke tensor tanpa Bitmap
+                ImageAnalysis imageAnalysis = new ImageAnalysis.Builder()
+                        .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                        .build();
+                imageAnalysis.setAnalyzer(cameraExecutor, this::analyzeFrame);
+                
                 CameraSelector cameraSelector = CameraSelector.DEFAULT_BACK_CAMERA;
                 cameraProvider.unbindAll();
                 camera = cameraProvider.bindToLifecycle(
-                        getViewLifecycleOwner(), cameraSelector, preview);
+                        getViewLifecycleOwner(), cameraSelector, preview, imageAnalysis);
                 
                 tvCameraStatus.setText("📷 Camera Active");
                 tvCameraStatus.setTextColor(0xFF4CAF50);
+                loadCameraIntrinsics();
                 
             } catch (Exception e) {
                 Log.e(TAG, "Camera initialization failed", e);
@@ -127,6 +186,217 @@ public class DetectionFragment extends Fragment {
         }, ContextCompat.getMainExecutor(requireContext()));
     }
     
+    // Focal length dalam pixel dari karakteristik kamera, untuk konversi pixel -> cm
+    @OptIn(markerClass = ExperimentalCamera2Interop.class)
+    private void loadCameraIntrinsics() {
+        try {
+            Camera2CameraInfo info = Camera2CameraInfo.from(camera.getCameraInfo());
+            Integer timestampSource = info.getCameraCharacteristic(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+            sensorTimestampRealtime = timestampSource != null
+                    && timestampSource == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+            float[] focalLengths = info.getCameraCharacteristic(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS);
+            SizeF sensorSize = info.getCameraCharacteristic(CameraCharacteristics.SENSOR_INFO_PHYSICAL_SIZE);
+            Size pixelArray = info.getCameraCharacteristic(CameraCharacteristics.SENSOR_INFO_PIXEL_ARRAY_SIZE);
+            if (focalLengths == null || focalLengths.length == 0 || sensorSize == null || pixelArray == null) {
+                return;
+            }
+            float focalPx = focalLengths[0] / sensorSize.getWidth() * pixelArray.getWidth();
+            int arrayWidth = pixelArray.getWidth();
+            cameraExecutor.execute(() -> geometricEstimator.setFocalLengthPx(focalPx, arrayWidth));
+            Log.d(TAG, "Focal length " + focalLengths[0] + " mm = " + focalPx + " px @ " + arrayWidth);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Camera intrinsics not available, using default FOV", e);
+        }
+    }
+    
+    private final WeightModelManager.Listener modelListener = new WeightModelManager.Listener() {
+        @Override
+        public void onModelReady(String version, WeightModelManager.Metrics metrics) {
+            Log.d(TAG, "Weight model " + version + " ready");
+        }
+        
+        @Override
+        public void onModelFailed(String version, Exception e) {
+            if (tvEstimatedWeight != null && modelManager.getActiveVersion() == null) {
+                tvEstimatedWeight.setText("Bobot Karkas: model tidak tersedia");
+            }
+        }
+    };
+    
+    // cameraExecutor: lease model aktif, diganti tanpa jeda kalau versi model ditukar
+    private WeightEstimationEngine currentEngine() {
+        if (modelLease != null && modelManager.isCurrent(modelLease)) {
+            return modelLease.getEngine();
+        }
+        WeightModelManager.Lease next = modelManager.acquire();
+        if (next == null && modelLease == null) {
+            return null;
+        }
+        if (modelLease != null) {
+            modelLease.release();
+            // Estimasi model lama tidak digabung dengan model baru
+            aggregator.reset();
+        }
+        modelLease = next;
+        preprocessor = next != null ? next.getEngine().createPreprocessor() : null;
+        return next != null ? next.getEngine() : null;
+    }
+    
+    // cameraExecutor
+    private void analyzeFrame(ImageProxy image) {
+        // Timestamp sensor kalau basisnya elapsedRealtime, supaya waktu tunggu di antrian
+        // CameraX ikut terhitung; selain itu waktu frame diterima. Scheduler membuang frame
+        // yang basi / di luar laju inferensi
+        long frameNanos = sensorTimestampRealtime
+                ? image.getImageInfo().getTimestamp() : SystemClock.elapsedRealtimeNanos();
+        AnalysisScheduler scheduler = analysisScheduler;
+        try {
+            int stableDistance = lidarStability.getStableDistance(frameNanos);
+            if (stableDistance < 0 && aggregator.isOpen()) {
+                aggregator.reset();
+                mainHandler.post(this::onAggregationWindowClosed);
+            }
+            if (aggregator.isConverged()) {
+                return;
+            }
+            
+            WeightEstimationEngine engine = currentEngine();
+            float distance = stableDistance > 0 ? stableDistance : latestDistanceCm;
+            if (distance <= 0 || scheduler == null || !scheduler.tryBegin(frameNanos)) {
+                return;
+            }
+            float weight = 0f;
+            float confidence = 0f;
+            double latencyMs = 0;
+            boolean geometric = false;
+            try {
+                ImageProxy.PlaneProxy[] planes = image.getPlanes();
+                int rotation = image.getImageInfo().getRotationDegrees();
+                if (engine != null) {
+                    applyRoiCrop(planes[0], image.getWidth(), image.getHeight(), rotation, engine);
+                    preprocessor.setRotation(rotation);
+                    preprocessor.yuv420ToTensor(planes[0].getBuffer(), planes[0].getRowStride(),
+                            planes[1].getBuffer(), planes[2].getBuffer(),
+                            planes[1].getRowStride(), planes[1].getPixelStride(),
+                            image.getWidth(), image.getHeight(), engine.getImageInput());
+                    engine.estimate(distance, estimate);
+                    estimate.frameNanos = frameNanos;
+                    modelManager.recordEstimate();
+                    weight = estimate.weightKg;
+                    confidence = estimate.confidence;
+                    latencyMs = estimate.getLatencyMs();
+                }
+                if (engine == null || confidence < MODEL_MIN_CONFIDENCE) {
+                    long start = SystemClock.elapsedRealtimeNanos();
+                    geometricEstimator.setRotation(rotation);
+                    if (geometricEstimator.estimate(planes[0].getBuffer(), image.getWidth(), image.getHeight(),
+                            planes[0].getRowStride(), distance, measurement)
+                            && measurement.confidence > confidence) {
+                        weight = measurement.carcassWeightKg;
+                        confidence = measurement.confidence;
+                        latencyMs = (SystemClock.elapsedRealtimeNanos() - start) / 1_000_000.0;
+                        geometric = true;
+                    }
+                }
+            } finally {
+                scheduler.end(frameNanos);
+            }
+            if (engine == null && !geometric) {
+                return;
+            }
+            
+            if (stableDistance > 0 && aggregator.add(frameNanos, weight, confidence, latestStrength)) {
+                WeightAggregator.Result result = aggregator.getResult();
+                float mean = result.weightKg;
+                float halfWidth = result.getHalfWidthKg();
+                float meanConfidence = result.meanConfidence;
+                int samples = result.samples;
+                mainHandler.post(() -> showConvergedEstimate(mean, halfWidth, meanConfidence, samples, frameNanos));
+            } else {
+                float shownWeight = weight;
+                float shownConfidence = confidence;
+                double shownLatencyMs = latencyMs;
+                boolean fromGeometry = geometric;
+                mainHandler.post(() -> updateEstimateUI(shownWeight, shownConfidence, shownLatencyMs,
+                        fromGeometry, frameNanos));
+            }
+        } finally {
+            image.close();
+        }
+    }
+    
+    // cameraExecutor: crop dengan rasio input model supaya sapi tidak terdistorsi
+    private void applyRoiCrop(ImageProxy.PlaneProxy yPlane, int width, int height, int rotation,
+                              WeightEstimationEngine engine) {
+        boolean swapped = rotation == 90 || rotation == 270;
+        float aspect = swapped
+                ? (float) engine.getInputHeight() / engine.getInputWidth()
+                : (float) engine.getInputWidth() / engine.getInputHeight();
+        if (roiDetector.isBackgroundReady()
+                && roiDetector.process(yPlane.getBuffer(), width, height, yPlane.getRowStride())
+                && roiDetector.fitAspect(aspect, roiCrop)) {
+            preprocessor.setCrop(roiCrop[0], roiCrop[1], roiCrop[2], roiCrop[3]);
+        } else {
+            preprocessor.clearCrop();
+        }
+    }
+    
+    private void updateEstimateUI(float weight, float confidence, double latencyMs, boolean geometric,
+                                  long frameNanos) {
+        AnalysisScheduler scheduler = analysisScheduler;
+        if (tvEstimatedWeight == null || scheduler == null || showingConverged
+                || frameNanos < shownFrameNanos || !scheduler.isFresh(frameNanos)) {
+            return;
+        }
+        shownFrameNanos = frameNanos;
+        tvEstimatedWeight.setAlpha(1f);
+        tvConfidence.setAlpha(1f);
+        tvEstimatedWeight.setText(String.format(Locale.US, geometric ? "Bobot Karkas: %.1f kg (geometri)"
+                : "Bobot Karkas: %.1f kg", weight));
+        tvConfidence.setText(String.format(Locale.US, "Confidence: %.0f%% (%.0f ms, %.1f fps)",
+                confidence * 100f, latencyMs, scheduler.getEffectiveFps()));
+        
+        // Kalau tidak ada hasil baru dalam satu periode inferensi, tandai estimasi sebagai basi
+        long remainingMs = (frameNanos + scheduler.getPeriodNanos() - SystemClock.elapsedRealtimeNanos()) / 1_000_000L;
+        mainHandler.removeCallbacks(expireEstimate);
+        mainHandler.postDelayed(expireEstimate, Math.max(0, remainingMs));
+    }
+    
+    private void showConvergedEstimate(float weight, float halfWidth, float confidence, int samples, long frameNanos) {
+        if (tvEstimatedWeight == null || frameNanos < shownFrameNanos) {
+            return;
+        }
+        // Berlaku selama jendela LiDAR stabil masih terbuka (sapi yang sama)
+        showingConverged = true;
+        shownFrameNanos = frameNanos;
+        mainHandler.removeCallbacks(expireEstimate);
+        tvEstimatedWeight.setAlpha(1f);
+        tvConfidence.setAlpha(1f);
+        tvEstimatedWeight.setText(String.format(Locale.US, "Bobot Karkas: %.1f ± %.1f kg", weight, halfWidth));
+        tvConfidence.setText(String.format(Locale.US, "Confidence: %.0f%% (%d frame)", confidence * 100f, samples));
+    }
+    
+    private void onAggregationWindowClosed() {
+        if (showingConverged) {
+            showingConverged = false;
+            expireEstimateUI();
+        }
+    }
+    
+    private void expireEstimateUI() {
+        AnalysisScheduler scheduler = analysisScheduler;
+        if (tvEstimatedWeight == null || scheduler == null || showingConverged) {
+            return;
+        }
+        if (!scheduler.isFresh(shownFrameNanos)) {
+            tvEstimatedWeight.setAlpha(0.4f);
+            tvConfidence.setAlpha(0.4f);
+        } else {
+            mainHandler.postDelayed(expireEstimate, 
+                    (shownFrameNanos + scheduler.getPeriodNanos() - SystemClock.elapsedRealtimeNanos()) / 1_000_000L + 1);
+        }
+    }
+    
     private void initializeLidarReceiver() {
         if (isUsbMode) {
             return; // Skip WiFi initialization in USB mode
@@ -149,10 +419,14 @@ public class DetectionFragment extends Fragment {
                         tvConnectionStatus.setTextColor(0xFFF44336);
                     }
                 });
+                if (!connected) {
+                    lidarStability.reset();
+                }
             }
             
             @Override
             public void onError(String error) {
+                lidarStability.reset();
                 new Handler(Looper.getMainLooper()).post(() -> {
                     tvConnectionStatus.setText("⚠️ Error: " + error);
                     tvConnectionStatus.setTextColor(0xFFFF9800);
@@ -160,6 +434,7 @@ public class DetectionFragment extends Fragment {
             }
         });
         
+        lidarStability.setExpectedSamplePeriod(AutoCaptureTrigger.DEFAULT_SAMPLE_PERIOD_NANOS);
         lidarReceiver.startReceiving();
     }
     
@@ -174,6 +449,8 @@ public class DetectionFragment extends Fragment {
             usbLidarReader = null;
         }
         
+        lidarStability.reset();
+        
         // Start new mode
         if (isUsbMode) {
             initializeUsbLidar();
@@ -200,10 +477,14 @@ public class DetectionFragment extends Fragment {
                         tvConnectionStatus.setTextColor(0xFFF44336);
                     }
                 });
+                if (!connected) {
+                    lidarStability.reset();
+                }
             }
             
             @Override
             public void onError(String error) {
+                lidarStability.reset();
                 new Handler(Looper.getMainLooper()).post(() -> {
                     tvConnectionStatus.setText("⚠️ USB Error: " + error);
                     tvConnectionStatus.setTextColor(0xFFFF9800);
@@ -212,9 +493,13 @@ public class DetectionFragment extends Fragment {
         });
         
         usbLidarReader.startReading();
+        lidarStability.setExpectedSamplePeriod(1_000_000_000L / usbLidarReader.getFrameRate());
     }
     
     private void updateLidarUI(LidarData data) {
+        latestDistanceCm = data.getJarak();
+        latestStrength = data.getKekuatan();
+        lidarStability.onLidarSample(data.getReceivedNanos(), data.getJarak(), data.getKekuatan());
         tvDistance.setText(data.getJarak() + " cm");
         tvSignalStrength.setText(String.valueOf(data.getKekuatan()));
         tvTemperature.setText(String.format("%.1f°C", data.getSuhu()));
@@ -230,7 +515,22 @@ public class DetectionFragment extends Fragment {
         if (usbLidarReader != null) {
             usbLidarReader.stopReading();
         }
+        mainHandler.removeCallbacks(expireEstimate);
+        if (modelManager != null) {
+            modelManager.removeListener(modelListener);
+        }
+        if (analysisScheduler != null) {
+            analysisScheduler.stop();
+            analysisScheduler = null;
+        }
         if (cameraExecutor != null) {
+            // Lease dilepas di thread yang sama dengan inferensi; interpreter tetap di-cache manager
+            cameraExecutor.execute(() -> {
+                if (modelLease != null) {
+                    modelLease.release();
+                    modelLease = null;
+                }
+            });
             cameraExecutor.shutdown();
         }
     }
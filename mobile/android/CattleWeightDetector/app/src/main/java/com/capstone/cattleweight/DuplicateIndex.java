@@ -0,0 +1,131 @@
+package com.capstone.cattleweight;
+
+/**
+ * Index in-memory capture dataset berdasarkan perceptual hash (BK-tree, jarak Hamming).
+ *
+ * Capture dianggap duplikat kalau hash-nya dalam radius Hamming dan jarak LiDAR-nya
+ * mirip: sapi yang sama berdiri di tempat yang sama. Query hanya mengunjungi cabang
+ * dengan |d(node) - d(query)| <= radius (triangle inequality), jadi untuk ribuan
+ * capture cukup beberapa ratus perbandingan XOR + bitCount.
+ *
+ * Thread-safe; dibangun sekali dari database lalu ditambah tiap capture tersimpan.
+ */
+public class DuplicateIndex {
+
+    public static final int DEFAULT_MAX_HAMMING = 6;
+    public static final int DEFAULT_DISTANCE_TOLERANCE_CM = 10;
+
+    /**
+     * Capture lama yang paling mirip
+     */
+    public static class Match {
+        public final long id;
+        public final int hammingDistance;
+        public final int distanceCm;
+
+        Match(long id, int hammingDistance, int distanceCm) {
+            this.id = id;
+            this.hammingDistance = hammingDistance;
+            this.distanceCm = distanceCm;
+        }
+    }
+
+    // Anak disimpan sebagai linked list (firstChild/nextSibling) supaya node tetap kecil
+    private static class Node {
+        final long hash;
+        final long id;
+        final int distanceCm;
+        final int edge;
+        Node firstChild;
+        Node nextSibling;
+
+        Node(long hash, long id, int distanceCm, int edge) {
+            this.hash = hash;
+            this.id = id;
+            this.distanceCm = distanceCm;
+            this.edge = edge;
+        }
+    }
+
+    private final int maxHamming;
+    private final int distanceToleranceCm;
+    private Node root;
+    private int size;
+    private Node[] stack = new Node[64];
+
+    public DuplicateIndex() {
+        this(DEFAULT_MAX_HAMMING, DEFAULT_DISTANCE_TOLERANCE_CM);
+    }
+
+    public DuplicateIndex(int maxHamming, int distanceToleranceCm) {
+        this.maxHamming = maxHamming;
+        this.distanceToleranceCm = distanceToleranceCm;
+    }
+
+    public synchronized void add(long id, long hash, int distanceCm) {
+        if (root == null) {
+            root = new Node(hash, id, distanceCm, 0);
+            size++;
+            return;
+        }
+        Node node = root;
+        while (true) {
+            int d = PerceptualHash.hammingDistance(hash, node.hash);
+            Node child = node.firstChild;
+            while (child != null && child.edge != d) {
+                child = child.nextSibling;
+            }
+            if (child == null) {
+                Node added = new Node(hash, id, distanceCm, d);
+                added.nextSibling = node.firstChild;
+                node.firstChild = added;
+                size++;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Capture terdekat (Hamming terkecil) dalam radius dengan jarak LiDAR mirip
+     *
+     * @return match, atau null kalau tidak ada duplikat
+     */
+    public synchronized Match findDuplicate(long hash, int distanceCm) {
+        if (root == null) {
+            return null;
+        }
+        Node best = null;
+        int bestDistance = maxHamming + 1;
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            Node node = stack[--top];
+            int d = PerceptualHash.hammingDistance(hash, node.hash);
+            if (d < bestDistance && Math.abs(node.distanceCm - distanceCm) <= distanceToleranceCm) {
+                best = node;
+                bestDistance = d;
+            }
+            for (Node child = node.firstChild; child != null; child = child.nextSibling) {
+                if (Math.abs(child.edge - d) <= maxHamming) {
+                    if (top == stack.length) {
+                        Node[] grown = new Node[stack.length * 2];
+                        System.arraycopy(stack, 0, grown, 0, top);
+                        stack = grown;
+                    }
+                    stack[top++] = child;
+                }
+            }
+        }
+        return best != null ? new Match(best.id, bestDistance, best.distanceCm) : null;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        root = null;
+        size = 0;
+    }
+}
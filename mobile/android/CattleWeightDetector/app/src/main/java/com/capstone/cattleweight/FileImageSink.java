@@ -0,0 +1,39 @@
+package com.capstone.cattleweight;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * ImageSink yang menulis ke folder biasa (untuk export dan test di JVM)
+ */
+public class FileImageSink implements ImageSink {
+
+    private final File directory;
+    private final ImageSinkStream stream = new ImageSinkStream();
+
+    public FileImageSink(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public synchronized String save(String displayName, ImageWriter writer) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory: " + directory);
+        }
+
+        File file = new File(directory, displayName);
+        boolean success = false;
+        try {
+            stream.reset(new FileOutputStream(file));
+            writer.writeTo(stream);
+            success = true;
+        } finally {
+            stream.close();
+            if (!success) {
+                file.delete();
+            }
+        }
+        return file.getAbsolutePath();
+    }
+}
@@ -0,0 +1,416 @@
+package com.capstone.cattleweight;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Deteksi area sapi (ROI) dengan background subtraction pada luma yang diperkecil.
+ *
+ * Background = rata-rata dan variansi per sel grid dari beberapa frame chute kosong
+ * ({@link #startLearning(int)}). Per frame: luma dirata-rata ke grid kecil, selisih dengan
+ * background dikoreksi offset global (median selisih, untuk auto-exposure), sel yang
+ * berbeda lebih dari threshold menjadi foreground, noise dibuang dengan filter mayoritas
+ * 3x3 dan komponen terhubung terbesar dijadikan bounding box (plus margin). Sel background
+ * mengikuti perubahan cahaya pelan-pelan.
+ *
+ * Koordinat ROI dalam pixel frame sumber (sebelum rotasi), genap supaya bisa langsung
+ * dipakai untuk crop NV21 (YuvImage.compressToJpeg) dan {@link TensorPreprocessor#setCrop}.
+ * Pure Java, tanpa alokasi per frame. Tidak thread-safe.
+ */
+public class ForegroundRoiDetector {
+
+    public static final int DEFAULT_GRID_WIDTH = 64;
+    public static final int DEFAULT_GRID_HEIGHT = 48;
+    public static final int DEFAULT_LEARN_FRAMES = 30;
+    // Background tersimpan per sumber kamera (di filesDir)
+    public static final String BUILTIN_BACKGROUND_FILE = "roi_background_builtin.bin";
+    public static final String UVC_BACKGROUND_FILE = "roi_background_uvc.bin";
+
+    private static final int SAMPLES_PER_AXIS = 4;
+    private static final float MIN_THRESHOLD = 20f;
+    private static final float NOISE_SIGMAS = 3f;
+    private static final float BACKGROUND_ADAPT_RATE = 0.02f;
+    // Komponen di bawah ini dianggap noise; di atas ini kemungkinan perubahan cahaya total
+    private static final float MIN_FOREGROUND_FRACTION = 0.01f;
+    private static final float MAX_FOREGROUND_FRACTION = 0.9f;
+    private static final float MARGIN_FRACTION = 0.08f;
+    private static final int FILE_MAGIC = 0x524F4931; // "ROI1"
+
+    private final int gridWidth;
+    private final int gridHeight;
+    private final float[] current;
+    private final float[] mean;
+    private final float[] m2;
+    private final boolean[] raw;
+    private final boolean[] mask;
+    private final int[] labels;
+    private final int[] queue;
+    private final int[] diffHistogram = new int[511];
+
+    private int learnTarget;
+    private int learnedFrames;
+    private boolean backgroundReady;
+
+    private boolean roiValid;
+    private int roiLeft;
+    private int roiTop;
+    private int roiWidth;
+    private int roiHeight;
+    private int frameWidth;
+    private int frameHeight;
+    private float foregroundFraction;
+
+    private byte[] wrappedArray;
+    private ByteBuffer wrappedBuffer;
+
+    public ForegroundRoiDetector() {
+        this(DEFAULT_GRID_WIDTH, DEFAULT_GRID_HEIGHT);
+    }
+
+    public ForegroundRoiDetector(int gridWidth, int gridHeight) {
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        int cells = gridWidth * gridHeight;
+        current = new float[cells];
+        mean = new float[cells];
+        m2 = new float[cells];
+        raw = new boolean[cells];
+        mask = new boolean[cells];
+        labels = new int[cells];
+        queue = new int[cells];
+    }
+
+    /**
+     * Pelajari background dari frame berikutnya (chute harus kosong selama itu)
+     */
+    public void startLearning(int frames) {
+        learnTarget = Math.max(1, frames);
+        learnedFrames = 0;
+        backgroundReady = false;
+        roiValid = false;
+    }
+
+    public boolean isLearning() {
+        return learnTarget > 0;
+    }
+
+    public boolean isBackgroundReady() {
+        return backgroundReady;
+    }
+
+    public void clearBackground() {
+        learnTarget = 0;
+        learnedFrames = 0;
+        backgroundReady = false;
+        roiValid = false;
+    }
+
+    /**
+     * Frame NV21 / luma byte[] dengan stride = width
+     */
+    public boolean process(byte[] luma, int width, int height) {
+        if (luma != wrappedArray) {
+            wrappedArray = luma;
+            wrappedBuffer = ByteBuffer.wrap(luma);
+        }
+        return process(wrappedBuffer, width, height, width);
+    }
+
+    /**
+     * Belajar background (kalau sedang learning) atau cari ROI frame ini
+     *
+     * @return true kalau ROI valid untuk frame ini
+     */
+    public boolean process(ByteBuffer luma, int width, int height, int rowStride) {
+        roiValid = false;
+        if (learnTarget <= 0 && !backgroundReady) {
+            return false;
+        }
+        downsample(luma, width, height, rowStride);
+        if (learnTarget > 0) {
+            learn();
+            return false;
+        }
+        return detect(width, height);
+    }
+
+    public boolean hasRoi() {
+        return roiValid;
+    }
+
+    public int getLeft() {
+        return roiLeft;
+    }
+
+    public int getTop() {
+        return roiTop;
+    }
+
+    public int getWidth() {
+        return roiWidth;
+    }
+
+    public int getHeight() {
+        return roiHeight;
+    }
+
+    /**
+     * Bagian grid yang foreground (komponen terbesar) pada frame terakhir
+     */
+    public float getForegroundFraction() {
+        return foregroundFraction;
+    }
+
+    /**
+     * ROI diperbesar ke rasio lebar/tinggi tertentu (mis. input model) di sekitar pusatnya,
+     * dibatasi ukuran frame
+     *
+     * @param out {left, top, width, height}
+     * @return false kalau tidak ada ROI
+     */
+    public boolean fitAspect(float aspect, int[] out) {
+        if (!roiValid) {
+            return false;
+        }
+        float width = roiWidth;
+        float height = roiHeight;
+        if (width / height < aspect) {
+            width = height * aspect;
+        } else {
+            height = width / aspect;
+        }
+        int w = Math.min(frameWidth, Math.round(width)) & ~1;
+        int h = Math.min(frameHeight, Math.round(height)) & ~1;
+        int centerX = roiLeft + roiWidth / 2;
+        int centerY = roiTop + roiHeight / 2;
+        out[0] = clamp(centerX - w / 2, 0, frameWidth - w) & ~1;
+        out[1] = clamp(centerY - h / 2, 0, frameHeight - h) & ~1;
+        out[2] = w;
+        out[3] = h;
+        return true;
+    }
+
+    public void saveBackground(File file) throws IOException {
+        if (!backgroundReady) {
+            throw new IOException("Background not learned");
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(gridWidth);
+            out.writeInt(gridHeight);
+            for (int i = 0; i < mean.length; i++) {
+                out.writeFloat(mean[i]);
+                out.writeFloat(m2[i]);
+            }
+        }
+    }
+
+    /**
+     * @return false kalau file tidak ada atau untuk ukuran grid lain
+     */
+    public boolean loadBackground(File file) throws IOException {
+        if (!file.isFile()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != gridWidth || in.readInt() != gridHeight) {
+                return false;
+            }
+            for (int i = 0; i < mean.length; i++) {
+                mean[i] = in.readFloat();
+                m2[i] = in.readFloat();
+            }
+        }
+        learnTarget = 0;
+        backgroundReady = true;
+        return true;
+    }
+
+    // Rata-rata SAMPLES_PER_AXIS² titik per sel
+    private void downsample(ByteBuffer luma, int width, int height, int rowStride) {
+        for (int gy = 0; gy < gridHeight; gy++) {
+            int top = gy * height / gridHeight;
+            int cellHeight = Math.max(1, (gy + 1) * height / gridHeight - top);
+            for (int gx = 0; gx < gridWidth; gx++) {
+                int left = gx * width / gridWidth;
+                int cellWidth = Math.max(1, (gx + 1) * width / gridWidth - left);
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES_PER_AXIS; sy++) {
+                    int row = (top + (2 * sy + 1) * cellHeight / (2 * SAMPLES_PER_AXIS)) * rowStride;
+                    for (int sx = 0; sx < SAMPLES_PER_AXIS; sx++) {
+                        sum += luma.get(row + left + (2 * sx + 1) * cellWidth / (2 * SAMPLES_PER_AXIS)) & 0xFF;
+                    }
+                }
+                current[gy * gridWidth + gx] = sum / (float) (SAMPLES_PER_AXIS * SAMPLES_PER_AXIS);
+            }
+        }
+    }
+
+    // Welford per sel
+    private void learn() {
+        learnedFrames++;
+        for (int i = 0; i < current.length; i++) {
+            if (learnedFrames == 1) {
+                mean[i] = current[i];
+                m2[i] = 0f;
+            } else {
+                float delta = current[i] - mean[i];
+                mean[i] += delta / learnedFrames;
+                m2[i] += delta * (current[i] - mean[i]);
+            }
+        }
+        if (learnedFrames >= learnTarget) {
+            for (int i = 0; i < m2.length; i++) {
+                m2[i] = learnedFrames > 1 ? m2[i] / (learnedFrames - 1) : 0f;
+            }
+            learnTarget = 0;
+            backgroundReady = true;
+        }
+    }
+
+    private boolean detect(int width, int height) {
+        int cells = current.length;
+        // Offset global (auto-exposure): median selisih, selama sapi < setengah frame
+        Arrays.fill(diffHistogram, 0);
+        for (int i = 0; i < cells; i++) {
+            diffHistogram[Math.round(current[i] - mean[i]) + 255]++;
+        }
+        int offset = 0;
+        for (int bin = 0, seen = 0; bin < diffHistogram.length; bin++) {
+            seen += diffHistogram[bin];
+            if (seen * 2 >= cells) {
+                offset = bin - 255;
+                break;
+            }
+        }
+
+        for (int i = 0; i < cells; i++) {
+            // m2 berisi variansi setelah learning selesai
+            float threshold = Math.max(MIN_THRESHOLD, NOISE_SIGMAS * (float) Math.sqrt(m2[i]));
+            raw[i] = Math.abs(current[i] - offset - mean[i]) > threshold;
+        }
+        // Filter mayoritas 3x3
+        for (int gy = 0; gy < gridHeight; gy++) {
+            for (int gx = 0; gx < gridWidth; gx++) {
+                int count = 0;
+                int total = 0;
+                for (int dy = -1; dy <= 1; dy++) {
+                    int y = gy + dy;
+                    if (y < 0 || y >= gridHeight) {
+                        continue;
+                    }
+                    for (int dx = -1; dx <= 1; dx++) {
+                        int x = gx + dx;
+                        if (x < 0 || x >= gridWidth) {
+                            continue;
+                        }
+                        total++;
+                        if (raw[y * gridWidth + x]) {
+                            count++;
+                        }
+                    }
+                }
+                mask[gy * gridWidth + gx] = count * 2 > total;
+            }
+        }
+
+        // Komponen terhubung terbesar (4-neighbour)
+        Arrays.fill(labels, 0);
+        int bestSize = 0;
+        int bestMinX = 0;
+        int bestMinY = 0;
+        int bestMaxX = 0;
+        int bestMaxY = 0;
+        int label = 0;
+        for (int start = 0; start < cells; start++) {
+            if (!mask[start] || labels[start] != 0) {
+                continue;
+            }
+            label++;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = start;
+            labels[start] = label;
+            int minX = gridWidth;
+            int minY = gridHeight;
+            int maxX = -1;
+            int maxY = -1;
+            while (head < tail) {
+                int cell = queue[head++];
+                int x = cell % gridWidth;
+                int y = cell / gridWidth;
+                minX = Math.min(minX, x);
+                maxX = Math.max(maxX, x);
+                minY = Math.min(minY, y);
+                maxY = Math.max(maxY, y);
+                if (x > 0 && mask[cell - 1] && labels[cell - 1] == 0) {
+                    labels[cell - 1] = label;
+                    queue[tail++] = cell - 1;
+                }
+                if (x < gridWidth - 1 && mask[cell + 1] && labels[cell + 1] == 0) {
+                    labels[cell + 1] = label;
+                    queue[tail++] = cell + 1;
+                }
+                if (y > 0 && mask[cell - gridWidth] && labels[cell - gridWidth] == 0) {
+                    labels[cell - gridWidth] = label;
+                    queue[tail++] = cell - gridWidth;
+                }
+                if (y < gridHeight - 1 && mask[cell + gridWidth] && labels[cell + gridWidth] == 0) {
+                    labels[cell + gridWidth] = label;
+                    queue[tail++] = cell + gridWidth;
+                }
+            }
+            if (tail > bestSize) {
+                bestSize = tail;
+                bestMinX = minX;
+                bestMinY = minY;
+                bestMaxX = maxX;
+                bestMaxY = maxY;
+            }
+        }
+
+        // Background mengikuti cahaya di sel yang bukan foreground
+        for (int i = 0; i < cells; i++) {
+            if (!mask[i]) {
+                mean[i] += BACKGROUND_ADAPT_RATE * (current[i] - offset - mean[i]);
+            }
+        }
+
+        foregroundFraction = bestSize / (float) cells;
+        if (foregroundFraction < MIN_FOREGROUND_FRACTION || foregroundFraction > MAX_FOREGROUND_FRACTION) {
+            return false;
+        }
+
+        int left = bestMinX * width / gridWidth;
+        int right = (bestMaxX + 1) * width / gridWidth;
+        int top = bestMinY * height / gridHeight;
+        int bottom = (bestMaxY + 1) * height / gridHeight;
+        int marginX = Math.max(width / gridWidth, Math.round((right - left) * MARGIN_FRACTION));
+        int marginY = Math.max(height / gridHeight, Math.round((bottom - top) * MARGIN_FRACTION));
+        left = Math.max(0, left - marginX) & ~1;
+        top = Math.max(0, top - marginY) & ~1;
+        right = Math.min(width, right + marginX);
+        bottom = Math.min(height, bottom + marginY);
+
+        frameWidth = width;
+        frameHeight = height;
+        roiLeft = left;
+        roiTop = top;
+        roiWidth = (right - left) & ~1;
+        roiHeight = (bottom - top) & ~1;
+        roiValid = roiWidth > 0 && roiHeight > 0;
+        return roiValid;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+}
@@ -0,0 +1,53 @@
+package com.capstone.cattleweight;
+
+/**
+ * Kernel skor kualitas frame (pure Java, tanpa alokasi per frame)
+ */
+public final class FrameQuality {
+
+    private FrameQuality() {
+    }
+
+    /**
+     * Ketajaman frame: variance of Laplacian pada luma plane.
+     * Dihitung pada grid yang di-subsample (step) supaya murah; makin besar nilainya
+     * makin tajam, frame blur (sapi bergerak) menghasilkan nilai kecil.
+     *
+     * @param luma   plane Y (8 bit)
+     * @param offset offset byte pertama plane
+     * @param width  lebar plane dalam pixel
+     * @param height tinggi plane dalam pixel
+     * @param stride jarak antar baris dalam byte
+     * @param step   jarak sampling (1 = semua pixel, 2 = setengah resolusi, ...)
+     */
+    public static double laplacianVariance(byte[] luma, int offset, int width, int height,
+                                           int stride, int step) {
+        if (step < 1) {
+            step = 1;
+        }
+        long sum = 0;
+        long sumSq = 0;
+        int count = 0;
+        int rowStep = step * stride;
+
+        for (int y = step; y < height - step; y += step) {
+            int row = offset + y * stride;
+            for (int x = step; x < width - step; x += step) {
+                int p = row + x;
+                int center = luma[p] & 0xFF;
+                int lap = (luma[p - step] & 0xFF) + (luma[p + step] & 0xFF)
+                        + (luma[p - rowStep] & 0xFF) + (luma[p + rowStep] & 0xFF)
+                        - 4 * center;
+                sum += lap;
+                sumSq += (long) lap * lap;
+                count++;
+            }
+        }
+
+        if (count == 0) {
+            return 0.0;
+        }
+        double mean = (double) sum / count;
+        return (double) sumSq / count - mean * mean;
+    }
+}
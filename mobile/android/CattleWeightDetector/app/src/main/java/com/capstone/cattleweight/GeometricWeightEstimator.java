@@ -0,0 +1,392 @@
+package com.capstone.cattleweight;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Estimasi bobot cadangan dari jarak LiDAR + ukuran siluet sapi (tanpa model).
+ *
+ * Plane luma di-subsample ke grid kecil, lalu foreground dipisahkan dengan threshold Otsu;
+ * kelas foreground = kelas yang dominan di tengah frame (sapi diarahkan ke tengah).
+ * Dari mask (tampak samping):
+ * - baris badan = baris yang jumlah pixel foreground-nya >= setengah maksimum (kaki dan
+ *   ekor tidak ikut), tinggi lingkar dada = rentang baris badan,
+ * - panjang badan = rentang foreground terbesar pada baris badan,
+ * - lebar dada dari tampak atas kalau ada ({@link #measureTopView}), kalau tidak dari rasio
+ *   lebar/tinggi dada tipikal.
+ * Pixel dikonversi ke cm dengan model pinhole (ukuran = px x jarak / focal length px),
+ * lingkar dada dihitung sebagai elips (Ramanujan), lalu rumus Schaeffer:
+ * bobot hidup (kg) = lingkar² (cm) x panjang (cm) / 10838.
+ *
+ * Pure Java, tanpa alokasi per frame (semua buffer dialokasikan di konstruktor), ~20k
+ * pixel per frame pada grid default. Tidak thread-safe.
+ */
+public class GeometricWeightEstimator {
+
+    public static final int DEFAULT_GRID_WIDTH = 160;
+    public static final int DEFAULT_GRID_HEIGHT = 160;
+    // Schaeffer metrik: W(lb) = G(in)² x L(in) / 300 -> W(kg) = G(cm)² x L(cm) / 10838
+    public static final double SCHAEFFER_DIVISOR_METRIC = 10838.0;
+    public static final float DEFAULT_DRESSING_FRACTION = 0.52f;   // karkas / bobot hidup
+    public static final float DEFAULT_WIDTH_TO_DEPTH = 0.6f;       // lebar dada / tinggi dada
+    public static final float DEFAULT_HORIZONTAL_FOV_DEG = 66f;    // kamera utama HP tipikal
+
+    private static final float BODY_ROW_FRACTION = 0.5f;
+    // Rasio panjang/tinggi badan sapi yang masuk akal untuk tampak samping
+    private static final float MIN_ASPECT = 1.1f;
+    private static final float MAX_ASPECT = 3.2f;
+
+    /**
+     * Hasil pengukuran; diisi ulang setiap estimate()
+     */
+    public static class Measurement {
+        public float bodyLengthCm;
+        public float chestDepthCm;
+        public float chestWidthCm;
+        public float heartGirthCm;
+        public float liveWeightKg;
+        public float carcassWeightKg;
+        public float confidence;
+        public boolean valid;
+    }
+
+    private final int gridWidth;
+    private final int gridHeight;
+    private final byte[] grid;
+    private final boolean[] mask;
+    private final int[] histogram = new int[256];
+    private final int[] rowWidths;
+
+    private float focalLengthPx;
+    private int focalFrameWidth;
+    private boolean transposed;
+    private float dressingFraction = DEFAULT_DRESSING_FRACTION;
+    private float widthToDepth = DEFAULT_WIDTH_TO_DEPTH;
+    private float topViewWidthCm = -1f;
+
+    // Ukuran grid yang terisi untuk frame sekarang dan skala grid -> pixel frame
+    private int cols;
+    private int rows;
+    private float pxPerCell;
+    private float frameScale = 1f;
+
+    private byte[] wrappedArray;
+    private ByteBuffer wrappedBuffer;
+
+    public GeometricWeightEstimator() {
+        this(DEFAULT_GRID_WIDTH, DEFAULT_GRID_HEIGHT);
+    }
+
+    public GeometricWeightEstimator(int gridWidth, int gridHeight) {
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        int cells = gridWidth * gridHeight;
+        this.grid = new byte[cells];
+        this.mask = new boolean[cells];
+        this.rowWidths = new int[Math.max(gridWidth, gridHeight)];
+    }
+
+    /**
+     * Focal length dalam pixel untuk frame selebar frameWidth (sumbu X sensor)
+     */
+    public void setFocalLengthPx(float focalLengthPx, int frameWidth) {
+        this.focalLengthPx = focalLengthPx;
+        this.focalFrameWidth = frameWidth;
+    }
+
+    /**
+     * Focal length dari field of view horizontal kalau intrinsics tidak tersedia
+     */
+    public void setHorizontalFov(float degrees, int frameWidth) {
+        setFocalLengthPx((float) (frameWidth / 2.0 / Math.tan(Math.toRadians(degrees) / 2.0)), frameWidth);
+    }
+
+    /**
+     * Rotasi frame ke orientasi tampilan; 90/270 menukar sumbu panjang dan tinggi badan
+     */
+    public void setRotation(int degrees) {
+        int normalized = ((degrees % 360) + 360) % 360;
+        transposed = normalized == 90 || normalized == 270;
+    }
+
+    public void setDressingFraction(float fraction) {
+        this.dressingFraction = fraction;
+    }
+
+    public void setWidthToDepthRatio(float ratio) {
+        this.widthToDepth = ratio;
+    }
+
+    /**
+     * Lebar dada terukur dari kamera tampak atas (cm); <= 0 untuk kembali ke rasio tipikal
+     */
+    public void setTopViewWidthCm(float widthCm) {
+        this.topViewWidthCm = widthCm;
+    }
+
+    /**
+     * Ukur lebar badan maksimum dari luma tampak atas dan pakai sebagai lebar dada
+     *
+     * @return lebar (cm), -1 kalau siluet tidak ditemukan
+     */
+    public float measureTopView(ByteBuffer luma, int width, int height, int stride, float distanceCm) {
+        if (distanceCm <= 0 || focalLengthPx <= 0 || !segment(luma, width, height, stride)) {
+            topViewWidthCm = -1f;
+            return -1f;
+        }
+        // Tampak atas: sumbu panjang sapi = sumbu terpanjang, lebar = lebar terbesar tegak lurus
+        int maxAcross = 0;
+        boolean alongRows = spanOfLongestRow() >= spanOfLongestColumn();
+        int outer = alongRows ? cols : rows;
+        for (int i = 0; i < outer; i++) {
+            int run = alongRows ? columnSpan(i) : rowSpan(i);
+            maxAcross = Math.max(maxAcross, run);
+        }
+        topViewWidthCm = toCm(maxAcross, distanceCm);
+        return topViewWidthCm;
+    }
+
+    public boolean estimate(byte[] luma, int width, int height, int stride, float distanceCm, Measurement out) {
+        if (luma != wrappedArray) {
+            wrappedArray = luma;
+            wrappedBuffer = ByteBuffer.wrap(luma);
+        }
+        return estimate(wrappedBuffer, width, height, stride, distanceCm, out);
+    }
+
+    /**
+     * Estimasi dari plane luma tampak samping
+     *
+     * @param distanceCm jarak LiDAR ke sisi badan sapi
+     * @return true kalau siluet valid dan out terisi
+     */
+    public boolean estimate(ByteBuffer luma, int width, int height, int stride, float distanceCm, Measurement out) {
+        out.valid = false;
+        out.confidence = 0f;
+        if (distanceCm <= 0 || focalLengthPx <= 0 || !segment(luma, width, height, stride)) {
+            return false;
+        }
+
+        // Jumlah cell foreground per baris tampilan; baris badan = isi >= setengah maksimum
+        // (baris kaki punya rentang lebar tapi isinya sedikit)
+        int displayRows = transposed ? cols : rows;
+        int maxFill = 0;
+        for (int r = 0; r < displayRows; r++) {
+            int fill = transposed ? columnFill(r) : rowFill(r);
+            rowWidths[r] = fill;
+            maxFill = Math.max(maxFill, fill);
+        }
+        if (maxFill == 0) {
+            return false;
+        }
+        int threshold = (int) (maxFill * BODY_ROW_FRACTION);
+        int firstBody = -1;
+        int lastBody = -1;
+        int lengthCells = 0;
+        for (int r = 0; r < displayRows; r++) {
+            if (rowWidths[r] >= threshold) {
+                if (firstBody < 0) {
+                    firstBody = r;
+                }
+                lastBody = r;
+                lengthCells = Math.max(lengthCells, transposed ? columnSpan(r) : rowSpan(r));
+            }
+        }
+        int depthCells = lastBody - firstBody + 1;
+
+        float lengthCm = toCm(lengthCells, distanceCm);
+        float depthCm = toCm(depthCells, distanceCm);
+        float widthCm = topViewWidthCm > 0 ? topViewWidthCm : depthCm * widthToDepth;
+
+        // Keliling elips (Ramanujan) dengan sumbu tinggi dan lebar dada
+        double a = depthCm / 2.0;
+        double b = widthCm / 2.0;
+        double girth = Math.PI * (3 * (a + b) - Math.sqrt((3 * a + b) * (a + 3 * b)));
+        double live = girth * girth * lengthCm / SCHAEFFER_DIVISOR_METRIC;
+
+        out.bodyLengthCm = lengthCm;
+        out.chestDepthCm = depthCm;
+        out.chestWidthCm = widthCm;
+        out.heartGirthCm = (float) girth;
+        out.liveWeightKg = (float) live;
+        out.carcassWeightKg = (float) (live * dressingFraction);
+        out.confidence = confidence(lengthCells, depthCells, firstBody, lastBody, displayRows);
+        out.valid = true;
+        return true;
+    }
+
+    private float toCm(int cells, float distanceCm) {
+        // Skala grid -> pixel frame; focal length diskalakan kalau frame beda resolusi dari kalibrasi
+        return cells * pxPerCell * distanceCm / (focalLengthPx * frameScale);
+    }
+
+    // Heuristik: siluet terpotong tepi frame atau proporsi tidak wajar -> confidence rendah
+    private float confidence(int lengthCells, int depthCells, int firstBody, int lastBody, int displayRows) {
+        float aspect = depthCells > 0 ? (float) lengthCells / depthCells : 0f;
+        float score = 1f;
+        if (aspect < MIN_ASPECT || aspect > MAX_ASPECT) {
+            score *= 0.3f;
+        }
+        int displayCols = transposed ? rows : cols;
+        if (lengthCells >= displayCols - 1) {
+            score *= 0.4f;    // badan terpotong kiri/kanan
+        }
+        if (firstBody == 0 || lastBody == displayRows - 1) {
+            score *= 0.6f;    // punggung / perut terpotong
+        }
+        float fill = (float) lengthCells / displayCols;
+        if (fill < 0.2f) {
+            score *= 0.5f;    // siluet terlalu kecil untuk diukur
+        }
+        return score;
+    }
+
+    /**
+     * Subsample luma ke grid lalu bangun mask foreground (Otsu)
+     */
+    private boolean segment(ByteBuffer luma, int width, int height, int stride) {
+        int step = Math.max(1, Math.max((width + gridWidth - 1) / gridWidth, (height + gridHeight - 1) / gridHeight));
+        cols = Math.min(gridWidth, width / step);
+        rows = Math.min(gridHeight, height / step);
+        if (cols < 8 || rows < 8) {
+            return false;
+        }
+        pxPerCell = step;
+        frameScale = (float) width / focalFrameWidth;
+
+        for (int i = 0; i < 256; i++) {
+            histogram[i] = 0;
+        }
+        for (int gy = 0; gy < rows; gy++) {
+            int src = gy * step * stride;
+            int dst = gy * cols;
+            for (int gx = 0; gx < cols; gx++) {
+                int v = luma.get(src + gx * step) & 0xFF;
+                grid[dst + gx] = (byte) v;
+                histogram[v]++;
+            }
+        }
+        int total = rows * cols;
+        int threshold = otsuThreshold(histogram, total);
+
+        // Kelas foreground = mayoritas di kotak tengah (1/3 x 1/3 grid)
+        int bright = 0;
+        int center = 0;
+        for (int gy = rows / 3; gy < rows * 2 / 3; gy++) {
+            for (int gx = cols / 3; gx < cols * 2 / 3; gx++) {
+                if ((grid[gy * cols + gx] & 0xFF) > threshold) {
+                    bright++;
+                }
+                center++;
+            }
+        }
+        boolean foregroundBright = bright * 2 >= center;
+        int count = 0;
+        for (int i = 0; i < total; i++) {
+            boolean fg = ((grid[i] & 0xFF) > threshold) == foregroundBright;
+            mask[i] = fg;
+            if (fg) {
+                count++;
+            }
+        }
+        return count > 0 && count < total;
+    }
+
+    static int otsuThreshold(int[] histogram, int total) {
+        long sumAll = 0;
+        for (int i = 0; i < 256; i++) {
+            sumAll += (long) i * histogram[i];
+        }
+        long sumBackground = 0;
+        int weightBackground = 0;
+        double bestVariance = -1;
+        int best = 127;
+        for (int t = 0; t < 256; t++) {
+            weightBackground += histogram[t];
+            if (weightBackground == 0) {
+                continue;
+            }
+            int weightForeground = total - weightBackground;
+            if (weightForeground == 0) {
+                break;
+            }
+            sumBackground += (long) t * histogram[t];
+            double meanBackground = (double) sumBackground / weightBackground;
+            double meanForeground = (double) (sumAll - sumBackground) / weightForeground;
+            double diff = meanBackground - meanForeground;
+            double variance = (double) weightBackground * weightForeground * diff * diff;
+            if (variance > bestVariance) {
+                bestVariance = variance;
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    // Jumlah cell foreground pada baris / kolom grid
+    private int rowFill(int gy) {
+        int count = 0;
+        int base = gy * cols;
+        for (int gx = 0; gx < cols; gx++) {
+            if (mask[base + gx]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int columnFill(int gx) {
+        int count = 0;
+        for (int gy = 0; gy < rows; gy++) {
+            if (mask[gy * cols + gx]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Rentang foreground (pertama..terakhir) pada baris / kolom grid
+    private int rowSpan(int gy) {
+        int first = -1;
+        int last = -1;
+        int base = gy * cols;
+        for (int gx = 0; gx < cols; gx++) {
+            if (mask[base + gx]) {
+                if (first < 0) {
+                    first = gx;
+                }
+                last = gx;
+            }
+        }
+        return first < 0 ? 0 : last - first + 1;
+    }
+
+    private int columnSpan(int gx) {
+        int first = -1;
+        int last = -1;
+        for (int gy = 0; gy < rows; gy++) {
+            if (mask[gy * cols + gx]) {
+                if (first < 0) {
+                    first = gy;
+                }
+                last = gy;
+            }
+        }
+        return first < 0 ? 0 : last - first + 1;
+    }
+
+    private int spanOfLongestRow() {
+        int max = 0;
+        for (int gy = 0; gy < rows; gy++) {
+            max = Math.max(max, rowSpan(gy));
+        }
+        return max;
+    }
+
+    private int spanOfLongestColumn() {
+        int max = 0;
+        for (int gx = 0; gx < cols; gx++) {
+            max = Math.max(max, columnSpan(gx));
+        }
+        return max;
+    }
+}
@@ -0,0 +1,22 @@
+package com.capstone.cattleweight;
+
+import java.io.IOException;
+
+/**
+ * Tujuan penyimpanan gambar dataset (MediaStore di HP, file biasa di JVM).
+ * Gambar ditulis langsung ke stream tujuan, tanpa salinan byte[] di tengah.
+ */
+public interface ImageSink {
+
+    /**
+     * Menulis isi gambar ke stream yang diberikan sink
+     */
+    interface ImageWriter {
+        void writeTo(ImageSinkStream out) throws IOException;
+    }
+
+    /**
+     * Simpan satu gambar dan kembalikan lokasinya (content Uri atau path file)
+     */
+    String save(String displayName, ImageWriter writer) throws IOException;
+}
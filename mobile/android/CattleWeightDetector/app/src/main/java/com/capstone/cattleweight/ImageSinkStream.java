@@ -0,0 +1,118 @@
+package com.capstone.cattleweight;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Buffered OutputStream dengan buffer yang dipakai ulang antar capture.
+ * Kalau target berupa file, ByteBuffer ditulis langsung lewat FileChannel.
+ */
+public final class ImageSinkStream extends OutputStream {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int count = 0;
+    private OutputStream target;
+    private FileChannel channel;
+    private long bytesWritten = 0;
+
+    /**
+     * Arahkan stream ke target baru (dipanggil sink sebelum tiap gambar)
+     */
+    void reset(OutputStream target) {
+        this.target = target;
+        this.channel = target instanceof FileOutputStream
+                ? ((FileOutputStream) target).getChannel() : null;
+        this.count = 0;
+        this.bytesWritten = 0;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = (byte) b;
+        bytesWritten++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len >= buffer.length) {
+            // Chunk besar: langsung ke target tanpa lewat buffer
+            flushBuffer();
+            target.write(b, off, len);
+        } else {
+            if (len > buffer.length - count) {
+                flushBuffer();
+            }
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+        bytesWritten += len;
+    }
+
+    /**
+     * Tulis isi ByteBuffer (misal plane JPEG dari ImageProxy) tanpa salinan ke heap
+     */
+    public void write(ByteBuffer src) throws IOException {
+        int len = src.remaining();
+        if (src.hasArray()) {
+            write(src.array(), src.arrayOffset() + src.position(), len);
+            src.position(src.limit());
+            return;
+        }
+        flushBuffer();
+        if (channel != null) {
+            while (src.hasRemaining()) {
+                channel.write(src);
+            }
+        } else {
+            while (src.hasRemaining()) {
+                int n = Math.min(src.remaining(), buffer.length);
+                src.get(buffer, 0, n);
+                target.write(buffer, 0, n);
+            }
+        }
+        bytesWritten += len;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            target.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        target.flush();
+    }
+
+    /**
+     * Flush lalu tutup target; buffer tetap disimpan untuk capture berikutnya
+     */
+    @Override
+    public void close() throws IOException {
+        if (target == null) {
+            return;
+        }
+        try {
+            flushBuffer();
+        } finally {
+            OutputStream out = target;
+            target = null;
+            channel = null;
+            out.close();
+        }
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+}
@@ -0,0 +1,11 @@
+package com.capstone.cattleweight;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encoder frame NV21 -> JPEG (di Android pakai YuvImage)
+ */
+public interface JpegEncoder {
+    boolean encode(byte[] nv21, int width, int height, OutputStream out) throws IOException;
+}
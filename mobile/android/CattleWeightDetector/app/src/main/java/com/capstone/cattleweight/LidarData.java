@@ -13,6 +13,7 @@ public class LidarData {
     private double suhu;        // Suhu chip dalam Celsius
     private long timestamp;     // Timestamp dalam milliseconds
     private String status;      // Status koneksi
+    private long receivedNanos; // Waktu diterima di HP (SystemClock.elapsedRealtimeNanos)
     
     public LidarData() {
         this.jarak = 0;
@@ -51,6 +52,10 @@ public class LidarData {
         return status;
     }
     
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+    
     // Setters
     public void setJarak(int jarak) {
         this.jarak = jarak;
@@ -72,6 +77,10 @@ public class LidarData {
         this.status = status;
     }
     
+    public void setReceivedNanos(long receivedNanos) {
+        this.receivedNanos = receivedNanos;
+    }
+    
     /**
      * Mendapatkan jarak dalam format meter
      */
@@ -2,6 +2,7 @@ package com.capstone.cattleweight;
 
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.google.gson.Gson;
@@ -128,6 +129,8 @@ public class LidarDataReceiver {
                             json.getLong("timestamp"),
                             json.getString("status")
                     );
+                    // Server timestamp uses the PC clock; pairing needs the phone's clock
+                    data.setReceivedNanos(SystemClock.elapsedRealtimeNanos());
                     
                     // Update connection status
                     boolean newConnectionStatus = data.isConnected();
@@ -0,0 +1,198 @@
+package com.capstone.cattleweight;
+
+/**
+ * Memasangkan frame kamera dengan data LiDAR berdasarkan timestamp.
+ *
+ * Sampel LiDAR disimpan di ring buffer berindeks waktu (elapsedRealtime nanos).
+ * Untuk timestamp frame dicari dua sampel yang mengapit frame, nilainya
+ * diinterpolasi, dan jarak waktu ke sampel nyata terdekat dilaporkan
+ * sebagai pairing error.
+ */
+public class LidarFramePairer {
+
+    public static final int DEFAULT_CAPACITY = 256;                // ~2.5 s pada 100 Hz
+    public static final long DEFAULT_MAX_ERROR_NANOS = 50_000_000L; // 50 ms
+    private static final long MAX_INTERPOLATION_GAP_NANOS = 250_000_000L;
+
+    private final long[] times;
+    private final int[] distances;
+    private final int[] strengths;
+    private final double[] temperatures;
+    private long maxErrorNanos;
+    private int head = 0;   // index sampel berikutnya
+    private int size = 0;
+
+    /**
+     * Hasil pairing satu frame
+     */
+    public static class Pairing {
+        public final LidarData data;
+        public final long errorNanos;
+        public final boolean interpolated;
+        public final boolean accepted;
+
+        Pairing(LidarData data, long errorNanos, boolean interpolated, boolean accepted) {
+            this.data = data;
+            this.errorNanos = errorNanos;
+            this.interpolated = interpolated;
+            this.accepted = accepted;
+        }
+
+        public double getErrorMs() {
+            return errorNanos / 1_000_000.0;
+        }
+    }
+
+    public LidarFramePairer() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_ERROR_NANOS);
+    }
+
+    public LidarFramePairer(int capacity, long maxErrorNanos) {
+        this.times = new long[capacity];
+        this.distances = new int[capacity];
+        this.strengths = new int[capacity];
+        this.temperatures = new double[capacity];
+        this.maxErrorNanos = maxErrorNanos;
+    }
+
+    /**
+     * Batas pairing error; sumber WiFi (polling 100 ms) butuh batas lebih longgar
+     */
+    public synchronized void setMaxErrorNanos(long maxErrorNanos) {
+        this.maxErrorNanos = maxErrorNanos;
+    }
+
+    public synchronized long getMaxErrorNanos() {
+        return maxErrorNanos;
+    }
+
+    /**
+     * Tambahkan sampel LiDAR (pakai waktu terima dari reader)
+     */
+    public synchronized void add(LidarData data) {
+        add(data.getReceivedNanos(), data.getJarak(), data.getKekuatan(), data.getSuhu());
+    }
+
+    public synchronized void add(long timeNanos, int distance, int strength, double temperature) {
+        // Sampel harus monoton; sampel yang datang terlambat diabaikan
+        if (size > 0 && timeNanos < times[indexOf(size - 1)]) {
+            return;
+        }
+        times[head] = timeNanos;
+        distances[head] = distance;
+        strengths[head] = strength;
+        temperatures[head] = temperature;
+        head = (head + 1) % times.length;
+        if (size < times.length) {
+            size++;
+        }
+    }
+
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Cari data LiDAR untuk frame dengan timestamp tertentu.
+     * Mengembalikan null kalau buffer masih kosong.
+     */
+    public synchronized Pairing pair(long frameNanos) {
+        if (size == 0) {
+            return null;
+        }
+
+        // Binary search: sampel pertama dengan waktu >= frameNanos
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[indexOf(mid)] < frameNanos) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        if (lo == 0) {
+            return nearest(indexOf(0), frameNanos);
+        }
+        if (lo == size) {
+            return nearest(indexOf(size - 1), frameNanos);
+        }
+
+        int before = indexOf(lo - 1);
+        int after = indexOf(lo);
+        long t0 = times[before];
+        long t1 = times[after];
+        if (t1 - t0 > MAX_INTERPOLATION_GAP_NANOS) {
+            // Celah terlalu lebar (LiDAR sempat putus) - pakai sampel terdekat saja
+            return nearest(frameNanos - t0 <= t1 - frameNanos ? before : after, frameNanos);
+        }
+
+        double f = t1 == t0 ? 0.0 : (double) (frameNanos - t0) / (t1 - t0);
+        int distance = (int) Math.round(distances[before] + f * (distances[after] - distances[before]));
+        int strength = (int) Math.round(strengths[before] + f * (strengths[after] - strengths[before]));
+        double temperature = temperatures[before] + f * (temperatures[after] - temperatures[before]);
+        long error = Math.min(frameNanos - t0, t1 - frameNanos);
+
+        return new Pairing(toLidarData(distance, strength, temperature, frameNanos),
+                error, true, error <= maxErrorNanos);
+    }
+
+    /**
+     * Standar deviasi jarak (cm) di jendela waktu sekitar frame.
+     * Mengembalikan -1 kalau sampel di jendela kurang dari dua.
+     */
+    public synchronized double distanceStdDev(long centerNanos, long halfWindowNanos) {
+        long from = centerNanos - halfWindowNanos;
+        long to = centerNanos + halfWindowNanos;
+        long sum = 0;
+        long sumSq = 0;
+        int count = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            int index = indexOf(i);
+            long t = times[index];
+            if (t > to) {
+                continue;
+            }
+            if (t < from) {
+                break;
+            }
+            int d = distances[index];
+            sum += d;
+            sumSq += (long) d * d;
+            count++;
+        }
+        if (count < 2) {
+            return -1;
+        }
+        double mean = (double) sum / count;
+        return Math.sqrt(Math.max(0.0, (double) sumSq / count - mean * mean));
+    }
+
+    private Pairing nearest(int index, long frameNanos) {
+        long error = Math.abs(frameNanos - times[index]);
+        return new Pairing(toLidarData(distances[index], strengths[index], temperatures[index], times[index]),
+                error, false, error <= maxErrorNanos);
+    }
+
+    private static LidarData toLidarData(int distance, int strength, double temperature, long nanos) {
+        LidarData data = new LidarData(distance, strength, temperature,
+                System.currentTimeMillis(), "connected");
+        data.setReceivedNanos(nanos);
+        return data;
+    }
+
+    // Index logis (0 = sampel tertua) ke index array
+    private int indexOf(int logical) {
+        int start = head - size;
+        if (start < 0) {
+            start += times.length;
+        }
+        return (start + logical) % times.length;
+    }
+}
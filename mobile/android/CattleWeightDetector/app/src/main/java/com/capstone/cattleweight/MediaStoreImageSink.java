@@ -0,0 +1,71 @@
+package com.capstone.cattleweight;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.provider.MediaStore;
+
+import java.io.IOException;
+
+/**
+ * ImageSink ke Gallery (Pictures/CattleDataset) lewat MediaStore.
+ * JPEG ditulis langsung ke file descriptor MediaStore tanpa ByteArrayOutputStream.
+ */
+public class MediaStoreImageSink implements ImageSink {
+
+    private static final String RELATIVE_PATH = "Pictures/CattleDataset";
+
+    private final ContentResolver resolver;
+    private final ImageSinkStream stream = new ImageSinkStream();
+
+    public MediaStoreImageSink(Context context) {
+        this.resolver = context.getApplicationContext().getContentResolver();
+    }
+
+    @Override
+    public synchronized String save(String displayName, ImageWriter writer) throws IOException {
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.Images.Media.DISPLAY_NAME, displayName);
+        values.put(MediaStore.Images.Media.MIME_TYPE, "image/jpeg");
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            values.put(MediaStore.Images.Media.RELATIVE_PATH, RELATIVE_PATH);
+            values.put(MediaStore.Images.Media.IS_PENDING, 1);
+        }
+
+        Uri uri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+        if (uri == null) {
+            throw new IOException("Failed to create MediaStore entry");
+        }
+
+        boolean success = false;
+        try {
+            ParcelFileDescriptor pfd = resolver.openFileDescriptor(uri, "w");
+            if (pfd == null) {
+                throw new IOException("Failed to open output stream");
+            }
+            stream.reset(new ParcelFileDescriptor.AutoCloseOutputStream(pfd));
+            try {
+                writer.writeTo(stream);
+            } finally {
+                stream.close();
+            }
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                values.clear();
+                values.put(MediaStore.Images.Media.IS_PENDING, 0);
+                resolver.update(uri, values, null, null);
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                // Jangan tinggalkan entry pending yang kosong di Gallery
+                resolver.delete(uri, null, null);
+            }
+        }
+        return uri.toString();
+    }
+}
@@ -0,0 +1,587 @@
+package com.capstone.cattleweight;
+
+import android.content.Context;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.jiangdg.ausbc.MultiCameraClient;
+import com.jiangdg.ausbc.callback.ICameraStateCallBack;
+import com.jiangdg.ausbc.callback.IDeviceConnectCallBack;
+import com.jiangdg.ausbc.callback.IPreviewDataCallBack;
+import com.jiangdg.ausbc.camera.CameraUVC;
+import com.jiangdg.ausbc.camera.bean.CameraRequest;
+import com.jiangdg.usb.USBMonitor;
+import com.jiangdg.usb.UsbDeviceClassifier;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Beberapa kamera UVC sekaligus (mis. tampak samping + tampak atas) untuk estimasi volumetrik.
+ *
+ * Setiap kamera dibuka lewat MultiCameraClient dengan budget bandwidth USB 1/N. Kalau
+ * kamera dipasang atau dicabut saat rig berjalan, bagian semua kamera dihitung ulang dan
+ * kamera yang sudah terbuka di-restart dengan bagian baru, jadi total tidak melebihi bus.
+ * Beberapa frame NV21 terakhir tiap kamera disimpan dengan timestamp elapsedRealtime.
+ * grab() memilih satu frame per kamera dengan selisih timestamp terkecil; hasilnya
+ * dipasangkan sekali dengan LiDAR dan disimpan sebagai satu baris dataset.
+ */
+public class MultiCameraRig {
+
+    private static final String TAG = "MultiCameraRig";
+
+    public static final int PREVIEW_WIDTH = 640;
+    public static final int PREVIEW_HEIGHT = 480;
+    public static final long DEFAULT_MAX_SKEW_NANOS = 20_000_000L;   // < 1 frame pada 30 fps
+    private static final int FRAMES_PER_VIEW = 4;
+    private static final long GRAB_POLL_MS = 5;
+    // Jeda close -> open seperti CameraUVC.updateResolution, supaya thread kamera lama selesai
+    private static final long RESTART_DELAY_MS = 1000;
+
+    public interface Listener {
+        /** Jumlah kamera yang sudah streaming berubah (main thread) */
+        void onViewsChanged(int openViews, int expectedViews);
+        void onError(String error);
+    }
+
+    /**
+     * Satu frame dari satu kamera, sudah disalin keluar dari ring
+     */
+    public static class ViewFrame {
+        public final int index;
+        public final String deviceName;
+        public final byte[] nv21;
+        public final int width;
+        public final int height;
+        public final long timestampNanos;
+
+        ViewFrame(int index, String deviceName, byte[] nv21, int width, int height, long timestampNanos) {
+            this.index = index;
+            this.deviceName = deviceName;
+            this.nv21 = nv21;
+            this.width = width;
+            this.height = height;
+            this.timestampNanos = timestampNanos;
+        }
+    }
+
+    /**
+     * Frame semua kamera yang diambil pada saat (hampir) bersamaan
+     */
+    public static class SyncedCapture {
+        public final List<ViewFrame> views;
+        public final long timestampNanos;   // rata-rata timestamp view, dipakai untuk pairing LiDAR
+        public final long skewNanos;        // selisih timestamp terjauh antar view
+
+        SyncedCapture(List<ViewFrame> views, long timestampNanos, long skewNanos) {
+            this.views = views;
+            this.timestampNanos = timestampNanos;
+            this.skewNanos = skewNanos;
+        }
+
+        public double getSkewMs() {
+            return skewNanos / 1_000_000.0;
+        }
+    }
+
+    private final Context context;
+    private final Listener listener;
+    private final Map<String, ViewChannel> channels = new ConcurrentHashMap<>();
+    // Urutan view tetap selama rig berjalan: index = posisi di daftar ini
+    private final List<String> viewOrder = new ArrayList<>();
+    private final Deque<UsbDevice> pendingPermission = new ArrayDeque<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private MultiCameraClient client;
+    private UsbDevice permissionDevice;
+    private volatile boolean running = false;
+
+    public MultiCameraRig(Context context, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+    }
+
+    /**
+     * Jumlah kamera UVC yang terpasang sekarang (tanpa permission)
+     */
+    public static int countCameras(Context context) {
+        UsbManager usbManager = (UsbManager) context.getSystemService(Context.USB_SERVICE);
+        if (usbManager == null) {
+            return 0;
+        }
+        return findCameras(new ArrayList<>(usbManager.getDeviceList().values())).size();
+    }
+
+    private static List<UsbDevice> findCameras(List<UsbDevice> devices) {
+        List<UsbDevice> cameras = new ArrayList<>();
+        if (devices == null) {
+            return cameras;
+        }
+        for (UsbDevice device : devices) {
+            if (UsbDeviceClassifier.isVideo(device)) {
+                cameras.add(device);
+            }
+        }
+        // Urutan stabil antar sesi: berdasarkan port (nama device)
+        Collections.sort(cameras, (a, b) -> a.getDeviceName().compareTo(b.getDeviceName()));
+        return cameras;
+    }
+
+    /**
+     * Buka semua kamera yang terpasang. Dipanggil dari main thread.
+     */
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        client = new MultiCameraClient(context, deviceCallback);
+        // Daftar diambil sebelum register, supaya budget bandwidth sudah tahu jumlah kamera
+        List<UsbDevice> cameras = findCameras(client.getDeviceList(null));
+        for (UsbDevice device : cameras) {
+            viewOrder.add(device.getDeviceName());
+            pendingPermission.add(device);
+        }
+        Log.i(TAG, "Starting rig with " + cameras.size() + " camera(s)");
+        client.register();
+        requestNextPermission();
+    }
+
+    /**
+     * Tutup semua kamera. Dipanggil dari main thread.
+     */
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        pendingPermission.clear();
+        permissionDevice = null;
+        for (ViewChannel channel : channels.values()) {
+            cancelRestart(channel);
+            channel.close();
+        }
+        channels.clear();
+        viewOrder.clear();
+        if (client != null) {
+            client.unRegister();
+            client.destroy();
+            client = null;
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getExpectedViews() {
+        return viewOrder.size();
+    }
+
+    public int getOpenViews() {
+        int open = 0;
+        for (ViewChannel channel : channels.values()) {
+            if (channel.opened) {
+                open++;
+            }
+        }
+        return open;
+    }
+
+    /**
+     * Ambil satu frame per kamera dengan selisih timestamp maksimal maxSkewNanos.
+     * Menunggu frame baru sampai timeoutMs; jangan dipanggil dari main thread.
+     *
+     * @return null kalau belum semua kamera streaming atau tidak ada set frame yang sinkron
+     */
+    public SyncedCapture grab(long maxSkewNanos, long timeoutMs) throws InterruptedException {
+        long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+        while (running) {
+            SyncedCapture capture = tryGrab(maxSkewNanos);
+            if (capture != null) {
+                return capture;
+            }
+            if (SystemClock.elapsedRealtime() >= deadline) {
+                break;
+            }
+            Thread.sleep(GRAB_POLL_MS);
+        }
+        return null;
+    }
+
+    private SyncedCapture tryGrab(long maxSkewNanos) {
+        List<ViewChannel> views = new ArrayList<>(channels.values());
+        if (views.isEmpty() || views.size() < viewOrder.size()) {
+            return null;
+        }
+        Collections.sort(views, (a, b) -> Integer.compare(a.index, b.index));
+
+        // Salinan timestamp per view; frame baru bisa masuk selama pencarian
+        long[][] times = new long[views.size()][];
+        for (int v = 0; v < views.size(); v++) {
+            times[v] = views.get(v).snapshotTimes();
+            if (times[v].length == 0) {
+                return null;
+            }
+        }
+
+        // Coba tiap frame sebagai jangkar, ambil frame terdekat di view lain, pilih sebaran terkecil
+        int[] best = null;
+        long bestSkew = Long.MAX_VALUE;
+        int[] picks = new int[views.size()];
+        for (int a = 0; a < views.size(); a++) {
+            for (long anchor : times[a]) {
+                long min = anchor;
+                long max = anchor;
+                for (int v = 0; v < views.size(); v++) {
+                    picks[v] = nearest(times[v], anchor);
+                    long t = times[v][picks[v]];
+                    min = Math.min(min, t);
+                    max = Math.max(max, t);
+                }
+                if (max - min < bestSkew) {
+                    bestSkew = max - min;
+                    best = picks.clone();
+                }
+            }
+        }
+        if (best == null || bestSkew > maxSkewNanos) {
+            return null;
+        }
+
+        List<ViewFrame> frames = new ArrayList<>(views.size());
+        long sum = 0;
+        for (int v = 0; v < views.size(); v++) {
+            ViewFrame frame = views.get(v).copyFrame(times[v][best[v]]);
+            if (frame == null) {
+                // Slot sudah tertimpa frame baru, coba lagi
+                return null;
+            }
+            frames.add(frame);
+            sum += frame.timestampNanos;
+        }
+        return new SyncedCapture(frames, sum / frames.size(), bestSkew);
+    }
+
+    private static int nearest(long[] times, long target) {
+        int best = 0;
+        for (int i = 1; i < times.length; i++) {
+            if (Math.abs(times[i] - target) < Math.abs(times[best] - target)) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    // Permission satu per satu: dialog sistem tidak bisa ditumpuk
+    private void requestNextPermission() {
+        if (!running || permissionDevice != null || client == null) {
+            return;
+        }
+        UsbDevice device = pendingPermission.poll();
+        if (device == null) {
+            return;
+        }
+        permissionDevice = device;
+        if (!client.requestPermission(device)) {
+            permissionDevice = null;
+            requestNextPermission();
+        }
+    }
+
+    private void onPermissionDone(UsbDevice device) {
+        if (permissionDevice != null && permissionDevice.getDeviceName().equals(device.getDeviceName())) {
+            permissionDevice = null;
+            requestNextPermission();
+        }
+    }
+
+    private void openView(UsbDevice device, USBMonitor.UsbControlBlock ctrlBlock) {
+        String name = device.getDeviceName();
+        if (channels.containsKey(name)) {
+            return;
+        }
+        int index = viewOrder.indexOf(name);
+        if (index < 0) {
+            // Kamera dipasang setelah start: jadi view berikutnya
+            viewOrder.add(name);
+            index = viewOrder.size() - 1;
+        }
+        ViewChannel channel = new ViewChannel(index, name);
+        CameraUVC camera = new CameraUVC(context, device);
+        channel.camera = camera;
+        camera.setUsbControlBlock(ctrlBlock);
+        camera.addPreviewDataCallBack(channel);
+        camera.setCameraStateCallBack((self, code, msg) -> onCameraState(channel, code, msg));
+        channels.put(name, channel);
+
+        // Kamera berbagi satu bus: tiap kamera dapat bagian bandwidth yang sama
+        float bandwidthFactor = bandwidthShare();
+        CameraRequest request = new CameraRequest.Builder()
+                .setPreviewWidth(PREVIEW_WIDTH)
+                .setPreviewHeight(PREVIEW_HEIGHT)
+                .setRenderMode(CameraRequest.RenderMode.NORMAL)
+                .setRawPreviewData(true)
+                .setAspectRatioShow(false)
+                .setAudioSource(CameraRequest.AudioSource.NONE)
+                .setBandwidthFactor(bandwidthFactor)
+                .create();
+        // Biasanya sudah diperkecil saat kamera ini terpasang; di sini untuk jaga-jaga
+        rebalanceBandwidth();
+        Log.i(TAG, "Opening view " + index + " (" + name + "), bandwidth " + bandwidthFactor);
+        camera.openCamera(null, request);
+    }
+
+    /**
+     * Bagian bandwidth per kamera: 1 / jumlah kamera yang terbuka, sedang dibuka,
+     * atau menunggu permission
+     */
+    private float bandwidthShare() {
+        Set<String> cameras = new HashSet<>(channels.keySet());
+        for (UsbDevice device : pendingPermission) {
+            cameras.add(device.getDeviceName());
+        }
+        if (permissionDevice != null) {
+            cameras.add(permissionDevice.getDeviceName());
+        }
+        return 1f / Math.max(1, cameras.size());
+    }
+
+    /**
+     * Hitung ulang bagian bandwidth setelah kumpulan kamera berubah, lalu restart kamera
+     * yang bagiannya berbeda. Dipanggil dari main thread.
+     */
+    private void rebalanceBandwidth() {
+        if (!running) {
+            return;
+        }
+        float share = bandwidthShare();
+        for (ViewChannel channel : channels.values()) {
+            CameraUVC camera = channel.camera;
+            CameraRequest request = camera != null ? camera.getCameraRequest() : null;
+            if (request == null || Float.compare(request.getBandwidthFactor(), share) == 0) {
+                continue;
+            }
+            Log.i(TAG, "Restarting view " + channel.index + ", bandwidth "
+                    + request.getBandwidthFactor() + " -> " + share);
+            request.setBandwidthFactor(share);
+            restartView(channel, camera, request);
+        }
+    }
+
+    private void restartView(ViewChannel channel, CameraUVC camera, CameraRequest request) {
+        cancelRestart(channel);
+        channel.opened = false;
+        camera.closeCamera();
+        // Frame sebelum restart tidak boleh dipasangkan dengan frame baru view lain
+        channel.clearFrames();
+        notifyViewsChanged();
+        channel.restart = () -> {
+            channel.restart = null;
+            // Kamera bisa dicabut atau rig dihentikan selama jeda
+            if (running && channels.get(channel.deviceName) == channel) {
+                camera.openCamera(null, request);
+            }
+        };
+        mainHandler.postDelayed(channel.restart, RESTART_DELAY_MS);
+    }
+
+    private void cancelRestart(ViewChannel channel) {
+        if (channel.restart != null) {
+            mainHandler.removeCallbacks(channel.restart);
+            channel.restart = null;
+        }
+    }
+
+    private void onCameraState(ViewChannel channel, ICameraStateCallBack.State code, String msg) {
+        switch (code) {
+            case OPENED:
+                channel.opened = true;
+                notifyViewsChanged();
+                break;
+            case ERROR:
+                Log.e(TAG, "View " + channel.index + " error: " + msg);
+                closeView(channel.deviceName);
+                if (listener != null) {
+                    listener.onError("Camera " + (channel.index + 1) + ": " + msg);
+                }
+                break;
+            case CLOSED:
+            default:
+                break;
+        }
+    }
+
+    private void closeView(String deviceName) {
+        ViewChannel channel = channels.remove(deviceName);
+        if (channel != null) {
+            cancelRestart(channel);
+            channel.close();
+            notifyViewsChanged();
+            // Kamera yang tersisa mendapat bagian lebih besar
+            rebalanceBandwidth();
+        }
+    }
+
+    private void notifyViewsChanged() {
+        if (listener != null) {
+            listener.onViewsChanged(getOpenViews(), getExpectedViews());
+        }
+    }
+
+    // Semua callback MultiCameraClient datang di main thread
+    private final IDeviceConnectCallBack deviceCallback = new IDeviceConnectCallBack() {
+        @Override
+        public void onAttachDev(UsbDevice device) {
+            if (!running || device == null || !UsbDeviceClassifier.isVideo(device)
+                    || channels.containsKey(device.getDeviceName())
+                    || pendingPermission.contains(device) || device.equals(permissionDevice)) {
+                return;
+            }
+            pendingPermission.add(device);
+            // Kecilkan bagian kamera yang sudah terbuka sebelum kamera baru dibuka
+            rebalanceBandwidth();
+            requestNextPermission();
+        }
+
+        @Override
+        public void onDetachDec(UsbDevice device) {
+            if (device == null) {
+                return;
+            }
+            pendingPermission.remove(device);
+            closeView(device.getDeviceName());
+            onPermissionDone(device);
+            rebalanceBandwidth();
+        }
+
+        @Override
+        public void onConnectDev(UsbDevice device, USBMonitor.UsbControlBlock ctrlBlock) {
+            if (device == null) {
+                return;
+            }
+            if (running && ctrlBlock != null) {
+                openView(device, ctrlBlock);
+            }
+            onPermissionDone(device);
+        }
+
+        @Override
+        public void onDisConnectDec(UsbDevice device, USBMonitor.UsbControlBlock ctrlBlock) {
+            if (device != null) {
+                closeView(device.getDeviceName());
+            }
+        }
+
+        @Override
+        public void onCancelDev(UsbDevice device) {
+            if (device == null) {
+                return;
+            }
+            Log.w(TAG, "Permission denied: " + device.getDeviceName());
+            if (listener != null) {
+                listener.onError("USB permission denied for " + device.getProductName());
+            }
+            onPermissionDone(device);
+            // Kamera tanpa permission tidak ikut berbagi bandwidth
+            rebalanceBandwidth();
+        }
+    };
+
+    /**
+     * Ring kecil frame NV21 bertimestamp untuk satu kamera.
+     * Diisi dari thread frame kamera, dibaca dari thread yang memanggil grab().
+     */
+    private static final class ViewChannel implements IPreviewDataCallBack {
+        final int index;
+        final String deviceName;
+        final byte[][] slots = new byte[FRAMES_PER_VIEW][];
+        final long[] times = new long[FRAMES_PER_VIEW];
+        CameraUVC camera;
+        // Open ulang yang tertunda setelah restart bandwidth (main thread)
+        Runnable restart;
+        volatile boolean opened = false;
+        private int next = 0;
+        private int count = 0;
+        private int width;
+        private int height;
+
+        ViewChannel(int index, String deviceName) {
+            this.index = index;
+            this.deviceName = deviceName;
+        }
+
+        @Override
+        public void onPreviewData(byte[] data, int width, int height, DataFormat format) {
+            if (data == null || format != DataFormat.NV21) {
+                return;
+            }
+            // Waktu terima, clock yang sama dengan sampel LiDAR
+            long timestampNanos = SystemClock.elapsedRealtimeNanos();
+            int size = width * height * 3 / 2;
+            if (data.length < size) {
+                return;
+            }
+            synchronized (this) {
+                if (width != this.width || height != this.height) {
+                    this.width = width;
+                    this.height = height;
+                    count = 0;
+                }
+                byte[] slot = slots[next];
+                if (slot == null || slot.length != size) {
+                    slot = new byte[size];
+                    slots[next] = slot;
+                }
+                System.arraycopy(data, 0, slot, 0, size);
+                times[next] = timestampNanos;
+                next = (next + 1) % FRAMES_PER_VIEW;
+                if (count < FRAMES_PER_VIEW) {
+                    count++;
+                }
+            }
+        }
+
+        synchronized long[] snapshotTimes() {
+            long[] result = new long[count];
+            for (int i = 0; i < count; i++) {
+                result[i] = times[(next - 1 - i + FRAMES_PER_VIEW) % FRAMES_PER_VIEW];
+            }
+            return result;
+        }
+
+        synchronized ViewFrame copyFrame(long timestampNanos) {
+            for (int i = 0; i < count; i++) {
+                int slot = (next - 1 - i + FRAMES_PER_VIEW) % FRAMES_PER_VIEW;
+                if (times[slot] == timestampNanos) {
+                    return new ViewFrame(index, deviceName, slots[slot].clone(), width, height, timestampNanos);
+                }
+            }
+            return null;
+        }
+
+        void close() {
+            opened = false;
+            CameraUVC cam = camera;
+            if (cam != null) {
+                cam.removePreviewDataCallBack(this);
+                cam.closeCamera();
+            }
+            clearFrames();
+        }
+
+        synchronized void clearFrames() {
+            count = 0;
+        }
+    }
+}
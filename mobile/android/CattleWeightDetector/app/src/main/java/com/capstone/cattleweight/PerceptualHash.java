@@ -0,0 +1,84 @@
+package com.capstone.cattleweight;
+
+/**
+ * Perceptual hash 64 bit (dHash) dari plane luma, untuk mengenali capture yang hampir sama.
+ *
+ * Frame dibagi grid 9x8 sel, tiap sel dirata-rata (di-subsample), lalu tiap bit = apakah
+ * sel lebih terang dari tetangga kanannya. Hash tahan terhadap perubahan exposure dan
+ * kompresi JPEG; dua frame dari sapi yang sama di posisi yang sama hanya beda beberapa bit.
+ * Pure Java; versi luma tanpa alokasi per frame.
+ */
+public final class PerceptualHash {
+
+    private static final int GRID_COLS = 9;
+    private static final int GRID_ROWS = 8;
+    private static final int CELL_SAMPLES = 8;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * dHash dari plane luma
+     *
+     * @param luma   plane Y (8 bit)
+     * @param offset offset byte pertama plane
+     * @param width  lebar plane dalam pixel
+     * @param height tinggi plane dalam pixel
+     * @param stride jarak antar baris dalam byte
+     */
+    public static long dHash(byte[] luma, int offset, int width, int height, int stride) {
+        // Maksimal CELL_SAMPLES x CELL_SAMPLES sampel per sel: ~4600 baca per frame
+        int stepX = Math.max(1, width / (GRID_COLS * CELL_SAMPLES));
+        int stepY = Math.max(1, height / (GRID_ROWS * CELL_SAMPLES));
+        long hash = 0;
+        int previous = 0;
+
+        for (int gy = 0; gy < GRID_ROWS; gy++) {
+            int y0 = gy * height / GRID_ROWS;
+            int y1 = (gy + 1) * height / GRID_ROWS;
+            for (int gx = 0; gx < GRID_COLS; gx++) {
+                int x0 = gx * width / GRID_COLS;
+                int x1 = (gx + 1) * width / GRID_COLS;
+                int sum = 0;
+                int count = 0;
+                for (int y = y0; y < y1; y += stepY) {
+                    int row = offset + y * stride;
+                    for (int x = x0; x < x1; x += stepX) {
+                        sum += luma[row + x] & 0xFF;
+                        count++;
+                    }
+                }
+                int mean = count > 0 ? sum / count : 0;
+                if (gx > 0) {
+                    hash = (hash << 1) | (previous > mean ? 1L : 0L);
+                }
+                previous = mean;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * dHash dari pixel ARGB (mis. bitmap yang sudah diperkecil), luma dihitung dengan bobot
+     * BT.601 supaya hash sebanding dengan hash dari plane Y. Mengalokasikan satu plane
+     * luma, jadi hanya untuk capture tunggal, bukan per frame.
+     */
+    public static long dHash(int[] argb, int width, int height) {
+        byte[] luma = new byte[width * height];
+        for (int i = 0; i < luma.length; i++) {
+            int pixel = argb[i];
+            int r = (pixel >> 16) & 0xFF;
+            int g = (pixel >> 8) & 0xFF;
+            int b = pixel & 0xFF;
+            luma[i] = (byte) ((77 * r + 150 * g + 29 * b) >> 8);
+        }
+        return dHash(luma, 0, width, height, width);
+    }
+
+    /**
+     * Jumlah bit yang berbeda (0..64)
+     */
+    public static int hammingDistance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+}
@@ -0,0 +1,255 @@
+package com.capstone.cattleweight;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Ring buffer frame ~2 detik terakhir sebelum tombol capture ditekan.
+ *
+ * Setiap frame disimpan sebagai JPEG di slot dengan buffer tetap (dialokasikan
+ * sekali), jadi pemakaian memori konstan. Saat capture, frame terbaik di sekitar
+ * waktu tombol ditekan dipilih berdasarkan ketajaman, stabilitas LiDAR, dan
+ * pairing error - bukan sekadar frame berikutnya.
+ */
+public class PreTriggerFrameRing {
+
+    public static final int DEFAULT_CAPACITY = 20;                  // 2 s pada 10 fps
+    public static final int DEFAULT_SLOT_BYTES = 512 * 1024;
+    public static final long DEFAULT_MIN_INTERVAL_NANOS = 100_000_000L;
+    private static final long NO_FRAME = Long.MIN_VALUE;
+    private static final long STABILITY_HALF_WINDOW_NANOS = 200_000_000L;
+    private static final double STABILITY_SCALE_CM = 2.0;
+    private static final int SHARPNESS_STEP = 2;
+
+    // Bobot skor gabungan
+    private static final double WEIGHT_SHARPNESS = 0.5;
+    private static final double WEIGHT_STABILITY = 0.3;
+    private static final double WEIGHT_PAIRING = 0.2;
+
+    /**
+     * Satu frame di ring. Frame yang dikembalikan selectBest() terkunci sampai release().
+     */
+    public static class Frame {
+        final byte[] jpeg;
+        int length;
+        long timestampNanos;
+        double sharpness;
+        long perceptualHash;
+        int width;
+        int height;
+        boolean published;
+        boolean locked;
+        LidarFramePairer.Pairing pairing;
+        double score;
+
+        Frame(int slotBytes) {
+            this.jpeg = new byte[slotBytes];
+        }
+
+        public byte[] getJpeg() {
+            return jpeg;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+
+        public double getSharpness() {
+            return sharpness;
+        }
+
+        public long getPerceptualHash() {
+            return perceptualHash;
+        }
+
+        public LidarFramePairer.Pairing getPairing() {
+            return pairing;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    private final Frame[] frames;
+    private final JpegEncoder encoder;
+    private final long minIntervalNanos;
+    private final SlotOutputStream slotStream = new SlotOutputStream();
+    private int next = 0;
+    private long lastOfferNanos = NO_FRAME;
+    private long droppedFrames = 0;
+
+    public PreTriggerFrameRing(JpegEncoder encoder) {
+        this(encoder, DEFAULT_CAPACITY, DEFAULT_SLOT_BYTES, DEFAULT_MIN_INTERVAL_NANOS);
+    }
+
+    public PreTriggerFrameRing(JpegEncoder encoder, int capacity, int slotBytes, long minIntervalNanos) {
+        this.encoder = encoder;
+        this.minIntervalNanos = minIntervalNanos;
+        this.frames = new Frame[capacity];
+        for (int i = 0; i < capacity; i++) {
+            frames[i] = new Frame(slotBytes);
+        }
+    }
+
+    /**
+     * Masukkan frame NV21 ke ring. Dipanggil dari thread analisis/frame callback.
+     *
+     * @return true kalau frame disimpan, false kalau di-skip (rate limit/slot penuh)
+     */
+    public boolean offer(long timestampNanos, byte[] nv21, int width, int height) {
+        Frame slot;
+        synchronized (this) {
+            if (lastOfferNanos != NO_FRAME && timestampNanos - lastOfferNanos < minIntervalNanos) {
+                return false;
+            }
+            slot = claimSlot();
+            if (slot == null) {
+                droppedFrames++;
+                return false;
+            }
+            lastOfferNanos = timestampNanos;
+        }
+
+        // Encode di luar lock ring; slot sudah di-unpublish jadi tidak akan dipilih
+        double sharpness = FrameQuality.laplacianVariance(nv21, 0, width, height, width, SHARPNESS_STEP);
+        long perceptualHash = PerceptualHash.dHash(nv21, 0, width, height, width);
+        boolean ok;
+        int length;
+        synchronized (slotStream) {
+            try {
+                slotStream.reset(slot.jpeg);
+                ok = encoder.encode(nv21, width, height, slotStream) && !slotStream.overflow;
+            } catch (IOException e) {
+                ok = false;
+            }
+            length = slotStream.count;
+        }
+
+        synchronized (this) {
+            if (!ok) {
+                droppedFrames++;
+                return false;
+            }
+            slot.length = length;
+            slot.timestampNanos = timestampNanos;
+            slot.sharpness = sharpness;
+            slot.perceptualHash = perceptualHash;
+            slot.width = width;
+            slot.height = height;
+            slot.pairing = null;
+            slot.published = true;
+            return true;
+        }
+    }
+
+    // Ambil slot tertua yang tidak sedang dikunci
+    private Frame claimSlot() {
+        for (int i = 0; i < frames.length; i++) {
+            Frame candidate = frames[next];
+            next = (next + 1) % frames.length;
+            if (!candidate.locked) {
+                candidate.published = false;
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Pilih frame terbaik dengan timestamp di [fromNanos, toNanos].
+     * Frame yang pairing LiDAR-nya ditolak tidak ikut dipilih.
+     * Frame hasil wajib dikembalikan lewat release().
+     */
+    public synchronized Frame selectBest(long fromNanos, long toNanos, LidarFramePairer pairer) {
+        double maxSharpness = 0;
+        for (Frame f : frames) {
+            if (f.published && !f.locked && f.timestampNanos >= fromNanos && f.timestampNanos <= toNanos) {
+                maxSharpness = Math.max(maxSharpness, f.sharpness);
+            }
+        }
+
+        Frame best = null;
+        for (Frame f : frames) {
+            if (!f.published || f.locked || f.timestampNanos < fromNanos || f.timestampNanos > toNanos) {
+                continue;
+            }
+            LidarFramePairer.Pairing pairing = pairer.pair(f.timestampNanos);
+            if (pairing == null || !pairing.accepted) {
+                continue;
+            }
+
+            double sharpnessScore = maxSharpness > 0 ? f.sharpness / maxSharpness : 0;
+            double stdDev = pairer.distanceStdDev(f.timestampNanos, STABILITY_HALF_WINDOW_NANOS);
+            double stabilityScore = stdDev < 0 ? 0 : 1.0 / (1.0 + stdDev / STABILITY_SCALE_CM);
+            double maxError = Math.max(1, pairer.getMaxErrorNanos());
+            double pairingScore = 1.0 - Math.min(1.0, pairing.errorNanos / maxError);
+
+            f.pairing = pairing;
+            f.score = WEIGHT_SHARPNESS * sharpnessScore
+                    + WEIGHT_STABILITY * stabilityScore
+                    + WEIGHT_PAIRING * pairingScore;
+            if (best == null || f.score > best.score) {
+                best = f;
+            }
+        }
+
+        if (best != null) {
+            best.locked = true;
+        }
+        return best;
+    }
+
+    public synchronized void release(Frame frame) {
+        frame.locked = false;
+    }
+
+    public synchronized void clear() {
+        for (Frame f : frames) {
+            f.published = false;
+        }
+        lastOfferNanos = NO_FRAME;
+    }
+
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * OutputStream ke buffer slot; kalau JPEG lebih besar dari slot, frame dibuang
+     */
+    private static final class SlotOutputStream extends OutputStream {
+        private byte[] target;
+        private int count;
+        private boolean overflow;
+
+        void reset(byte[] target) {
+            this.target = target;
+            this.count = 0;
+            this.overflow = false;
+        }
+
+        @Override
+        public void write(int b) {
+            if (count >= target.length) {
+                overflow = true;
+                return;
+            }
+            target[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (overflow || len > target.length - count) {
+                overflow = true;
+                return;
+            }
+            System.arraycopy(b, off, target, count, len);
+            count += len;
+        }
+    }
+}
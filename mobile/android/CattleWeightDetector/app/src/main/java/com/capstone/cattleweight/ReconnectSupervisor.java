@@ -0,0 +1,152 @@
+package com.capstone.cattleweight;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Supervisor reconnect otomatis untuk device USB (kamera UVC / LiDAR serial).
+ *
+ * Setelah device terlepas, target dicoba lagi dengan exponential backoff
+ * (50 ms, 100 ms, ... maks 2 s) sampai tersambung atau timeout. Broadcast
+ * attach memanggil {@link #attemptNow()} supaya tidak menunggu jadwal backoff.
+ * Semua state dijalankan di main looper, jadi method boleh dipanggil dari thread mana saja.
+ */
+public class ReconnectSupervisor {
+
+    private static final long INITIAL_DELAY_MS = 50;
+    private static final long MAX_DELAY_MS = 2000;
+    private static final long PENDING_RETRY_MS = 1000;
+    public static final long DEFAULT_TIMEOUT_MS = 30000;
+
+    public interface Target {
+        /**
+         * Coba sambung ulang (main thread).
+         *
+         * @return true kalau device ditemukan dan koneksi sudah dimulai,
+         *         false kalau device belum ada
+         */
+        boolean tryReconnect(int attempt);
+    }
+
+    public interface Listener {
+        void onReconnected(long elapsedMs, int attempts);
+        void onGaveUp(int attempts);
+    }
+
+    private final String name;
+    private final Target target;
+    private final Listener listener;
+    private final long timeoutMs;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable attemptRunnable = this::attempt;
+
+    // Hanya diakses di main thread
+    private volatile boolean active = false;
+    private long startNanos;
+    private int attempts;
+    private long nextDelayMs;
+
+    public ReconnectSupervisor(String name, Target target, Listener listener) {
+        this(name, target, listener, DEFAULT_TIMEOUT_MS);
+    }
+
+    public ReconnectSupervisor(String name, Target target, Listener listener, long timeoutMs) {
+        this.name = name;
+        this.target = target;
+        this.listener = listener;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Device terlepas: mulai mencoba (tidak berpengaruh kalau sudah aktif)
+     */
+    public void start() {
+        handler.post(() -> {
+            if (active) {
+                return;
+            }
+            active = true;
+            startNanos = SystemClock.elapsedRealtimeNanos();
+            attempts = 0;
+            nextDelayMs = INITIAL_DELAY_MS;
+            Log.i(name, "Reconnect started");
+            handler.postDelayed(attemptRunnable, INITIAL_DELAY_MS);
+        });
+    }
+
+    /**
+     * Device baru terpasang: coba sekarang tanpa menunggu backoff
+     */
+    public void attemptNow() {
+        handler.post(() -> {
+            if (!active) {
+                return;
+            }
+            handler.removeCallbacks(attemptRunnable);
+            nextDelayMs = INITIAL_DELAY_MS;
+            attempt();
+        });
+    }
+
+    /**
+     * Koneksi berhasil dipulihkan
+     */
+    public void onConnected() {
+        handler.post(() -> {
+            if (!active) {
+                return;
+            }
+            active = false;
+            handler.removeCallbacks(attemptRunnable);
+            long elapsedMs = (SystemClock.elapsedRealtimeNanos() - startNanos) / 1_000_000L;
+            Log.i(name, "Reconnected in " + elapsedMs + " ms after " + attempts + " attempt(s)");
+            if (listener != null) {
+                listener.onReconnected(elapsedMs, attempts);
+            }
+        });
+    }
+
+    /**
+     * Berhenti mencoba (user mematikan device / release)
+     */
+    public void cancel() {
+        handler.post(() -> {
+            active = false;
+            handler.removeCallbacks(attemptRunnable);
+        });
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    private void attempt() {
+        if (!active) {
+            return;
+        }
+        long elapsedMs = (SystemClock.elapsedRealtimeNanos() - startNanos) / 1_000_000L;
+        if (elapsedMs >= timeoutMs) {
+            active = false;
+            Log.w(name, "Reconnect gave up after " + attempts + " attempt(s)");
+            if (listener != null) {
+                listener.onGaveUp(attempts);
+            }
+            return;
+        }
+        attempts++;
+        boolean started;
+        try {
+            started = target.tryReconnect(attempts);
+        } catch (Exception e) {
+            Log.w(name, "Reconnect attempt " + attempts + " failed", e);
+            started = false;
+        }
+        Log.d(name, "Reconnect attempt " + attempts + (started ? " started" : ": device not found"));
+        // Tetap dijadwalkan walau sudah dimulai: kalau open gagal, percobaan berikutnya
+        // mengulang; beri waktu open yang sedang berjalan untuk selesai dulu
+        handler.postDelayed(attemptRunnable, started ? Math.max(nextDelayMs, PENDING_RETRY_MS) : nextDelayMs);
+        nextDelayMs = Math.min(nextDelayMs * 2, MAX_DELAY_MS);
+    }
+}
@@ -0,0 +1,253 @@
+package com.capstone.cattleweight;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Preprocessing langsung YUV -> tensor input model (pure Java, tanpa Bitmap).
+ * Gambar yang sudah berupa pixel ARGB (decode JPEG dataset) memakai jalur yang sama
+ * tanpa konversi warna.
+ *
+ * Satu lintasan per pixel output: crop, resize (nearest, titik tengah pixel), rotasi
+ * kelipatan 90°, konversi YUV -> RGB (BT.601 full range / JFIF) dan normalisasi
+ * (float32 lewat tabel (v - mean) / std, atau uint8 untuk model terkuantisasi) ditulis
+ * langsung ke ByteBuffer input interpreter. Tabel koordinat dihitung ulang hanya kalau
+ * ukuran frame, crop atau rotasi berubah, jadi frame berikutnya tanpa alokasi.
+ * Tidak thread-safe: satu instance per thread analisis.
+ * Tidak bergantung pada Android/TFLite; untuk input model pakai
+ * {@link WeightEstimationEngine#createPreprocessor()}.
+ */
+public final class TensorPreprocessor {
+
+    private static final int FIXED_SHIFT = 16;
+
+    private final int outWidth;
+    private final int outHeight;
+    private final boolean quantized;
+
+    // Tabel normalisasi float32 per nilai kanal 0..255
+    private final float[] normTable = new float[256];
+    // Tabel konversi warna fixed point (BT.601 full range)
+    private static final int[] R_V = new int[256];
+    private static final int[] G_U = new int[256];
+    private static final int[] G_V = new int[256];
+    private static final int[] B_U = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int c = i - 128;
+            R_V[i] = (int) Math.round(1.402 * c * (1 << FIXED_SHIFT));
+            G_U[i] = (int) Math.round(-0.344136 * c * (1 << FIXED_SHIFT));
+            G_V[i] = (int) Math.round(-0.714136 * c * (1 << FIXED_SHIFT));
+            B_U[i] = (int) Math.round(1.772 * c * (1 << FIXED_SHIFT));
+        }
+    }
+
+    // Crop dalam koordinat frame sumber; lebar 0 = seluruh frame
+    private int cropLeft;
+    private int cropTop;
+    private int cropWidth;
+    private int cropHeight;
+    private int rotation;
+
+    // Tabel koordinat sumber: sepanjang kolom output dan sepanjang baris output.
+    // swapAxes = true kalau kolom output berjalan di sumbu Y sumber (rotasi 90/270).
+    private final int[] colLut;
+    private final int[] rowLut;
+    private boolean swapAxes;
+    private int lutSrcWidth = -1;
+    private int lutSrcHeight = -1;
+    private boolean lutDirty = true;
+
+    // NV21 byte[] dibungkus sekali per array
+    private byte[] wrappedArray;
+    private ByteBuffer wrappedBuffer;
+
+    /**
+     * @param mean / std normalisasi float32: (kanal - mean) / std; diabaikan kalau quantized
+     */
+    public TensorPreprocessor(int outWidth, int outHeight, boolean quantized, float mean, float std) {
+        this.outWidth = outWidth;
+        this.outHeight = outHeight;
+        this.quantized = quantized;
+        this.colLut = new int[Math.max(outWidth, outHeight)];
+        this.rowLut = new int[Math.max(outWidth, outHeight)];
+        setNormalization(mean, std);
+    }
+
+    public void setNormalization(float mean, float std) {
+        for (int i = 0; i < 256; i++) {
+            normTable[i] = (i - mean) / std;
+        }
+    }
+
+    /**
+     * Area sumber yang dipakai (koordinat frame sebelum rotasi)
+     */
+    public void setCrop(int left, int top, int width, int height) {
+        if (left != cropLeft || top != cropTop || width != cropWidth || height != cropHeight) {
+            cropLeft = Math.max(0, left);
+            cropTop = Math.max(0, top);
+            cropWidth = Math.max(0, width);
+            cropHeight = Math.max(0, height);
+            lutDirty = true;
+        }
+    }
+
+    public void clearCrop() {
+        setCrop(0, 0, 0, 0);
+    }
+
+    /**
+     * Rotasi searah jarum jam yang diterapkan ke frame (mis. ImageInfo.getRotationDegrees())
+     */
+    public void setRotation(int degrees) {
+        int normalized = ((degrees % 360) + 360) % 360;
+        if (normalized != rotation) {
+            rotation = normalized;
+            lutDirty = true;
+        }
+    }
+
+    public int getOutputWidth() {
+        return outWidth;
+    }
+
+    public int getOutputHeight() {
+        return outHeight;
+    }
+
+    /**
+     * Frame NV21 (Y penuh lalu VU interleaved, misalnya callback UVC / YuvImage)
+     */
+    public void nv21ToTensor(byte[] nv21, int width, int height, ByteBuffer out) {
+        if (nv21 != wrappedArray) {
+            wrappedArray = nv21;
+            wrappedBuffer = ByteBuffer.wrap(nv21);
+        }
+        int uvOffset = width * height;
+        yuvToTensor(wrappedBuffer, 0, width, wrappedBuffer, uvOffset + 1, wrappedBuffer, uvOffset,
+                width, 2, width, height, out);
+    }
+
+    /**
+     * Frame YUV_420_888 (plane ImageProxy / Image). Buffer plane tidak diubah posisinya.
+     */
+    public void yuv420ToTensor(ByteBuffer y, int yRowStride, ByteBuffer u, ByteBuffer v,
+                               int uvRowStride, int uvPixelStride, int width, int height, ByteBuffer out) {
+        yuvToTensor(y, 0, yRowStride, u, 0, v, 0, uvRowStride, uvPixelStride, width, height, out);
+    }
+
+    /**
+     * Pixel ARGB_8888 (Bitmap.getPixels), mis. gambar dataset hasil decode JPEG
+     */
+    public void argbToTensor(int[] argb, int width, int height, ByteBuffer out) {
+        if (lutDirty || width != lutSrcWidth || height != lutSrcHeight) {
+            buildLuts(width, height);
+        }
+        float[] norm = normTable;
+        for (int oy = 0; oy < outHeight; oy++) {
+            int rowCoord = rowLut[oy];
+            for (int ox = 0; ox < outWidth; ox++) {
+                int pixel = swapAxes
+                        ? argb[colLut[ox] * width + rowCoord]
+                        : argb[rowCoord * width + colLut[ox]];
+                int r = (pixel >> 16) & 0xFF;
+                int g = (pixel >> 8) & 0xFF;
+                int b = pixel & 0xFF;
+                if (quantized) {
+                    out.put((byte) r).put((byte) g).put((byte) b);
+                } else {
+                    out.putFloat(norm[r]).putFloat(norm[g]).putFloat(norm[b]);
+                }
+            }
+        }
+    }
+
+    private void yuvToTensor(ByteBuffer y, int yOffset, int yRowStride,
+                             ByteBuffer u, int uOffset, ByteBuffer v, int vOffset,
+                             int uvRowStride, int uvPixelStride, int width, int height, ByteBuffer out) {
+        if (lutDirty || width != lutSrcWidth || height != lutSrcHeight) {
+            buildLuts(width, height);
+        }
+        int[] cols = colLut;
+        int[] rows = rowLut;
+        float[] norm = normTable;
+
+        for (int oy = 0; oy < outHeight; oy++) {
+            int rowCoord = rows[oy];
+            for (int ox = 0; ox < outWidth; ox++) {
+                int sx;
+                int sy;
+                if (swapAxes) {
+                    sx = rowCoord;
+                    sy = cols[ox];
+                } else {
+                    sx = cols[ox];
+                    sy = rowCoord;
+                }
+                int luma = y.get(yOffset + sy * yRowStride + sx) & 0xFF;
+                int chroma = (sy >> 1) * uvRowStride + (sx >> 1) * uvPixelStride;
+                int cb = u.get(uOffset + chroma) & 0xFF;
+                int cr = v.get(vOffset + chroma) & 0xFF;
+
+                int base = luma << FIXED_SHIFT;
+                int r = clamp((base + R_V[cr]) >> FIXED_SHIFT);
+                int g = clamp((base + G_U[cb] + G_V[cr]) >> FIXED_SHIFT);
+                int b = clamp((base + B_U[cb]) >> FIXED_SHIFT);
+
+                if (quantized) {
+                    out.put((byte) r).put((byte) g).put((byte) b);
+                } else {
+                    out.putFloat(norm[r]).putFloat(norm[g]).putFloat(norm[b]);
+                }
+            }
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    private void buildLuts(int width, int height) {
+        int left = cropWidth > 0 ? Math.min(cropLeft, width - 1) : 0;
+        int top = cropHeight > 0 ? Math.min(cropTop, height - 1) : 0;
+        int w = cropWidth > 0 ? Math.min(cropWidth, width - left) : width;
+        int h = cropHeight > 0 ? Math.min(cropHeight, height - top) : height;
+
+        switch (rotation) {
+            case 90:
+                // out(ox, oy) = src(x = oy, y = H-1-ox)
+                swapAxes = true;
+                fillLut(colLut, outWidth, top, h, true);
+                fillLut(rowLut, outHeight, left, w, false);
+                break;
+            case 180:
+                swapAxes = false;
+                fillLut(colLut, outWidth, left, w, true);
+                fillLut(rowLut, outHeight, top, h, true);
+                break;
+            case 270:
+                // out(ox, oy) = src(x = W-1-oy, y = ox)
+                swapAxes = true;
+                fillLut(colLut, outWidth, top, h, false);
+                fillLut(rowLut, outHeight, left, w, true);
+                break;
+            default:
+                swapAxes = false;
+                fillLut(colLut, outWidth, left, w, false);
+                fillLut(rowLut, outHeight, top, h, false);
+                break;
+        }
+        lutSrcWidth = width;
+        lutSrcHeight = height;
+        lutDirty = false;
+    }
+
+    // Titik tengah pixel output i dipetakan ke [start, start + length)
+    private static void fillLut(int[] lut, int count, int start, int length, boolean reversed) {
+        for (int i = 0; i < count; i++) {
+            int offset = (int) (((2L * i + 1) * length) / (2L * count));
+            lut[i] = start + (reversed ? length - 1 - offset : offset);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package com.capstone.cattleweight;
+
+import android.hardware.usb.UsbDevice;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.jiangdg.usb.UsbDeviceClassifier;
+import com.jiangdg.uvc.UVCFormatModel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Perencana bandwidth USB untuk kamera UVC + LiDAR serial di satu hub.
+ *
+ * Transfer isochronous kamera memesan waktu bus di setiap microframe; kalau pesanannya
+ * terlalu besar, transfer bulk CH340 (LiDAR) kelaparan dan sampel hilang. Planner memilih
+ * mode kamera (resolusi/fps) dan bandwidth factor untuk setPreviewSize dari budget bus
+ * setelah dikurangi jatah device lain. Saat preview berjalan, frame rate kamera dan sample
+ * rate LiDAR diukur; kalau ada sampel LiDAR yang hilang, level diturunkan dan mode dipilih ulang.
+ * Frame rate kamera saja tidak memicu downgrade: cahaya redup / auto exposure juga menurunkan
+ * fps tanpa ada perebutan bus. Level kembali ke awal kalau rangkaian device USB berubah.
+ *
+ * libUVCCamera.so yang dikirim hanya menegosiasi ulang kalau ukuran/format berubah (factor
+ * dan fps baru untuk ukuran yang sama diabaikan), jadi downgrade melompati level yang
+ * hasilnya mode yang sama dan hanya terjadi kalau ada mode yang benar-benar lebih kecil.
+ */
+public class UsbBandwidthPlanner {
+
+    private static final String TAG = "UsbBandwidthPlanner";
+
+    // USB 2.0 high speed: 480 Mbit/s, transfer periodik maksimal 80% dari tiap microframe
+    private static final long BUS_BYTES_PER_SEC = 60_000_000L;
+    private static final double PERIODIC_SHARE = 0.8;
+    // Endpoint isochronous high-bandwidth: 3 x 1024 byte per microframe, 8000 microframe/s
+    private static final long ENDPOINT_MAX_BYTES_PER_SEC = 3L * 1024 * 8000;
+    // Jatah yang disisakan per device lain di bus
+    private static final long SERIAL_RESERVE_BYTES_PER_SEC = 4_000_000L;   // full speed bulk lewat TT hub
+    private static final long AUDIO_RESERVE_BYTES_PER_SEC = 400_000L;
+    // Pesan sedikit di atas kebutuhan terhitung supaya frame MJPEG besar tidak terpotong
+    private static final double FACTOR_MARGIN = 1.25;
+    private static final float MIN_BANDWIDTH_FACTOR = 0.1f;
+
+    // Budget kamera per level; level naik setiap kali LiDAR kehilangan sampel
+    private static final double[] HEADROOM = {1.0, 0.7, 0.5, 0.35, 0.25};
+
+    public static final long EVALUATE_INTERVAL_MS = 2000;
+    // Sampel kurang dari ini dianggap jitter pengukuran, bukan loss
+    private static final double LIDAR_LOSS_TOLERANCE = 0.03;
+    private static final int BAD_WINDOWS_BEFORE_DOWNGRADE = 2;
+
+    /**
+     * Mode kamera dan bandwidth factor hasil perencanaan
+     */
+    public static class Plan {
+        public final int width;
+        public final int height;
+        public final int formatType;
+        public final int fps;
+        public final float bandwidthFactor;
+        public final long bytesPerSec;
+        public final int level;
+
+        Plan(int width, int height, int formatType, int fps, float bandwidthFactor, long bytesPerSec, int level) {
+            this.width = width;
+            this.height = height;
+            this.formatType = formatType;
+            this.fps = fps;
+            this.bandwidthFactor = bandwidthFactor;
+            this.bytesPerSec = bytesPerSec;
+            this.level = level;
+        }
+
+        /**
+         * Mode yang sama bagi kamera (ukuran dan format); factor/fps saja tidak dinegosiasi ulang
+         */
+        public boolean sameMode(Plan other) {
+            return other != null && width == other.width && height == other.height
+                    && formatType == other.formatType;
+        }
+
+        @Override
+        public String toString() {
+            return width + "x" + height + "@" + fps + "fps, factor " + bandwidthFactor
+                    + ", " + (bytesPerSec / 1000) + " kB/s (level " + level + ")";
+        }
+    }
+
+    private volatile int level = 0;
+    private volatile Plan currentPlan;
+    private volatile int expectedLidarHz = 0;
+    private int cameraCount = 1;
+    private long reservedBytesPerSec = 0;
+    // vendor:product device yang terpasang saat updateDevices() terakhir
+    private List<String> lastDeviceIds;
+
+    // Argumen plan() terakhir, untuk mencari level downgrade berikutnya yang mengubah mode
+    private UVCFormatModel lastModel;
+    private int lastFormatType;
+    private int lastMinWidth;
+    private int lastMinHeight;
+    private int lastMaxWidth;
+    private int lastMaxHeight;
+    private int lastMaxFps;
+
+    // Penghitung jendela ukur, diisi dari thread frame kamera / thread serial
+    private final AtomicLong cameraFrames = new AtomicLong();
+    private final AtomicLong lidarSamples = new AtomicLong();
+    private long windowStartMs = SystemClock.elapsedRealtime();
+    private int badWindows = 0;
+    private float lastCameraFps;
+    private float lastLidarHz;
+
+    /**
+     * Hitung jatah bus dari device yang terpasang (kamera berbagi sisa budget)
+     */
+    public synchronized void updateDevices(Collection<UsbDevice> devices) {
+        int cameras = 0;
+        long reserved = 0;
+        List<String> ids = new ArrayList<>();
+        if (devices != null) {
+            for (UsbDevice device : devices) {
+                ids.add(device.getVendorId() + ":" + device.getProductId());
+                int type = UsbDeviceClassifier.classify(device);
+                if ((type & UsbDeviceClassifier.TYPE_VIDEO) != 0) {
+                    cameras++;
+                    if ((type & UsbDeviceClassifier.TYPE_AUDIO) != 0) {
+                        reserved += AUDIO_RESERVE_BYTES_PER_SEC;
+                    }
+                } else if ((type & UsbDeviceClassifier.TYPE_SERIAL) != 0) {
+                    reserved += SERIAL_RESERVE_BYTES_PER_SEC;
+                } else if ((type & UsbDeviceClassifier.TYPE_AUDIO) != 0) {
+                    reserved += AUDIO_RESERVE_BYTES_PER_SEC;
+                }
+            }
+        }
+        cameraCount = Math.max(1, cameras);
+        reservedBytesPerSec = reserved;
+        Collections.sort(ids);
+        // Rangkaian lain (kamera/LiDAR/hub diganti): level hasil ukur lama tidak berlaku lagi
+        if (devices == null) {
+            return;
+        }
+        if (lastDeviceIds != null && !ids.equals(lastDeviceIds) && level > 0) {
+            Log.i(TAG, "USB devices changed " + lastDeviceIds + " -> " + ids + ", back to level 0");
+            reset();
+        }
+        lastDeviceIds = ids;
+    }
+
+    /**
+     * Sample rate LiDAR yang diharapkan; 0 kalau LiDAR tidak lewat USB (tidak diukur)
+     */
+    public void setExpectedLidarRate(int hz) {
+        expectedLidarHz = hz;
+        resetWindow();
+    }
+
+    /**
+     * Budget isochronous untuk satu kamera pada level sekarang [bytes/s]
+     */
+    public synchronized long getCameraBudget() {
+        return budgetAt(level);
+    }
+
+    private long budgetAt(int level) {
+        long periodic = (long) (BUS_BYTES_PER_SEC * PERIODIC_SHARE) - reservedBytesPerSec;
+        long perCamera = (long) (periodic * HEADROOM[level]) / cameraCount;
+        return Math.max(0, Math.min(perCamera, ENDPOINT_MAX_BYTES_PER_SEC));
+    }
+
+    /**
+     * Pilih mode terbaik (resolusi terbesar, lalu fps tertinggi) yang muat di budget.
+     *
+     * @param formatType UVCFormatModel.TYPE_MJPEG / TYPE_UNCOMPRESSED
+     * @return null kalau tidak ada mode yang cocok (model kosong atau budget terlalu kecil)
+     */
+    public synchronized Plan plan(UVCFormatModel model, int formatType, int minWidth, int minHeight,
+                                  int maxWidth, int maxHeight, int maxFps) {
+        lastModel = model;
+        lastFormatType = formatType;
+        lastMinWidth = minWidth;
+        lastMinHeight = minHeight;
+        lastMaxWidth = maxWidth;
+        lastMaxHeight = maxHeight;
+        lastMaxFps = maxFps;
+        Plan plan = select(level);
+        if (plan == null) {
+            return null;
+        }
+        currentPlan = plan;
+        resetWindow();
+        Log.i(TAG, "Plan: " + plan + ", budget " + (getCameraBudget() / 1000) + " kB/s, "
+                + cameraCount + " camera(s), reserved " + (reservedBytesPerSec / 1000) + " kB/s");
+        return plan;
+    }
+
+    /**
+     * Apakah ukuran ini boleh dicoba sebagai fallback kalau mode rencana gagal: setelah
+     * downgrade hanya ukuran sampai sebesar mode rencana, bukan daftar penuh lagi
+     */
+    public synchronized boolean allowsFallback(int width, int height) {
+        Plan plan = currentPlan;
+        return level == 0 || plan == null || (long) width * height <= (long) plan.width * plan.height;
+    }
+
+    // Mode terbaik untuk argumen plan() terakhir pada level tertentu, tanpa efek samping
+    private Plan select(int level) {
+        UVCFormatModel model = lastModel;
+        int formatType = lastFormatType;
+        if (model == null || model.isEmpty()) {
+            return null;
+        }
+        long budget = budgetAt(level);
+        UVCFormatModel.FrameMode best = null;
+        int bestFps = 0;
+        for (UVCFormatModel.FrameMode mode : model.getFrameModes(formatType)) {
+            if (mode.width < lastMinWidth || mode.height < lastMinHeight
+                    || mode.width > lastMaxWidth || mode.height > lastMaxHeight) {
+                continue;
+            }
+            int fps = fastestFpsWithin(mode, lastMaxFps, budget);
+            if (fps <= 0) {
+                continue;
+            }
+            long area = (long) mode.width * mode.height;
+            long bestArea = best == null ? -1 : (long) best.width * best.height;
+            if (area > bestArea || (area == bestArea && fps > bestFps)) {
+                best = mode;
+                bestFps = fps;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        long bytesPerSec = best.getBandwidth(bestFps);
+        // Factor dihitung terhadap payload maksimal endpoint (MJPEG umumnya meminta maksimal)
+        float factor = (float) Math.min(1.0, bytesPerSec * FACTOR_MARGIN / ENDPOINT_MAX_BYTES_PER_SEC);
+        factor = Math.max(MIN_BANDWIDTH_FACTOR, factor);
+        return new Plan(best.width, best.height, formatType, bestFps, factor, bytesPerSec, level);
+    }
+
+    // fps tertinggi <= maxFps yang didukung mode dan muat di budget; 0 kalau tidak ada
+    private static int fastestFpsWithin(UVCFormatModel.FrameMode mode, int maxFps, long budget) {
+        float[] rates = mode.getFps();
+        if (rates.length == 0) {
+            // Descriptor tanpa info interval: anggap maxFps
+            return mode.getBandwidth(maxFps) <= budget ? maxFps : 0;
+        }
+        int best = 0;
+        for (float rate : rates) {
+            int fps = (int) Math.min(maxFps, Math.floor(rate + 0.01f));
+            if (fps > best && mode.getBandwidth(fps) <= budget) {
+                best = fps;
+            }
+        }
+        // Rentang kontinu: coba turun sampai min fps mode
+        if (best == 0 && mode.continuous) {
+            for (int fps = Math.min(maxFps, (int) mode.getMaxFps()); fps >= Math.max(1, mode.getMinFps()); fps--) {
+                if (mode.getBandwidth(fps) <= budget) {
+                    return fps;
+                }
+            }
+        }
+        return best;
+    }
+
+    public Plan getCurrentPlan() {
+        return currentPlan;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public float getLastCameraFps() {
+        return lastCameraFps;
+    }
+
+    public float getLastLidarHz() {
+        return lastLidarHz;
+    }
+
+    /**
+     * Kembali ke level terbaik, mis. setelah rangkaian USB diganti
+     */
+    public synchronized void reset() {
+        level = 0;
+        badWindows = 0;
+        resetWindow();
+    }
+
+    /** Satu frame kamera diterima (thread frame native) */
+    public void onCameraFrame() {
+        cameraFrames.incrementAndGet();
+    }
+
+    /** Satu sampel LiDAR valid diterima (thread serial) */
+    public void onLidarSample() {
+        lidarSamples.incrementAndGet();
+    }
+
+    /**
+     * Tutup jendela ukur. Dipanggil berkala (EVALUATE_INTERVAL_MS) selama preview berjalan.
+     *
+     * @return true kalau level turun dan mode perlu dipilih ulang lewat plan()
+     */
+    public synchronized boolean evaluate() {
+        long now = SystemClock.elapsedRealtime();
+        long elapsedMs = now - windowStartMs;
+        if (elapsedMs < EVALUATE_INTERVAL_MS / 2) {
+            return false;
+        }
+        long frames = cameraFrames.getAndSet(0);
+        long samples = lidarSamples.getAndSet(0);
+        windowStartMs = now;
+        lastCameraFps = frames * 1000f / elapsedMs;
+        lastLidarHz = samples * 1000f / elapsedMs;
+
+        Plan plan = currentPlan;
+        int lidarHz = expectedLidarHz;
+        // Tidak ada sampel sama sekali = LiDAR belum/tidak tersambung, bukan kelaparan bus
+        boolean lidarLoss = lidarHz > 0 && samples > 0
+                && lastLidarHz < lidarHz * (1.0 - LIDAR_LOSS_TOLERANCE);
+        if (!lidarLoss) {
+            badWindows = 0;
+            return false;
+        }
+        badWindows++;
+        Log.w(TAG, String.format(java.util.Locale.US, "Window %d bad: camera %.1f/%d fps, LiDAR %.1f/%d Hz",
+                badWindows, lastCameraFps, plan != null ? plan.fps : 0, lastLidarHz, lidarHz));
+        if (badWindows < BAD_WINDOWS_BEFORE_DOWNGRADE || level >= HEADROOM.length - 1) {
+            return false;
+        }
+        badWindows = 0;
+        // Lewati level yang menghasilkan mode yang sama: restart tanpa perubahan hanya
+        // membuang dua jendela buruk lagi
+        for (int next = level + 1; next < HEADROOM.length; next++) {
+            Plan candidate = select(next);
+            if (candidate == null) {
+                break;
+            }
+            if (!candidate.sameMode(plan)) {
+                level = next;
+                Log.i(TAG, "Downgrading to level " + level + " (budget x" + HEADROOM[level] + "): " + candidate);
+                return true;
+            }
+        }
+        Log.w(TAG, "No smaller mode fits a lower budget, keeping " + plan);
+        return false;
+    }
+
+    private synchronized void resetWindow() {
+        cameraFrames.set(0);
+        lidarSamples.set(0);
+        windowStartMs = SystemClock.elapsedRealtime();
+        badWindows = 0;
+    }
+}
@@ -11,12 +11,14 @@ import android.hardware.usb.UsbManager;
 import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.hoho.android.usbserial.driver.UsbSerialDriver;
 import com.hoho.android.usbserial.driver.UsbSerialPort;
 import com.hoho.android.usbserial.driver.UsbSerialProber;
 import com.hoho.android.usbserial.util.SerialInputOutputManager;
+import com.jiangdg.usb.UsbDeviceClassifier;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -28,6 +30,8 @@ public class UsbSerialLidarReader implements SerialInputOutputManager.Listener {
     private static final String TAG = "UsbSerialLidarReader";
     private static final String ACTION_USB_PERMISSION = "com.capstone.cattleweight.USB_PERMISSION";
     private static final int BAUD_RATE = 115200;
+    // TF-Luna factory output rate
+    public static final int DEFAULT_FRAME_RATE_HZ = 100;
     
     private final Context context;
     private final LidarDataCallback callback;
@@ -35,8 +39,13 @@ public class UsbSerialLidarReader implements SerialInputOutputManager.Listener {
     private UsbManager usbManager;
     private UsbSerialPort serialPort;
     private SerialInputOutputManager ioManager;
-    private boolean isConnected = false;
+    private volatile boolean isConnected = false;
     private boolean receiverRegistered = false;
+    private UsbDevice pendingDevice;
+    // Reading was started by the user: errors/detach start the reconnect supervisor
+    private volatile boolean wantReading = false;
+    private boolean reconnectPrompted = false;
+    private final ReconnectSupervisor reconnect;
     
     private byte[] buffer = new byte[9];
     private int bufferIndex = 0;
@@ -45,26 +54,34 @@ public class UsbSerialLidarReader implements SerialInputOutputManager.Listener {
         @Override
         public void onReceive(Context context, Intent intent) {
             String action = intent.getAction();
-            if (ACTION_USB_PERMISSION.equals(action)) {
+            if (UsbManager.ACTION_USB_DEVICE_ATTACHED.equals(action)) {
+                // Replugged: reconnect now instead of waiting for the next backoff step
+                reconnect.attemptNow();
+            } else if (UsbManager.ACTION_USB_DEVICE_DETACHED.equals(action)) {
+                UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+                if (device != null && isConnected && isLidarDevice(device)) {
+                    Log.w(TAG, "LiDAR detached");
+                    disconnect();
+                    startReconnect();
+                }
+            } else if (ACTION_USB_PERMISSION.equals(action)) {
                 synchronized (this) {
                     UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
                     if (intent.getBooleanExtra(UsbManager.EXTRA_PERMISSION_GRANTED, false)) {
                         if (device != null) {
-                            // Only connect to USB Serial devices (LiDAR)
+                            // Only connect to the USB Serial device we asked for (LiDAR)
                             // Ignore UVC cameras (GroundChat)
-                            String productName = device.getProductName();
-                            if (productName != null && productName.toLowerCase().contains("serial")) {
+                            if (isLidarDevice(device)) {
                                 connectToDevice(device);
                             } else {
-                                Log.d(TAG, "Ignoring non-serial USB device: " + productName);
+                                Log.d(TAG, "Ignoring non-serial USB device: " + device.getProductName());
                             }
                         }
                     } else {
                         UsbDevice device2 = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
-                        String deviceName = device2 != null ? device2.getProductName() : "unknown";
                         // Only log error for serial devices
-                        if (deviceName != null && deviceName.toLowerCase().contains("serial")) {
-                            Log.e(TAG, "USB permission denied for: " + deviceName);
+                        if (device2 != null && isLidarDevice(device2)) {
+                            Log.e(TAG, "USB permission denied for: " + device2.getProductName());
                             callback.onConnectionStatusChanged(false);
                             callback.onError("USB permission denied");
                         }
@@ -84,6 +101,17 @@ public class UsbSerialLidarReader implements SerialInputOutputManager.Listener {
         this.context = context;
         this.callback = callback;
         this.usbManager = (UsbManager) context.getSystemService(Context.USB_SERVICE);
+        this.reconnect = new ReconnectSupervisor(TAG, this::tryReconnect, new ReconnectSupervisor.Listener() {
+            @Override
+            public void onReconnected(long elapsedMs, int attempts) {
+                Log.i(TAG, "LiDAR recovered in " + elapsedMs + " ms");
+            }
+            
+            @Override
+            public void onGaveUp(int attempts) {
+                callback.onError("LiDAR USB lost. Please reconnect the cable.");
+            }
+        });
     }
     
     public void startReading() {
@@ -96,13 +124,17 @@ public class UsbSerialLidarReader implements SerialInputOutputManager.Listener {
             }
         }
         
-        // Register USB receiver
+        // Register USB receiver (permission result + hot-plug)
+        IntentFilter filter = new IntentFilter(ACTION_USB_PERMISSION);
+        filter.addAction(UsbManager.ACTION_USB_DEVICE_ATTACHED);
+        filter.addAction(UsbManager.ACTION_USB_DEVICE_DETACHED);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-            context.registerReceiver(usbReceiver, new IntentFilter(ACTION_USB_PERMISSION), Context.RECEIVER_NOT_EXPORTED);
+            context.registerReceiver(usbReceiver, filter, Context.RECEIVER_NOT_EXPORTED);
         } else {
-            context.registerReceiver(usbReceiver, new IntentFilter(ACTION_USB_PERMISSION));
+            context.registerReceiver(usbReceiver, filter);
         }
         receiverRegistered = true;
+        wantReading = true;
         
         // Find USB serial devices
         List<UsbSerialDriver> availableDrivers = UsbSerialProber.getDefaultProber().findAllDrivers(usbManager);
@@ -114,11 +146,26 @@ public class UsbSerialLidarReader implements SerialInputOutputManager.Listener {
             return;
         }
         
-        // Use first device (LiDAR)
-        UsbSerialDriver driver = availableDrivers.get(0);
-        UsbDevice device = driver.getDevice();
+        // Use the serial device (LiDAR), never a camera that also matched a driver
+        UsbDevice device = findLidarDevice(availableDrivers);
+        if (device == null) {
+            Log.e(TAG, "No USB serial device found");
+            callback.onError("No USB device connected. Please connect LiDAR via USB OTG.");
+            callback.onConnectionStatusChanged(false);
+            return;
+        }
+        pendingDevice = device;
         
-        // Request permission
+        // Already granted - connect without another prompt
+        if (usbManager.hasPermission(device)) {
+            connectToDevice(device);
+            return;
+        }
+        
+        requestPermission(device);
+    }
+    
+    private void requestPermission(UsbDevice device) {
         int flags = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S ? 
                 PendingIntent.FLAG_MUTABLE : PendingIntent.FLAG_ONE_SHOT;
         PendingIntent permissionIntent = PendingIntent.getBroadcast(context, 0, 
@@ -126,7 +173,74 @@ public class UsbSerialLidarReader implements SerialInputOutputManager.Listener {
         usbManager.requestPermission(device, permissionIntent);
     }
     
+    private void startReconnect() {
+        if (wantReading) {
+            reconnectPrompted = false;
+            reconnect.start();
+        }
+    }
+    
+    /**
+     * Reconnect attempt (main thread): reuse the granted permission, prompt at most once
+     */
+    private boolean tryReconnect(int attempt) {
+        if (isConnected) {
+            return true;
+        }
+        UsbDevice device = findLidarDevice(UsbSerialProber.getDefaultProber().findAllDrivers(usbManager));
+        if (device == null) {
+            return false;
+        }
+        pendingDevice = device;
+        if (usbManager.hasPermission(device)) {
+            connectToDevice(device);
+            return isConnected;
+        }
+        if (!reconnectPrompted) {
+            reconnectPrompted = true;
+            requestPermission(device);
+        }
+        return true;
+    }
+    
+    /**
+     * Output rate of the sensor. The app does not reconfigure the TF-Luna,
+     * so this is the factory rate it comes back with after every reconnect.
+     */
+    public int getFrameRate() {
+        return DEFAULT_FRAME_RATE_HZ;
+    }
+    
+    /**
+     * Pilih device serial (CDC/vendor bulk) dari driver yang ditemukan,
+     * berdasarkan descriptor interface - bukan nama produk
+     */
+    private UsbDevice findLidarDevice(List<UsbSerialDriver> drivers) {
+        UsbDevice fallback = null;
+        for (UsbSerialDriver driver : drivers) {
+            UsbDevice device = driver.getDevice();
+            int type = UsbDeviceClassifier.classify(device);
+            if ((type & UsbDeviceClassifier.TYPE_SERIAL) != 0) {
+                return device;
+            }
+            if (fallback == null && (type & UsbDeviceClassifier.TYPE_VIDEO) == 0) {
+                fallback = device;
+            }
+        }
+        return fallback;
+    }
+    
+    private boolean isLidarDevice(UsbDevice device) {
+        if (pendingDevice != null) {
+            return pendingDevice.getDeviceId() == device.getDeviceId();
+        }
+        return UsbDeviceClassifier.isSerial(device);
+    }
+    
     private void connectToDevice(UsbDevice device) {
+        if (isConnected) {
+            return;  // reconnect attempt and permission result can both arrive
+        }
         // Find driver for THIS specific device
         List<UsbSerialDriver> availableDrivers = UsbSerialProber.getDefaultProber().findAllDrivers(usbManager);
         
@@ -163,6 +277,7 @@ public class UsbSerialLidarReader implements SerialInputOutputManager.Listener {
             
             isConnected = true;
             callback.onConnectionStatusChanged(true);
+            reconnect.onConnected();
             Log.d(TAG, "USB Serial connected successfully");
             
         } catch (IOException e) {
@@ -220,6 +335,8 @@ public class UsbSerialLidarReader implements SerialInputOutputManager.Listener {
         // Create LidarData object with all required parameters
         LidarData lidarData = new LidarData(distance, strength, (double)temperature, 
                 System.currentTimeMillis(), "connected");
+        // Stamp arrival time here, before the main-thread hop, for frame pairing
+        lidarData.setReceivedNanos(SystemClock.elapsedRealtimeNanos());
         
         // Callback on main thread
         new Handler(Looper.getMainLooper()).post(() -> {
@@ -232,9 +349,12 @@ public class UsbSerialLidarReader implements SerialInputOutputManager.Listener {
         Log.e(TAG, "Serial communication error", e);
         callback.onError("Communication error: " + e.getMessage());
         disconnect();
+        startReconnect();
     }
     
     public void stopReading() {
+        wantReading = false;
+        reconnect.cancel();
         disconnect();
         if (receiverRegistered) {
             try {
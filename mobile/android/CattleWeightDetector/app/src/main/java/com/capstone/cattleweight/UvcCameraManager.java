@@ -6,19 +6,30 @@ import android.graphics.SurfaceTexture;
 import android.hardware.usb.UsbDevice;
 import android.hardware.usb.UsbManager;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
 import android.util.Log;
 import android.view.Surface;
 import android.view.TextureView;
 
 import com.jiangdg.usb.USBMonitor;
+import com.jiangdg.usb.UsbDeviceClassifier;
+import com.jiangdg.uvc.IFrameCallback;
 import com.jiangdg.uvc.UVCCamera;
+import com.jiangdg.uvc.UVCFormatModel;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * UVC Camera Manager with AndroidUSBCamera Library
  * Uses jiangdongguo/AndroidUSBCamera (native expects com.serenegiant but we use bridge)
+ *
+ * Semua operasi UVCCamera (open/preview/close/kontrol) dijalankan berurutan di satu
+ * camera thread; method publik hanya mengantre dan mengembalikan CompletableFuture,
+ * jadi UI thread tidak pernah menunggu panggilan native.
  */
 public class UvcCameraManager {
     
@@ -29,23 +40,66 @@ public class UvcCameraManager {
     private UVCCamera mUVCCamera;
     private TextureView mTextureView;
     private Surface mPreviewSurface;
-    private boolean mIsConnected = false;
-    private boolean mIsPreviewing = false;
+    private volatile State mState = State.CLOSED;
+    private HandlerThread mCameraThread;
+    private Handler mCameraHandler;
+    private boolean mReleased = false;
+    private final ReconnectSupervisor mReconnect;
+    // User turned the USB camera on: a detach starts the reconnect supervisor
+    private volatile boolean mWantCamera = false;
+    private volatile String mCameraDeviceName;
+    private boolean mReconnectPrompted = false;
     private UvcCameraCallback mCallback;
+    private volatile IFrameCallback mFrameCallback;
+    private volatile int mPreviewWidth = 0;
+    private volatile int mPreviewHeight = 0;
+    private final UvcModeCache mModeCache;
+    private String mDeviceKey;
+    private int mControls = CONTROLS_UNKNOWN;
+    // Optional: picks mode/fps/bandwidth factor and downgrades when the LiDAR loses samples
+    private volatile UsbBandwidthPlanner mBandwidthPlanner;
+    private final Runnable mEvaluateBandwidth = this::evaluateBandwidth;
     
     // Preview settings
     private static final int PREVIEW_WIDTH = 640;
     private static final int PREVIEW_HEIGHT = 480;
+    private static final int MIN_PREVIEW_WIDTH = 320;
+    private static final int MIN_PREVIEW_HEIGHT = 240;
+    private static final int MAX_PREVIEW_FPS = 30;
+    private static final int CONTROLS_UNKNOWN = -1;
+    
+    /**
+     * Camera lifecycle, only changed on the camera thread
+     */
+    public enum State {
+        CLOSED, OPENING, OPENED, PREVIEWING, CLOSING
+    }
     
     public interface UvcCameraCallback {
         void onCameraConnected();
         void onCameraDisconnected();
         void onCameraError(String error);
         void onPreviewStarted();
+        void onCameraReconnecting();
     }
     
     public UvcCameraManager(Context context) {
         mContext = context.getApplicationContext();
+        mModeCache = new UvcModeCache(mContext);
+        mReconnect = new ReconnectSupervisor(TAG, this::tryReconnect, new ReconnectSupervisor.Listener() {
+            @Override
+            public void onReconnected(long elapsedMs, int attempts) {
+                Log.i(TAG, "✅ USB camera recovered in " + elapsedMs + " ms");
+            }
+            
+            @Override
+            public void onGaveUp(int attempts) {
+                mWantCamera = false;
+                if (mCallback != null) {
+                    mCallback.onCameraDisconnected();
+                }
+            }
+        });
     }
     
     /**
@@ -68,15 +122,31 @@ public class UvcCameraManager {
                         mCallback.onCameraConnected()
                     );
                 }
+                // ...unless the camera was on and is being reconnected
+                mReconnect.attemptNow();
             }
             
             @Override
             public void onDetach(UsbDevice device) {
                 Log.i(TAG, "USB device detached: " + device.getProductName());
-                if (mUVCCamera != null) {
-                    closeCamera();
+                String cameraName = mCameraDeviceName;
+                if (cameraName != null && !cameraName.equals(device.getDeviceName())) {
+                    // e.g. the LiDAR serial adapter, camera keeps running
+                    Log.d(TAG, "Detached device is not the camera, ignoring");
+                    return;
+                }
+                closeAfterDisconnect();
+                if (mWantCamera) {
+                    // Loose cable: keep the USB view and reconnect without operator action
+                    mReconnectPrompted = false;
+                    mReconnect.start();
+                    if (mCallback != null) {
+                        new Handler(Looper.getMainLooper()).post(() -> 
+                            mCallback.onCameraReconnecting()
+                        );
+                    }
+                    return;
                 }
-                mIsConnected = false;
                 if (mCallback != null) {
                     new Handler(Looper.getMainLooper()).post(() -> 
                         mCallback.onCameraDisconnected()
@@ -93,12 +163,14 @@ public class UvcCameraManager {
             @Override
             public void onDisconnect(UsbDevice device, USBMonitor.UsbControlBlock ctrlBlock) {
                 Log.i(TAG, "USB device disconnected");
-                closeCamera();
+                closeAfterDisconnect();
             }
             
             @Override
             public void onCancel(UsbDevice device) {
                 Log.w(TAG, "USB permission cancelled for: " + device.getProductName());
+                mWantCamera = false;
+                mReconnect.cancel();
                 if (mCallback != null) {
                     new Handler(Looper.getMainLooper()).post(() -> 
                         mCallback.onCameraError("Permission denied for USB camera")
@@ -208,10 +280,13 @@ public class UvcCameraManager {
                 @Override
                 public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
                     Log.d(TAG, "SurfaceTexture available: " + width + "x" + height);
-                    mPreviewSurface = new Surface(surface);
-                    if (mUVCCamera != null && mIsConnected) {
-                        startPreviewInternal();
-                    }
+                    submit(() -> {
+                        mPreviewSurface = new Surface(surface);
+                        if (mState == State.OPENED) {
+                            startPreviewInternal();
+                        }
+                        return null;
+                    });
                 }
                 
                 @Override
@@ -222,11 +297,18 @@ public class UvcCameraManager {
                 @Override
                 public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
                     Log.d(TAG, "SurfaceTexture destroyed");
-                    if (mPreviewSurface != null) {
-                        mPreviewSurface.release();
-                        mPreviewSurface = null;
-                    }
-                    return true;
+                    // Stop drawing into the surface before releasing it; the texture is
+                    // released on the camera thread afterwards, so return false here
+                    submit(() -> {
+                        stopPreviewInternal();
+                        if (mPreviewSurface != null) {
+                            mPreviewSurface.release();
+                            mPreviewSurface = null;
+                        }
+                        surface.release();
+                        return null;
+                    });
+                    return false;
                 }
                 
                 @Override
@@ -238,49 +320,45 @@ public class UvcCameraManager {
     }
     
     /**
-     * Open UVC camera
+     * Open UVC camera (USBMonitor thread -> camera thread)
      */
-    private void openCamera(UsbDevice device, USBMonitor.UsbControlBlock ctrlBlock) {
+    private CompletableFuture<Void> openCamera(UsbDevice device, USBMonitor.UsbControlBlock ctrlBlock) {
+        return submit(() -> {
+            openCameraInternal(device, ctrlBlock);
+            return null;
+        });
+    }
+    
+    private void openCameraInternal(UsbDevice device, USBMonitor.UsbControlBlock ctrlBlock) {
         try {
-            // Validate device first - skip ONLY pure serial devices
+            // Validate device first - skip serial/audio-only devices
             if (device != null) {
                 int vendorId = device.getVendorId();
                 int productId = device.getProductId();
-                int deviceClass = device.getDeviceClass();
                 String productName = device.getProductName();
                 
+                // Raw descriptors (after permission) also show the UVC interface of
+                // hub-type cameras that Android reports with 0 interfaces
+                int type = ctrlBlock != null
+                        ? UsbDeviceClassifier.classify(ctrlBlock)
+                        : UsbDeviceClassifier.classify(device);
+                
                 Log.i(TAG, "🔍 Attempting to open device: " + productName);
                 Log.i(TAG, "   Vendor ID: " + vendorId + " (0x" + Integer.toHexString(vendorId) + ")");
                 Log.i(TAG, "   Product ID: " + productId + " (0x" + Integer.toHexString(productId) + ")");
-                Log.i(TAG, "   Device Class: " + deviceClass);
+                Log.i(TAG, "   Type: " + UsbDeviceClassifier.toString(type));
                 Log.i(TAG, "   Interface Count: " + device.getInterfaceCount());
                 
-                // ONLY skip CH340/CH341 USB Serial (pure serial, no video)
-                // VID 6790 (0x1A86) + Class 255 = Pure serial controller
-                // Don't show error - just skip silently and let library try other devices
-                if (vendorId == 6790 || vendorId == 0x1A86) {
-                    if (deviceClass == 255) {
-                        Log.i(TAG, "⏭️ Skipping USB Serial device (CH340 - for control, not video). Will try other devices...");
-                        return;  // Skip silently, don't call error callback
-                    }
-                }
-                
-                // IMPORTANT: Do NOT skip Class 9 (Hub)!
-                // Some USB cameras are COMBO devices:
-                //   - Top level: Class 9 Hub (VID:3585 PID:2)
-                //   - Child interface: Class 14 UVC Video (inside the hub)
-                // UVCCamera library can find UVC interface inside the hub automatically
-                
-                // ONLY skip other Class 255 devices (pure serial/vendor specific)
-                if (deviceClass == 255 && vendorId != 3585) {
-                    Log.i(TAG, "⏭️ Skipping Class 255 device (Vendor Specific). Will try other devices...");
-                    return;  // Skip silently
+                // Serial (LiDAR CH340) or audio-only device - skip silently,
+                // don't call error callback
+                if (!UsbDeviceClassifier.mayBeCamera(type)) {
+                    Log.i(TAG, "⏭️ Skipping non-camera USB device (" + UsbDeviceClassifier.toString(type) + ")");
+                    return;
                 }
                 
                 Log.i(TAG, "✅ Device validation passed. Proceeding to open...");
                 
-                // Device Class 9 (Hub) is OK - might contain UVC interface inside
-                // Device Class 14 (Video) is OK - direct UVC camera
+                // Hub/unknown type is OK - might contain UVC interface inside
                 // Let UVCCamera library handle interface detection
             }
             
@@ -315,24 +393,22 @@ public class UvcCameraManager {
             Log.i(TAG, "✅ Opening UVC camera with UsbControlBlock...");
             
             // CRITICAL FIX: Close previous camera instance if exists
-            if (mUVCCamera != null) {
+            if (mState != State.CLOSED) {
                 Log.w(TAG, "⚠️ Camera already exists! Closing previous instance first...");
-                try {
-                    mUVCCamera.close();
-                    mUVCCamera.destroy();
-                } catch (Exception e) {
-                    Log.e(TAG, "Error closing previous camera", e);
-                }
-                mUVCCamera = null;
-                mIsConnected = false;
+                closeCameraInternal();
             }
             
+            mDeviceKey = ctrlBlock.getDeviceKeyNameWithSerial();
+            mControls = CONTROLS_UNKNOWN;
+            moveTo(State.OPENING);
             mUVCCamera = new UVCCamera();
             
             // AndroidUSBCamera's open() throws exception if fails
             mUVCCamera.open(ctrlBlock);
             
-            mIsConnected = true;
+            moveTo(State.OPENED);
+            mWantCamera = true;
+            mCameraDeviceName = device != null ? device.getDeviceName() : null;
             Log.i(TAG, "UVC camera opened successfully!");
             
             if (mCallback != null) {
@@ -341,12 +417,14 @@ public class UvcCameraManager {
                 );
             }
             
-            // Start preview if surface is ready
+            // Start preview if surface is ready (cached mode makes this one negotiation)
             if (mPreviewSurface != null) {
                 startPreviewInternal();
             }
+            mReconnect.onConnected();
             
         } catch (UnsupportedOperationException e) {
+            abortOpen();
             String errorMsg = e.getMessage();
             Log.e(TAG, "❌ Camera not supported: " + errorMsg, e);
             
@@ -384,6 +462,7 @@ public class UvcCameraManager {
                 );
             }
         } catch (Exception e) {
+            abortOpen();
             Log.e(TAG, "Error opening camera", e);
             if (mCallback != null) {
                 new Handler(Looper.getMainLooper()).post(() -> 
@@ -394,27 +473,50 @@ public class UvcCameraManager {
     }
     
     /**
-     * Start camera preview
+     * Open failed halfway: drop the native handle so no stale camera is left
      */
-    public void startPreview() {
-        if (!mIsConnected || mUVCCamera == null) {
-            Log.w(TAG, "Cannot start preview - camera not connected");
-            return;
+    private void abortOpen() {
+        if (mUVCCamera != null) {
+            try {
+                mUVCCamera.destroy();
+            } catch (Exception e) {
+                Log.e(TAG, "Error destroying camera after failed open", e);
+            }
+            mUVCCamera = null;
         }
-        
-        if (mPreviewSurface == null) {
-            Log.w(TAG, "Preview surface not ready yet");
-            return;
+        if (mState == State.OPENING) {
+            moveTo(State.CLOSED);
         }
-        
-        startPreviewInternal();
     }
     
-    private void startPreviewInternal() {
+    /**
+     * Start camera preview
+     *
+     * @return completes with true once preview runs, false if it could not start
+     */
+    public CompletableFuture<Boolean> startPreview() {
+        return submit(() -> {
+            if (mState == State.PREVIEWING) {
+                return true;
+            }
+            if (mState != State.OPENED) {
+                Log.w(TAG, "Cannot start preview - camera not connected");
+                return false;
+            }
+            if (mPreviewSurface == null) {
+                Log.w(TAG, "Preview surface not ready yet");
+                return false;
+            }
+            return startPreviewInternal();
+        });
+    }
+    
+    private boolean startPreviewInternal() {
         if (mUVCCamera == null || mPreviewSurface == null) {
             Log.w(TAG, "Cannot start preview - camera or surface not ready");
-            return;
+            return false;
         }
+        boolean previewStarted = false;
         
         try {
             // Set preview surface
@@ -422,7 +524,6 @@ public class UvcCameraManager {
             Log.d(TAG, "Preview display set");
             
             // Try different formats and resolutions for better compatibility
-            boolean previewStarted = false;
             
             // CRITICAL FIX: ONLY use MJPEG (YUYV causes green tint issue)
             // MJPEG = compressed, full color, better for GroundChat
@@ -434,71 +535,61 @@ public class UvcCameraManager {
                 {1920, 1080}  // Full HD - if supported
             };
             
+            // Descriptor model parsed at open(): skip sizes the camera does not advertise
+            UVCFormatModel formatModel = mUVCCamera.getFormatModel();
+            UvcModeCache.Mode cached = mModeCache.get(mDeviceKey);
+            
+            // Bandwidth plan first: mode and factor sized to leave room for the LiDAR on the hub
+            UsbBandwidthPlanner planner = mBandwidthPlanner;
+            if (planner != null) {
+                planner.updateDevices(mUSBMonitor != null ? mUSBMonitor.getDeviceList() : null);
+                UsbBandwidthPlanner.Plan plan = planner.plan(formatModel, UVCFormatModel.TYPE_MJPEG,
+                        MIN_PREVIEW_WIDTH, MIN_PREVIEW_HEIGHT, PREVIEW_WIDTH, PREVIEW_HEIGHT, MAX_PREVIEW_FPS);
+                if (plan != null) {
+                    previewStarted = tryStartPreview(plan.width, plan.height, UVCCamera.FRAME_FORMAT_MJPEG,
+                            cached != null ? cached.controls : mControls, plan.fps, plan.bandwidthFactor);
+                }
+                if (previewStarted) {
+                    mModeCache.put(mDeviceKey, new UvcModeCache.Mode(plan.width, plan.height, 
+                            UVCCamera.FRAME_FORMAT_MJPEG, mControls));
+                    scheduleBandwidthEvaluation();
+                    return true;
+                }
+                Log.w(TAG, "Planned mode failed, falling back to fixed resolutions");
+            }
+            
+            // Known-good mode for this device goes first: a reconnect needs one negotiation.
+            // After a bandwidth downgrade only sizes up to the planned one are tried.
+            if (cached != null && (planner == null || planner.allowsFallback(cached.width, cached.height))) {
+                Log.i(TAG, "Cached mode for " + mDeviceKey + ": " + cached.width + "x" + cached.height);
+                previewStarted = tryStartPreview(cached.width, cached.height, cached.format, cached.controls);
+                if (!previewStarted) {
+                    Log.w(TAG, "Cached mode failed, negotiating again");
+                    mModeCache.remove(mDeviceKey);
+                }
+            }
+            
+            // Controls are per camera, not per resolution: probe them once, then reuse
             for (int format : formats) {
                 if (previewStarted) break;
                 
                 for (int[] res : resolutions) {
-                    try {
-                        Log.d(TAG, "Trying " + res[0] + "x" + res[1] + " format=MJPEG");
-                        
-                        mUVCCamera.setPreviewSize(res[0], res[1], format);
-                        
-                        // Camera settings for better image quality
-                        try {
-                            // MAXIMUM BRIGHTNESS FIX for very dark camera
-                            // Range: 0-255 (255 = BRIGHTEST possible)
-                            mUVCCamera.setBrightness(255); // MAXIMUM!
-                            
-                            // Maximum contrast for better visibility
-                            mUVCCamera.setContrast(200);   // Very high contrast
-                            
-                            // Saturation (color intensity)
-                            try {
-                                mUVCCamera.setSaturation(150); // Boost colors
-                            } catch (Exception se) {
-                                Log.w(TAG, "Saturation not supported");
-                            }
-                            
-                            // Sharpness
-                            try {
-                                mUVCCamera.setSharpness(150); // Sharper image
-                            } catch (Exception se) {
-                                Log.w(TAG, "Sharpness not supported");
-                            }
-                            
-                            // Gain (amplify signal - makes brighter but may add noise)
-                            try {
-                                mUVCCamera.setGain(200); // High gain for brightness
-                            } catch (Exception se) {
-                                Log.w(TAG, "Gain not supported");
-                            }
-                            
-                            // Auto settings
-                            mUVCCamera.setAutoWhiteBlance(true);
-                            mUVCCamera.setAutoFocus(true);
-                            
-                            Log.i(TAG, "✅ Camera settings applied: MAXIMUM BRIGHTNESS (255), Contrast=200, Gain=200");
-                        } catch (Exception e) {
-                            Log.w(TAG, "Some camera settings not supported: " + e.getMessage());
-                        }
-                        
-                        // Start preview
-                        mUVCCamera.startPreview();
-                        
-                        previewStarted = true;
-                        mIsPreviewing = true;
-                        Log.i(TAG, "✅ Preview started: " + res[0] + "x" + res[1] + " format=MJPEG");
-                        
-                        if (mCallback != null) {
-                            new Handler(Looper.getMainLooper()).post(() -> 
-                                mCallback.onPreviewStarted()
-                            );
-                        }
+                    if (cached != null && cached.width == res[0] && cached.height == res[1] 
+                            && cached.format == format) {
+                        continue;  // Already tried above
+                    }
+                    if (planner != null && !planner.allowsFallback(res[0], res[1])) {
+                        continue;
+                    }
+                    if (!formatModel.isEmpty() && !formatModel.isSupported(
+                            UVCCamera.toFormatType(format), res[0], res[1])) {
+                        Log.d(TAG, "Skipping " + res[0] + "x" + res[1] + " (not in descriptors)");
+                        continue;
+                    }
+                    previewStarted = tryStartPreview(res[0], res[1], format, mControls);
+                    if (previewStarted) {
+                        mModeCache.put(mDeviceKey, new UvcModeCache.Mode(res[0], res[1], format, mControls));
                         break;
-                        
-                    } catch (Exception e) {
-                        Log.w(TAG, "Failed with " + res[0] + "x" + res[1] + ": " + e.getMessage());
-                        // Try next resolution
                     }
                 }
             }
@@ -515,52 +606,209 @@ public class UvcCameraManager {
                 );
             }
         }
+        return previewStarted;
+    }
+    
+    /**
+     * One negotiation: set preview size, apply controls, start preview.
+     *
+     * @param knownControls controls known to be accepted, or CONTROLS_UNKNOWN to probe them
+     */
+    private boolean tryStartPreview(int width, int height, int format, int knownControls) {
+        return tryStartPreview(width, height, format, knownControls, 
+                UVCCamera.DEFAULT_PREVIEW_MAX_FPS, UVCCamera.DEFAULT_BANDWIDTH);
+    }
+    
+    private boolean tryStartPreview(int width, int height, int format, int knownControls, 
+                                    int maxFps, float bandwidthFactor) {
+        try {
+            Log.d(TAG, "Trying " + width + "x" + height + "@" + maxFps + " format=MJPEG bandwidth=" + bandwidthFactor);
+            
+            mUVCCamera.setPreviewSize(width, height, UVCCamera.DEFAULT_PREVIEW_MIN_FPS, maxFps, 
+                    format, bandwidthFactor);
+            
+            if (knownControls == CONTROLS_UNKNOWN) {
+                mControls = probeControls();
+            } else {
+                mControls = knownControls;
+                applyControls(mControls);
+            }
+            
+            // NV21 frame callback (stopPreview clears it, so set it every start)
+            if (mFrameCallback != null || mBandwidthPlanner != null) {
+                mUVCCamera.setFrameCallback(this::onFrame, UVCCamera.PIXEL_FORMAT_NV21);
+            }
+            
+            // Start preview
+            mUVCCamera.startPreview();
+            
+            moveTo(State.PREVIEWING);
+            mPreviewWidth = width;
+            mPreviewHeight = height;
+            Log.i(TAG, "✅ Preview started: " + width + "x" + height + " format=MJPEG");
+            
+            if (mCallback != null) {
+                new Handler(Looper.getMainLooper()).post(() -> 
+                    mCallback.onPreviewStarted()
+                );
+            }
+            return true;
+            
+        } catch (Exception e) {
+            Log.w(TAG, "Failed with " + width + "x" + height + ": " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Camera settings for better image quality; returns the controls the device supports.
+     * The setters never throw for unsupported controls, so support comes from the
+     * descriptor flags (checkSupportFlag), not from try/catch.
+     */
+    private int probeControls() {
+        int accepted = 0;
+        if (mUVCCamera.checkSupportFlag(UVCCamera.PU_BRIGHTNESS)) accepted |= UvcModeCache.CONTROL_BRIGHTNESS;
+        if (mUVCCamera.checkSupportFlag(UVCCamera.PU_CONTRAST)) accepted |= UvcModeCache.CONTROL_CONTRAST;
+        if (mUVCCamera.checkSupportFlag(UVCCamera.PU_SATURATION)) accepted |= UvcModeCache.CONTROL_SATURATION;
+        if (mUVCCamera.checkSupportFlag(UVCCamera.PU_SHARPNESS)) accepted |= UvcModeCache.CONTROL_SHARPNESS;
+        if (mUVCCamera.checkSupportFlag(UVCCamera.PU_GAIN)) accepted |= UvcModeCache.CONTROL_GAIN;
+        if (mUVCCamera.checkSupportFlag(UVCCamera.PU_WB_TEMP_AUTO)) accepted |= UvcModeCache.CONTROL_AUTO_WHITE_BALANCE;
+        if (mUVCCamera.checkSupportFlag(UVCCamera.CTRL_FOCUS_AUTO)) accepted |= UvcModeCache.CONTROL_AUTO_FOCUS;
+
+        if (accepted == 0) {
+            // Flags can still be empty just after open: apply everything, probe again next time
+            Log.w(TAG, "Control support flags not available yet");
+            applyControls(~0);
+            return CONTROLS_UNKNOWN;
+        }
+
+        // MAXIMUM BRIGHTNESS (255), high contrast/gain for the very dark camera
+        applyControls(accepted);
+        Log.i(TAG, "✅ Camera settings applied, supported controls=0x" + Integer.toHexString(accepted));
+        return accepted;
+    }
+    
+    /**
+     * Apply only the controls this device is known to accept (no failing USB round trips)
+     */
+    private void applyControls(int controls) {
+        try {
+            if ((controls & UvcModeCache.CONTROL_BRIGHTNESS) != 0) mUVCCamera.setBrightness(255);
+            if ((controls & UvcModeCache.CONTROL_CONTRAST) != 0) mUVCCamera.setContrast(200);
+            if ((controls & UvcModeCache.CONTROL_SATURATION) != 0) mUVCCamera.setSaturation(150);
+            if ((controls & UvcModeCache.CONTROL_SHARPNESS) != 0) mUVCCamera.setSharpness(150);
+            if ((controls & UvcModeCache.CONTROL_GAIN) != 0) mUVCCamera.setGain(200);
+            if ((controls & UvcModeCache.CONTROL_AUTO_WHITE_BALANCE) != 0) mUVCCamera.setAutoWhiteBlance(true);
+            if ((controls & UvcModeCache.CONTROL_AUTO_FOCUS) != 0) mUVCCamera.setAutoFocus(true);
+        } catch (Exception e) {
+            Log.w(TAG, "Some camera settings not supported: " + e.getMessage());
+        }
     }
     
     /**
      * Stop camera preview
      */
-    public void stopPreview() {
-        if (mUVCCamera != null && mIsPreviewing) {
+    public CompletableFuture<Void> stopPreview() {
+        return submit(() -> {
+            stopPreviewInternal();
+            return null;
+        });
+    }
+    
+    private void stopPreviewInternal() {
+        Handler handler = mCameraHandler;
+        if (handler != null) {
+            handler.removeCallbacks(mEvaluateBandwidth);
+        }
+        if (mUVCCamera != null && mState == State.PREVIEWING) {
             try {
                 mUVCCamera.stopPreview();
-                mIsPreviewing = false;
                 Log.i(TAG, "Preview stopped");
             } catch (Exception e) {
                 Log.e(TAG, "Error stopping preview", e);
             }
+            moveTo(State.OPENED);
         }
     }
     
     /**
-     * Close camera (public method for external calls)
+     * Close camera (public method for external calls); also stops auto reconnect
+     */
+    public CompletableFuture<Void> closeCamera() {
+        mWantCamera = false;
+        mReconnect.cancel();
+        return closeAfterDisconnect();
+    }
+    
+    /**
+     * Close after the device went away, keeps the reconnect intent
      */
-    public void closeCamera() {
+    private CompletableFuture<Void> closeAfterDisconnect() {
+        return submit(() -> {
+            closeCameraInternal();
+            return null;
+        });
+    }
+    
+    /**
+     * Reconnect attempt (main thread): reopen the camera with the permission we
+     * still hold, the cached mode then restores the previous preview
+     */
+    private boolean tryReconnect(int attempt) {
+        USBMonitor monitor = mUSBMonitor;
+        if (monitor == null) {
+            return false;
+        }
+        State state = mState;
+        if (state == State.OPENING) {
+            return true;
+        }
+        if (state != State.CLOSED) {
+            return false;  // previous close still queued
+        }
+        UsbDevice device = findCameraDevice(monitor.getDeviceList());
+        if (device == null) {
+            return false;
+        }
+        if (monitor.hasPermission(device)) {
+            // Opens directly, no dialog
+            monitor.requestPermission(device);
+        } else if (!mReconnectPrompted) {
+            // Replug lost the grant: ask once, not on every backoff step
+            mReconnectPrompted = true;
+            monitor.requestPermission(device);
+        }
+        return true;
+    }
+    
+    private void closeCameraInternal() {
+        if (mState == State.CLOSED) {
+            Log.d(TAG, "Camera already closed or was never opened");
+            return;
+        }
         Log.i(TAG, "Closing UVC camera...");
-        stopPreview();
+        mCameraDeviceName = null;
+        stopPreviewInternal();
+        moveTo(State.CLOSING);
         
         if (mUVCCamera != null) {
             try {
                 mUVCCamera.close();
                 mUVCCamera.destroy();
-                mUVCCamera = null;
-                mIsConnected = false;
                 Log.i(TAG, "✅ UVC Camera closed successfully");
             } catch (Exception e) {
                 Log.e(TAG, "Error closing camera", e);
-                mUVCCamera = null;
-                mIsConnected = false;
             }
-        } else {
-            Log.d(TAG, "Camera already closed or was never opened");
+            mUVCCamera = null;
         }
+        moveTo(State.CLOSED);
     }
     
     /**
-     * Release all resources
+     * Release all resources. The camera thread ends after the queued close
      */
-    public void release() {
-        closeCamera();
+    public CompletableFuture<Void> release() {
+        CompletableFuture<Void> closed = closeCamera();
         
         if (mUSBMonitor != null) {
             try {
@@ -571,78 +819,214 @@ public class UvcCameraManager {
             }
         }
         
-        if (mPreviewSurface != null) {
-            try {
-                mPreviewSurface.release();
-                mPreviewSurface = null;
-            } catch (Exception e) {
-                Log.e(TAG, "Error releasing preview surface", e);
+        submit(() -> {
+            if (mPreviewSurface != null) {
+                try {
+                    mPreviewSurface.release();
+                    mPreviewSurface = null;
+                } catch (Exception e) {
+                    Log.e(TAG, "Error releasing preview surface", e);
+                }
+            }
+            return null;
+        });
+        
+        synchronized (this) {
+            mReleased = true;
+            if (mCameraThread != null) {
+                // quitSafely runs the close/release already queued first
+                mCameraThread.quitSafely();
+                mCameraThread = null;
+                mCameraHandler = null;
             }
         }
         
         mCallback = null;
         Log.i(TAG, "Released");
+        return closed;
+    }
+    
+    private synchronized Handler getCameraHandler() {
+        if (mReleased) {
+            return null;
+        }
+        if (mCameraHandler == null) {
+            mCameraThread = new HandlerThread("UvcCamera");
+            mCameraThread.start();
+            mCameraHandler = new Handler(mCameraThread.getLooper());
+        }
+        return mCameraHandler;
     }
     
     /**
-     * Adjust brightness (0-255, default 128)
+     * Queue a camera operation on the camera thread (runs inline when already on it)
      */
-    public void setBrightness(int brightness) {
-        if (mUVCCamera != null) {
+    private <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Handler handler = getCameraHandler();
+        Runnable runnable = () -> {
             try {
-                mUVCCamera.setBrightness(brightness);
-                Log.d(TAG, "Brightness set to: " + brightness);
+                future.complete(task.call());
             } catch (Exception e) {
-                Log.e(TAG, "Failed to set brightness", e);
+                future.completeExceptionally(e);
             }
+        };
+        if (handler == null) {
+            future.completeExceptionally(new IllegalStateException("UvcCameraManager released"));
+        } else if (Looper.myLooper() == handler.getLooper()) {
+            runnable.run();
+        } else if (!handler.post(runnable)) {
+            future.completeExceptionally(new IllegalStateException("Camera thread stopped"));
         }
+        return future;
+    }
+    
+    /**
+     * State transition, only valid moves are applied
+     */
+    private boolean moveTo(State next) {
+        State current = mState;
+        boolean valid;
+        switch (next) {
+            case OPENING:
+                valid = current == State.CLOSED;
+                break;
+            case OPENED:
+                valid = current == State.OPENING || current == State.PREVIEWING;
+                break;
+            case PREVIEWING:
+                valid = current == State.OPENED;
+                break;
+            case CLOSING:
+                valid = current == State.OPENED || current == State.PREVIEWING;
+                break;
+            case CLOSED:
+                valid = current == State.CLOSING || current == State.OPENING;
+                break;
+            default:
+                valid = false;
+        }
+        if (!valid) {
+            Log.w(TAG, "Invalid camera state transition " + current + " -> " + next);
+            return false;
+        }
+        Log.d(TAG, "Camera state " + current + " -> " + next);
+        mState = next;
+        return true;
+    }
+    
+    /**
+     * Adjust brightness (0-255, default 128)
+     */
+    public CompletableFuture<Void> setBrightness(int brightness) {
+        return submit(() -> {
+            if (mUVCCamera != null) {
+                try {
+                    mUVCCamera.setBrightness(brightness);
+                    Log.d(TAG, "Brightness set to: " + brightness);
+                } catch (Exception e) {
+                    Log.e(TAG, "Failed to set brightness", e);
+                }
+            }
+            return null;
+        });
     }
     
     /**
      * Adjust contrast (0-255, default 128)
      */
-    public void setContrast(int contrast) {
-        if (mUVCCamera != null) {
-            try {
-                mUVCCamera.setContrast(contrast);
-                Log.d(TAG, "Contrast set to: " + contrast);
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to set contrast", e);
+    public CompletableFuture<Void> setContrast(int contrast) {
+        return submit(() -> {
+            if (mUVCCamera != null) {
+                try {
+                    mUVCCamera.setContrast(contrast);
+                    Log.d(TAG, "Contrast set to: " + contrast);
+                } catch (Exception e) {
+                    Log.e(TAG, "Failed to set contrast", e);
+                }
             }
-        }
+            return null;
+        });
     }
     
     /**
      * Reset camera to auto settings with MAXIMUM brightness
      */
-    public void resetToAuto() {
-        if (mUVCCamera != null) {
-            try {
-                mUVCCamera.setAutoWhiteBlance(true);
-                mUVCCamera.setAutoFocus(true);
-                mUVCCamera.setBrightness(255); // MAXIMUM brightness!
-                mUVCCamera.setContrast(200);   // Very high contrast
-                
+    public CompletableFuture<Void> resetToAuto() {
+        return submit(() -> {
+            if (mUVCCamera != null) {
                 try {
-                    mUVCCamera.setSaturation(150);
-                    mUVCCamera.setSharpness(150);
-                    mUVCCamera.setGain(200);
+                    // Controls recorded at preview start; probe again if none are known yet
+                    if (mControls != CONTROLS_UNKNOWN) {
+                        applyControls(mControls);
+                    } else {
+                        mControls = probeControls();
+                    }
+                    
+                    Log.d(TAG, "Camera reset to MAXIMUM brightness settings");
                 } catch (Exception e) {
-                    // Some settings may not be supported
+                    Log.e(TAG, "Failed to reset camera settings", e);
                 }
-                
-                Log.d(TAG, "Camera reset to MAXIMUM brightness settings");
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to reset camera settings", e);
             }
+            return null;
+        });
+    }
+    
+    /**
+     * Use a bandwidth planner for the preview mode; applied on the next preview start
+     */
+    public void setBandwidthPlanner(UsbBandwidthPlanner planner) {
+        mBandwidthPlanner = planner;
+    }
+    
+    // Native frame thread: count for the planner, then hand the frame to the app
+    private void onFrame(ByteBuffer frame) {
+        UsbBandwidthPlanner planner = mBandwidthPlanner;
+        if (planner != null) {
+            planner.onCameraFrame();
+        }
+        IFrameCallback callback = mFrameCallback;
+        if (callback != null) {
+            callback.onFrame(frame);
+        }
+    }
+    
+    private void scheduleBandwidthEvaluation() {
+        Handler handler = getCameraHandler();
+        if (handler != null) {
+            handler.removeCallbacks(mEvaluateBandwidth);
+            handler.postDelayed(mEvaluateBandwidth, UsbBandwidthPlanner.EVALUATE_INTERVAL_MS);
+        }
+    }
+    
+    // Camera thread: measured rates fell short -> renegotiate with the smaller budget
+    private void evaluateBandwidth() {
+        UsbBandwidthPlanner planner = mBandwidthPlanner;
+        if (planner == null || mState != State.PREVIEWING) {
+            return;
+        }
+        if (!planner.evaluate()) {
+            scheduleBandwidthEvaluation();
+            return;
         }
+        Log.i(TAG, "USB bandwidth downgrade, restarting preview");
+        stopPreviewInternal();
+        startPreviewInternal();
+    }
+    
+    /**
+     * Set NV21 frame callback (called on the native frame thread).
+     * Applied on the next preview start.
+     */
+    public void setFrameCallback(IFrameCallback callback) {
+        mFrameCallback = callback;
     }
     
     /**
      * Capture still image (placeholder - requires additional implementation)
      */
     public Bitmap captureStillImage() {
-        if (!mIsConnected || !mIsPreviewing) {
+        if (mState != State.PREVIEWING) {
             Log.w(TAG, "Cannot capture - camera not ready");
             return null;
         }
@@ -662,11 +1046,24 @@ public class UvcCameraManager {
     
     // Getters
     public boolean isConnected() {
-        return mIsConnected;
+        State state = mState;
+        return state == State.OPENED || state == State.PREVIEWING;
     }
     
     public boolean isPreviewing() {
-        return mIsPreviewing;
+        return mState == State.PREVIEWING;
+    }
+    
+    public State getState() {
+        return mState;
+    }
+    
+    public int getPreviewWidth() {
+        return mPreviewWidth;
+    }
+    
+    public int getPreviewHeight() {
+        return mPreviewHeight;
     }
     
     /**
@@ -682,31 +1079,11 @@ public class UvcCameraManager {
         if (!devices.isEmpty()) {
             Log.i(TAG, "Requesting permission for UVC camera");
             
-            // Find first NON-SERIAL device (skip CH340 and other pure serial devices)
-            UsbDevice targetDevice = null;
-            for (UsbDevice device : devices) {
-                int vendorId = device.getVendorId();
-                int deviceClass = device.getDeviceClass();
-                
-                // Skip CH340/CH341 USB Serial (VID 6790 or 0x1A86, Class 255)
-                if ((vendorId == 6790 || vendorId == 0x1A86) && deviceClass == 255) {
-                    Log.i(TAG, "  Skipping serial device: " + device.getProductName() + 
-                          " (VID:" + vendorId + " Class:" + deviceClass + ")");
-                    continue;
-                }
-                
-                // Skip other pure vendor-specific devices (Class 255), except our camera hub
-                if (deviceClass == 255 && vendorId != 3585) {
-                    Log.i(TAG, "  Skipping vendor-specific device: " + device.getProductName());
-                    continue;
-                }
-                
-                // This device looks like a camera - use it!
-                targetDevice = device;
-                Log.i(TAG, "  Selected device: " + device.getManufacturerName() + 
-                      " (VID:" + vendorId + " PID:" + device.getProductId() + 
-                      " Class:" + deviceClass + ")");
-                break;
+            UsbDevice targetDevice = findCameraDevice(devices);
+            if (targetDevice != null) {
+                Log.i(TAG, "  Selected device: " + targetDevice.getManufacturerName() + 
+                      " (VID:" + targetDevice.getVendorId() + " PID:" + targetDevice.getProductId() + 
+                      " Type:" + UsbDeviceClassifier.toString(UsbDeviceClassifier.classify(targetDevice)) + ")");
             }
             
             if (targetDevice != null) {
@@ -724,4 +1101,23 @@ public class UvcCameraManager {
             }
         }
     }
+    
+    /**
+     * Prefer a device with a UVC interface, otherwise the first one that
+     * may be a hub camera. Serial (LiDAR) devices never get a camera prompt.
+     */
+    private UsbDevice findCameraDevice(java.util.List<UsbDevice> devices) {
+        UsbDevice targetDevice = UsbDeviceClassifier.findFirst(devices, UsbDeviceClassifier.TYPE_VIDEO);
+        if (targetDevice == null) {
+            for (UsbDevice device : devices) {
+                if (UsbDeviceClassifier.mayBeCamera(device)) {
+                    targetDevice = device;
+                    break;
+                }
+                Log.i(TAG, "  Skipping " + UsbDeviceClassifier.toString(UsbDeviceClassifier.classify(device))
+                        + " device: " + device.getProductName());
+            }
+        }
+        return targetDevice;
+    }
 }
@@ -0,0 +1,94 @@
+package com.capstone.cattleweight;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Cache mode preview UVC per device (key: USBMonitor.getDeviceKeyNameWithSerial).
+ *
+ * Menyimpan resolusi/format yang terakhir berhasil dan kontrol kamera yang
+ * diterima device, supaya saat reconnect kamera langsung memakai konfigurasi
+ * yang sudah terbukti jalan tanpa mencoba resolusi satu per satu.
+ */
+public class UvcModeCache {
+
+    // v2: kontrol diambil dari flag descriptor; entri lama menandai semua kontrol diterima
+    private static final String PREFS_NAME = "uvc_mode_cache_v2";
+
+    // Bit kontrol kamera yang diterima device
+    public static final int CONTROL_BRIGHTNESS = 1;
+    public static final int CONTROL_CONTRAST = 1 << 1;
+    public static final int CONTROL_SATURATION = 1 << 2;
+    public static final int CONTROL_SHARPNESS = 1 << 3;
+    public static final int CONTROL_GAIN = 1 << 4;
+    public static final int CONTROL_AUTO_WHITE_BALANCE = 1 << 5;
+    public static final int CONTROL_AUTO_FOCUS = 1 << 6;
+
+    /**
+     * Konfigurasi preview yang diketahui berhasil untuk satu device
+     */
+    public static class Mode {
+        public final int width;
+        public final int height;
+        public final int format;
+        public final int controls;
+
+        public Mode(int width, int height, int format, int controls) {
+            this.width = width;
+            this.height = height;
+            this.format = format;
+            this.controls = controls;
+        }
+
+        public boolean supports(int control) {
+            return (controls & control) != 0;
+        }
+    }
+
+    private final SharedPreferences prefs;
+
+    public UvcModeCache(Context context) {
+        this.prefs = context.getApplicationContext()
+                .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Mode tersimpan untuk device, atau null kalau belum pernah berhasil
+     */
+    public Mode get(String deviceKey) {
+        if (deviceKey == null || deviceKey.isEmpty()) {
+            return null;
+        }
+        String value = prefs.getString(deviceKey, null);
+        if (value == null) {
+            return null;
+        }
+        // Format: width,height,format,controls
+        String[] parts = value.split(",");
+        if (parts.length != 4) {
+            return null;
+        }
+        try {
+            return new Mode(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+                    Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public void put(String deviceKey, Mode mode) {
+        if (deviceKey == null || deviceKey.isEmpty()) {
+            return;
+        }
+        prefs.edit()
+                .putString(deviceKey, mode.width + "," + mode.height + "," + mode.format + "," + mode.controls)
+                .apply();
+    }
+
+    public void remove(String deviceKey) {
+        if (deviceKey == null || deviceKey.isEmpty()) {
+            return;
+        }
+        prefs.edit().remove(deviceKey).apply();
+    }
+}
@@ -0,0 +1,292 @@
+package com.capstone.cattleweight;
+
+/**
+ * Agregasi estimasi bobot beberapa frame selama jendela LiDAR stabil.
+ *
+ * Tiap hasil model masuk dengan bobot confidence x kualitas sinyal LiDAR. Outlier
+ * dibuang dengan median + MAD, lalu rata-rata tertimbang dan interval kepercayaan 95%
+ * dihitung dari sampel yang tersisa. Estimasi dianggap konvergen kalau intervalnya cukup
+ * sempit dan rata-ratanya tidak berubah lagi selama beberapa sampel berturut-turut;
+ * setelah itu inferensi bisa dihentikan sampai jendela ditutup ({@link #reset()}).
+ *
+ * Pure Java dan tanpa alokasi per sampel, jadi bisa diuji di JVM dengan rekaman trace.
+ * Tidak thread-safe: panggil dari satu thread analisis.
+ */
+public class WeightAggregator {
+
+    public static final int MAX_SAMPLES = 32;
+    public static final int DEFAULT_MIN_SAMPLES = 4;
+    public static final float DEFAULT_MAX_CI_HALF_WIDTH_KG = 5f;
+    public static final float DEFAULT_MAX_CI_FRACTION = 0.02f;      // 2% dari bobot
+    public static final float DEFAULT_STABLE_CHANGE_KG = 1f;
+    public static final int DEFAULT_STABLE_UPDATES = 3;
+
+    // TF-Luna: < 100 tidak andal, di atas ~1000 sinyal penuh
+    private static final int WEAK_STRENGTH = 100;
+    private static final int FULL_STRENGTH = 1000;
+    private static final float MIN_STRENGTH_WEIGHT = 0.1f;
+    private static final float MIN_CONFIDENCE = 0.05f;
+    private static final double OUTLIER_MADS = 3.0;
+    private static final double MIN_MAD_KG = 1.0;
+    private static final double MAD_TO_SIGMA = 1.4826;
+    // Kuantil t dua sisi 95% untuk df 1..10; di atas itu ~1.96
+    private static final double[] T_95 = {12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228};
+
+    public interface Listener {
+        /**
+         * Dipanggil sekali per jendela saat estimasi konvergen (thread analisis)
+         */
+        void onConverged(Result result);
+    }
+
+    /**
+     * Estimasi gabungan; diisi ulang oleh aggregator (salin kalau perlu disimpan)
+     */
+    public static class Result {
+        public float weightKg;
+        public float ciLowKg;
+        public float ciHighKg;
+        public float meanConfidence;
+        public int samples;
+        public int rejected;
+        public long windowNanos;
+        public boolean converged;
+
+        public float getHalfWidthKg() {
+            return (ciHighKg - ciLowKg) / 2f;
+        }
+
+        void copyFrom(Result other) {
+            weightKg = other.weightKg;
+            ciLowKg = other.ciLowKg;
+            ciHighKg = other.ciHighKg;
+            meanConfidence = other.meanConfidence;
+            samples = other.samples;
+            rejected = other.rejected;
+            windowNanos = other.windowNanos;
+            converged = other.converged;
+        }
+    }
+
+    private final Listener listener;
+    private int minSamples = DEFAULT_MIN_SAMPLES;
+    private float maxCiHalfWidthKg = DEFAULT_MAX_CI_HALF_WIDTH_KG;
+    private float maxCiFraction = DEFAULT_MAX_CI_FRACTION;
+    private float stableChangeKg = DEFAULT_STABLE_CHANGE_KG;
+    private int stableUpdates = DEFAULT_STABLE_UPDATES;
+
+    private final float[] weights = new float[MAX_SAMPLES];
+    private final float[] sampleWeights = new float[MAX_SAMPLES];
+    private final float[] confidences = new float[MAX_SAMPLES];
+    private final double[] scratch = new double[MAX_SAMPLES];
+    private int count;
+    private long openNanos;
+    private long lastNanos;
+
+    private final Result current = new Result();
+    private double previousMean = Double.NaN;
+    private int unchangedUpdates;
+    private boolean converged;
+
+    public WeightAggregator(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void setThresholds(int minSamples, float maxCiHalfWidthKg, float maxCiFraction,
+                              float stableChangeKg, int stableUpdates) {
+        this.minSamples = Math.max(2, Math.min(minSamples, MAX_SAMPLES));
+        this.maxCiHalfWidthKg = maxCiHalfWidthKg;
+        this.maxCiFraction = maxCiFraction;
+        this.stableChangeKg = stableChangeKg;
+        this.stableUpdates = stableUpdates;
+    }
+
+    /**
+     * Tutup jendela (LiDAR tidak stabil lagi / sapi berganti)
+     */
+    public void reset() {
+        count = 0;
+        openNanos = 0;
+        lastNanos = 0;
+        previousMean = Double.NaN;
+        unchangedUpdates = 0;
+        converged = false;
+        current.weightKg = 0f;
+        current.ciLowKg = 0f;
+        current.ciHighKg = 0f;
+        current.meanConfidence = 0f;
+        current.samples = 0;
+        current.rejected = 0;
+        current.windowNanos = 0;
+        current.converged = false;
+    }
+
+    public boolean isOpen() {
+        return count > 0;
+    }
+
+    /**
+     * Sudah konvergen; inferensi berikutnya tidak mengubah hasil sampai {@link #reset()}
+     */
+    public boolean isConverged() {
+        return converged;
+    }
+
+    /**
+     * Estimasi gabungan sekarang (valid kalau samples > 0)
+     */
+    public Result getResult() {
+        return current;
+    }
+
+    public void getResult(Result out) {
+        out.copyFrom(current);
+    }
+
+    /**
+     * Tambah satu hasil model
+     *
+     * @param strength kekuatan sinyal LiDAR untuk frame ini
+     * @return true kalau estimasi konvergen oleh sampel ini
+     */
+    public boolean add(long frameNanos, float weightKg, float confidence, int strength) {
+        if (converged || Float.isNaN(weightKg) || weightKg <= 0f) {
+            return false;
+        }
+        if (count == 0) {
+            openNanos = frameNanos;
+        }
+        if (count == MAX_SAMPLES) {
+            // Geser: buang sampel tertua
+            System.arraycopy(weights, 1, weights, 0, MAX_SAMPLES - 1);
+            System.arraycopy(sampleWeights, 1, sampleWeights, 0, MAX_SAMPLES - 1);
+            System.arraycopy(confidences, 1, confidences, 0, MAX_SAMPLES - 1);
+            count--;
+        }
+        float conf = Math.max(MIN_CONFIDENCE, Math.min(1f, confidence));
+        weights[count] = weightKg;
+        confidences[count] = conf;
+        sampleWeights[count] = conf * strengthWeight(strength);
+        count++;
+        lastNanos = frameNanos;
+
+        update();
+        if (!current.converged) {
+            return false;
+        }
+        converged = true;
+        if (listener != null) {
+            listener.onConverged(current);
+        }
+        return true;
+    }
+
+    static float strengthWeight(int strength) {
+        if (strength <= WEAK_STRENGTH) {
+            return MIN_STRENGTH_WEIGHT;
+        }
+        if (strength >= FULL_STRENGTH) {
+            return 1f;
+        }
+        float t = (float) (strength - WEAK_STRENGTH) / (FULL_STRENGTH - WEAK_STRENGTH);
+        return MIN_STRENGTH_WEIGHT + (1f - MIN_STRENGTH_WEIGHT) * t;
+    }
+
+    private void update() {
+        // Median dan MAD (tanpa bobot) untuk menolak outlier
+        for (int i = 0; i < count; i++) {
+            scratch[i] = weights[i];
+        }
+        double median = median(scratch, count);
+        for (int i = 0; i < count; i++) {
+            scratch[i] = Math.abs(weights[i] - median);
+        }
+        double sigma = Math.max(MIN_MAD_KG, median(scratch, count)) * MAD_TO_SIGMA;
+        double limit = OUTLIER_MADS * sigma;
+
+        double sumW = 0;
+        double sumW2 = 0;
+        double sumWX = 0;
+        double sumConf = 0;
+        int used = 0;
+        for (int i = 0; i < count; i++) {
+            if (Math.abs(weights[i] - median) > limit) {
+                continue;
+            }
+            double w = sampleWeights[i];
+            sumW += w;
+            sumW2 += w * w;
+            sumWX += w * weights[i];
+            sumConf += confidences[i];
+            used++;
+        }
+        if (used == 0 || sumW <= 0) {
+            return;
+        }
+        double mean = sumWX / sumW;
+        double sumWDev = 0;
+        for (int i = 0; i < count; i++) {
+            if (Math.abs(weights[i] - median) > limit) {
+                continue;
+            }
+            double d = weights[i] - mean;
+            sumWDev += sampleWeights[i] * d * d;
+        }
+
+        // Ukuran sampel efektif untuk bobot tidak seragam (Kish)
+        double nEff = sumW * sumW / sumW2;
+        double halfWidth;
+        if (used < 2 || nEff <= 1.0) {
+            halfWidth = Double.POSITIVE_INFINITY;
+        } else {
+            double variance = sumWDev / sumW * nEff / (nEff - 1.0);
+            double standardError = Math.sqrt(variance / nEff);
+            halfWidth = tQuantile(nEff - 1.0) * standardError;
+        }
+
+        if (!Double.isNaN(previousMean) && Math.abs(mean - previousMean) <= stableChangeKg) {
+            unchangedUpdates++;
+        } else {
+            unchangedUpdates = 0;
+        }
+        previousMean = mean;
+
+        double maxHalfWidth = maxCiHalfWidthKg;
+        if (maxCiFraction > 0) {
+            maxHalfWidth = Math.min(maxHalfWidth, Math.max(stableChangeKg, mean * maxCiFraction));
+        }
+
+        current.weightKg = (float) mean;
+        current.ciLowKg = (float) (mean - halfWidth);
+        current.ciHighKg = (float) (mean + halfWidth);
+        current.meanConfidence = (float) (sumConf / used);
+        current.samples = used;
+        current.rejected = count - used;
+        current.windowNanos = lastNanos - openNanos;
+        current.converged = used >= minSamples
+                && halfWidth <= maxHalfWidth
+                && unchangedUpdates >= stableUpdates;
+    }
+
+    private static double tQuantile(double df) {
+        int index = (int) Math.floor(df);
+        if (index < 1) {
+            return T_95[0];
+        }
+        return index <= T_95.length ? T_95[index - 1] : 1.96;
+    }
+
+    // Median n elemen pertama (insertion sort in place; n kecil)
+    static double median(double[] values, int n) {
+        for (int i = 1; i < n; i++) {
+            double v = values[i];
+            int j = i - 1;
+            while (j >= 0 && values[j] > v) {
+                values[j + 1] = values[j];
+                j--;
+            }
+            values[j + 1] = v;
+        }
+        return (n & 1) == 1 ? values[n / 2] : (values[n / 2 - 1] + values[n / 2]) / 2.0;
+    }
+}
@@ -0,0 +1,316 @@
+package com.capstone.cattleweight;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Estimasi bobot karkas dari frame kamera + jarak LiDAR dengan model TFLite.
+ *
+ * Model di-memory-map dari assets dan dipakai oleh satu Interpreter (XNNPACK) yang
+ * di-warm-up sekali saat dibuat. Input gambar dan jarak ditulis ke direct ByteBuffer
+ * yang dipakai ulang, output dibaca dari buffer yang juga dipakai ulang, jadi satu
+ * inferensi tidak mengalokasikan objek. Tidak thread-safe: panggil dari satu thread analisis.
+ *
+ * Bentuk model (lihat ml_model/README.md): input gambar [1, H, W, 3] float32 atau uint8,
+ * input jarak [1, 1] float32 (opsional); output [1, 2] = [bobot kg, confidence] atau
+ * dua output [1, 1].
+ */
+public class WeightEstimationEngine {
+
+    private static final String TAG = "WeightEstimationEngine";
+
+    public static final String DEFAULT_MODEL_ASSET = "cattle_weight.tflite";
+    public static final int DEFAULT_THREADS = 2;
+    private static final double LATENCY_SMOOTHING = 0.1;
+
+    /**
+     * Hasil satu inferensi; objek milik pemanggil dan diisi ulang setiap estimate()
+     */
+    public static class Estimate {
+        public float weightKg;
+        public float confidence;
+        public long latencyNanos;
+        public long frameNanos;
+
+        public double getLatencyMs() {
+            return latencyNanos / 1_000_000.0;
+        }
+    }
+
+    private final Interpreter interpreter;
+    private final int imageInputIndex;
+    private final int distanceInputIndex;
+    private final ByteBuffer imageInput;
+    private final ByteBuffer distanceInput;
+    private final ByteBuffer[] outputs;
+    private final DataType[] outputTypes;
+    private final float[] outputScales;
+    private final int[] outputZeroPoints;
+    private final Object[] inputArray;
+    private final Map<Integer, Object> outputMap = new HashMap<>();
+
+    private final int inputWidth;
+    private final int inputHeight;
+    private final boolean quantizedInput;
+    private float imageMean = 0f;
+    private float imageStd = 255f;
+    private float distanceScale = 1f;
+
+    private long lastLatencyNanos;
+    private double averageLatencyNanos;
+    private long inferenceCount;
+    private long warmUpNanos;
+
+    public WeightEstimationEngine(Context context) throws IOException {
+        this(context, DEFAULT_MODEL_ASSET, DEFAULT_THREADS);
+    }
+
+    /**
+     * @throws IOException kalau model tidak ada di assets atau bentuk input/output tidak dikenal
+     */
+    public WeightEstimationEngine(Context context, String assetName, int numThreads) throws IOException {
+        this(loadModelFile(context, assetName), assetName, numThreads);
+    }
+
+    /**
+     * @param model buffer model (sebaiknya hasil memory-map, lihat loadModelFile)
+     * @param name  nama model untuk log
+     */
+    public WeightEstimationEngine(ByteBuffer model, String name, int numThreads) throws IOException {
+        Interpreter.Options options = new Interpreter.Options()
+                .setNumThreads(numThreads)
+                .setUseXNNPACK(true);
+        interpreter = new Interpreter(model, options);
+
+        int image = -1;
+        int distance = -1;
+        for (int i = 0; i < interpreter.getInputTensorCount(); i++) {
+            int[] shape = interpreter.getInputTensor(i).shape();
+            if (shape.length == 4) {
+                image = i;
+            } else {
+                distance = i;
+            }
+        }
+        if (image < 0) {
+            interpreter.close();
+            throw new IOException("Model has no [1, H, W, 3] image input");
+        }
+        imageInputIndex = image;
+        distanceInputIndex = distance;
+
+        Tensor imageTensor = interpreter.getInputTensor(imageInputIndex);
+        inputHeight = imageTensor.shape()[1];
+        inputWidth = imageTensor.shape()[2];
+        quantizedInput = imageTensor.dataType() == DataType.UINT8;
+        imageInput = allocate(imageTensor.numBytes());
+        distanceInput = distanceInputIndex >= 0 ? allocate(interpreter.getInputTensor(distanceInputIndex).numBytes()) : null;
+
+        inputArray = new Object[interpreter.getInputTensorCount()];
+        inputArray[imageInputIndex] = imageInput;
+        if (distanceInputIndex >= 0) {
+            inputArray[distanceInputIndex] = distanceInput;
+        }
+
+        int outputCount = interpreter.getOutputTensorCount();
+        outputs = new ByteBuffer[outputCount];
+        outputTypes = new DataType[outputCount];
+        outputScales = new float[outputCount];
+        outputZeroPoints = new int[outputCount];
+        for (int i = 0; i < outputCount; i++) {
+            Tensor tensor = interpreter.getOutputTensor(i);
+            outputs[i] = allocate(tensor.numBytes());
+            outputTypes[i] = tensor.dataType();
+            outputScales[i] = tensor.quantizationParams().getScale();
+            outputZeroPoints[i] = tensor.quantizationParams().getZeroPoint();
+            outputMap.put(i, outputs[i]);
+        }
+
+        warmUp();
+        Log.i(TAG, "Model " + name + " loaded: input " + inputWidth + "x" + inputHeight
+                + (quantizedInput ? " uint8" : " float32")
+                + (distanceInputIndex >= 0 ? " + distance" : "")
+                + ", " + outputCount + " output(s), " + numThreads + " thread(s)");
+    }
+
+    /**
+     * Memory-map model dari assets (asset harus tidak dikompres, lihat noCompress di build.gradle)
+     */
+    public static MappedByteBuffer loadModelFile(Context context, String assetName) throws IOException {
+        try (AssetFileDescriptor fileDescriptor = context.getAssets().openFd(assetName);
+             FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor())) {
+            FileChannel fileChannel = inputStream.getChannel();
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY,
+                    fileDescriptor.getStartOffset(), fileDescriptor.getDeclaredLength());
+        }
+    }
+
+    /**
+     * Memory-map model dari file (mis. model versi baru yang diunduh ke filesDir)
+     */
+    public static MappedByteBuffer loadModelFile(File file) throws IOException {
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+            FileChannel fileChannel = inputStream.getChannel();
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+        }
+    }
+
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    // Inferensi pertama menyiapkan delegate/allocation; jangan dihitung di latensi
+    private void warmUp() {
+        imageInput.clear();
+        while (imageInput.hasRemaining()) {
+            imageInput.put((byte) 0);
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        run(0f);
+        warmUpNanos = SystemClock.elapsedRealtimeNanos() - start;
+        Log.d(TAG, "Warm-up inference: " + warmUpNanos / 1_000_000 + " ms");
+    }
+
+    /**
+     * Normalisasi input float: (pixel - mean) / std. Default [0, 1].
+     */
+    public void setNormalization(float mean, float std) {
+        this.imageMean = mean;
+        this.imageStd = std;
+    }
+
+    /**
+     * Pengali jarak LiDAR sebelum masuk model (default cm; 0.01f untuk meter)
+     */
+    public void setDistanceScale(float scale) {
+        this.distanceScale = scale;
+    }
+
+    public int getInputWidth() {
+        return inputWidth;
+    }
+
+    public int getInputHeight() {
+        return inputHeight;
+    }
+
+    public boolean isQuantizedInput() {
+        return quantizedInput;
+    }
+
+    public float getImageMean() {
+        return imageMean;
+    }
+
+    public float getImageStd() {
+        return imageStd;
+    }
+
+    /**
+     * Preprocessor yang cocok dengan input model ini
+     */
+    public TensorPreprocessor createPreprocessor() {
+        return new TensorPreprocessor(inputWidth, inputHeight, quantizedInput, imageMean, imageStd);
+    }
+
+    /**
+     * Buffer input gambar untuk preprocessing yang menulis langsung (RGB, baris demi baris),
+     * lihat {@link TensorPreprocessor}.
+     * Posisi di-reset; isi buffer dipakai oleh estimate() berikutnya.
+     */
+    public ByteBuffer getImageInput() {
+        imageInput.clear();
+        return imageInput;
+    }
+
+    /**
+     * Jalankan model pada isi input gambar sekarang
+     *
+     * @param distanceCm jarak LiDAR (cm)
+     * @param out        diisi bobot, confidence dan latensi
+     */
+    public void estimate(float distanceCm, Estimate out) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        run(distanceCm * distanceScale);
+        long latency = SystemClock.elapsedRealtimeNanos() - start;
+
+        if (outputs.length >= 2) {
+            out.weightKg = readOutput(0, 0);
+            out.confidence = readOutput(1, 0);
+        } else {
+            out.weightKg = readOutput(0, 0);
+            out.confidence = elementCount(0) > 1 ? readOutput(0, 1) : 1f;
+        }
+        out.latencyNanos = latency;
+
+        lastLatencyNanos = latency;
+        averageLatencyNanos = inferenceCount == 0 ? latency
+                : averageLatencyNanos + LATENCY_SMOOTHING * (latency - averageLatencyNanos);
+        inferenceCount++;
+    }
+
+    private void run(float distance) {
+        imageInput.rewind();
+        if (distanceInput != null) {
+            distanceInput.clear();
+            distanceInput.putFloat(distance);
+            distanceInput.rewind();
+        }
+        for (ByteBuffer output : outputs) {
+            output.clear();
+        }
+        interpreter.runForMultipleInputsOutputs(inputArray, outputMap);
+    }
+
+    private int elementCount(int output) {
+        return outputs[output].capacity() / (outputTypes[output] == DataType.FLOAT32 ? 4 : 1);
+    }
+
+    private float readOutput(int output, int element) {
+        ByteBuffer buffer = outputs[output];
+        if (outputTypes[output] == DataType.FLOAT32) {
+            return buffer.getFloat(element * 4);
+        }
+        int raw = outputTypes[output] == DataType.UINT8 ? buffer.get(element) & 0xFF : buffer.get(element);
+        return (raw - outputZeroPoints[output]) * outputScales[output];
+    }
+
+    public double getLastLatencyMs() {
+        return lastLatencyNanos / 1_000_000.0;
+    }
+
+    public double getAverageLatencyMs() {
+        return averageLatencyNanos / 1_000_000.0;
+    }
+
+    public long getInferenceCount() {
+        return inferenceCount;
+    }
+
+    /**
+     * Durasi inferensi pertama (alokasi tensor + persiapan graph XNNPACK)
+     */
+    public double getWarmUpMs() {
+        return warmUpNanos / 1_000_000.0;
+    }
+
+    public void close() {
+        interpreter.close();
+    }
+}
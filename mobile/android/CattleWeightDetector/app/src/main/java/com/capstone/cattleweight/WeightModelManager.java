@@ -0,0 +1,477 @@
+package com.capstone.cattleweight;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pemilik model TFLite untuk satu proses aplikasi.
+ *
+ * Model di-memory-map, Interpreter (XNNPACK) dibuat dan di-warm-up di thread loader
+ * berprioritas rendah setelah frame UI pertama tampil, jadi startup dan preview tidak
+ * menunggu model. Interpreter yang sudah siap disimpan selama proses hidup, sehingga
+ * fragment yang dibuat ulang tidak membangun graph lagi.
+ *
+ * Versi model baru (dipasang dari layar Dataset lewat {@link #install(Uri, String)}, disalin
+ * ke {@link #getModelDir()}) dibangun di background lalu ditukar secara atomik; thread analisis tetap memakai {@link Lease} lama sampai frame
+ * berikutnya, dan interpreter lama ditutup setelah lease terakhir dilepas.
+ *
+ * Nama versi ("bundled" atau nama file) hanya menunjuk lokasi model. Identitas model
+ * adalah {@link #contentKey kunci isi} (nama + SHA-256 isi model): APK baru dengan asset
+ * berbeda tetap bernama "bundled" tapi kuncinya lain, jadi dimuat ulang dan dinilai ulang.
+ *
+ * Metrik cold start dan time-to-first-estimate dihitung dari waktu proses dimulai.
+ */
+public final class WeightModelManager {
+
+    private static final String TAG = "WeightModelManager";
+    private static final String PREFS_NAME = "weight_model";
+    private static final String KEY_ACTIVE_VERSION = "active_version";
+    private static final String MODEL_DIR = "models";
+    private static final String MODEL_EXTENSION = ".tflite";
+    private static final String PARTIAL_EXTENSION = ".part";
+    private static final int MAX_VERSION_LENGTH = 40;
+
+    /** Versi model bawaan di assets */
+    public static final String BUNDLED_VERSION = "bundled";
+    // Panjang hex SHA-256 di kunci isi (64 bit cukup untuk membedakan model)
+    private static final int KEY_HASH_CHARS = 16;
+
+    private static WeightModelManager instance;
+
+    public interface Listener {
+        /**
+         * Model versi baru siap dipakai (main thread)
+         */
+        void onModelReady(String version, Metrics metrics);
+
+        /**
+         * Model gagal dimuat; model yang sedang aktif (kalau ada) tetap dipakai (main thread)
+         */
+        void onModelFailed(String version, Exception e);
+    }
+
+    /**
+     * Interpreter satu versi model dengan reference count. Pemegang lease memakai engine
+     * dari satu thread saja dan wajib memanggil {@link #release()} sekali.
+     */
+    public static final class Lease {
+        private final WeightEstimationEngine engine;
+        private final String version;
+        private final String key;
+        // 1 milik manager selama versi ini aktif
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        Lease(WeightEstimationEngine engine, String version, String key) {
+            this.engine = engine;
+            this.version = version;
+            this.key = key;
+        }
+
+        public WeightEstimationEngine getEngine() {
+            return engine;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * Kunci isi model, lihat {@link #contentKey}
+         */
+        public String getKey() {
+            return key;
+        }
+
+        boolean retain() {
+            while (true) {
+                int count = refs.get();
+                if (count == 0) {
+                    return false;
+                }
+                if (refs.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        public void release() {
+            if (refs.decrementAndGet() == 0) {
+                engine.close();
+                Log.d(TAG, "Model " + version + " closed");
+            }
+        }
+    }
+
+    /**
+     * Metrik pemuatan model; semua waktu dalam ms, -1 kalau belum terjadi
+     */
+    public static class Metrics {
+        public String version;
+        // Termasuk hash isi model (membaca seluruh file)
+        public double mapMs = -1;
+        public double buildMs = -1;
+        public double warmUpMs = -1;
+        // Proses dimulai -> model pertama siap
+        public double coldStartMs = -1;
+        // Proses dimulai -> estimasi model pertama
+        public double timeToFirstEstimateMs = -1;
+        public int swaps;
+
+        Metrics copy() {
+            Metrics copy = new Metrics();
+            copy.version = version;
+            copy.mapMs = mapMs;
+            copy.buildMs = buildMs;
+            copy.warmUpMs = warmUpMs;
+            copy.coldStartMs = coldStartMs;
+            copy.timeToFirstEstimateMs = timeToFirstEstimateMs;
+            copy.swaps = swaps;
+            return copy;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "model=%s map=%.1fms build=%.1fms warmup=%.1fms coldStart=%.0fms firstEstimate=%.0fms swaps=%d",
+                    version, mapMs, buildMs, warmUpMs, coldStartMs, timeToFirstEstimateMs, swaps);
+        }
+    }
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Handler loaderHandler;
+    private final AtomicReference<Lease> current = new AtomicReference<>();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Metrics metrics = new Metrics();
+    private final long processStartNanos;
+    private volatile boolean firstEstimateRecorded;
+    private boolean initialLoadScheduled;
+
+    private WeightModelManager(Context context) {
+        this.context = context.getApplicationContext();
+        this.prefs = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.processStartNanos = Process.getStartElapsedRealtime() * 1_000_000L;
+        HandlerThread loaderThread = new HandlerThread("WeightModelLoader", Process.THREAD_PRIORITY_BACKGROUND);
+        loaderThread.start();
+        this.loaderHandler = new Handler(loaderThread.getLooper());
+    }
+
+    public static synchronized WeightModelManager get(Context context) {
+        if (instance == null) {
+            instance = new WeightModelManager(context);
+        }
+        return instance;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Folder model versi baru: {@code <versi>.tflite}
+     */
+    public File getModelDir() {
+        return new File(context.getFilesDir(), MODEL_DIR);
+    }
+
+    /**
+     * Muat model aktif setelah frame UI berikutnya selesai digambar. Panggil dari main
+     * thread (mis. onViewCreated); panggilan berikutnya diabaikan.
+     */
+    public void loadAfterFirstFrame() {
+        if (initialLoadScheduled) {
+            return;
+        }
+        initialLoadScheduled = true;
+        // Callback frame jalan sebelum traversal; post berikutnya jalan setelah frame digambar
+        Choreographer.getInstance().postFrameCallback(frameTimeNanos ->
+                mainHandler.post(() -> loaderHandler.post(this::loadActiveModel)));
+    }
+
+    /**
+     * Salin model dari source (mis. hasil document picker) ke {@link #getModelDir()},
+     * bangun, lalu tukar secara atomik kalau berhasil. Versi ini juga menjadi model aktif
+     * saat aplikasi dibuka lagi. Hasil dikabarkan lewat {@link Listener}.
+     *
+     * File baru dimuat dari salinan sementara dan baru di-rename ke nama versinya setelah
+     * berhasil, jadi model gagal tidak menimpa versi lama dengan nama sama; interpreter
+     * yang sedang memakai file lama tetap aman karena mapping menahan inode lama.
+     *
+     * @param version hasil {@link #versionFor(String)}
+     */
+    public void install(Uri source, String version) {
+        loaderHandler.post(() -> {
+            File target = modelFile(version);
+            File partial = new File(getModelDir(), version + PARTIAL_EXTENSION);
+            try {
+                copy(source, partial);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Failed to copy model " + version, e);
+                partial.delete();
+                notifyFailed(version, e);
+                return;
+            }
+            if (!load(version, partial)) {
+                partial.delete();
+                return;
+            }
+            if (!partial.renameTo(target)) {
+                // Model sudah aktif dari salinan sementara; hanya tidak dipilih lagi saat restart
+                Log.w(TAG, "Failed to rename " + partial + " to " + target);
+                return;
+            }
+            prefs.edit().putString(KEY_ACTIVE_VERSION, version).apply();
+        });
+    }
+
+    /**
+     * Nama versi dari nama file model: tanpa ekstensi, hanya huruf, angka, '.', '_' dan '-'
+     */
+    public static String versionFor(String fileName) {
+        String name = fileName != null ? fileName : "";
+        if (name.toLowerCase(Locale.US).endsWith(MODEL_EXTENSION)) {
+            name = name.substring(0, name.length() - MODEL_EXTENSION.length());
+        }
+        name = name.replaceAll("[^A-Za-z0-9._-]", "_").replaceAll("^[._]+", "");
+        if (name.length() > MAX_VERSION_LENGTH) {
+            name = name.substring(0, MAX_VERSION_LENGTH);
+        }
+        if (name.isEmpty() || BUNDLED_VERSION.equals(name)) {
+            name = "model-" + System.currentTimeMillis();
+        }
+        return name;
+    }
+
+    /**
+     * Kembali ke model bawaan assets
+     */
+    public void installBundled() {
+        loaderHandler.post(() -> {
+            if (load(BUNDLED_VERSION, null)) {
+                prefs.edit().remove(KEY_ACTIVE_VERSION).apply();
+            }
+        });
+    }
+
+    /**
+     * Lease model aktif, atau null kalau belum ada model yang siap
+     */
+    public Lease acquire() {
+        while (true) {
+            Lease lease = current.get();
+            if (lease == null) {
+                return null;
+            }
+            if (lease.retain()) {
+                return lease;
+            }
+            // Bertabrakan dengan swap; baca ulang versi terbaru
+        }
+    }
+
+    /**
+     * Lease masih versi aktif (cukup satu volatile read, aman dipanggil per frame)
+     */
+    public boolean isCurrent(Lease lease) {
+        return lease == current.get();
+    }
+
+    public String getActiveVersion() {
+        Lease lease = current.get();
+        return lease != null ? lease.getVersion() : null;
+    }
+
+    /**
+     * Versi aktif, atau versi yang akan dimuat kalau model belum siap
+     */
+    public String getSelectedVersion() {
+        String active = getActiveVersion();
+        return active != null ? active : prefs.getString(KEY_ACTIVE_VERSION, BUNDLED_VERSION);
+    }
+
+    /**
+     * Memory-map model suatu versi tanpa membangun interpreter, untuk pemakai yang
+     * membuat interpreter sendiri (mis. {@link BatchRescoringJob}). Buffer boleh dipakai
+     * bersama beberapa interpreter.
+     *
+     * @param version {@link #BUNDLED_VERSION} untuk model di assets
+     */
+    public MappedByteBuffer mapModel(String version) throws IOException {
+        if (BUNDLED_VERSION.equals(version)) {
+            return WeightEstimationEngine.loadModelFile(context, WeightEstimationEngine.DEFAULT_MODEL_ASSET);
+        }
+        return WeightEstimationEngine.loadModelFile(modelFile(version));
+    }
+
+    /**
+     * Kunci identitas model: {@code <versi>@<16 hex pertama SHA-256 isi model>}. Dipakai
+     * sebagai kunci hasil di model_scores dan untuk mengenali model yang sudah dimuat.
+     * Posisi buffer tidak diubah.
+     */
+    public static String contentKey(String version, ByteBuffer model) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer content = model.duplicate();
+        content.rewind();
+        digest.update(content);
+        StringBuilder key = new StringBuilder(version).append('@');
+        for (byte b : digest.digest()) {
+            if (key.length() >= version.length() + 1 + KEY_HASH_CHARS) {
+                break;
+            }
+            key.append(String.format(Locale.US, "%02x", b));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Catat estimasi model; yang pertama dalam proses menjadi time-to-first-estimate
+     */
+    public void recordEstimate() {
+        if (firstEstimateRecorded) {
+            return;
+        }
+        firstEstimateRecorded = true;
+        synchronized (metrics) {
+            metrics.timeToFirstEstimateMs = (SystemClock.elapsedRealtimeNanos() - processStartNanos) / 1_000_000.0;
+            Log.i(TAG, "Time to first estimate: " + metrics);
+        }
+    }
+
+    public Metrics getMetrics() {
+        synchronized (metrics) {
+            return metrics.copy();
+        }
+    }
+
+    // Thread loader
+    private void loadActiveModel() {
+        String version = prefs.getString(KEY_ACTIVE_VERSION, null);
+        if (version != null) {
+            File file = modelFile(version);
+            if (file.isFile() && load(version, file)) {
+                return;
+            }
+            Log.w(TAG, "Model " + version + " not usable, falling back to bundled model");
+        }
+        load(BUNDLED_VERSION, null);
+    }
+
+    private File modelFile(String version) {
+        return new File(getModelDir(), version + MODEL_EXTENSION);
+    }
+
+    // Thread loader
+    private void copy(Uri source, File destination) throws IOException {
+        File dir = destination.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        try (InputStream in = context.getContentResolver().openInputStream(source);
+             OutputStream out = new FileOutputStream(destination)) {
+            if (in == null) {
+                throw new IOException("Cannot open " + source);
+            }
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private void notifyFailed(String version, Exception e) {
+        mainHandler.post(() -> {
+            for (Listener listener : listeners) {
+                listener.onModelFailed(version, e);
+            }
+        });
+    }
+
+    // Thread loader; file null = asset bawaan
+    private boolean load(String version, File file) {
+        WeightEstimationEngine engine;
+        String key;
+        long mapNanos;
+        long buildNanos;
+        try {
+            long start = SystemClock.elapsedRealtimeNanos();
+            MappedByteBuffer model = file != null
+                    ? WeightEstimationEngine.loadModelFile(file)
+                    : WeightEstimationEngine.loadModelFile(context, WeightEstimationEngine.DEFAULT_MODEL_ASSET);
+            key = contentKey(version, model);
+            // Isi sama dengan model aktif: tidak perlu membangun interpreter lagi
+            Lease active = current.get();
+            if (active != null && active.getKey().equals(key)) {
+                return true;
+            }
+            long mapped = SystemClock.elapsedRealtimeNanos();
+            // Konstruktor engine sudah menjalankan inferensi warm-up
+            engine = new WeightEstimationEngine(model, version, WeightEstimationEngine.DEFAULT_THREADS);
+            mapNanos = mapped - start;
+            buildNanos = SystemClock.elapsedRealtimeNanos() - mapped;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to load model " + version, e);
+            notifyFailed(version, e);
+            return false;
+        }
+
+        Lease previous = current.getAndSet(new Lease(engine, version, key));
+        if (previous != null) {
+            previous.release();
+        }
+
+        Metrics snapshot;
+        synchronized (metrics) {
+            metrics.version = version;
+            metrics.mapMs = mapNanos / 1_000_000.0;
+            metrics.warmUpMs = engine.getWarmUpMs();
+            metrics.buildMs = buildNanos / 1_000_000.0 - metrics.warmUpMs;
+            if (previous == null && metrics.coldStartMs < 0) {
+                metrics.coldStartMs = (SystemClock.elapsedRealtimeNanos() - processStartNanos) / 1_000_000.0;
+            }
+            if (previous != null) {
+                metrics.swaps++;
+            }
+            snapshot = metrics.copy();
+        }
+        Log.i(TAG, "Model ready (" + key + "): " + snapshot);
+        mainHandler.post(() -> {
+            for (Listener listener : listeners) {
+                listener.onModelReady(version, snapshot);
+            }
+        });
+        return true;
+    }
+}
@@ -0,0 +1,140 @@
+package com.capstone.cattleweight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AutoCaptureTriggerTest {
+
+    private static final long MS = 1_000_000L;
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    private int captures;
+
+    private AutoCaptureTrigger newTrigger() {
+        return new AutoCaptureTrigger((frameNanos, distanceCm, sharpness) -> captures++);
+    }
+
+    // Sampel 10 Hz dari waktu start sampai end (inklusif)
+    private static void feed(AutoCaptureTrigger trigger, long startMs, long endMs, int distanceCm) {
+        for (long t = startMs; t <= endMs; t += 100) {
+            trigger.onLidarSample(t * MS, distanceCm, 500);
+        }
+    }
+
+    @Test
+    public void medianOfOddAndEvenWindows() {
+        int[] scratch = new int[5];
+        assertEquals(3, AutoCaptureTrigger.median(new int[] {5, 1, 3, 4, 2}, 5, scratch));
+        assertEquals(7, AutoCaptureTrigger.median(new int[] {7}, 1, scratch));
+        // Jumlah genap: elemen tengah atas
+        assertEquals(4, AutoCaptureTrigger.median(new int[] {4, 1, 9, 2}, 4, scratch));
+    }
+
+    @Test
+    public void stableDistanceAfterWindow() {
+        AutoCaptureTrigger trigger = newTrigger();
+        feed(trigger, 0, 1000, 150);
+        assertEquals(150, trigger.getStableDistance(1000 * MS));
+        assertEquals(150, trigger.getStableDistance(1050 * MS));
+    }
+
+    @Test
+    public void notStableBeforeWindowIsCovered() {
+        AutoCaptureTrigger trigger = newTrigger();
+        feed(trigger, 0, 400, 150);
+        assertEquals(-1, trigger.getStableDistance(400 * MS));
+    }
+
+    @Test
+    public void singleSpikeIsFilteredByMedian() {
+        AutoCaptureTrigger trigger = newTrigger();
+        feed(trigger, 0, 500, 150);
+        trigger.onLidarSample(600 * MS, 400, 500);
+        feed(trigger, 700, 1200, 150);
+        assertEquals(150, trigger.getStableDistance(1200 * MS));
+    }
+
+    @Test
+    public void movingTargetIsNotStable() {
+        AutoCaptureTrigger trigger = newTrigger();
+        for (int i = 0; i <= 10; i++) {
+            trigger.onLidarSample(i * 100 * MS, 150 + i * 2, 500);
+        }
+        assertEquals(-1, trigger.getStableDistance(1000 * MS));
+    }
+
+    @Test
+    public void staleSampleIsNotStable() {
+        AutoCaptureTrigger trigger = newTrigger();
+        feed(trigger, 0, 1000, 150);
+        // LiDAR putus: sampel terakhir lebih tua dari 2x periode sampel
+        assertEquals(150, trigger.getStableDistance(1200 * MS));
+        assertEquals(-1, trigger.getStableDistance(1201 * MS));
+        assertEquals(-1, trigger.getStableDistance(5000 * MS));
+    }
+
+    @Test
+    public void singleSampleInWindowIsNotStable() {
+        AutoCaptureTrigger trigger = newTrigger();
+        trigger.setExpectedSamplePeriod(1000 * MS);
+        for (int i = 0; i <= 5; i++) {
+            trigger.onLidarSample(i * 1000 * MS, 150, 500);
+        }
+        // Segar (umur 600 ms < 2 s) tapi hanya satu sampel yang menutupi jendela 500 ms
+        assertEquals(-1, trigger.getStableDistance(5600 * MS));
+        assertEquals(150, trigger.getStableDistance(5400 * MS));
+    }
+
+    @Test
+    public void weakSignalResetsHistory() {
+        AutoCaptureTrigger trigger = newTrigger();
+        feed(trigger, 0, 1000, 150);
+        trigger.onLidarSample(1100 * MS, 150, 10);
+        assertEquals(-1, trigger.getStableDistance(1100 * MS));
+    }
+
+    @Test
+    public void resetClearsHistory() {
+        AutoCaptureTrigger trigger = newTrigger();
+        feed(trigger, 0, 1000, 150);
+        trigger.reset();
+        assertEquals(-1, trigger.getStableDistance(1000 * MS));
+    }
+
+    @Test
+    public void capturesSharpFrameOncePerInterval() {
+        AutoCaptureTrigger trigger = newTrigger();
+        trigger.setEnabled(true);
+        byte[] sharp = FrameQualityTest.checkerboard(WIDTH, HEIGHT, 4);
+        feed(trigger, 0, 1000, 150);
+        assertTrue(trigger.onFrame(1000 * MS, sharp, WIDTH, HEIGHT, WIDTH));
+        feed(trigger, 1100, 2000, 150);
+        // Rate limit: 3 s antar capture
+        assertFalse(trigger.onFrame(2000 * MS, sharp, WIDTH, HEIGHT, WIDTH));
+        assertEquals(1, captures);
+    }
+
+    @Test
+    public void blurryFrameIsNotCaptured() {
+        AutoCaptureTrigger trigger = newTrigger();
+        trigger.setEnabled(true);
+        byte[] flat = FrameQualityTest.flat(WIDTH, HEIGHT, 128);
+        feed(trigger, 0, 1000, 150);
+        assertFalse(trigger.onFrame(1000 * MS, flat, WIDTH, HEIGHT, WIDTH));
+        assertEquals(0.0, trigger.getLastSharpness(), 1e-9);
+        assertEquals(0, captures);
+    }
+
+    @Test
+    public void disabledTriggerIgnoresFrames() {
+        AutoCaptureTrigger trigger = newTrigger();
+        byte[] sharp = FrameQualityTest.checkerboard(WIDTH, HEIGHT, 4);
+        feed(trigger, 0, 1000, 150);
+        assertFalse(trigger.onFrame(1000 * MS, sharp, WIDTH, HEIGHT, WIDTH));
+        assertEquals(0, captures);
+    }
+}
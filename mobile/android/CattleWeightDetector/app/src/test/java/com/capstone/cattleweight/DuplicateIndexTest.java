@@ -0,0 +1,105 @@
+package com.capstone.cattleweight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DuplicateIndexTest {
+
+    @Test
+    public void emptyIndexHasNoDuplicate() {
+        assertNull(new DuplicateIndex().findDuplicate(0x1234L, 150));
+    }
+
+    @Test
+    public void findsCaptureWithinRadius() {
+        DuplicateIndex index = new DuplicateIndex();
+        index.add(1, 0L, 150);
+        index.add(2, 0xFFFF_FFFF_0000_0000L, 150);
+
+        // 6 bit beda = tepat di radius default
+        DuplicateIndex.Match match = index.findDuplicate(0x3FL, 155);
+        assertNotNull(match);
+        assertEquals(1, match.id);
+        assertEquals(6, match.hammingDistance);
+        assertEquals(150, match.distanceCm);
+
+        assertNull(index.findDuplicate(0x7FL, 150));
+    }
+
+    @Test
+    public void ignoresCapturesAtOtherLidarDistance() {
+        DuplicateIndex index = new DuplicateIndex();
+        index.add(1, 0xABCDL, 150);
+        assertNull(index.findDuplicate(0xABCDL, 150 + DuplicateIndex.DEFAULT_DISTANCE_TOLERANCE_CM + 1));
+        assertNotNull(index.findDuplicate(0xABCDL, 150 - DuplicateIndex.DEFAULT_DISTANCE_TOLERANCE_CM));
+    }
+
+    @Test
+    public void returnsNearestCapture() {
+        DuplicateIndex index = new DuplicateIndex();
+        index.add(1, 0x0FL, 150);
+        index.add(2, 0x01L, 150);
+        index.add(3, 0x07L, 150);
+        DuplicateIndex.Match match = index.findDuplicate(0x00L, 150);
+        assertEquals(2, match.id);
+        assertEquals(1, match.hammingDistance);
+    }
+
+    @Test
+    public void radiusQueryMatchesLinearScan() {
+        Random random = new Random(42);
+        int count = 3000;
+        long[] hashes = new long[count];
+        int[] distances = new int[count];
+        DuplicateIndex index = new DuplicateIndex();
+        for (int i = 0; i < count; i++) {
+            // Sebagian capture adalah varian dekat capture sebelumnya
+            hashes[i] = i > 0 && random.nextBoolean()
+                    ? flipBits(hashes[random.nextInt(i)], random.nextInt(8), random)
+                    : random.nextLong();
+            distances[i] = 100 + random.nextInt(60);
+            index.add(i + 1, hashes[i], distances[i]);
+        }
+        assertEquals(count, index.size());
+
+        for (int q = 0; q < 500; q++) {
+            long query = flipBits(hashes[random.nextInt(count)], random.nextInt(10), random);
+            int distanceCm = 100 + random.nextInt(60);
+            int best = DuplicateIndex.DEFAULT_MAX_HAMMING + 1;
+            for (int i = 0; i < count; i++) {
+                if (Math.abs(distances[i] - distanceCm) <= DuplicateIndex.DEFAULT_DISTANCE_TOLERANCE_CM) {
+                    best = Math.min(best, PerceptualHash.hammingDistance(query, hashes[i]));
+                }
+            }
+            DuplicateIndex.Match match = index.findDuplicate(query, distanceCm);
+            if (best > DuplicateIndex.DEFAULT_MAX_HAMMING) {
+                assertNull(match);
+            } else {
+                assertNotNull(match);
+                assertEquals(best, match.hammingDistance);
+                assertEquals(best, PerceptualHash.hammingDistance(query, hashes[(int) match.id - 1]));
+            }
+        }
+    }
+
+    @Test
+    public void clearEmptiesIndex() {
+        DuplicateIndex index = new DuplicateIndex();
+        index.add(1, 0L, 150);
+        index.clear();
+        assertEquals(0, index.size());
+        assertNull(index.findDuplicate(0L, 150));
+    }
+
+    private static long flipBits(long hash, int bits, Random random) {
+        for (int i = 0; i < bits; i++) {
+            hash ^= 1L << random.nextInt(64);
+        }
+        return hash;
+    }
+}
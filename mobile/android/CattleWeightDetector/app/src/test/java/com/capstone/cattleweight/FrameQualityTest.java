@@ -0,0 +1,105 @@
+package com.capstone.cattleweight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FrameQualityTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    static byte[] flat(int width, int height, int value) {
+        byte[] luma = new byte[width * height];
+        java.util.Arrays.fill(luma, (byte) value);
+        return luma;
+    }
+
+    static byte[] checkerboard(int width, int height, int cell) {
+        byte[] luma = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                luma[y * width + x] = (byte) (((x / cell + y / cell) & 1) == 0 ? 20 : 235);
+            }
+        }
+        return luma;
+    }
+
+    // Box blur 3x3, tepi disalin apa adanya
+    static byte[] blur(byte[] luma, int width, int height) {
+        byte[] out = luma.clone();
+        for (int y = 1; y < height - 1; y++) {
+            for (int x = 1; x < width - 1; x++) {
+                int sum = 0;
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        sum += luma[(y + dy) * width + x + dx] & 0xFF;
+                    }
+                }
+                out[y * width + x] = (byte) (sum / 9);
+            }
+        }
+        return out;
+    }
+
+    @Test
+    public void flatFrameHasZeroVariance() {
+        assertEquals(0.0, FrameQuality.laplacianVariance(flat(WIDTH, HEIGHT, 90), 0, WIDTH, HEIGHT, WIDTH, 1), 1e-9);
+    }
+
+    @Test
+    public void linearGradientHasZeroVariance() {
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                luma[y * WIDTH + x] = (byte) (x * 2 + y);
+            }
+        }
+        // Laplacian dari bidang linear = 0 di setiap titik
+        assertEquals(0.0, FrameQuality.laplacianVariance(luma, 0, WIDTH, HEIGHT, WIDTH, 1), 1e-9);
+    }
+
+    @Test
+    public void matchesHandComputedValue() {
+        // 3x3: hanya pixel tengah yang dihitung, satu sampel -> variance 0
+        byte[] single = {10, 10, 10, 10, 50, 10, 10, 10, 10};
+        assertEquals(0.0, FrameQuality.laplacianVariance(single, 0, 3, 3, 3, 1), 1e-9);
+
+        // 4x3: lap(1,1) = 4*10 - 4*50 = -160, lap(2,1) = 50+3*10 - 4*10 = 40
+        // mean -60, variance (160^2 + 40^2) / 2 - 60^2 = 10000
+        byte[] two = {10, 10, 10, 10, 10, 50, 10, 10, 10, 10, 10, 10};
+        assertEquals(10000.0, FrameQuality.laplacianVariance(two, 0, 4, 3, 4, 1), 1e-9);
+    }
+
+    @Test
+    public void blurLowersSharpness() {
+        byte[] sharp = checkerboard(WIDTH, HEIGHT, 4);
+        byte[] blurred = blur(blur(sharp, WIDTH, HEIGHT), WIDTH, HEIGHT);
+        double sharpScore = FrameQuality.laplacianVariance(sharp, 0, WIDTH, HEIGHT, WIDTH, 1);
+        double blurScore = FrameQuality.laplacianVariance(blurred, 0, WIDTH, HEIGHT, WIDTH, 1);
+        assertTrue(sharpScore > AutoCaptureTrigger.DEFAULT_MIN_SHARPNESS);
+        assertTrue(blurScore < sharpScore / 4);
+    }
+
+    @Test
+    public void strideAndOffsetAreRespected() {
+        int stride = WIDTH + 16;
+        int offset = 7;
+        byte[] plain = checkerboard(WIDTH, HEIGHT, 4);
+        byte[] padded = new byte[offset + stride * HEIGHT];
+        java.util.Arrays.fill(padded, (byte) 255);
+        for (int y = 0; y < HEIGHT; y++) {
+            System.arraycopy(plain, y * WIDTH, padded, offset + y * stride, WIDTH);
+        }
+        for (int step = 1; step <= 4; step++) {
+            assertEquals(FrameQuality.laplacianVariance(plain, 0, WIDTH, HEIGHT, WIDTH, step),
+                    FrameQuality.laplacianVariance(padded, offset, WIDTH, HEIGHT, stride, step), 1e-9);
+        }
+    }
+
+    @Test
+    public void tooSmallFrameReturnsZero() {
+        assertEquals(0.0, FrameQuality.laplacianVariance(new byte[4], 0, 2, 2, 2, 1), 1e-9);
+    }
+}
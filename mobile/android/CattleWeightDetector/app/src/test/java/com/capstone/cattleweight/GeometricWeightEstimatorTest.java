@@ -0,0 +1,232 @@
+package com.capstone.cattleweight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class GeometricWeightEstimatorTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    // Focal length = lebar frame: 1 px = jarak / 640
+    private static final float FOCAL_PX = 640f;
+    private static final float DISTANCE_CM = 300f;
+    private static final byte COW = 40;
+    private static final byte BACKGROUND = (byte) 200;
+
+    // Satu cell grid = 4 px = 1.875 cm pada 300 cm
+    private static final float CELL_CM = 4 * DISTANCE_CM / FOCAL_PX;
+
+    /**
+     * Siluet tampak samping: badan persegi panjang + 4 kaki di bawahnya,
+     * ukuran dalam cm pada jarak distanceCm
+     */
+    static byte[] sideView(int width, int height, float lengthCm, float depthCm, float distanceCm,
+                           byte cow, byte background) {
+        byte[] luma = new byte[width * height];
+        Arrays.fill(luma, background);
+        float pxPerCm = FOCAL_PX / distanceCm;
+        int length = Math.round(lengthCm * pxPerCm);
+        int depth = Math.round(depthCm * pxPerCm);
+        int left = (width - length) / 2;
+        int top = (height - depth) / 2 - depth / 4;
+        fill(luma, width, left, top, length, depth, cow);
+        // Kaki: 4 x (8% panjang) selebar, setinggi 60% tinggi badan
+        int legWidth = Math.max(2, length * 8 / 100);
+        int legHeight = Math.min(height - top - depth, depth * 6 / 10);
+        int[] legs = {left + length / 20, left + length / 5, left + length * 7 / 10, left + length * 17 / 20};
+        for (int x : legs) {
+            fill(luma, width, x, top + depth, legWidth, legHeight, cow);
+        }
+        return luma;
+    }
+
+    static void fill(byte[] luma, int width, int left, int top, int w, int h, byte value) {
+        for (int y = top; y < top + h; y++) {
+            Arrays.fill(luma, y * width + left, y * width + left + w, value);
+        }
+    }
+
+    static byte[] transpose(byte[] luma, int width, int height) {
+        byte[] out = new byte[luma.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                out[x * height + y] = luma[y * width + x];
+            }
+        }
+        return out;
+    }
+
+    private static GeometricWeightEstimator newEstimator() {
+        GeometricWeightEstimator estimator = new GeometricWeightEstimator();
+        estimator.setFocalLengthPx(FOCAL_PX, WIDTH);
+        return estimator;
+    }
+
+    private static double schaefferKg(double lengthCm, double depthCm, double widthCm) {
+        double a = depthCm / 2;
+        double b = widthCm / 2;
+        double girth = Math.PI * (3 * (a + b) - Math.sqrt((3 * a + b) * (a + 3 * b)));
+        return girth * girth * lengthCm / GeometricWeightEstimator.SCHAEFFER_DIVISOR_METRIC;
+    }
+
+    @Test
+    public void measuresSideViewWithoutLegs() {
+        GeometricWeightEstimator estimator = newEstimator();
+        GeometricWeightEstimator.Measurement m = new GeometricWeightEstimator.Measurement();
+        byte[] frame = sideView(WIDTH, HEIGHT, 160f, 70f, DISTANCE_CM, COW, BACKGROUND);
+        assertTrue(estimator.estimate(frame, WIDTH, HEIGHT, WIDTH, DISTANCE_CM, m));
+        assertTrue(m.valid);
+        assertEquals(160f, m.bodyLengthCm, 2 * CELL_CM);
+        // Kaki tidak ikut tinggi dada
+        assertEquals(70f, m.chestDepthCm, 2 * CELL_CM);
+        assertEquals(m.chestDepthCm * GeometricWeightEstimator.DEFAULT_WIDTH_TO_DEPTH, m.chestWidthCm, 1e-3f);
+        assertEquals(1f, m.confidence, 0f);
+
+        double expected = schaefferKg(160, 70, 70 * GeometricWeightEstimator.DEFAULT_WIDTH_TO_DEPTH);
+        assertEquals(expected, m.liveWeightKg, expected * 0.08);
+        assertEquals(m.liveWeightKg * GeometricWeightEstimator.DEFAULT_DRESSING_FRACTION, m.carcassWeightKg, 1e-3f);
+        assertEquals(schaefferKg(m.bodyLengthCm, m.chestDepthCm, m.chestWidthCm), m.liveWeightKg, 1e-2);
+    }
+
+    @Test
+    public void sameAnimalFartherAwayGivesSameSize() {
+        GeometricWeightEstimator estimator = newEstimator();
+        GeometricWeightEstimator.Measurement near = new GeometricWeightEstimator.Measurement();
+        GeometricWeightEstimator.Measurement far = new GeometricWeightEstimator.Measurement();
+        assertTrue(estimator.estimate(sideView(WIDTH, HEIGHT, 150f, 65f, 250f, COW, BACKGROUND),
+                WIDTH, HEIGHT, WIDTH, 250f, near));
+        assertTrue(estimator.estimate(sideView(WIDTH, HEIGHT, 150f, 65f, 400f, COW, BACKGROUND),
+                WIDTH, HEIGHT, WIDTH, 400f, far));
+        assertEquals(near.bodyLengthCm, far.bodyLengthCm, 4 * 400f / FOCAL_PX * 2);
+        assertEquals(near.liveWeightKg, far.liveWeightKg, near.liveWeightKg * 0.15f);
+    }
+
+    @Test
+    public void weightScalesWithDistanceCubed() {
+        GeometricWeightEstimator estimator = newEstimator();
+        GeometricWeightEstimator.Measurement m1 = new GeometricWeightEstimator.Measurement();
+        GeometricWeightEstimator.Measurement m2 = new GeometricWeightEstimator.Measurement();
+        byte[] frame = sideView(WIDTH, HEIGHT, 160f, 70f, DISTANCE_CM, COW, BACKGROUND);
+        assertTrue(estimator.estimate(frame, WIDTH, HEIGHT, WIDTH, DISTANCE_CM, m1));
+        // Siluet sama, LiDAR 2x lebih jauh: semua ukuran 2x, bobot 8x
+        assertTrue(estimator.estimate(frame, WIDTH, HEIGHT, WIDTH, 2 * DISTANCE_CM, m2));
+        assertEquals(2 * m1.bodyLengthCm, m2.bodyLengthCm, 1e-3f);
+        assertEquals(8 * m1.liveWeightKg, m2.liveWeightKg, m1.liveWeightKg * 1e-4f);
+    }
+
+    @Test
+    public void brightAnimalOnDarkBackground() {
+        GeometricWeightEstimator estimator = newEstimator();
+        GeometricWeightEstimator.Measurement dark = new GeometricWeightEstimator.Measurement();
+        GeometricWeightEstimator.Measurement bright = new GeometricWeightEstimator.Measurement();
+        assertTrue(estimator.estimate(sideView(WIDTH, HEIGHT, 160f, 70f, DISTANCE_CM, COW, BACKGROUND),
+                WIDTH, HEIGHT, WIDTH, DISTANCE_CM, dark));
+        assertTrue(estimator.estimate(sideView(WIDTH, HEIGHT, 160f, 70f, DISTANCE_CM, BACKGROUND, COW),
+                WIDTH, HEIGHT, WIDTH, DISTANCE_CM, bright));
+        assertEquals(dark.bodyLengthCm, bright.bodyLengthCm, 0f);
+        assertEquals(dark.chestDepthCm, bright.chestDepthCm, 0f);
+    }
+
+    @Test
+    public void rotatedFrameMeasuresAlongDisplayAxes() {
+        GeometricWeightEstimator estimator = new GeometricWeightEstimator();
+        // Frame 480x640 yang ditampilkan landscape; focal length (px) tidak ikut berputar
+        estimator.setFocalLengthPx(FOCAL_PX, HEIGHT);
+        estimator.setRotation(90);
+        GeometricWeightEstimator.Measurement rotated = new GeometricWeightEstimator.Measurement();
+        byte[] frame = transpose(sideView(WIDTH, HEIGHT, 160f, 70f, DISTANCE_CM, COW, BACKGROUND), WIDTH, HEIGHT);
+        assertTrue(estimator.estimate(frame, HEIGHT, WIDTH, HEIGHT, DISTANCE_CM, rotated));
+        assertEquals(160f, rotated.bodyLengthCm, 2 * CELL_CM);
+        assertEquals(70f, rotated.chestDepthCm, 2 * CELL_CM);
+    }
+
+    @Test
+    public void focalLengthFollowsFrameResolution() {
+        GeometricWeightEstimator estimator = new GeometricWeightEstimator();
+        // Kalibrasi pada 1280 px, frame analisis 640 px
+        estimator.setFocalLengthPx(2 * FOCAL_PX, 2 * WIDTH);
+        GeometricWeightEstimator.Measurement m = new GeometricWeightEstimator.Measurement();
+        assertTrue(estimator.estimate(sideView(WIDTH, HEIGHT, 160f, 70f, DISTANCE_CM, COW, BACKGROUND),
+                WIDTH, HEIGHT, WIDTH, DISTANCE_CM, m));
+        assertEquals(160f, m.bodyLengthCm, 2 * CELL_CM);
+    }
+
+    @Test
+    public void topViewWidthReplacesTypicalRatio() {
+        GeometricWeightEstimator estimator = newEstimator();
+        // Tampak atas: badan 160 x 50 cm
+        byte[] top = new byte[WIDTH * HEIGHT];
+        Arrays.fill(top, BACKGROUND);
+        int length = Math.round(160f * FOCAL_PX / DISTANCE_CM);
+        int width = Math.round(50f * FOCAL_PX / DISTANCE_CM);
+        fill(top, WIDTH, (WIDTH - length) / 2, (HEIGHT - width) / 2, length, width, COW);
+        float widthCm = estimator.measureTopView(java.nio.ByteBuffer.wrap(top), WIDTH, HEIGHT, WIDTH, DISTANCE_CM);
+        assertEquals(50f, widthCm, 2 * CELL_CM);
+
+        GeometricWeightEstimator.Measurement m = new GeometricWeightEstimator.Measurement();
+        assertTrue(estimator.estimate(sideView(WIDTH, HEIGHT, 160f, 70f, DISTANCE_CM, COW, BACKGROUND),
+                WIDTH, HEIGHT, WIDTH, DISTANCE_CM, m));
+        assertEquals(widthCm, m.chestWidthCm, 0f);
+
+        estimator.setTopViewWidthCm(-1f);
+        assertTrue(estimator.estimate(sideView(WIDTH, HEIGHT, 160f, 70f, DISTANCE_CM, COW, BACKGROUND),
+                WIDTH, HEIGHT, WIDTH, DISTANCE_CM, m));
+        assertEquals(m.chestDepthCm * GeometricWeightEstimator.DEFAULT_WIDTH_TO_DEPTH, m.chestWidthCm, 1e-3f);
+    }
+
+    @Test
+    public void truncatedSilhouetteHasLowConfidence() {
+        GeometricWeightEstimator estimator = newEstimator();
+        GeometricWeightEstimator.Measurement m = new GeometricWeightEstimator.Measurement();
+        // Badan lebih panjang dari frame: terpotong kiri dan kanan
+        byte[] frame = sideView(WIDTH, HEIGHT, 400f, 70f, DISTANCE_CM, COW, BACKGROUND);
+        assertTrue(estimator.estimate(frame, WIDTH, HEIGHT, WIDTH, DISTANCE_CM, m));
+        assertTrue("confidence " + m.confidence, m.confidence <= 0.4f);
+    }
+
+    @Test
+    public void implausibleProportionsHaveLowConfidence() {
+        GeometricWeightEstimator estimator = newEstimator();
+        GeometricWeightEstimator.Measurement m = new GeometricWeightEstimator.Measurement();
+        // Lebih tinggi daripada panjang: bukan tampak samping sapi
+        assertTrue(estimator.estimate(sideView(WIDTH, HEIGHT, 60f, 90f, DISTANCE_CM, COW, BACKGROUND),
+                WIDTH, HEIGHT, WIDTH, DISTANCE_CM, m));
+        assertTrue("confidence " + m.confidence, m.confidence <= 0.3f);
+    }
+
+    @Test
+    public void rejectsUnusableInput() {
+        GeometricWeightEstimator.Measurement m = new GeometricWeightEstimator.Measurement();
+        byte[] frame = sideView(WIDTH, HEIGHT, 160f, 70f, DISTANCE_CM, COW, BACKGROUND);
+
+        // Tanpa focal length
+        assertFalse(new GeometricWeightEstimator().estimate(frame, WIDTH, HEIGHT, WIDTH, DISTANCE_CM, m));
+        assertFalse(m.valid);
+
+        GeometricWeightEstimator estimator = newEstimator();
+        assertFalse(estimator.estimate(frame, WIDTH, HEIGHT, WIDTH, 0f, m));
+        byte[] empty = new byte[WIDTH * HEIGHT];
+        Arrays.fill(empty, BACKGROUND);
+        assertFalse(estimator.estimate(empty, WIDTH, HEIGHT, WIDTH, DISTANCE_CM, m));
+        assertFalse(m.valid);
+        assertEquals(0f, m.confidence, 0f);
+        // Frame lebih kecil dari grid minimum
+        assertFalse(estimator.estimate(new byte[16], 4, 4, 4, DISTANCE_CM, m));
+    }
+
+    @Test
+    public void otsuSplitsBimodalHistogram() {
+        int[] histogram = new int[256];
+        histogram[40] = 600;
+        histogram[45] = 400;
+        histogram[190] = 300;
+        histogram[210] = 700;
+        int threshold = GeometricWeightEstimator.otsuThreshold(histogram, 2000);
+        assertTrue("threshold " + threshold, threshold >= 45 && threshold < 190);
+    }
+}
@@ -0,0 +1,84 @@
+package com.capstone.cattleweight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PerceptualHashTest {
+
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+
+    // Frame acak 0..200, deterministik per seed
+    private static byte[] frame(long seed) {
+        Random random = new Random(seed);
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < luma.length; i++) {
+            luma[i] = (byte) random.nextInt(201);
+        }
+        return luma;
+    }
+
+    @Test
+    public void hammingDistanceCountsDifferentBits() {
+        assertEquals(0, PerceptualHash.hammingDistance(0x5AL, 0x5AL));
+        assertEquals(1, PerceptualHash.hammingDistance(0L, 1L << 63));
+        assertEquals(64, PerceptualHash.hammingDistance(0L, -1L));
+    }
+
+    @Test
+    public void sameFrameSameHash() {
+        byte[] luma = frame(1);
+        assertEquals(PerceptualHash.dHash(luma, 0, WIDTH, HEIGHT, WIDTH),
+                PerceptualHash.dHash(luma.clone(), 0, WIDTH, HEIGHT, WIDTH));
+    }
+
+    @Test
+    public void brightnessShiftKeepsHash() {
+        byte[] luma = frame(2);
+        byte[] brighter = new byte[luma.length];
+        for (int i = 0; i < luma.length; i++) {
+            brighter[i] = (byte) ((luma[i] & 0xFF) + 40);
+        }
+        // dHash membandingkan sel bertetangga, jadi exposure rata tidak mengubah bit
+        assertEquals(0, PerceptualHash.hammingDistance(
+                PerceptualHash.dHash(luma, 0, WIDTH, HEIGHT, WIDTH),
+                PerceptualHash.dHash(brighter, 0, WIDTH, HEIGHT, WIDTH)));
+    }
+
+    @Test
+    public void differentFramesFarApart() {
+        int distance = PerceptualHash.hammingDistance(
+                PerceptualHash.dHash(frame(3), 0, WIDTH, HEIGHT, WIDTH),
+                PerceptualHash.dHash(frame(4), 0, WIDTH, HEIGHT, WIDTH));
+        assertTrue("distance " + distance, distance > DuplicateIndex.DEFAULT_MAX_HAMMING);
+    }
+
+    @Test
+    public void honoursOffsetAndStride() {
+        byte[] luma = frame(5);
+        int offset = 7;
+        int stride = WIDTH + 32;
+        byte[] padded = new byte[offset + stride * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            System.arraycopy(luma, y * WIDTH, padded, offset + y * stride, WIDTH);
+        }
+        assertEquals(PerceptualHash.dHash(luma, 0, WIDTH, HEIGHT, WIDTH),
+                PerceptualHash.dHash(padded, offset, WIDTH, HEIGHT, stride));
+    }
+
+    @Test
+    public void grayArgbMatchesLuma() {
+        byte[] luma = frame(6);
+        int[] argb = new int[luma.length];
+        for (int i = 0; i < luma.length; i++) {
+            int v = luma[i] & 0xFF;
+            argb[i] = 0xFF000000 | (v << 16) | (v << 8) | v;
+        }
+        assertEquals(PerceptualHash.dHash(luma, 0, WIDTH, HEIGHT, WIDTH),
+                PerceptualHash.dHash(argb, WIDTH, HEIGHT));
+    }
+}
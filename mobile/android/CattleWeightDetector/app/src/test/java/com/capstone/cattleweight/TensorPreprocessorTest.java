@@ -0,0 +1,259 @@
+package com.capstone.cattleweight;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+public class TensorPreprocessorTest {
+
+    // Luma 4x2, chroma netral: output RGB = luma
+    private static final byte[] LUMA_4X2 = {10, 20, 30, 40, 50, 60, 70, 80};
+
+    static byte[] nv21(byte[] luma, int width, int height, int u, int v) {
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        System.arraycopy(luma, 0, nv21, 0, width * height);
+        for (int i = width * height; i < nv21.length; i += 2) {
+            nv21[i] = (byte) v;
+            nv21[i + 1] = (byte) u;
+        }
+        return nv21;
+    }
+
+    static byte[] randomNv21(int width, int height, long seed) {
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        new Random(seed).nextBytes(nv21);
+        return nv21;
+    }
+
+    private static byte[] quantized(TensorPreprocessor preprocessor, byte[] nv21, int width, int height) {
+        ByteBuffer out = ByteBuffer.allocate(preprocessor.getOutputWidth() * preprocessor.getOutputHeight() * 3);
+        preprocessor.nv21ToTensor(nv21, width, height, out);
+        assertEquals(0, out.remaining());
+        return out.array();
+    }
+
+    // Satu kanal dari output RGB gray
+    private static byte[] gray(byte... values) {
+        byte[] rgb = new byte[values.length * 3];
+        for (int i = 0; i < values.length; i++) {
+            rgb[i * 3] = values[i];
+            rgb[i * 3 + 1] = values[i];
+            rgb[i * 3 + 2] = values[i];
+        }
+        return rgb;
+    }
+
+    @Test
+    public void identityCopiesLuma() {
+        TensorPreprocessor preprocessor = new TensorPreprocessor(4, 2, true, 0f, 1f);
+        assertArrayEquals(gray(LUMA_4X2), quantized(preprocessor, nv21(LUMA_4X2, 4, 2, 128, 128), 4, 2));
+    }
+
+    @Test
+    public void rotationGoldens() {
+        byte[] frame = nv21(LUMA_4X2, 4, 2, 128, 128);
+
+        TensorPreprocessor rotated90 = new TensorPreprocessor(2, 4, true, 0f, 1f);
+        rotated90.setRotation(90);
+        assertArrayEquals(gray((byte) 50, (byte) 10, (byte) 60, (byte) 20, (byte) 70, (byte) 30, (byte) 80, (byte) 40),
+                quantized(rotated90, frame, 4, 2));
+
+        TensorPreprocessor rotated180 = new TensorPreprocessor(4, 2, true, 0f, 1f);
+        rotated180.setRotation(180);
+        assertArrayEquals(gray((byte) 80, (byte) 70, (byte) 60, (byte) 50, (byte) 40, (byte) 30, (byte) 20, (byte) 10),
+                quantized(rotated180, frame, 4, 2));
+
+        TensorPreprocessor rotated270 = new TensorPreprocessor(2, 4, true, 0f, 1f);
+        rotated270.setRotation(-90);
+        assertArrayEquals(gray((byte) 40, (byte) 80, (byte) 30, (byte) 70, (byte) 20, (byte) 60, (byte) 10, (byte) 50),
+                quantized(rotated270, frame, 4, 2));
+    }
+
+    @Test
+    public void cropAndResizeSamplePixelCenters() {
+        int size = 8;
+        byte[] luma = new byte[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                luma[y * size + x] = (byte) (y * 10 + x);
+            }
+        }
+        TensorPreprocessor preprocessor = new TensorPreprocessor(2, 2, true, 0f, 1f);
+        preprocessor.setCrop(2, 2, 4, 4);
+        // Titik tengah 2 pixel output pada crop 4 pixel: offset 1 dan 3 -> x/y = 3 dan 5
+        assertArrayEquals(gray((byte) 33, (byte) 35, (byte) 53, (byte) 55),
+                quantized(preprocessor, nv21(luma, size, size, 128, 128), size, size));
+
+        preprocessor.clearCrop();
+        // Seluruh frame 8 -> 2: offset 2 dan 6
+        assertArrayEquals(gray((byte) 22, (byte) 26, (byte) 62, (byte) 66),
+                quantized(preprocessor, nv21(luma, size, size, 128, 128), size, size));
+    }
+
+    @Test
+    public void colorConversionMatchesJfif() {
+        TensorPreprocessor preprocessor = new TensorPreprocessor(1, 1, true, 0f, 1f);
+        byte[] luma = {76, 76, 76, 76};
+        // JFIF merah murni: Y 76, Cb 85, Cr 255
+        byte[] rgb = quantized(preprocessor, nv21(luma, 2, 2, 85, 255), 2, 2);
+        assertEquals(254, rgb[0] & 0xFF, 1);
+        assertEquals(0, rgb[1] & 0xFF, 1);
+        assertEquals(0, rgb[2] & 0xFF, 1);
+
+        // Di luar gamut di-clamp, tidak wrap
+        byte[] bright = {(byte) 250, (byte) 250, (byte) 250, (byte) 250};
+        rgb = quantized(preprocessor, nv21(bright, 2, 2, 255, 255), 2, 2);
+        assertEquals(255, rgb[0] & 0xFF);
+        assertEquals(255, rgb[2] & 0xFF);
+    }
+
+    @Test
+    public void floatOutputIsNormalized() {
+        TensorPreprocessor preprocessor = new TensorPreprocessor(4, 2, false, 127.5f, 127.5f);
+        ByteBuffer out = ByteBuffer.allocateDirect(4 * 2 * 3 * 4).order(ByteOrder.nativeOrder());
+        preprocessor.nv21ToTensor(nv21(LUMA_4X2, 4, 2, 128, 128), 4, 2, out);
+        out.flip();
+        for (byte value : LUMA_4X2) {
+            float expected = (value - 127.5f) / 127.5f;
+            assertEquals(expected, out.getFloat(), 1e-6f);
+            assertEquals(expected, out.getFloat(), 1e-6f);
+            assertEquals(expected, out.getFloat(), 1e-6f);
+        }
+    }
+
+    @Test
+    public void matchesReferenceImplementation() {
+        int width = 64;
+        int height = 48;
+        byte[] frame = randomNv21(width, height, 42);
+        int[][] crops = {{0, 0, 0, 0}, {6, 4, 40, 30}, {20, 10, 44, 38}};
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            for (int[] crop : crops) {
+                TensorPreprocessor preprocessor = new TensorPreprocessor(24, 16, true, 0f, 1f);
+                preprocessor.setRotation(rotation);
+                preprocessor.setCrop(crop[0], crop[1], crop[2], crop[3]);
+                byte[] actual = quantized(preprocessor, frame, width, height);
+                byte[] expected = reference(frame, width, height, crop, rotation, 24, 16);
+                for (int i = 0; i < actual.length; i++) {
+                    assertEquals("rotation " + rotation + " crop " + crop[2] + " index " + i,
+                            expected[i] & 0xFF, actual[i] & 0xFF, 1);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void planarYuv420MatchesNv21() {
+        int width = 32;
+        int height = 24;
+        byte[] frame = randomNv21(width, height, 7);
+        int chroma = width * height / 4;
+        // I420: plane U dan V terpisah, pixel stride 1
+        ByteBuffer y = ByteBuffer.wrap(frame, 0, width * height).slice();
+        byte[] u = new byte[chroma];
+        byte[] v = new byte[chroma];
+        for (int i = 0; i < chroma; i++) {
+            v[i] = frame[width * height + 2 * i];
+            u[i] = frame[width * height + 2 * i + 1];
+        }
+        TensorPreprocessor preprocessor = new TensorPreprocessor(16, 12, true, 0f, 1f);
+        preprocessor.setRotation(90);
+        byte[] expected = quantized(preprocessor, frame, width, height);
+        ByteBuffer out = ByteBuffer.allocate(expected.length);
+        preprocessor.yuv420ToTensor(y, width, ByteBuffer.wrap(u), ByteBuffer.wrap(v), width / 2, 1,
+                width, height, out);
+        assertArrayEquals(expected, out.array());
+        assertEquals(0, y.position());
+    }
+
+    @Test
+    public void argbUsesSameGeometry() {
+        int[] argb = new int[LUMA_4X2.length];
+        for (int i = 0; i < argb.length; i++) {
+            int c = LUMA_4X2[i];
+            argb[i] = 0xFF000000 | (c << 16) | (c << 8) | c;
+        }
+        TensorPreprocessor preprocessor = new TensorPreprocessor(2, 4, true, 0f, 1f);
+        preprocessor.setRotation(90);
+        ByteBuffer out = ByteBuffer.allocate(2 * 4 * 3);
+        preprocessor.argbToTensor(argb, 4, 2, out);
+        assertArrayEquals(quantized(preprocessor, nv21(LUMA_4X2, 4, 2, 128, 128), 4, 2), out.array());
+    }
+
+    @Test
+    public void lookupTablesFollowFrameSizeChanges() {
+        TensorPreprocessor preprocessor = new TensorPreprocessor(2, 2, true, 0f, 1f);
+        byte[] small = quantized(preprocessor, nv21(LUMA_4X2, 4, 2, 128, 128), 4, 2);
+        // 4x2 -> 2x2: offset 1 dan 3 di x, 0 dan 1 di y
+        assertArrayEquals(gray((byte) 20, (byte) 40, (byte) 60, (byte) 80), small);
+
+        byte[] luma = new byte[8 * 4];
+        for (int i = 0; i < luma.length; i++) {
+            luma[i] = (byte) i;
+        }
+        // offset 2 dan 6 di x, 1 dan 3 di y
+        assertArrayEquals(gray((byte) 10, (byte) 14, (byte) 26, (byte) 30),
+                quantized(preprocessor, nv21(luma, 8, 4, 128, 128), 8, 4));
+        assertArrayEquals(small, quantized(preprocessor, nv21(LUMA_4X2, 4, 2, 128, 128), 4, 2));
+    }
+
+    // Implementasi acuan langsung (double, tanpa tabel) untuk crop + resize + rotasi + BT.601
+    private static byte[] reference(byte[] nv21, int width, int height, int[] crop, int rotation,
+                                    int outWidth, int outHeight) {
+        int left = crop[2] > 0 ? crop[0] : 0;
+        int top = crop[3] > 0 ? crop[1] : 0;
+        int w = crop[2] > 0 ? Math.min(crop[2], width - left) : width;
+        int h = crop[3] > 0 ? Math.min(crop[3], height - top) : height;
+        boolean swap = rotation == 90 || rotation == 270;
+        // Ukuran crop setelah rotasi, dipetakan ke ukuran output
+        int rw = swap ? h : w;
+        int rh = swap ? w : h;
+        byte[] out = new byte[outWidth * outHeight * 3];
+        int o = 0;
+        for (int oy = 0; oy < outHeight; oy++) {
+            for (int ox = 0; ox < outWidth; ox++) {
+                int rx = (int) Math.floor((ox + 0.5) * rw / outWidth);
+                int ry = (int) Math.floor((oy + 0.5) * rh / outHeight);
+                int cx;
+                int cy;
+                switch (rotation) {
+                    case 90:
+                        cx = ry;
+                        cy = h - 1 - rx;
+                        break;
+                    case 180:
+                        cx = w - 1 - rx;
+                        cy = h - 1 - ry;
+                        break;
+                    case 270:
+                        cx = w - 1 - ry;
+                        cy = rx;
+                        break;
+                    default:
+                        cx = rx;
+                        cy = ry;
+                        break;
+                }
+                int sx = left + cx;
+                int sy = top + cy;
+                double luma = nv21[sy * width + sx] & 0xFF;
+                int uv = width * height + (sy / 2) * width + (sx / 2) * 2;
+                double cr = (nv21[uv] & 0xFF) - 128;
+                double cb = (nv21[uv + 1] & 0xFF) - 128;
+                out[o++] = (byte) clamp(luma + 1.402 * cr);
+                out[o++] = (byte) clamp(luma - 0.344136 * cb - 0.714136 * cr);
+                out[o++] = (byte) clamp(luma + 1.772 * cb);
+            }
+        }
+        return out;
+    }
+
+    private static int clamp(double value) {
+        return (int) Math.max(0, Math.min(255, Math.floor(value)));
+    }
+}
@@ -0,0 +1,182 @@
+package com.capstone.cattleweight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class WeightAggregatorTest {
+
+    private static final long MS = 1_000_000L;
+
+    // Satu baris trace: frame_ms,weight_kg,confidence,strength
+    private static final class TraceSample {
+        final long frameNanos;
+        final float weightKg;
+        final float confidence;
+        final int strength;
+
+        TraceSample(long frameNanos, float weightKg, float confidence, int strength) {
+            this.frameNanos = frameNanos;
+            this.weightKg = weightKg;
+            this.confidence = confidence;
+            this.strength = strength;
+        }
+    }
+
+    private int convergedCalls;
+
+    private static List<TraceSample> loadTrace(String name) throws IOException {
+        List<TraceSample> samples = new ArrayList<>();
+        InputStream in = WeightAggregatorTest.class.getResourceAsStream("/weight_traces/" + name);
+        assertNotNull("trace " + name, in);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#") || line.startsWith("frame_ms")) {
+                    continue;
+                }
+                String[] f = line.split(",");
+                samples.add(new TraceSample(Long.parseLong(f[0]) * MS, Float.parseFloat(f[1]),
+                        Float.parseFloat(f[2]), Integer.parseInt(f[3])));
+            }
+        }
+        return samples;
+    }
+
+    // Putar trace sampai konvergen; return jumlah sampel yang dipakai, -1 kalau tidak konvergen
+    private static int replay(WeightAggregator aggregator, List<TraceSample> trace) {
+        for (int i = 0; i < trace.size(); i++) {
+            TraceSample s = trace.get(i);
+            if (aggregator.add(s.frameNanos, s.weightKg, s.confidence, s.strength)) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private WeightAggregator newAggregator() {
+        return new WeightAggregator(result -> convergedCalls++);
+    }
+
+    @Test
+    public void steadyTraceConvergesAndRejectsOutliers() throws IOException {
+        WeightAggregator aggregator = newAggregator();
+        int used = replay(aggregator, loadTrace("steady_350kg.csv"));
+        assertTrue("converged after " + used, used > 0 && used <= 16);
+        assertTrue(aggregator.isConverged());
+        assertEquals(1, convergedCalls);
+
+        WeightAggregator.Result result = aggregator.getResult();
+        assertTrue(result.converged);
+        assertEquals(350f, result.weightKg, 2f);
+        assertTrue(result.ciLowKg <= 350f && result.ciHighKg >= 350f);
+        assertTrue(result.getHalfWidthKg() <= WeightAggregator.DEFAULT_MAX_CI_HALF_WIDTH_KG);
+        assertEquals(2, result.rejected);
+        assertEquals(used - 2, result.samples);
+        assertEquals((used - 1) * 100 * MS, result.windowNanos);
+    }
+
+    @Test
+    public void convergedWindowIgnoresFurtherSamples() throws IOException {
+        WeightAggregator aggregator = newAggregator();
+        List<TraceSample> trace = loadTrace("steady_350kg.csv");
+        replay(aggregator, trace);
+        float weight = aggregator.getResult().weightKg;
+        assertFalse(aggregator.add(10_000 * MS, 500f, 1f, 1000));
+        assertEquals(weight, aggregator.getResult().weightKg, 0f);
+        assertEquals(1, convergedCalls);
+    }
+
+    @Test
+    public void driftingTraceNeverConverges() throws IOException {
+        WeightAggregator aggregator = newAggregator();
+        assertEquals(-1, replay(aggregator, loadTrace("walking_drift.csv")));
+        assertFalse(aggregator.isConverged());
+        assertEquals(0, convergedCalls);
+        assertTrue(aggregator.isOpen());
+    }
+
+    @Test
+    public void weakLidarSamplesCountLess() throws IOException {
+        WeightAggregator aggregator = newAggregator();
+        aggregator.setThresholds(WeightAggregator.MAX_SAMPLES, 0f, 0f, 0f, Integer.MAX_VALUE);
+        replay(aggregator, loadTrace("weak_signal_bias.csv"));
+        // Bobot 1.0 vs 0.1: rata-rata (340 + 0.1 x 360) / 1.1
+        assertEquals((340f + 0.1f * 360f) / 1.1f, aggregator.getResult().weightKg, 0.01f);
+        assertEquals(0, aggregator.getResult().rejected);
+    }
+
+    @Test
+    public void resetOpensNewWindow() throws IOException {
+        WeightAggregator aggregator = newAggregator();
+        List<TraceSample> trace = loadTrace("steady_350kg.csv");
+        replay(aggregator, trace);
+        aggregator.reset();
+        assertFalse(aggregator.isOpen());
+        assertFalse(aggregator.isConverged());
+        assertEquals(0, aggregator.getResult().samples);
+        assertTrue(replay(aggregator, trace) > 0);
+        assertEquals(2, convergedCalls);
+    }
+
+    @Test
+    public void invalidEstimatesAreIgnored() {
+        WeightAggregator aggregator = newAggregator();
+        assertFalse(aggregator.add(0, Float.NaN, 1f, 1000));
+        assertFalse(aggregator.add(0, 0f, 1f, 1000));
+        assertFalse(aggregator.add(0, -5f, 1f, 1000));
+        assertFalse(aggregator.isOpen());
+    }
+
+    @Test
+    public void singleSampleHasUnboundedInterval() {
+        WeightAggregator aggregator = newAggregator();
+        aggregator.add(0, 300f, 0.9f, 1000);
+        WeightAggregator.Result result = aggregator.getResult();
+        assertEquals(300f, result.weightKg, 0f);
+        assertTrue(Float.isInfinite(result.getHalfWidthKg()));
+        assertFalse(result.converged);
+    }
+
+    @Test
+    public void windowKeepsLatestSamples() {
+        WeightAggregator aggregator = newAggregator();
+        aggregator.setThresholds(WeightAggregator.MAX_SAMPLES, 0f, 0f, 0f, Integer.MAX_VALUE);
+        for (int i = 0; i < WeightAggregator.MAX_SAMPLES; i++) {
+            aggregator.add(i * 100 * MS, 200f, 0.9f, 1000);
+        }
+        for (int i = 0; i < WeightAggregator.MAX_SAMPLES; i++) {
+            aggregator.add((WeightAggregator.MAX_SAMPLES + i) * 100 * MS, 400f, 0.9f, 1000);
+        }
+        assertEquals(400f, aggregator.getResult().weightKg, 0f);
+        assertEquals(WeightAggregator.MAX_SAMPLES, aggregator.getResult().samples);
+    }
+
+    @Test
+    public void strengthWeightIsClampedAndLinear() {
+        assertEquals(0.1f, WeightAggregator.strengthWeight(0), 1e-6f);
+        assertEquals(0.1f, WeightAggregator.strengthWeight(100), 1e-6f);
+        assertEquals(0.55f, WeightAggregator.strengthWeight(550), 1e-6f);
+        assertEquals(1f, WeightAggregator.strengthWeight(1000), 1e-6f);
+        assertEquals(1f, WeightAggregator.strengthWeight(5000), 1e-6f);
+    }
+
+    @Test
+    public void medianOfOddAndEvenCounts() {
+        assertEquals(3.0, WeightAggregator.median(new double[] {5, 1, 3, 2, 4}, 5), 0.0);
+        assertEquals(2.5, WeightAggregator.median(new double[] {4, 1, 3, 2}, 4), 0.0);
+        // Hanya n elemen pertama
+        assertEquals(4.0, WeightAggregator.median(new double[] {4, 9, 1, 0}, 1), 0.0);
+    }
+}
@@ -0,0 +1,67 @@
+package com.capstone.cattleweight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class WeightModelManagerTest {
+
+    private static ByteBuffer model(int seed, int size) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        for (int i = 0; i < size; i++) {
+            buffer.put((byte) (i * 31 + seed));
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void sameContentGivesSameKey() {
+        String a = WeightModelManager.contentKey(WeightModelManager.BUNDLED_VERSION, model(1, 4096));
+        String b = WeightModelManager.contentKey(WeightModelManager.BUNDLED_VERSION, model(1, 4096));
+        assertEquals(a, b);
+        assertTrue(a.matches("bundled@[0-9a-f]{16}"));
+    }
+
+    @Test
+    public void newAssetUnderSameNameGetsNewKey() {
+        // APK baru: asset tetap bernama "bundled" tapi isinya lain
+        String oldAsset = WeightModelManager.contentKey(WeightModelManager.BUNDLED_VERSION, model(1, 4096));
+        String newAsset = WeightModelManager.contentKey(WeightModelManager.BUNDLED_VERSION, model(2, 4096));
+        assertNotEquals(oldAsset, newAsset);
+    }
+
+    @Test
+    public void sameContentUnderOtherNameGetsOtherKey() {
+        String bundled = WeightModelManager.contentKey(WeightModelManager.BUNDLED_VERSION, model(1, 4096));
+        String file = WeightModelManager.contentKey("v2", model(1, 4096));
+        assertNotEquals(bundled, file);
+    }
+
+    @Test
+    public void hashesWholeBufferWithoutMovingPosition() {
+        ByteBuffer buffer = model(3, 4096);
+        String full = WeightModelManager.contentKey("v1", buffer);
+        buffer.position(100);
+        assertEquals(full, WeightModelManager.contentKey("v1", buffer));
+        assertEquals(100, buffer.position());
+    }
+
+    @Test
+    public void versionFromFileNameDropsExtensionAndUnsafeCharacters() {
+        assertEquals("cattle_v2", WeightModelManager.versionFor("cattle v2.tflite"));
+        assertEquals("model-1.3", WeightModelManager.versionFor("model-1.3.TFLITE"));
+        assertEquals("etc_passwd", WeightModelManager.versionFor("../etc/passwd"));
+    }
+
+    @Test
+    public void versionNeverShadowsBundledOrIsEmpty() {
+        assertTrue(WeightModelManager.versionFor("bundled.tflite").startsWith("model-"));
+        assertTrue(WeightModelManager.versionFor(null).startsWith("model-"));
+        assertTrue(WeightModelManager.versionFor(".tflite").startsWith("model-"));
+    }
+}
@@ -0,0 +1,50 @@
+package com.capstone.cattleweight.eval;
+
+import com.capstone.cattleweight.FrameQuality;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waktu kernel ketajaman (variance of Laplacian) per frame luma di JVM, untuk
+ * memilih langkah sampling AutoCaptureTrigger (SHARPNESS_STEP = 4).
+ * Angka absolut berbeda dengan device; dipakai untuk membandingkan ukuran dan step.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FrameQualityBenchmark {
+
+    @Param({"640x480", "960x1280", "1920x1080"})
+    public String frameSize;
+
+    @Param({"1", "2", "4"})
+    public int step;
+
+    private int width;
+    private int height;
+    private byte[] luma;
+
+    @Setup
+    public void setUp() {
+        int x = frameSize.indexOf('x');
+        width = Integer.parseInt(frameSize.substring(0, x));
+        height = Integer.parseInt(frameSize.substring(x + 1));
+        luma = new byte[width * height];
+        new Random(1).nextBytes(luma);
+    }
+
+    @Benchmark
+    public double laplacianVariance() {
+        return FrameQuality.laplacianVariance(luma, 0, width, height, width, step);
+    }
+}
@@ -0,0 +1,78 @@
+package com.capstone.cattleweight.eval;
+
+import com.capstone.cattleweight.TensorPreprocessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waktu satu frame NV21 -> tensor input model (224x224) di JVM.
+ * Angka absolut berbeda dengan device; dipakai untuk membandingkan perubahan kernel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TensorPreprocessorBenchmark {
+
+    private static final int INPUT_SIZE = 224;
+
+    @Param({"640x480", "1280x720"})
+    public String frameSize;
+
+    @Param({"0", "90"})
+    public int rotation;
+
+    private int width;
+    private int height;
+    private byte[] nv21;
+    private TensorPreprocessor floatPreprocessor;
+    private TensorPreprocessor quantizedPreprocessor;
+    private ByteBuffer floatInput;
+    private ByteBuffer quantizedInput;
+
+    @Setup
+    public void setUp() {
+        int x = frameSize.indexOf('x');
+        width = Integer.parseInt(frameSize.substring(0, x));
+        height = Integer.parseInt(frameSize.substring(x + 1));
+        nv21 = new byte[width * height * 3 / 2];
+        new Random(1).nextBytes(nv21);
+
+        floatPreprocessor = new TensorPreprocessor(INPUT_SIZE, INPUT_SIZE, false, 0f, 255f);
+        quantizedPreprocessor = new TensorPreprocessor(INPUT_SIZE, INPUT_SIZE, true, 0f, 1f);
+        floatPreprocessor.setRotation(rotation);
+        quantizedPreprocessor.setRotation(rotation);
+        // Crop tengah persegi, seperti ROI sapi
+        int side = Math.min(width, height);
+        floatPreprocessor.setCrop((width - side) / 2, (height - side) / 2, side, side);
+        quantizedPreprocessor.setCrop((width - side) / 2, (height - side) / 2, side, side);
+
+        floatInput = ByteBuffer.allocateDirect(INPUT_SIZE * INPUT_SIZE * 3 * 4).order(ByteOrder.nativeOrder());
+        quantizedInput = ByteBuffer.allocateDirect(INPUT_SIZE * INPUT_SIZE * 3);
+    }
+
+    @Benchmark
+    public ByteBuffer nv21ToFloat() {
+        floatInput.clear();
+        floatPreprocessor.nv21ToTensor(nv21, width, height, floatInput);
+        return floatInput;
+    }
+
+    @Benchmark
+    public ByteBuffer nv21ToUint8() {
+        quantizedInput.clear();
+        quantizedPreprocessor.nv21ToTensor(nv21, width, height, quantizedInput);
+        return quantizedInput;
+    }
+}
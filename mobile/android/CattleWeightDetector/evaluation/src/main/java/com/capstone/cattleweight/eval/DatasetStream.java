@@ -0,0 +1,263 @@
+package com.capstone.cattleweight.eval;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Membaca folder hasil EXPORT_DATASET.ps1 baris demi baris:
+ * cattle_dataset.csv (tabel dataset), images/ (JPEG) dan label bobot timbangan.
+ *
+ * Label diambil dari kolom scale_weight_kg / weight_kg di cattle_dataset.csv, atau dari
+ * file terpisah (kolom id + weight_kg). Gambar dicari dari nama file di image_path, atau
+ * dari prefix id di nama file ({@code <id>_cattle_...jpg}) karena image_path MediaStore
+ * berupa content:// URI. Baris tanpa label atau gambar dilewati dan dihitung.
+ */
+public final class DatasetStream implements Closeable {
+
+    public static final String DATASET_CSV = "cattle_dataset.csv";
+    public static final String IMAGES_DIR = "images";
+
+    private static final Pattern ID_PREFIX = Pattern.compile("^(\\d+)_cattle_");
+    private static final String[] LABEL_COLUMNS = {"scale_weight_kg", "weight_kg", "label_kg"};
+
+    private final BufferedReader reader;
+    private final Map<String, Integer> columns;
+    private final Map<Long, Float> labels;
+    private final Map<String, File> imagesByName = new HashMap<>();
+    private final Map<Long, File> imagesById = new HashMap<>();
+
+    private int rows;
+    private int missingLabel;
+    private int missingImage;
+
+    /**
+     * @param labelsCsv file label terpisah, atau null kalau label ada di cattle_dataset.csv
+     */
+    public DatasetStream(File exportDir, File labelsCsv) throws IOException {
+        indexImages(new File(exportDir, IMAGES_DIR));
+        labels = labelsCsv != null ? readLabels(labelsCsv) : null;
+        reader = Files.newBufferedReader(new File(exportDir, DATASET_CSV).toPath(), StandardCharsets.UTF_8);
+        List<String> header = readRecord(reader);
+        if (header == null) {
+            throw new IOException(DATASET_CSV + " is empty");
+        }
+        columns = indexColumns(header);
+        if (!columns.containsKey("id") || !columns.containsKey("distance_cm")) {
+            throw new IOException(DATASET_CSV + " has no id/distance_cm columns");
+        }
+        if (labels == null && labelColumn(columns) == null) {
+            throw new IOException("No label column in " + DATASET_CSV + " and no labels file given");
+        }
+    }
+
+    /**
+     * Sampel berikutnya yang lengkap, atau null di akhir file
+     */
+    public Sample next() throws IOException {
+        List<String> record;
+        while ((record = readRecord(reader)) != null) {
+            rows++;
+            long id = parseLong(field(record, "id"), -1);
+            if (id < 0) {
+                continue;
+            }
+            float label = labels != null
+                    ? labels.getOrDefault(id, Float.NaN)
+                    : parseFloat(field(record, labelColumn(columns)));
+            if (Float.isNaN(label) || label <= 0f) {
+                missingLabel++;
+                continue;
+            }
+            File image = resolveImage(id, field(record, "image_path"));
+            if (image == null) {
+                missingImage++;
+                continue;
+            }
+            int distance = (int) parseLong(field(record, "distance_cm"), 0);
+            int strength = (int) parseLong(field(record, "signal_strength"), 0);
+            return new Sample(id, image, distance, strength, label);
+        }
+        return null;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getMissingLabel() {
+        return missingLabel;
+    }
+
+    public int getMissingImage() {
+        return missingImage;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void indexImages(File dir) throws IOException {
+        if (!dir.isDirectory()) {
+            throw new IOException("Image folder not found: " + dir);
+        }
+        // Export menyalin album CattleDataset sebagai subfolder, jadi cari rekursif
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.filter(Files::isRegularFile).forEach(path -> {
+                String name = path.getFileName().toString();
+                File file = path.toFile();
+                imagesByName.put(name, file);
+                Matcher matcher = ID_PREFIX.matcher(name);
+                if (matcher.find()) {
+                    imagesById.put(Long.parseLong(matcher.group(1)), file);
+                }
+            });
+        }
+    }
+
+    private File resolveImage(long id, String imagePath) {
+        if (imagePath != null && !imagePath.isEmpty() && !imagePath.startsWith("content:")) {
+            File byName = imagesByName.get(new File(imagePath).getName());
+            if (byName != null) {
+                return byName;
+            }
+        }
+        return imagesById.get(id);
+    }
+
+    private String field(List<String> record, String column) {
+        Integer index = columns.get(column);
+        return index != null && index < record.size() ? record.get(index) : null;
+    }
+
+    private static String labelColumn(Map<String, Integer> columns) {
+        for (String name : LABEL_COLUMNS) {
+            if (columns.containsKey(name)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    private static Map<String, Integer> indexColumns(List<String> header) {
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            index.put(header.get(i).trim().toLowerCase(), i);
+        }
+        return index;
+    }
+
+    private static Map<Long, Float> readLabels(File file) throws IOException {
+        Map<Long, Float> labels = new HashMap<>();
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            List<String> header = readRecord(in);
+            if (header == null) {
+                return labels;
+            }
+            Map<String, Integer> columns = indexColumns(header);
+            Integer idColumn = columns.containsKey("id") ? columns.get("id") : columns.get("dataset_id");
+            String labelName = labelColumn(columns);
+            if (idColumn == null || labelName == null) {
+                throw new IOException(file + " needs id and weight_kg columns");
+            }
+            int labelColumn = columns.get(labelName);
+            List<String> record;
+            while ((record = readRecord(in)) != null) {
+                if (record.size() <= Math.max(idColumn, labelColumn)) {
+                    continue;
+                }
+                long id = parseLong(record.get(idColumn), -1);
+                float label = parseFloat(record.get(labelColumn));
+                if (id >= 0 && !Float.isNaN(label)) {
+                    labels.put(id, label);
+                }
+            }
+        }
+        return labels;
+    }
+
+    /**
+     * Satu record CSV (RFC 4180, seperti output sqlite3 -csv); kolom JSON view_paths berisi
+     * koma dan tanda kutip ganda, dan field ber-quote boleh memuat baris baru.
+     */
+    static List<String> readRecord(BufferedReader in) throws IOException {
+        String line = in.readLine();
+        while (line != null && line.isEmpty()) {
+            line = in.readLine();
+        }
+        if (line == null) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"') {
+                        if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c != '\r') {
+                    field.append(c);
+                }
+            }
+            if (!quoted) {
+                break;
+            }
+            line = in.readLine();
+            if (line == null) {
+                break;
+            }
+            field.append('\n');
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static long parseLong(String value, long fallback) {
+        if (value == null || value.isEmpty()) {
+            return fallback;
+        }
+        try {
+            return (long) Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static float parseFloat(String value) {
+        if (value == null || value.isEmpty()) {
+            return Float.NaN;
+        }
+        try {
+            return Float.parseFloat(value.trim());
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.capstone.cattleweight.eval;
+
+/**
+ * Model / estimator yang dievaluasi. Satu instance per thread worker (lihat {@link Factory}),
+ * jadi implementasi tidak perlu thread-safe.
+ */
+public interface Estimator {
+
+    interface Factory {
+        String getName();
+
+        /**
+         * Estimator butuh pixel gambar (decode dilakukan sekali per sampel untuk semua estimator)
+         */
+        boolean needsImage();
+
+        Estimator create();
+    }
+
+    /**
+     * Hasil satu estimasi; diisi ulang setiap estimate()
+     */
+    class Prediction {
+        public float weightKg;
+        public float confidence;
+        // Latensi yang diukur di tempat lain (mis. di HP); < 0 = ukur waktu panggilan estimate()
+        public double reportedLatencyMs = -1;
+    }
+
+    /**
+     * @param image luma gambar sampel, null kalau factory tidak butuh gambar
+     * @return false kalau sampel tidak bisa diestimasi
+     */
+    boolean estimate(Sample sample, LumaImage image, Prediction out);
+}
@@ -0,0 +1,145 @@
+package com.capstone.cattleweight.eval;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Akumulasi error dan latensi satu estimator. Satu instance per worker, digabung di akhir
+ * dengan {@link #merge(EstimatorStats)}.
+ */
+public final class EstimatorStats {
+
+    /**
+     * Error dalam satu bucket jarak [startCm, startCm + bucketCm)
+     */
+    public static final class Bucket {
+        public long count;
+        public double sumAbsErrorKg;
+        public double sumAbsPercentError;
+
+        public double getMae() {
+            return count > 0 ? sumAbsErrorKg / count : Double.NaN;
+        }
+
+        public double getMape() {
+            return count > 0 ? sumAbsPercentError / count : Double.NaN;
+        }
+
+        void add(double absError, double absPercent) {
+            count++;
+            sumAbsErrorKg += absError;
+            sumAbsPercentError += absPercent;
+        }
+
+        void merge(Bucket other) {
+            count += other.count;
+            sumAbsErrorKg += other.sumAbsErrorKg;
+            sumAbsPercentError += other.sumAbsPercentError;
+        }
+    }
+
+    public final String name;
+    private final int bucketCm;
+    private final Bucket overall = new Bucket();
+    private final TreeMap<Integer, Bucket> buckets = new TreeMap<>();
+    private long failed;
+    private double sumSignedErrorKg;
+    private double[] latencies = new double[256];
+    private int latencyCount;
+    private long allocatedBytes;
+    private long allocationSamples;
+
+    public EstimatorStats(String name, int bucketCm) {
+        this.name = name;
+        this.bucketCm = bucketCm;
+    }
+
+    /**
+     * @param latencyMs      latensi estimasi, < 0 kalau tidak dihitung (warm-up JIT)
+     * @param allocatedBytes alokasi heap selama estimate(), < 0 kalau tidak terukur
+     */
+    public void add(Sample sample, float predictedKg, double latencyMs, long allocatedBytes) {
+        double error = predictedKg - sample.labelKg;
+        double absError = Math.abs(error);
+        double absPercent = 100.0 * absError / sample.labelKg;
+        sumSignedErrorKg += error;
+        overall.add(absError, absPercent);
+        int bucket = Math.max(0, sample.distanceCm) / bucketCm * bucketCm;
+        buckets.computeIfAbsent(bucket, b -> new Bucket()).add(absError, absPercent);
+
+        if (latencyMs >= 0) {
+            if (latencyCount == latencies.length) {
+                latencies = Arrays.copyOf(latencies, latencies.length * 2);
+            }
+            latencies[latencyCount++] = latencyMs;
+        }
+        if (allocatedBytes >= 0) {
+            this.allocatedBytes += allocatedBytes;
+            allocationSamples++;
+        }
+    }
+
+    public void fail() {
+        failed++;
+    }
+
+    public void merge(EstimatorStats other) {
+        overall.merge(other.overall);
+        for (Map.Entry<Integer, Bucket> entry : other.buckets.entrySet()) {
+            buckets.computeIfAbsent(entry.getKey(), b -> new Bucket()).merge(entry.getValue());
+        }
+        failed += other.failed;
+        sumSignedErrorKg += other.sumSignedErrorKg;
+        if (latencyCount + other.latencyCount > latencies.length) {
+            latencies = Arrays.copyOf(latencies, latencyCount + other.latencyCount);
+        }
+        System.arraycopy(other.latencies, 0, latencies, latencyCount, other.latencyCount);
+        latencyCount += other.latencyCount;
+        allocatedBytes += other.allocatedBytes;
+        allocationSamples += other.allocationSamples;
+    }
+
+    public int getBucketCm() {
+        return bucketCm;
+    }
+
+    public Bucket getOverall() {
+        return overall;
+    }
+
+    public TreeMap<Integer, Bucket> getBuckets() {
+        return buckets;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Rata-rata error bertanda (bias); positif = estimasi terlalu berat
+     */
+    public double getBiasKg() {
+        return overall.count > 0 ? sumSignedErrorKg / overall.count : Double.NaN;
+    }
+
+    /**
+     * Persentil latensi (nearest rank), p dalam 0..100
+     */
+    public double getLatencyPercentile(double p) {
+        if (latencyCount == 0) {
+            return Double.NaN;
+        }
+        double[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(p / 100.0 * latencyCount);
+        return sorted[Math.max(0, Math.min(latencyCount - 1, rank - 1))];
+    }
+
+    /**
+     * Rata-rata alokasi heap per estimasi (byte), -1 kalau tidak terukur
+     */
+    public long getAllocatedBytesPerEstimate() {
+        return allocationSamples > 0 ? allocatedBytes / allocationSamples : -1;
+    }
+}
@@ -0,0 +1,329 @@
+package com.capstone.cattleweight.eval;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Evaluasi akurasi + kecepatan model/estimator pada dataset hasil export.
+ *
+ * Thread utama membaca sampel (gambar, LiDAR, label) dari {@link DatasetStream} ke antrian
+ * terbatas; N worker masing-masing decode gambar sekali lalu menjalankan semua estimator
+ * pada sampel itu. Laporan: MAE/MAPE per bucket jarak, bias, latensi p50/p95, alokasi heap
+ * per estimasi dan puncak heap, plus throughput keseluruhan.
+ *
+ * <pre>
+ * ./gradlew :evaluation:run --args="--dataset cattle_dataset_export_... --labels labels.csv
+ *         --scores model_scores.csv --threads 4 --report report.csv"
+ * </pre>
+ */
+public final class EvaluationHarness {
+
+    private static final int DEFAULT_BUCKET_CM = 50;
+    // Estimasi awal per worker yang tidak dihitung latensinya (JIT belum panas)
+    private static final int WARMUP_ESTIMATES = 5;
+    private static final Sample END_OF_SAMPLES = new Sample(-1, null, 0, 0, 0f);
+
+    private static final class Options {
+        File dataset;
+        File labels;
+        File scores;
+        File report;
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        int bucketCm = DEFAULT_BUCKET_CM;
+        float fovDeg = 66f;
+        int rotation;
+        boolean geometric = true;
+        boolean liveWeight;
+    }
+
+    private final Options options;
+    private final List<Estimator.Factory> factories;
+    private final List<EstimatorStats> totals = new ArrayList<>();
+    private final EstimatorStats decodeStats;
+    private long samples;
+    private long decodeFailures;
+
+    private EvaluationHarness(Options options, List<Estimator.Factory> factories) {
+        this.options = options;
+        this.factories = factories;
+        for (Estimator.Factory factory : factories) {
+            totals.add(new EstimatorStats(factory.getName(), options.bucketCm));
+        }
+        decodeStats = new EstimatorStats("decode", options.bucketCm);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = parse(args);
+        if (options == null) {
+            usage(System.err);
+            System.exit(2);
+            return;
+        }
+        List<Estimator.Factory> factories = new ArrayList<>();
+        if (options.geometric) {
+            factories.add(new GeometricEstimatorFactory(options.fovDeg, options.rotation, options.liveWeight));
+        }
+        if (options.scores != null) {
+            factories.addAll(StoredScoresFactory.load(options.scores));
+        }
+        if (factories.isEmpty()) {
+            System.err.println("Nothing to evaluate: enable --geometric or give --scores");
+            System.exit(2);
+            return;
+        }
+        new EvaluationHarness(options, factories).run();
+    }
+
+    private void run() throws IOException, InterruptedException {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        BlockingQueue<Sample> queue = new ArrayBlockingQueue<>(options.threads * 4);
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < options.threads; i++) {
+            Worker worker = new Worker(queue);
+            workers.add(worker);
+            worker.start();
+        }
+
+        long start = System.nanoTime();
+        DatasetStream stream = new DatasetStream(options.dataset, options.labels);
+        try {
+            Sample sample;
+            while ((sample = stream.next()) != null) {
+                queue.put(sample);
+                samples++;
+            }
+        } finally {
+            stream.close();
+            for (int i = 0; i < workers.size(); i++) {
+                queue.put(END_OF_SAMPLES);
+            }
+        }
+        for (Worker worker : workers) {
+            worker.join();
+            for (int i = 0; i < totals.size(); i++) {
+                totals.get(i).merge(worker.stats.get(i));
+            }
+            decodeStats.merge(worker.decode);
+            decodeFailures += worker.decodeFailures;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        printReport(System.out, stream, seconds);
+        if (options.report != null) {
+            writeCsv(options.report);
+            System.out.println("Report written to " + options.report);
+        }
+    }
+
+    private final class Worker extends Thread {
+        private final BlockingQueue<Sample> queue;
+        private final List<Estimator> estimators = new ArrayList<>();
+        final List<EstimatorStats> stats = new ArrayList<>();
+        final EstimatorStats decode = new EstimatorStats("decode", options.bucketCm);
+        long decodeFailures;
+
+        Worker(BlockingQueue<Sample> queue) {
+            super("EvaluationWorker");
+            this.queue = queue;
+            for (Estimator.Factory factory : factories) {
+                estimators.add(factory.create());
+                stats.add(new EstimatorStats(factory.getName(), options.bucketCm));
+            }
+        }
+
+        @Override
+        public void run() {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean
+                    ? (com.sun.management.ThreadMXBean) threads : null;
+            long threadId = Thread.currentThread().getId();
+            boolean needsImage = false;
+            for (Estimator.Factory factory : factories) {
+                needsImage |= factory.needsImage();
+            }
+            LumaImage image = new LumaImage();
+            Estimator.Prediction prediction = new Estimator.Prediction();
+            int processed = 0;
+            try {
+                while (true) {
+                    Sample sample = queue.take();
+                    if (sample == END_OF_SAMPLES) {
+                        return;
+                    }
+                    boolean warm = processed++ >= WARMUP_ESTIMATES;
+                    boolean decoded = false;
+                    if (needsImage) {
+                        long start = System.nanoTime();
+                        try {
+                            image.decode(sample.image);
+                            decoded = true;
+                            decode.add(sample, 0f, warm ? (System.nanoTime() - start) / 1e6 : -1, -1);
+                        } catch (IOException e) {
+                            decodeFailures++;
+                        }
+                    }
+                    for (int i = 0; i < estimators.size(); i++) {
+                        if (factories.get(i).needsImage() && !decoded) {
+                            stats.get(i).fail();
+                            continue;
+                        }
+                        long allocatedBefore = allocations != null ? allocations.getThreadAllocatedBytes(threadId) : -1;
+                        long start = System.nanoTime();
+                        boolean ok = estimators.get(i).estimate(sample, decoded ? image : null, prediction);
+                        long elapsed = System.nanoTime() - start;
+                        long allocated = allocations != null
+                                ? allocations.getThreadAllocatedBytes(threadId) - allocatedBefore : -1;
+                        if (!ok) {
+                            stats.get(i).fail();
+                            continue;
+                        }
+                        double latency = prediction.reportedLatencyMs >= 0 ? prediction.reportedLatencyMs
+                                : (warm ? elapsed / 1e6 : -1);
+                        stats.get(i).add(sample, prediction.weightKg, latency,
+                                prediction.reportedLatencyMs >= 0 ? -1 : allocated);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void printReport(PrintStream out, DatasetStream stream, double seconds) {
+        out.printf(Locale.US, "Dataset: %d rows, %d samples (%d without label, %d without image, %d undecodable)%n",
+                stream.getRows(), samples, stream.getMissingLabel(), stream.getMissingImage(), decodeFailures);
+        out.printf(Locale.US, "Threads: %d, wall time %.1f s, %.1f samples/s%n",
+                options.threads, seconds, samples / Math.max(seconds, 1e-9));
+        if (decodeStats.getOverall().count > 0) {
+            out.printf(Locale.US, "JPEG decode: p50 %.1f ms, p95 %.1f ms%n",
+                    decodeStats.getLatencyPercentile(50), decodeStats.getLatencyPercentile(95));
+        }
+        out.printf(Locale.US, "Peak heap: %.1f MB%n", peakHeapBytes() / 1048576.0);
+        out.println();
+
+        out.printf(Locale.US, "%-24s %7s %7s %9s %8s %8s %9s %9s %10s%n",
+                "estimator", "n", "failed", "MAE kg", "MAPE %", "bias kg", "p50 ms", "p95 ms", "alloc/est");
+        for (EstimatorStats stats : totals) {
+            EstimatorStats.Bucket all = stats.getOverall();
+            long alloc = stats.getAllocatedBytesPerEstimate();
+            out.printf(Locale.US, "%-24s %7d %7d %9.2f %8.2f %8.2f %9.3f %9.3f %10s%n",
+                    stats.name, all.count, stats.getFailed(), all.getMae(), all.getMape(), stats.getBiasKg(),
+                    stats.getLatencyPercentile(50), stats.getLatencyPercentile(95),
+                    alloc >= 0 ? alloc + " B" : "-");
+        }
+        out.println();
+
+        out.printf(Locale.US, "MAE kg / MAPE %% per distance bucket (%d cm)%n", options.bucketCm);
+        for (EstimatorStats stats : totals) {
+            out.println(stats.name);
+            for (Map.Entry<Integer, EstimatorStats.Bucket> entry : stats.getBuckets().entrySet()) {
+                EstimatorStats.Bucket bucket = entry.getValue();
+                out.printf(Locale.US, "  %4d-%-4d cm  n=%-6d MAE %8.2f  MAPE %6.2f%n",
+                        entry.getKey(), entry.getKey() + options.bucketCm, bucket.count,
+                        bucket.getMae(), bucket.getMape());
+            }
+        }
+    }
+
+    private void writeCsv(File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(file, StandardCharsets.UTF_8)) {
+            out.println("estimator,bucket_cm,count,failed,mae_kg,mape_pct,bias_kg,p50_ms,p95_ms,alloc_bytes");
+            for (EstimatorStats stats : totals) {
+                EstimatorStats.Bucket all = stats.getOverall();
+                out.printf(Locale.US, "%s,all,%d,%d,%.4f,%.4f,%.4f,%.4f,%.4f,%d%n",
+                        stats.name, all.count, stats.getFailed(), all.getMae(), all.getMape(), stats.getBiasKg(),
+                        stats.getLatencyPercentile(50), stats.getLatencyPercentile(95),
+                        stats.getAllocatedBytesPerEstimate());
+                for (Map.Entry<Integer, EstimatorStats.Bucket> entry : stats.getBuckets().entrySet()) {
+                    EstimatorStats.Bucket bucket = entry.getValue();
+                    out.printf(Locale.US, "%s,%d,%d,,%.4f,%.4f,,,,%n",
+                            stats.name, entry.getKey(), bucket.count, bucket.getMae(), bucket.getMape());
+                }
+            }
+        }
+    }
+
+    private static long peakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static Options parse(String[] args) {
+        Options options = new Options();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--dataset":
+                        options.dataset = new File(args[++i]);
+                        break;
+                    case "--labels":
+                        options.labels = new File(args[++i]);
+                        break;
+                    case "--scores":
+                        options.scores = new File(args[++i]);
+                        break;
+                    case "--report":
+                        options.report = new File(args[++i]);
+                        break;
+                    case "--threads":
+                        options.threads = Math.max(1, Integer.parseInt(args[++i]));
+                        break;
+                    case "--bucket-cm":
+                        options.bucketCm = Math.max(1, Integer.parseInt(args[++i]));
+                        break;
+                    case "--fov":
+                        options.fovDeg = Float.parseFloat(args[++i]);
+                        break;
+                    case "--rotation":
+                        options.rotation = Integer.parseInt(args[++i]);
+                        break;
+                    case "--no-geometric":
+                        options.geometric = false;
+                        break;
+                    case "--live-weight":
+                        options.liveWeight = true;
+                        break;
+                    default:
+                        System.err.println("Unknown option: " + args[i]);
+                        return null;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            return null;
+        }
+        return options.dataset != null ? options : null;
+    }
+
+    private static void usage(PrintStream out) {
+        out.println("Usage: EvaluationHarness --dataset <export dir> [options]");
+        out.println("  --labels <csv>     id,weight_kg (default: weight column in cattle_dataset.csv)");
+        out.println("  --scores <csv>     model_scores export; one estimator per model_version");
+        out.println("  --report <csv>     write per-bucket results as CSV");
+        out.println("  --threads <n>      worker threads (default: cores - 1)");
+        out.println("  --bucket-cm <cm>   distance bucket size (default " + DEFAULT_BUCKET_CM + ")");
+        out.println("  --fov <deg>        horizontal FOV for the geometric estimator (default 66)");
+        out.println("  --rotation <deg>   image rotation for the geometric estimator");
+        out.println("  --live-weight      compare geometric live weight instead of carcass weight");
+        out.println("  --no-geometric     only evaluate stored model scores");
+    }
+}
@@ -0,0 +1,53 @@
+package com.capstone.cattleweight.eval;
+
+import com.capstone.cattleweight.GeometricWeightEstimator;
+
+/**
+ * Estimator geometri dari app (siluet + jarak LiDAR), dijalankan pada luma JPEG dataset
+ */
+public final class GeometricEstimatorFactory implements Estimator.Factory {
+
+    private final float horizontalFovDeg;
+    private final int rotation;
+    private final boolean liveWeight;
+
+    /**
+     * @param liveWeight bandingkan bobot hidup (label timbangan) alih-alih bobot karkas
+     */
+    public GeometricEstimatorFactory(float horizontalFovDeg, int rotation, boolean liveWeight) {
+        this.horizontalFovDeg = horizontalFovDeg;
+        this.rotation = rotation;
+        this.liveWeight = liveWeight;
+    }
+
+    @Override
+    public String getName() {
+        return liveWeight ? "geometric-live" : "geometric";
+    }
+
+    @Override
+    public boolean needsImage() {
+        return true;
+    }
+
+    @Override
+    public Estimator create() {
+        GeometricWeightEstimator estimator = new GeometricWeightEstimator();
+        GeometricWeightEstimator.Measurement measurement = new GeometricWeightEstimator.Measurement();
+        estimator.setRotation(rotation);
+        return (sample, image, out) -> {
+            if (sample.distanceCm <= 0) {
+                return false;
+            }
+            estimator.setHorizontalFov(horizontalFovDeg, image.width);
+            if (!estimator.estimate(image.luma, image.width, image.height, image.width,
+                    sample.distanceCm, measurement)) {
+                return false;
+            }
+            out.weightKg = liveWeight ? measurement.liveWeightKg : measurement.carcassWeightKg;
+            out.confidence = measurement.confidence;
+            out.reportedLatencyMs = -1;
+            return true;
+        };
+    }
+}
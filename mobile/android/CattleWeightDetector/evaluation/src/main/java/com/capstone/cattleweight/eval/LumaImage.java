@@ -0,0 +1,57 @@
+package com.capstone.cattleweight.eval;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Plane luma (Y BT.601) dari JPEG dataset, setara plane Y frame kamera di HP.
+ * Buffer dipakai ulang antar sampel dalam satu thread worker.
+ */
+public final class LumaImage {
+
+    public byte[] luma = new byte[0];
+    public int width;
+    public int height;
+    private int[] row = new int[0];
+
+    public void decode(File file) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("Unsupported image: " + file);
+        }
+        width = image.getWidth();
+        height = image.getHeight();
+        if (luma.length < width * height) {
+            luma = new byte[width * height];
+        }
+        if (image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+            // Jalur cepat untuk JPEG warna: baca raster langsung tanpa getRGB per pixel
+            byte[] bgr = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            for (int i = 0, p = 0, n = width * height; i < n; i++, p += 3) {
+                int b = bgr[p] & 0xFF;
+                int g = bgr[p + 1] & 0xFF;
+                int r = bgr[p + 2] & 0xFF;
+                luma[i] = (byte) ((77 * r + 150 * g + 29 * b) >> 8);
+            }
+            return;
+        }
+        if (row.length < width) {
+            row = new int[width];
+        }
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int pixel = row[x];
+                int r = (pixel >> 16) & 0xFF;
+                int g = (pixel >> 8) & 0xFF;
+                int b = pixel & 0xFF;
+                luma[offset + x] = (byte) ((77 * r + 150 * g + 29 * b) >> 8);
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.capstone.cattleweight.eval;
+
+import java.io.File;
+
+/**
+ * Satu baris dataset hasil export: gambar, data LiDAR dan bobot timbangan
+ */
+public final class Sample {
+
+    public final long id;
+    public final File image;
+    public final int distanceCm;
+    public final int signalStrength;
+    public final float labelKg;
+
+    public Sample(long id, File image, int distanceCm, int signalStrength, float labelKg) {
+        this.id = id;
+        this.image = image;
+        this.distanceCm = distanceCm;
+        this.signalStrength = signalStrength;
+        this.labelKg = labelKg;
+    }
+}
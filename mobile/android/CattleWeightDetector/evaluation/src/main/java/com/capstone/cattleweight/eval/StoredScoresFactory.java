@@ -0,0 +1,113 @@
+package com.capstone.cattleweight.eval;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hasil model TFLite yang sudah dijalankan di HP (BatchRescoringJob, tabel model_scores).
+ * Interpreter TFLite Android tidak jalan di JVM, jadi akurasi dan latensi per versi model
+ * diambil dari model_scores.csv hasil export; latensi = latensi inferensi yang diukur di HP.
+ */
+public final class StoredScoresFactory implements Estimator.Factory {
+
+    private static final class Score {
+        final float weightKg;
+        final float confidence;
+        final double latencyMs;
+
+        Score(float weightKg, float confidence, double latencyMs) {
+            this.weightKg = weightKg;
+            this.confidence = confidence;
+            this.latencyMs = latencyMs;
+        }
+    }
+
+    private final String modelVersion;
+    private final Map<Long, Score> scores;
+
+    private StoredScoresFactory(String modelVersion, Map<Long, Score> scores) {
+        this.modelVersion = modelVersion;
+        this.scores = scores;
+    }
+
+    /**
+     * Satu factory per model_version di model_scores.csv
+     */
+    public static List<StoredScoresFactory> load(File scoresCsv) throws IOException {
+        Map<String, Map<Long, Score>> byVersion = new LinkedHashMap<>();
+        try (BufferedReader in = Files.newBufferedReader(scoresCsv.toPath(), StandardCharsets.UTF_8)) {
+            List<String> header = DatasetStream.readRecord(in);
+            if (header == null) {
+                return new ArrayList<>();
+            }
+            Map<String, Integer> columns = new HashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                columns.put(header.get(i).trim().toLowerCase(), i);
+            }
+            int id = column(columns, "dataset_id");
+            int version = column(columns, "model_version");
+            int weight = column(columns, "weight_kg");
+            int confidence = column(columns, "confidence");
+            int latency = column(columns, "latency_ms");
+            List<String> record;
+            while ((record = DatasetStream.readRecord(in)) != null) {
+                if (record.size() < header.size()) {
+                    continue;
+                }
+                try {
+                    Score score = new Score(Float.parseFloat(record.get(weight)),
+                            Float.parseFloat(record.get(confidence)), Double.parseDouble(record.get(latency)));
+                    byVersion.computeIfAbsent(record.get(version), v -> new HashMap<>())
+                            .put(Long.parseLong(record.get(id)), score);
+                } catch (NumberFormatException e) {
+                    // Baris belum lengkap (weight NULL); lewati
+                }
+            }
+        }
+        List<StoredScoresFactory> factories = new ArrayList<>();
+        for (Map.Entry<String, Map<Long, Score>> entry : byVersion.entrySet()) {
+            factories.add(new StoredScoresFactory(entry.getKey(), entry.getValue()));
+        }
+        return factories;
+    }
+
+    private static int column(Map<String, Integer> columns, String name) throws IOException {
+        Integer index = columns.get(name);
+        if (index == null) {
+            throw new IOException("model_scores.csv has no " + name + " column");
+        }
+        return index;
+    }
+
+    @Override
+    public String getName() {
+        return "model:" + modelVersion;
+    }
+
+    @Override
+    public boolean needsImage() {
+        return false;
+    }
+
+    @Override
+    public Estimator create() {
+        return (sample, image, out) -> {
+            Score score = scores.get(sample.id);
+            if (score == null) {
+                return false;
+            }
+            out.weightKg = score.weightKg;
+            out.confidence = score.confidence;
+            out.reportedLatencyMs = score.latencyMs;
+            return true;
+        };
+    }
+}
@@ -42,6 +42,7 @@ import com.jiangdg.ausbc.render.RenderManager
 import com.jiangdg.ausbc.render.effect.AbstractEffect
 import com.jiangdg.ausbc.render.env.RotateType
 import com.jiangdg.ausbc.utils.CameraUtils
+import com.jiangdg.ausbc.utils.FrameBufferPool
 import com.jiangdg.ausbc.utils.Logger
 import com.jiangdg.ausbc.utils.Utils
 import com.jiangdg.ausbc.utils.bus.BusKey
@@ -73,6 +74,7 @@ class CameraClient internal constructor(builder: Builder) : IPreviewDataCallBack
     private val mDefaultRotateType: RotateType? = builder.defaultRotateType
     private var mAudioProcess: AbstractProcessor? = null
     private var mVideoProcess: AbstractProcessor? = null
+    private val mFramePool: FrameBufferPool by lazy { FrameBufferPool() }
     private var mMediaMuxer: Mp4Muxer? = null
     private val mMainHandler: Handler = Handler(Looper.getMainLooper())
 
@@ -120,7 +122,15 @@ class CameraClient internal constructor(builder: Builder) : IPreviewDataCallBack
             if (data.size != width * height * 3 /2) {
                 return
             }
-            mVideoProcess?.putRawData(RawData(it, it.size))
+            // preview data may be a pooled array that is reused after this call,
+            // so copy it into our own recycled buffer for the encoder queue
+            val process = mVideoProcess ?: return
+            if (! process.isEncoding()) {
+                return
+            }
+            val buffer = mFramePool.acquire(it.size)
+            System.arraycopy(it, 0, buffer.data, 0, it.size)
+            process.putRawData(RawData(buffer.data, buffer.data.size, buffer))
         }
     }
 
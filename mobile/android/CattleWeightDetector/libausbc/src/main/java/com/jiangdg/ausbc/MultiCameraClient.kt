@@ -23,6 +23,8 @@ import com.jiangdg.ausbc.render.env.RotateType
 import com.jiangdg.ausbc.utils.CameraUtils
 import com.jiangdg.ausbc.utils.CameraUtils.isFilterDevice
 import com.jiangdg.ausbc.utils.CameraUtils.isUsbCamera
+import com.jiangdg.ausbc.utils.FrameBufferPool
+import com.jiangdg.ausbc.utils.FrameMetrics
 import com.jiangdg.ausbc.utils.Logger
 import com.jiangdg.ausbc.utils.OpenGLUtils
 import com.jiangdg.ausbc.utils.SettableFuture
@@ -278,9 +280,12 @@ class MultiCameraClient(ctx: Context, callback: IDeviceConnectCallBack?) {
         protected val mMainHandler: Handler by lazy {
             Handler(Looper.getMainLooper())
         }
-        protected val mNV21DataQueue: LinkedBlockingDeque<ByteArray> by lazy {
+        protected val mNV21DataQueue: LinkedBlockingDeque<FrameBufferPool.FrameBuffer> by lazy {
             LinkedBlockingDeque(MAX_NV21_DATA)
         }
+        protected val mFramePool: FrameBufferPool by lazy {
+            FrameBufferPool()
+        }
         protected val mSaveImageExecutor: ExecutorService by lazy {
             Executors.newFixedThreadPool(10)
         }
@@ -497,12 +502,45 @@ class MultiCameraClient(ctx: Context, callback: IDeviceConnectCallBack?) {
         /**
          * Put video data
          *
-         * @param data NV21 raw data
+         * @param frame pooled NV21 frame, retained until the encoder consumed it
+         */
+        protected fun putVideoData(frame: FrameBufferPool.FrameBuffer) {
+            val process = mVideoProcess ?: return
+            process.putRawData(RawData(frame.data, frame.data.size, frame.retain()))
+        }
+
+        /**
+         * Keep the latest NV21 frames for image capture
+         *
+         * @param frame pooled NV21 frame, retained while it stays in the queue
+         */
+        protected fun putNV21Data(frame: FrameBufferPool.FrameBuffer) {
+            FrameMetrics.offered(FrameMetrics.Queue.NV21)
+            if (mNV21DataQueue.size >= MAX_NV21_DATA) {
+                mNV21DataQueue.pollLast()?.release()
+                FrameMetrics.dropped(FrameMetrics.Queue.NV21)
+            }
+            if (! mNV21DataQueue.offerFirst(frame.retain())) {
+                frame.release()
+            }
+        }
+
+        /**
+         * Return queued NV21 frames to the pool
          */
-        protected fun putVideoData(data: ByteArray) {
-            mVideoProcess?.putRawData(RawData(data, data.size))
+        protected fun clearNV21Data() {
+            while (true) {
+                val frame = mNV21DataQueue.pollFirst() ?: break
+                frame.release()
+            }
+            mFramePool.clear()
         }
 
+        /**
+         * Frame buffer pool statistics, hit rate and GC count
+         */
+        fun getFramePoolStats() = mFramePool.getStats()
+
         /**
          * Start rec mp3
          *
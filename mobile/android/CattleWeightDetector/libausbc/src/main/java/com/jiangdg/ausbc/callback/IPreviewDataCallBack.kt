@@ -16,6 +16,9 @@
 package com.jiangdg.ausbc.callback
 
 /** Camera preview data callback
+ *
+ * For UVC cameras data comes from a recycled frame buffer and is only valid
+ * during the call, copy it if it must be kept.
  *
  * @author Created by jiangdg on 2022/1/29
  */
@@ -25,18 +25,19 @@ import android.view.SurfaceView
 import android.view.TextureView
 import com.jiangdg.ausbc.MultiCameraClient
 import com.jiangdg.ausbc.MultiCameraClient.Companion.CAPTURE_TIMES_OUT_SEC
-import com.jiangdg.ausbc.MultiCameraClient.Companion.MAX_NV21_DATA
 import com.jiangdg.ausbc.callback.ICameraStateCallBack
 import com.jiangdg.ausbc.callback.ICaptureCallBack
 import com.jiangdg.ausbc.callback.IPreviewDataCallBack
 import com.jiangdg.ausbc.camera.bean.CameraRequest
 import com.jiangdg.ausbc.camera.bean.PreviewSize
 import com.jiangdg.ausbc.utils.CameraUtils
+import com.jiangdg.ausbc.utils.FrameMetrics
 import com.jiangdg.ausbc.utils.Logger
 import com.jiangdg.ausbc.utils.MediaUtils
 import com.jiangdg.ausbc.utils.Utils
 import com.jiangdg.uvc.IFrameCallback
 import com.jiangdg.uvc.UVCCamera
+import com.jiangdg.uvc.UVCFormatModel
 import java.io.File
 import java.util.concurrent.TimeUnit
 
@@ -51,26 +52,28 @@ class CameraUVC(ctx: Context, device: UsbDevice) : MultiCameraClient.ICamera(ctx
     }
 
     private val frameCallBack = IFrameCallback { frame ->
+        FrameMetrics.tick(FrameMetrics.Rate.CALLBACK)
+        val callbackStart = FrameMetrics.begin()
         frame?.apply {
-            frame.position(0)
-            val data = ByteArray(capacity())
-            get(data)
-            mCameraRequest?.apply {
-                if (data.size != previewWidth * previewHeight * 3 / 2) {
-                    return@IFrameCallback
-                }
-                // for preview callback
+            val request = mCameraRequest ?: return@IFrameCallback
+            if (capacity() != request.previewWidth * request.previewHeight * 3 / 2) {
+                return@IFrameCallback
+            }
+            // copy the native buffer once into a recycled array, shared by all consumers
+            val buffer = mFramePool.obtain(frame)
+            try {
+                val data = buffer.data
+                // for preview callback, data is only valid during the call
                 mPreviewDataCbList.forEach { cb ->
-                    cb?.onPreviewData(data, previewWidth, previewHeight, IPreviewDataCallBack.DataFormat.NV21)
+                    cb?.onPreviewData(data, request.previewWidth, request.previewHeight, IPreviewDataCallBack.DataFormat.NV21)
                 }
                 // for image
-                if (mNV21DataQueue.size >= MAX_NV21_DATA) {
-                    mNV21DataQueue.removeLast()
-                }
-                mNV21DataQueue.offerFirst(data)
+                putNV21Data(buffer)
                 // for video
-                // avoid preview size changed
-                putVideoData(data)
+                putVideoData(buffer)
+            } finally {
+                buffer.release()
+                FrameMetrics.end(FrameMetrics.Stage.CALLBACK, callbackStart)
             }
         }
     }
@@ -78,10 +81,13 @@ class CameraUVC(ctx: Context, device: UsbDevice) : MultiCameraClient.ICamera(ctx
     override fun getAllPreviewSizes(aspectRatio: Double?): MutableList<PreviewSize> {
         val previewSizeList = arrayListOf<PreviewSize>()
         val isMjpegFormat = mCameraRequest?.previewFormat == CameraRequest.PreviewFormat.FORMAT_MJPEG
-        if (isMjpegFormat && (mUvcCamera?.supportedSizeList?.isNotEmpty() == true)) {
-            mUvcCamera?.supportedSizeList
+        // typed model parsed once at open(), no json parsing per call
+        val formatModel = mUvcCamera?.formatModel
+        val mjpegModes = formatModel?.getFrameModes(UVCFormatModel.TYPE_MJPEG)
+        if (isMjpegFormat && (mjpegModes?.isNotEmpty() == true)) {
+            mjpegModes
         }  else {
-            mUvcCamera?.getSupportedSizeList(UVCCamera.FRAME_FORMAT_YUYV)
+            formatModel?.getFrameModes(UVCFormatModel.TYPE_UNCOMPRESSED)
         }?.let { sizeList ->
             if (sizeList.size > mCameraPreviewSize.size) {
                 mCameraPreviewSize.clear()
@@ -140,6 +146,9 @@ class CameraUVC(ctx: Context, device: UsbDevice) : MultiCameraClient.ICamera(ctx
         } else {
             UVCCamera.FRAME_FORMAT_MJPEG
         }
+        val bandwidthFactor = request.bandwidthFactor.let {
+            if (it > 0f && it <= UVCCamera.DEFAULT_BANDWIDTH) it else UVCCamera.DEFAULT_BANDWIDTH
+        }
         try {
             Logger.i(TAG, "getSuitableSize: $previewSize")
             if (! isPreviewSizeSupported(previewSize)) {
@@ -157,7 +166,7 @@ class CameraUVC(ctx: Context, device: UsbDevice) : MultiCameraClient.ICamera(ctx
                 MIN_FS,
                 MAX_FPS,
                 previewFormat,
-                UVCCamera.DEFAULT_BANDWIDTH
+                bandwidthFactor
             )
         } catch (e: Exception) {
             try {
@@ -182,7 +191,7 @@ class CameraUVC(ctx: Context, device: UsbDevice) : MultiCameraClient.ICamera(ctx
                     } else {
                         UVCCamera.FRAME_FORMAT_YUYV
                     },
-                    UVCCamera.DEFAULT_BANDWIDTH
+                    bandwidthFactor
                 )
             } catch (e: Exception) {
                 closeCamera()
@@ -230,6 +239,7 @@ class CameraUVC(ctx: Context, device: UsbDevice) : MultiCameraClient.ICamera(ctx
         isPreviewed = false
         releaseEncodeProcessor()
         mUvcCamera?.destroy()
+        clearNV21Data()
         mUvcCamera = null
         if (Utils.debugCamera) {
             Logger.i(TAG, " stop preview, name = ${device.deviceName}")
@@ -252,8 +262,8 @@ class CameraUVC(ctx: Context, device: UsbDevice) : MultiCameraClient.ICamera(ctx
                 Logger.i(TAG, "captureImageInternal failed, camera not previewing")
                 return@submit
             }
-            val data = mNV21DataQueue.pollFirst(CAPTURE_TIMES_OUT_SEC, TimeUnit.SECONDS)
-            if (data == null) {
+            val frame = mNV21DataQueue.pollFirst(CAPTURE_TIMES_OUT_SEC, TimeUnit.SECONDS)
+            if (frame == null) {
                 mMainHandler.post {
                     callback.onError("Times out")
                 }
@@ -270,7 +280,14 @@ class CameraUVC(ctx: Context, device: UsbDevice) : MultiCameraClient.ICamera(ctx
             val location = Utils.getGpsLocation(ctx)
             val width = mCameraRequest!!.previewWidth
             val height = mCameraRequest!!.previewHeight
-            val ret = MediaUtils.saveYuv2Jpeg(path, data, width, height)
+            FrameMetrics.record(FrameMetrics.Stage.CAPTURE_WAIT, (System.nanoTime() - frame.timestampNs) / 1000)
+            val saveStart = FrameMetrics.begin()
+            val ret = try {
+                MediaUtils.saveYuv2Jpeg(path, frame.data, width, height)
+            } finally {
+                frame.release()
+                FrameMetrics.end(FrameMetrics.Stage.SAVE, saveStart)
+            }
             if (! ret) {
                 val file = File(path)
                 if (file.exists()) {
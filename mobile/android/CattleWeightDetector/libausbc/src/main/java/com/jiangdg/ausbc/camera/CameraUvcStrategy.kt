@@ -51,9 +51,12 @@ class CameraUvcStrategy(ctx: Context) : ICameraStrategy(ctx) {
     private var mDevSettableFuture: SettableFuture<UsbDevice?>? = null
     private var mCtrlBlockSettableFuture: SettableFuture<USBMonitor.UsbControlBlock?>? = null
     private val mConnectSettableFuture: SettableFuture<Boolean> = SettableFuture()
-    private val mNV21DataQueue: LinkedBlockingDeque<ByteArray> by lazy {
+    private val mNV21DataQueue: LinkedBlockingDeque<FrameBufferPool.FrameBuffer> by lazy {
         LinkedBlockingDeque(MAX_NV21_DATA)
     }
+    private val mFramePool: FrameBufferPool by lazy {
+        FrameBufferPool()
+    }
     private val mRequestPermission: AtomicBoolean by lazy {
         AtomicBoolean(false)
     }
@@ -230,6 +233,11 @@ class CameraUvcStrategy(ctx: Context) : ICameraStrategy(ctx) {
         mUVCCamera?.stopPreview()
         mUVCCamera?.destroy()
         mUVCCamera = null
+        while (true) {
+            val frame = mNV21DataQueue.pollFirst() ?: break
+            frame.release()
+        }
+        mFramePool.clear()
         postCameraStatus(CameraStatus(CameraStatus.STOP))
     }
 
@@ -245,8 +253,9 @@ class CameraUvcStrategy(ctx: Context) : ICameraStrategy(ctx) {
             return
         }
         mSaveImageExecutor.submit {
-            val data = mNV21DataQueue.pollFirst(CAPTURE_TIMES_OUT_SEC, TimeUnit.SECONDS)
-            if (data == null || getRequest() == null) {
+            val frame = mNV21DataQueue.pollFirst(CAPTURE_TIMES_OUT_SEC, TimeUnit.SECONDS)
+            if (frame == null || getRequest() == null) {
+                frame?.release()
                 mMainHandler.post {
                     mCaptureDataCb?.onError("Times out or camera request is null")
                 }
@@ -265,7 +274,11 @@ class CameraUvcStrategy(ctx: Context) : ICameraStrategy(ctx) {
             val location = Utils.getGpsLocation(getContext())
             val width = getRequest()!!.previewWidth
             val height = getRequest()!!.previewHeight
-            val ret = MediaUtils.saveYuv2Jpeg(path, data, width, height)
+            val ret = try {
+                MediaUtils.saveYuv2Jpeg(path, frame.data, width, height)
+            } finally {
+                frame.release()
+            }
             if (!ret) {
                 val file = File(path)
                 if (file.exists()) {
@@ -779,17 +792,21 @@ class CameraUvcStrategy(ctx: Context) : ICameraStrategy(ctx) {
     }
 
     private val frameCallBack = IFrameCallback { frame ->
-        mPreviewDataCbList.forEach { cb ->
-            frame?.apply {
-                frame.position(0)
-                val data = ByteArray(capacity())
-                get(data)
-                cb.onPreviewData(data, getRequest()!!.previewWidth, getRequest()!!.previewHeight,IPreviewDataCallBack.DataFormat.NV21)
-                if (mNV21DataQueue.size >= MAX_NV21_DATA) {
-                    mNV21DataQueue.removeLast()
-                }
-                mNV21DataQueue.offerFirst(data)
+        frame ?: return@IFrameCallback
+        // copy once per frame (not per callback) into a recycled array
+        val buffer = mFramePool.obtain(frame)
+        try {
+            mPreviewDataCbList.forEach { cb ->
+                cb.onPreviewData(buffer.data, getRequest()!!.previewWidth, getRequest()!!.previewHeight,IPreviewDataCallBack.DataFormat.NV21)
+            }
+            if (mNV21DataQueue.size >= MAX_NV21_DATA) {
+                mNV21DataQueue.pollLast()?.release()
+            }
+            if (! mNV21DataQueue.offerFirst(buffer.retain())) {
+                buffer.release()
             }
+        } finally {
+            buffer.release()
         }
     }
 
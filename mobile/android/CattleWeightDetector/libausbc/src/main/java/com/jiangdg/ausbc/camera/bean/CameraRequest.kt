@@ -36,6 +36,7 @@ class CameraRequest private constructor() {
     var defaultRotateType: RotateType = RotateType.ANGLE_0
     var audioSource: AudioSource = AudioSource.SOURCE_AUTO
     var previewFormat: PreviewFormat = PreviewFormat.FORMAT_MJPEG
+    var bandwidthFactor: Float = 0f
 
     @kotlin.Deprecated("Deprecated since version 3.3.0")
     var cameraId: String = ""
@@ -188,6 +189,18 @@ class CameraRequest private constructor() {
             return this
         }
 
+        /**
+         * Set usb bandwidth factor, only for uvc
+         *  Cameras sharing one bus should split it, e.g. 0.5f each for two cameras.
+         *
+         * @param factor (0, 1], default is 0 means [com.jiangdg.uvc.UVCCamera.DEFAULT_BANDWIDTH]
+         * @return see [Builder]
+         */
+        fun setBandwidthFactor(factor: Float): Builder {
+            mRequest.bandwidthFactor = factor
+            return this
+        }
+
         /**
          * Create a CameraRequest
          *
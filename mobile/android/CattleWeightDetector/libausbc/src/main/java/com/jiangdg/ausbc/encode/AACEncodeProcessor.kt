@@ -23,6 +23,7 @@ import com.jiangdg.ausbc.callback.IPlayCallBack
 import com.jiangdg.ausbc.encode.audio.AudioStrategySystem
 import com.jiangdg.ausbc.encode.audio.IAudioStrategy
 import com.jiangdg.ausbc.encode.bean.RawData
+import com.jiangdg.ausbc.utils.FrameMetrics
 import com.jiangdg.ausbc.utils.Logger
 import com.jiangdg.ausbc.utils.MediaUtils
 import com.jiangdg.ausbc.utils.Utils
@@ -293,13 +294,17 @@ class AACEncodeProcessor(strategy: IAudioStrategy? = null) : AbstractProcessor(f
                 // pcm encode queue
                 putRawData(data)
                 // pcm play queue
+                FrameMetrics.offered(FrameMetrics.Queue.AUDIO_PLAY)
                 if (mPlayQueue.size >= MAX_QUEUE_SIZE) {
                     mPlayQueue.poll()
+                    FrameMetrics.dropped(FrameMetrics.Queue.AUDIO_PLAY)
                 }
                 mPlayQueue.offer(data)
                 // pcm to mp3 queue
+                FrameMetrics.offered(FrameMetrics.Queue.AUDIO_MP3)
                 if (mRecordMp3Queue.size >= MAX_QUEUE_SIZE) {
                     mRecordMp3Queue.poll()
+                    FrameMetrics.dropped(FrameMetrics.Queue.AUDIO_MP3)
                 }
                 mRecordMp3Queue.offer(data)
             }
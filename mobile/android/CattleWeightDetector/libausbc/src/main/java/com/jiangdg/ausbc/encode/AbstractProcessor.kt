@@ -23,6 +23,7 @@ import android.os.Looper
 import com.jiangdg.ausbc.callback.IEncodeDataCallBack
 import com.jiangdg.ausbc.encode.bean.RawData
 import com.jiangdg.ausbc.encode.muxer.Mp4Muxer
+import com.jiangdg.ausbc.utils.FrameMetrics
 import com.jiangdg.ausbc.utils.Logger
 import java.nio.ByteBuffer
 import java.util.concurrent.ConcurrentLinkedQueue
@@ -137,14 +138,28 @@ abstract class AbstractProcessor(private val isVideo: Boolean) {
      */
     fun putRawData(data: RawData) {
         if (! mEncodeState.get()) {
+            data.recycle()
             return
         }
+        val queue = if (isVideo) FrameMetrics.Queue.VIDEO_RAW else FrameMetrics.Queue.AUDIO_RAW
+        FrameMetrics.offered(queue)
         if (mRawDataQueue.size >= MAX_QUEUE_SIZE) {
-            mRawDataQueue.poll()
+            mRawDataQueue.poll()?.recycle()
+            FrameMetrics.dropped(queue)
         }
         mRawDataQueue.offer(data)
     }
 
+    /**
+     * Clear raw data queue, returning pooled frames
+     */
+    protected fun clearRawData() {
+        while (true) {
+            val data = mRawDataQueue.poll() ?: break
+            data.recycle()
+        }
+    }
+
     /**
      * Is encoding
      */
@@ -242,22 +257,38 @@ abstract class AbstractProcessor(private val isVideo: Boolean) {
                 return@let
             }
             val rawData = mRawDataQueue.poll() ?: return@let
-            val data: ByteArray = rawData.data
-            if (processInputData(data) == null) {
-                return@let
-            }
-            val inputIndex = codec.dequeueInputBuffer(TIMES_OUT_US)
-            if (inputIndex < 0) {
-                return@let
-            }
-            val inputBuffer = if (isLowerLollipop()) {
-                codec.inputBuffers[inputIndex]
-            } else {
-                codec.getInputBuffer(inputIndex)
+            val encodeStart = FrameMetrics.begin()
+            FrameMetrics.record(
+                if (isVideo) FrameMetrics.Stage.VIDEO_QUEUE_WAIT else FrameMetrics.Stage.AUDIO_QUEUE_WAIT,
+                (System.nanoTime() - rawData.timestampNs) / 1000
+            )
+            try {
+                val data: ByteArray = rawData.data
+                if (processInputData(data) == null) {
+                    return@let
+                }
+                val inputIndex = codec.dequeueInputBuffer(TIMES_OUT_US)
+                if (inputIndex < 0) {
+                    // codec busy, this frame is lost
+                    FrameMetrics.dropped(if (isVideo) FrameMetrics.Queue.VIDEO_RAW else FrameMetrics.Queue.AUDIO_RAW)
+                    return@let
+                }
+                val inputBuffer = if (isLowerLollipop()) {
+                    codec.inputBuffers[inputIndex]
+                } else {
+                    codec.getInputBuffer(inputIndex)
+                }
+                inputBuffer?.clear()
+                inputBuffer?.put(data)
+                codec.queueInputBuffer(inputIndex, 0, data.size, getPTSUs(data.size), 0)
+                FrameMetrics.end(
+                    if (isVideo) FrameMetrics.Stage.VIDEO_ENCODE else FrameMetrics.Stage.AUDIO_ENCODE,
+                    encodeStart
+                )
+            } finally {
+                // data was copied into the codec input buffer
+                rawData.recycle()
             }
-            inputBuffer?.clear()
-            inputBuffer?.put(data)
-            codec.queueInputBuffer(inputIndex, 0, data.size, getPTSUs(data.size), 0)
         }
     }
 
@@ -78,7 +78,7 @@ class H264EncodeProcessor(
         } catch (e: Exception) {
             Logger.e(TAG, "Stop mediaCodec failed, err = ${e.localizedMessage}", e)
         } finally {
-            mRawDataQueue.clear()
+            clearRawData()
             mMediaCodec = null
         }
     }
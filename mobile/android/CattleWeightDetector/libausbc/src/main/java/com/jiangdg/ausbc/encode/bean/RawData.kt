@@ -16,18 +16,30 @@
 package com.jiangdg.ausbc.encode.bean
 
 import androidx.annotation.Keep
+import com.jiangdg.ausbc.utils.FrameBufferPool
 
 /**
  * PCM or YUV raw data
  *
  * @property data media data, pcm or yuv
  * @property size media data size
+ * @property frame pooled buffer backing [data], released by [recycle] when the encoder is done
+ * @property timestampNs enqueue time, for queue wait metrics
  * @constructor Create empty Raw data
  *
  * @author Created by jiangdg on 2022/2/10
  */
 @Keep
-data class RawData(val data: ByteArray, val size: Int) {
+data class RawData(
+    val data: ByteArray,
+    val size: Int,
+    val frame: FrameBufferPool.FrameBuffer? = null,
+    val timestampNs: Long = System.nanoTime()
+) {
+    fun recycle() {
+        frame?.release()
+    }
+
     override fun equals(other: Any?): Boolean {
         if (this === other) return true
         if (javaClass != other?.javaClass) return false
@@ -156,6 +156,7 @@ class RenderManager(
                 }
             }
             MSG_GL_DRAW -> {
+                val renderStart = FrameMetrics.begin()
                 //Render camera data to SurfaceTexture
                 //Set the correction matrix of the image at the same time
                 mCameraSurfaceTexture?.updateTexImage()
@@ -175,6 +176,7 @@ class RenderManager(
                     drawFrame2Codec(id, mCameraSurfaceTexture?.timestamp ?: 0)
                 }
                 mScreenRender?.swapBuffers(mCameraSurfaceTexture?.timestamp ?: 0)
+                FrameMetrics.end(FrameMetrics.Stage.RENDER, renderStart)
             }
             MSG_GL_ADD_EFFECT -> {
                 (msg.obj as? AbstractEffect)?.let { effect->
@@ -483,6 +485,7 @@ class RenderManager(
     }
 
     private fun emitFrameRate() {
+        FrameMetrics.tick(FrameMetrics.Rate.RENDER)
         mFrameRate++
         mEndTime = System.currentTimeMillis()
         if (mEndTime - mStartTime >= 1000) {
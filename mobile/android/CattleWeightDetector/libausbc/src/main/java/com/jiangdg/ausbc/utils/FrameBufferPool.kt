@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017-2023 Jiangdg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jiangdg.ausbc.utils
+
+import android.os.Build
+import android.os.Debug
+import java.nio.ByteBuffer
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/** Reference counted frame buffer pool
+ *
+ * The native direct buffer of each frame is copied once into a recycled [FrameBuffer].
+ * Every consumer that keeps the frame after the callback returns calls [FrameBuffer.retain]
+ * and later [FrameBuffer.release]; the buffer goes back to the pool when the last
+ * consumer is done, so steady state preview allocates nothing.
+ *
+ * @param maxPoolSize max idle buffers kept in the pool
+ */
+class FrameBufferPool(private val maxPoolSize: Int = DEFAULT_POOL_SIZE) {
+    private val mFreeList = ConcurrentLinkedQueue<FrameBuffer>()
+    private val mPoolSize = AtomicInteger(0)
+    private val mHits = AtomicLong(0)
+    private val mMisses = AtomicLong(0)
+    private val mInUse = AtomicInteger(0)
+    private val mGcCountAtStart = getGcCount()
+    @Volatile
+    private var mBufferSize = 0
+
+    /**
+     * Copy a native frame into a pooled buffer
+     *
+     * @param frame direct buffer from the native frame callback
+     * @return buffer holding one reference, caller must [FrameBuffer.release] it
+     */
+    fun obtain(frame: ByteBuffer): FrameBuffer {
+        frame.position(0)
+        val size = frame.capacity()
+        val buffer = acquire(size)
+        frame.get(buffer.data, 0, size)
+        return buffer
+    }
+
+    /**
+     * Get a buffer of [size] bytes with one reference
+     */
+    fun acquire(size: Int): FrameBuffer {
+        if (size != mBufferSize) {
+            // preview size changed, old buffers are useless
+            mBufferSize = size
+            clear()
+        }
+        var buffer = mFreeList.poll()
+        if (buffer != null) {
+            mPoolSize.decrementAndGet()
+        }
+        if (buffer == null || buffer.data.size != size) {
+            buffer = FrameBuffer(ByteArray(size), this)
+            mMisses.incrementAndGet()
+        } else {
+            mHits.incrementAndGet()
+        }
+        buffer.reset()
+        mInUse.incrementAndGet()
+        return buffer
+    }
+
+    internal fun recycle(buffer: FrameBuffer) {
+        mInUse.decrementAndGet()
+        if (buffer.data.size != mBufferSize || mPoolSize.get() >= maxPoolSize) {
+            return
+        }
+        mPoolSize.incrementAndGet()
+        mFreeList.offer(buffer)
+    }
+
+    /**
+     * Drop idle buffers, e.g. when camera closed
+     */
+    fun clear() {
+        while (mFreeList.poll() != null) {
+            mPoolSize.decrementAndGet()
+        }
+    }
+
+    /**
+     * Pool statistics
+     */
+    fun getStats() = Stats(mHits.get(), mMisses.get(), mInUse.get(), mPoolSize.get(),
+        getGcCount().let { if (it < 0 || mGcCountAtStart < 0) -1 else it - mGcCountAtStart })
+
+    /**
+     * @property hits frames served from recycled buffers
+     * @property misses frames that needed a new allocation
+     * @property inUse buffers currently held by consumers
+     * @property idle buffers waiting in the pool
+     * @property gcCount GC runs since the pool was created, -1 if unknown
+     */
+    data class Stats(val hits: Long, val misses: Long, val inUse: Int, val idle: Int, val gcCount: Long) {
+        val hitRate: Float
+            get() = if (hits + misses == 0L) 0f else hits.toFloat() / (hits + misses)
+    }
+
+    /** Pooled frame data
+     *
+     * @property data frame bytes, only valid while a reference is held
+     */
+    class FrameBuffer internal constructor(val data: ByteArray, private val pool: FrameBufferPool) {
+        private val mRefCount = AtomicInteger(0)
+
+        /** time the frame was obtained from the pool, System.nanoTime() */
+        var timestampNs: Long = 0L
+            private set
+
+        internal fun reset() {
+            mRefCount.set(1)
+            timestampNs = System.nanoTime()
+        }
+
+        /**
+         * Add a reference for a consumer that keeps the frame
+         */
+        fun retain(): FrameBuffer {
+            mRefCount.incrementAndGet()
+            return this
+        }
+
+        /**
+         * Drop a reference, the last one returns the buffer to the pool
+         */
+        fun release() {
+            val count = mRefCount.decrementAndGet()
+            if (count == 0) {
+                pool.recycle(this)
+            } else if (count < 0) {
+                mRefCount.set(0)
+                Logger.w(TAG, "FrameBuffer released too many times")
+            }
+        }
+    }
+
+    companion object {
+        private const val TAG = "FrameBufferPool"
+        const val DEFAULT_POOL_SIZE = 12   // NV21 capture queue (5) + encoder queue (5) + frames in flight
+
+        private fun getGcCount(): Long {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                return -1
+            }
+            return Debug.getRuntimeStat("art.gc.gc-count")?.toLongOrNull() ?: -1
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2017-2023 Jiangdg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jiangdg.ausbc.utils
+
+import android.os.SystemClock
+import java.util.concurrent.atomic.AtomicLong
+
+/** Camera frame pipeline metrics
+ *
+ * Per stage latency histograms, per queue drop counters and frame rates.
+ * Disabled by default; when disabled every call is a single volatile read.
+ *
+ * Usage: FrameMetrics.enabled = true, then poll [snapshot] or show a
+ * [com.jiangdg.ausbc.widget.FrameMetricsView].
+ */
+object FrameMetrics {
+
+    /**
+     * Pipeline stages with latency histogram
+     */
+    enum class Stage(val label: String) {
+        CALLBACK("native callback"),
+        RENDER("render"),
+        VIDEO_QUEUE_WAIT("video queue wait"),
+        VIDEO_ENCODE("video encode"),
+        AUDIO_QUEUE_WAIT("audio queue wait"),
+        AUDIO_ENCODE("audio encode"),
+        CAPTURE_WAIT("capture frame age"),
+        SAVE("save jpeg")
+    }
+
+    /**
+     * Bounded queues that drop frames when full
+     */
+    enum class Queue(val label: String) {
+        NV21("nv21 capture"),
+        VIDEO_RAW("video raw"),
+        AUDIO_RAW("audio raw"),
+        AUDIO_PLAY("pcm play"),
+        AUDIO_MP3("pcm mp3")
+    }
+
+    /**
+     * Counted frame rates
+     */
+    enum class Rate(val label: String) {
+        CALLBACK("callback"),
+        RENDER("render")
+    }
+
+    @Volatile
+    var enabled: Boolean = false
+
+    private val mHistograms = Array(Stage.values().size) { LatencyHistogram() }
+    private val mOffered = Array(Queue.values().size) { AtomicLong(0) }
+    private val mDropped = Array(Queue.values().size) { AtomicLong(0) }
+    private val mRateCounters = Array(Rate.values().size) { AtomicLong(0) }
+    private val mRates = FloatArray(Rate.values().size)
+    private var mRateWindowStartMs = SystemClock.elapsedRealtime()
+
+    /**
+     * Start time for [end], 0 when disabled
+     */
+    fun begin(): Long = if (enabled) System.nanoTime() else 0L
+
+    /**
+     * Record latency of [stage] since [startNs] from [begin]
+     */
+    fun end(stage: Stage, startNs: Long) {
+        if (startNs == 0L || !enabled) {
+            return
+        }
+        mHistograms[stage.ordinal].record((System.nanoTime() - startNs) / 1000)
+    }
+
+    /**
+     * Record latency of [stage] directly
+     */
+    fun record(stage: Stage, latencyUs: Long) {
+        if (enabled) {
+            mHistograms[stage.ordinal].record(latencyUs)
+        }
+    }
+
+    /**
+     * An item was put into [queue]
+     */
+    fun offered(queue: Queue) {
+        if (enabled) {
+            mOffered[queue.ordinal].incrementAndGet()
+        }
+    }
+
+    /**
+     * An item was dropped from [queue] (full or not consuming)
+     */
+    fun dropped(queue: Queue) {
+        if (enabled) {
+            mDropped[queue.ordinal].incrementAndGet()
+        }
+    }
+
+    /**
+     * Count one frame for [rate]
+     */
+    fun tick(rate: Rate) {
+        if (enabled) {
+            mRateCounters[rate.ordinal].incrementAndGet()
+        }
+    }
+
+    /**
+     * Copy of all metrics
+     *
+     * @param reset clear histograms and counters after copying
+     */
+    @Synchronized
+    fun snapshot(reset: Boolean = false): Snapshot {
+        val now = SystemClock.elapsedRealtime()
+        val elapsedMs = now - mRateWindowStartMs
+        if (elapsedMs >= 1000) {
+            Rate.values().forEach { rate ->
+                mRates[rate.ordinal] = mRateCounters[rate.ordinal].getAndSet(0) * 1000f / elapsedMs
+            }
+            mRateWindowStartMs = now
+        }
+        val snapshot = Snapshot(
+            Stage.values().associateWith { mHistograms[it.ordinal].snapshot() },
+            Queue.values().associateWith {
+                QueueStats(mOffered[it.ordinal].get(), mDropped[it.ordinal].get())
+            },
+            Rate.values().associateWith { mRates[it.ordinal] }
+        )
+        if (reset) {
+            mHistograms.forEach { it.reset() }
+            mOffered.forEach { it.set(0) }
+            mDropped.forEach { it.set(0) }
+        }
+        return snapshot
+    }
+
+    data class QueueStats(val offered: Long, val dropped: Long) {
+        val dropRate: Float
+            get() = if (offered == 0L) 0f else dropped.toFloat() / offered
+    }
+
+    data class Snapshot(
+        val latency: Map<Stage, LatencyHistogram.Snapshot>,
+        val queues: Map<Queue, QueueStats>,
+        val fps: Map<Rate, Float>
+    ) {
+        override fun toString(): String {
+            val sb = StringBuilder()
+            fps.forEach { (rate, value) ->
+                sb.append(rate.label).append(": ").append("%.1f".format(value)).append(" fps\n")
+            }
+            latency.forEach { (stage, histogram) ->
+                if (histogram.count > 0) {
+                    sb.append(stage.label).append(": ").append(histogram).append('\n')
+                }
+            }
+            queues.forEach { (queue, stats) ->
+                if (stats.offered > 0) {
+                    sb.append(queue.label).append(" drops: ").append(stats.dropped)
+                        .append('/').append(stats.offered).append('\n')
+                }
+            }
+            return sb.toString().trimEnd()
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017-2023 Jiangdg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jiangdg.ausbc.utils
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/** Lock free log-linear latency histogram (HdrHistogram style)
+ *
+ * Values below 64us are exact, larger values go to one of 32 linear sub buckets per
+ * power of two, so percentiles are within ~3%. Recording is a few atomic adds and
+ * allocates nothing, safe to call from camera/encode/render threads.
+ */
+class LatencyHistogram {
+    private val mCounts = AtomicLongArray(BUCKET_COUNT)
+    private val mTotal = AtomicLong(0)
+    private val mSum = AtomicLong(0)
+    private val mMin = AtomicLong(Long.MAX_VALUE)
+    private val mMax = AtomicLong(0)
+
+    /**
+     * Record one latency
+     *
+     * @param valueUs latency in microseconds
+     */
+    fun record(valueUs: Long) {
+        val value = valueUs.coerceIn(0, MAX_VALUE_US)
+        mCounts.incrementAndGet(indexOf(value))
+        mTotal.incrementAndGet()
+        mSum.addAndGet(value)
+        var min = mMin.get()
+        while (value < min && !mMin.compareAndSet(min, value)) {
+            min = mMin.get()
+        }
+        var max = mMax.get()
+        while (value > max && !mMax.compareAndSet(max, value)) {
+            max = mMax.get()
+        }
+    }
+
+    fun reset() {
+        for (i in 0 until BUCKET_COUNT) {
+            mCounts.set(i, 0)
+        }
+        mTotal.set(0)
+        mSum.set(0)
+        mMin.set(Long.MAX_VALUE)
+        mMax.set(0)
+    }
+
+    /**
+     * Copy current values, concurrent records may be partially included
+     */
+    fun snapshot(): Snapshot {
+        val counts = LongArray(BUCKET_COUNT) { mCounts.get(it) }
+        val total = counts.sum()
+        return Snapshot(
+            total,
+            if (total == 0L) 0 else mMin.get(),
+            mMax.get(),
+            if (total == 0L) 0.0 else mSum.get().toDouble() / mTotal.get().coerceAtLeast(1),
+            percentile(counts, total, 50.0),
+            percentile(counts, total, 90.0),
+            percentile(counts, total, 99.0)
+        )
+    }
+
+    /**
+     * Latency summary, all values in microseconds
+     */
+    data class Snapshot(
+        val count: Long,
+        val minUs: Long,
+        val maxUs: Long,
+        val meanUs: Double,
+        val p50Us: Long,
+        val p90Us: Long,
+        val p99Us: Long
+    ) {
+        override fun toString(): String {
+            return "n=$count p50=${fmt(p50Us)} p90=${fmt(p90Us)} p99=${fmt(p99Us)} max=${fmt(maxUs)}"
+        }
+
+        private fun fmt(us: Long) = if (us >= 1000) "%.1fms".format(us / 1000.0) else "${us}us"
+    }
+
+    companion object {
+        private const val SUB_BUCKET_BITS = 5
+        private const val SUB_BUCKETS = 1 shl SUB_BUCKET_BITS          // 32
+        private const val LINEAR_LIMIT = SUB_BUCKETS * 2               // 64, exact below this
+        private const val MAX_EXPONENT = 36                            // ~19 hours in us
+        private const val MAX_VALUE_US = (1L shl (MAX_EXPONENT + 1)) - 1
+        private const val BUCKET_COUNT = LINEAR_LIMIT + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS
+
+        internal fun indexOf(value: Long): Int {
+            if (value < LINEAR_LIMIT) {
+                return value.toInt()
+            }
+            val msb = 63 - java.lang.Long.numberOfLeadingZeros(value)
+            val shift = msb - SUB_BUCKET_BITS
+            val top = (value ushr shift).toInt()                    // [32, 63]
+            return LINEAR_LIMIT + (msb - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + (top - SUB_BUCKETS)
+        }
+
+        // highest value that maps to the bucket
+        internal fun valueOf(index: Int): Long {
+            if (index < LINEAR_LIMIT) {
+                return index.toLong()
+            }
+            val offset = index - LINEAR_LIMIT
+            val msb = offset / SUB_BUCKETS + SUB_BUCKET_BITS + 1
+            val top = offset % SUB_BUCKETS + SUB_BUCKETS
+            val shift = msb - SUB_BUCKET_BITS
+            return ((top.toLong() + 1) shl shift) - 1
+        }
+
+        private fun percentile(counts: LongArray, total: Long, percent: Double): Long {
+            if (total == 0L) {
+                return 0
+            }
+            val target = Math.ceil(total * percent / 100.0).toLong().coerceAtLeast(1)
+            var seen = 0L
+            for (i in counts.indices) {
+                seen += counts[i]
+                if (seen >= target) {
+                    return valueOf(i)
+                }
+            }
+            return valueOf(counts.size - 1)
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017-2023 Jiangdg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jiangdg.ausbc.widget
+
+import android.content.Context
+import android.graphics.Color
+import android.graphics.Typeface
+import android.os.Handler
+import android.os.Looper
+import android.util.AttributeSet
+import android.view.View
+import androidx.appcompat.widget.AppCompatTextView
+import com.jiangdg.ausbc.utils.FrameMetrics
+
+/** On-screen overlay of [FrameMetrics]
+ *
+ * Enables metrics collection while attached and shown, refreshes every [refreshIntervalMs].
+ * Can stay in a layout as GONE: nothing is collected until it is made visible.
+ */
+class FrameMetricsView : AppCompatTextView {
+
+    private val mHandler = Handler(Looper.getMainLooper())
+    var refreshIntervalMs: Long = DEFAULT_REFRESH_MS
+
+    private val mRefreshRunnable = object : Runnable {
+        override fun run() {
+            text = FrameMetrics.snapshot().toString()
+            mHandler.postDelayed(this, refreshIntervalMs)
+        }
+    }
+
+    constructor(context: Context?) : this(context, null)
+    constructor(context: Context?, attrs: AttributeSet?) : this(context, attrs, 0)
+    constructor(context: Context?, attrs: AttributeSet?, defStyleAttr: Int) : super(
+            context!!,
+            attrs,
+            defStyleAttr
+    ) {
+        typeface = Typeface.MONOSPACE
+        textSize = 9f
+        setTextColor(Color.WHITE)
+        setBackgroundColor(0x99000000.toInt())
+    }
+
+    override fun onAttachedToWindow() {
+        super.onAttachedToWindow()
+        updateRefreshing()
+    }
+
+    override fun onDetachedFromWindow() {
+        mHandler.removeCallbacks(mRefreshRunnable)
+        FrameMetrics.enabled = false
+        super.onDetachedFromWindow()
+    }
+
+    override fun onVisibilityChanged(changedView: View, visibility: Int) {
+        super.onVisibilityChanged(changedView, visibility)
+        updateRefreshing()
+    }
+
+    private fun updateRefreshing() {
+        // also called from the View constructor, before mHandler is initialized
+        if (!isAttachedToWindow) return
+        mHandler.removeCallbacks(mRefreshRunnable)
+        FrameMetrics.enabled = isShown
+        if (isShown) {
+            mHandler.post(mRefreshRunnable)
+        }
+    }
+
+    companion object {
+        private const val DEFAULT_REFRESH_MS = 500L
+    }
+}
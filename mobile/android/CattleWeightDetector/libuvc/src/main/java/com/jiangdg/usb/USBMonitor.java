@@ -49,6 +49,8 @@ import java.io.UnsupportedEncodingException;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -66,11 +68,26 @@ public final class USBMonitor {
 
 	public static final String ACTION_USB_DEVICE_ATTACHED = "android.hardware.usb.action.USB_DEVICE_ATTACHED";
 
+	/**
+	 * default interval of the fallback device check, for devices that do not send attach broadcasts
+	 */
+	public static final long SLOW_POLLING_INTERVAL_MS = 10000;
+
 	/**
 	 * openしているUsbControlBlock
 	 */
 	private final ConcurrentHashMap<UsbDevice, UsbControlBlock> mCtrlBlocks = new ConcurrentHashMap<UsbDevice, UsbControlBlock>();
 	private final SparseArray<WeakReference<UsbDevice>> mHasPermissions = new SparseArray<WeakReference<UsbDevice>>();
+	/**
+	 * attached USB devices (without filter), key is getIndexKey.
+	 * updated incrementally from ACTION_USB_DEVICE_ATTACHED/DETACHED, so getDeviceList does not
+	 * need to enumerate UsbManager every time. writers synchronize on this map
+	 */
+	private final ConcurrentHashMap<String, UsbDevice> mDeviceIndex = new ConcurrentHashMap<String, UsbDevice>();
+	/**
+	 * interval of the fallback device check [ms], 0: disabled(only broadcasts are used)
+	 */
+	private volatile long mPollingIntervalMs = SLOW_POLLING_INTERVAL_MS;
 
 	private final WeakReference<Context> mWeakContext;
 	private final UsbManager mUsbManager;
@@ -197,9 +214,29 @@ public final class USBMonitor {
 					context.registerReceiver(mUsbReceiver, filter);
 				}
 			}
-			// start connection check
-			mDeviceCounts = 0;
-			mAsyncHandler.postDelayed(mDeviceCheckRunnable, 1000);
+			// build the device index once and report already attached devices,
+			// later changes come from ACTION_USB_DEVICE_ATTACHED/DETACHED
+			mDeviceIndex.clear();
+			updateDeviceIndex();
+			if (mPollingIntervalMs > 0) {
+				mAsyncHandler.postDelayed(mDeviceCheckRunnable, mPollingIntervalMs);
+			}
+		}
+	}
+
+	/**
+	 * enable periodic re-enumeration of USB devices as a fallback
+	 * for devices that never send ACTION_USB_DEVICE_ATTACHED.
+	 * enabled by default at SLOW_POLLING_INTERVAL_MS; broadcasts still deliver changes
+	 * immediately, the slow check only catches what they missed
+	 * @param intervalMs check interval [ms], 0 or negative to disable
+	 */
+	public synchronized void setPollingFallback(final long intervalMs) {
+		if (destroyed) throw new IllegalStateException("already destroyed");
+		mPollingIntervalMs = Math.max(intervalMs, 0);
+		mAsyncHandler.removeCallbacks(mDeviceCheckRunnable);
+		if ((mPollingIntervalMs > 0) && (mPermissionIntent != null)) {
+			mAsyncHandler.postDelayed(mDeviceCheckRunnable, mPollingIntervalMs);
 		}
 	}
 
@@ -209,10 +246,10 @@ public final class USBMonitor {
 	 */
 	public synchronized void unregister() throws IllegalStateException {
 		// 接続チェック用Runnableを削除
-		mDeviceCounts = 0;
 		if (!destroyed) {
 			mAsyncHandler.removeCallbacks(mDeviceCheckRunnable);
 		}
+		mDeviceIndex.clear();
 		if (mPermissionIntent != null) {
 //			if (DEBUG) XLogWrapper.i(TAG, "unregister:");
 			final Context context = mWeakContext.get();
@@ -321,13 +358,13 @@ public final class USBMonitor {
 	public List<UsbDevice> getDeviceList(final List<DeviceFilter> filters) throws IllegalStateException {
 		if (destroyed) throw new IllegalStateException("already destroyed");
 		// get detected devices
-		final HashMap<String, UsbDevice> deviceList = mUsbManager.getDeviceList();
+		final Collection<UsbDevice> deviceList = getAttachedDevices();
 		final List<UsbDevice> result = new ArrayList<UsbDevice>();
 		if (deviceList != null) {
 			if ((filters == null) || filters.isEmpty()) {
-				result.addAll(deviceList.values());
+				result.addAll(deviceList);
 			} else {
-				for (final UsbDevice device: deviceList.values() ) {
+				for (final UsbDevice device: deviceList) {
 					// match devices
 					for (final DeviceFilter filter: filters) {
 						if ((filter != null) && filter.matches(device) || (filter != null && filter.mSubclass == device.getDeviceSubclass())) {
@@ -352,10 +389,10 @@ public final class USBMonitor {
 	 */
 	public List<UsbDevice> getDeviceList(final DeviceFilter filter) throws IllegalStateException {
 		if (destroyed) throw new IllegalStateException("already destroyed");
-		final HashMap<String, UsbDevice> deviceList = mUsbManager.getDeviceList();
+		final Collection<UsbDevice> deviceList = getAttachedDevices();
 		final List<UsbDevice> result = new ArrayList<UsbDevice>();
 		if (deviceList != null) {
-			for (final UsbDevice device: deviceList.values() ) {
+			for (final UsbDevice device: deviceList) {
 				if ((filter == null) || (filter.matches(device) && !filter.isExclude)) {
 					result.add(device);
 				}
@@ -371,11 +408,21 @@ public final class USBMonitor {
 	 */
 	public Iterator<UsbDevice> getDevices() throws IllegalStateException {
 		if (destroyed) throw new IllegalStateException("already destroyed");
-		Iterator<UsbDevice> iterator = null;
-		final HashMap<String, UsbDevice> list = mUsbManager.getDeviceList();
-		if (list != null)
-			iterator = list.values().iterator();
-		return iterator;
+		return getAttachedDevices().iterator();
+	}
+
+	/**
+	 * attached devices from the index. when not registered, or the index is empty
+	 * (e.g. the attach broadcast was missed), UsbManager is enumerated instead.
+	 * has no side effects: the index is only reconciled by the receiver and the poller
+	 * @return
+	 */
+	private Collection<UsbDevice> getAttachedDevices() {
+		if (!isRegistered() || mDeviceIndex.isEmpty()) {
+			final HashMap<String, UsbDevice> list = mUsbManager.getDeviceList();
+			return list != null ? list.values() : Collections.<UsbDevice>emptyList();
+		}
+		return new ArrayList<UsbDevice>(mDeviceIndex.values());
 	}
 
 	/**
@@ -533,60 +580,116 @@ public final class USBMonitor {
 				}
 			} else if (UsbManager.ACTION_USB_DEVICE_ATTACHED.equals(action)) {
 				final UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
-				updatePermission(device, hasPermission(device));
-				processAttach(device);
+				if (device != null) {
+					onDeviceAttached(device);
+				}
 			} else if (UsbManager.ACTION_USB_DEVICE_DETACHED.equals(action)) {
 				// when device removed
 				final UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
 				if (device != null) {
-					UsbControlBlock ctrlBlock = mCtrlBlocks.remove(device);
-					if (ctrlBlock != null) {
-						// cleanup
-						ctrlBlock.close();
-					}
-					mDeviceCounts = 0;
-					processDettach(device);
+					onDeviceDetached(device);
 				}
 			}
 		}
 	};
 
-	/** number of connected & detected devices */
-	private volatile int mDeviceCounts = 0;
+	private void onDeviceAttached(final UsbDevice device) {
+		synchronized (mDeviceIndex) {
+			mDeviceIndex.put(getIndexKey(device), device);
+		}
+		updatePermission(device, hasPermission(device));
+		if (matchesFilter(device)) {
+			processAttach(device);
+		}
+	}
+
+	private void onDeviceDetached(final UsbDevice device) {
+		synchronized (mDeviceIndex) {
+			mDeviceIndex.remove(getIndexKey(device));
+		}
+		UsbControlBlock ctrlBlock = mCtrlBlocks.remove(device);
+		if (ctrlBlock != null) {
+			// cleanup
+			ctrlBlock.close();
+		}
+		updatePermission(device, false);
+		if (matchesFilter(device)) {
+			processDettach(device);
+		}
+	}
+
+	/**
+	 * enumerate UsbManager, apply the difference to the device index
+	 * and call onAttach/onDetach for the changed devices
+	 */
+	private void updateDeviceIndex() {
+		final HashMap<String, UsbDevice> deviceList = mUsbManager.getDeviceList();
+		final List<UsbDevice> attached = new ArrayList<UsbDevice>();
+		final List<UsbDevice> detached = new ArrayList<UsbDevice>();
+		synchronized (mDeviceIndex) {
+			final HashMap<String, UsbDevice> current = new HashMap<String, UsbDevice>();
+			if (deviceList != null) {
+				for (final UsbDevice device: deviceList.values()) {
+					current.put(getIndexKey(device), device);
+				}
+			}
+			for (final String key: new ArrayList<String>(mDeviceIndex.keySet())) {
+				if (!current.containsKey(key)) {
+					detached.add(mDeviceIndex.remove(key));
+				}
+			}
+			for (final String key: current.keySet()) {
+				if (!mDeviceIndex.containsKey(key)) {
+					final UsbDevice device = current.get(key);
+					mDeviceIndex.put(key, device);
+					attached.add(device);
+				}
+			}
+		}
+		for (final UsbDevice device: detached) {
+			if (device != null) {
+				onDeviceDetached(device);
+			}
+		}
+		for (final UsbDevice device: attached) {
+			updatePermission(device, hasPermission(device));
+			if (matchesFilter(device)) {
+				processAttach(device);
+			}
+		}
+	}
+
+	private boolean matchesFilter(final UsbDevice device) {
+		if (mDeviceFilters.isEmpty()) return true;
+		for (final DeviceFilter filter: mDeviceFilters) {
+			if ((filter != null) && filter.matches(device) || (filter != null && filter.mSubclass == device.getDeviceSubclass())) {
+				return !filter.isExclude;
+			}
+		}
+		return false;
+	}
+
 	/**
-	 * periodically check connected devices and if it changed, call onAttach
+	 * key of the device index, device key name plus the device path so that
+	 * two units of the same product do not overwrite each other
+	 */
+	private static String getIndexKey(final UsbDevice device) {
+		return getDeviceKeyName(device) + "@" + device.getDeviceName();
+	}
+
+	/**
+	 * apply changes that were not reported by broadcasts,
+	 * runs every mPollingIntervalMs unless the polling fallback is disabled
 	 */
 	private final Runnable mDeviceCheckRunnable = new Runnable() {
 		@Override
 		public void run() {
 			if (destroyed) return;
-			final List<UsbDevice> devices = getDeviceList();
-			final int n = devices.size();
-			final int hasPermissionCounts;
-			final int m;
-			synchronized (mHasPermissions) {
-				hasPermissionCounts = mHasPermissions.size();
-				mHasPermissions.clear();
-				for (final UsbDevice device: devices) {
-					hasPermission(device);
-				}
-				m = mHasPermissions.size();
-			}
-			if ((n > mDeviceCounts) || (m > hasPermissionCounts)) {
-				mDeviceCounts = n;
-				if (mOnDeviceConnectListener != null) {
-					for (int i = 0; i < n; i++) {
-						final UsbDevice device = devices.get(i);
-						mAsyncHandler.post(new Runnable() {
-							@Override
-							public void run() {
-								mOnDeviceConnectListener.onAttach(device);
-							}
-						});
-					}
-				}
+			updateDeviceIndex();
+			final long interval = mPollingIntervalMs;
+			if (interval > 0) {
+				mAsyncHandler.postDelayed(this, interval);
 			}
-			mAsyncHandler.postDelayed(this, 2000);	// confirm every 2 seconds
 		}
 	};
 
@@ -0,0 +1,251 @@
+package com.jiangdg.usb;
+
+import android.hardware.usb.UsbConstants;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbEndpoint;
+import android.hardware.usb.UsbInterface;
+import android.util.SparseIntArray;
+
+import com.jiangdg.utils.XLogWrapper;
+
+import java.util.Collection;
+
+/**
+ * Classify USB devices by their interface descriptors (UVC video, UAC audio,
+ * CDC/vendor serial, hub) so camera and serial code open the right device
+ * without vendor id lists or product name matching.
+ * The result only depends on the descriptors, so it is cached by device key
+ * (vendor/product/class) and every device is parsed once.
+ */
+public final class UsbDeviceClassifier {
+	private static final String TAG = UsbDeviceClassifier.class.getSimpleName();
+
+	public static final int TYPE_UNKNOWN = 0;
+	/** has a UVC video control/streaming interface */
+	public static final int TYPE_VIDEO = 1;
+	/** has a UAC audio interface */
+	public static final int TYPE_AUDIO = 1 << 1;
+	/** CDC ACM/data interface or vendor specific interface with bulk in/out (CH34x, CP210x, FTDI...) */
+	public static final int TYPE_SERIAL = 1 << 2;
+	/** hub device, some cameras show up as a hub on top level */
+	public static final int TYPE_HUB = 1 << 3;
+
+	private static final int USB_DT_DEVICE = 0x01;
+	private static final int USB_DT_INTERFACE = 0x04;
+	private static final int USB_DT_ENDPOINT = 0x05;
+	private static final int USB_ENDPOINT_XFER_MASK = 0x03;
+	private static final int USB_ENDPOINT_XFER_BULK = 0x02;
+
+	/** device key -> type, entries with TYPE_UNKNOWN are not stored */
+	private static final SparseIntArray sCache = new SparseIntArray();
+
+	private UsbDeviceClassifier() {
+	}
+
+	/**
+	 * classify from the interfaces Android already parsed, no permission is needed
+	 * @param device
+	 * @return bit mask of TYPE_XXX
+	 */
+	public static int classify(final UsbDevice device) {
+		if (device == null) return TYPE_UNKNOWN;
+		final int key = USBMonitor.getDeviceKey(device);
+		synchronized (sCache) {
+			final int cached = sCache.get(key, TYPE_UNKNOWN);
+			if (cached != TYPE_UNKNOWN) return cached;
+		}
+		int type = classOf(device.getDeviceClass());
+		final int n = device.getInterfaceCount();
+		for (int i = 0; i < n; i++) {
+			final UsbInterface intf = device.getInterface(i);
+			boolean bulkIn = false, bulkOut = false;
+			for (int j = 0; j < intf.getEndpointCount(); j++) {
+				final UsbEndpoint ep = intf.getEndpoint(j);
+				if (ep.getType() == UsbConstants.USB_ENDPOINT_XFER_BULK) {
+					if (ep.getDirection() == UsbConstants.USB_DIR_IN) {
+						bulkIn = true;
+					} else {
+						bulkOut = true;
+					}
+				}
+			}
+			type |= classOf(intf.getInterfaceClass(), bulkIn && bulkOut);
+		}
+		return put(key, resolve(type), device);
+	}
+
+	/**
+	 * classify from the raw descriptors of an opened device. this also sees
+	 * interfaces that Android did not report on the UsbDevice (e.g. hub cameras)
+	 * @param ctrlBlock
+	 * @return bit mask of TYPE_XXX
+	 */
+	public static int classify(final USBMonitor.UsbControlBlock ctrlBlock) {
+		if (ctrlBlock == null) return TYPE_UNKNOWN;
+		final UsbDevice device = ctrlBlock.getDevice();
+		byte[] desc = null;
+		try {
+			desc = ctrlBlock.getRawDescriptors();
+		} catch (final IllegalStateException e) {
+			XLogWrapper.w(TAG, "classify:" + e.getMessage());
+		}
+		if (desc == null) return classify(device);
+		final int type = resolve(parseDescriptors(desc));
+		if (device == null) return type;
+		if (type == TYPE_UNKNOWN) return classify(device);
+		synchronized (sCache) {
+			// raw descriptors are more complete, replace a result from UsbDevice
+			sCache.put(USBMonitor.getDeviceKey(device), type);
+		}
+		return type;
+	}
+
+	/**
+	 * walk a raw configuration descriptor set (device descriptor first)
+	 * @param desc result of UsbDeviceConnection#getRawDescriptors
+	 * @return bit mask of TYPE_XXX before resolve
+	 */
+	static int parseDescriptors(final byte[] desc) {
+		int type = TYPE_UNKNOWN;
+		int interfaceClass = -1;
+		boolean bulkIn = false, bulkOut = false;
+		int pos = 0;
+		while (pos + 1 < desc.length) {
+			final int length = desc[pos] & 0xff;
+			if (length < 2 || pos + length > desc.length) break;
+			final int descType = desc[pos + 1] & 0xff;
+			if ((descType == USB_DT_DEVICE) && (length >= 5)) {
+				type |= classOf(desc[pos + 4] & 0xff);
+			} else if ((descType == USB_DT_INTERFACE) && (length >= 9)) {
+				if (interfaceClass >= 0) {
+					type |= classOf(interfaceClass, bulkIn && bulkOut);
+				}
+				interfaceClass = desc[pos + 5] & 0xff;
+				bulkIn = bulkOut = false;
+			} else if ((descType == USB_DT_ENDPOINT) && (length >= 7)) {
+				if (((desc[pos + 3] & 0xff) & USB_ENDPOINT_XFER_MASK) == USB_ENDPOINT_XFER_BULK) {
+					if ((desc[pos + 2] & UsbConstants.USB_DIR_IN) != 0) {
+						bulkIn = true;
+					} else {
+						bulkOut = true;
+					}
+				}
+			}
+			pos += length;
+		}
+		if (interfaceClass >= 0) {
+			type |= classOf(interfaceClass, bulkIn && bulkOut);
+		}
+		return type;
+	}
+
+	/** device class, only hub/video/CDC are decisive on this level */
+	private static int classOf(final int deviceClass) {
+		switch (deviceClass) {
+		case UsbConstants.USB_CLASS_HUB:
+			return TYPE_HUB;
+		case UsbConstants.USB_CLASS_VIDEO:
+			return TYPE_VIDEO;
+		case UsbConstants.USB_CLASS_COMM:
+			return TYPE_SERIAL;
+		default:
+			return TYPE_UNKNOWN;
+		}
+	}
+
+	private static int classOf(final int interfaceClass, final boolean bulkInOut) {
+		switch (interfaceClass) {
+		case UsbConstants.USB_CLASS_VIDEO:
+			return TYPE_VIDEO;
+		case UsbConstants.USB_CLASS_AUDIO:
+			return TYPE_AUDIO;
+		case UsbConstants.USB_CLASS_COMM:
+		case UsbConstants.USB_CLASS_CDC_DATA:
+			return TYPE_SERIAL;
+		case UsbConstants.USB_CLASS_HUB:
+			return TYPE_HUB;
+		case UsbConstants.USB_CLASS_VENDOR_SPEC:
+			// vendor specific bulk pipe is a USB-serial bridge
+			return bulkInOut ? TYPE_SERIAL : TYPE_UNKNOWN;
+		default:
+			return TYPE_UNKNOWN;
+		}
+	}
+
+	/**
+	 * a camera with extra vendor bulk interfaces (firmware update etc.) is not a serial port
+	 */
+	private static int resolve(final int type) {
+		if ((type & TYPE_VIDEO) != 0) {
+			return type & ~TYPE_SERIAL;
+		}
+		return type;
+	}
+
+	private static int put(final int key, final int type, final UsbDevice device) {
+		if (type != TYPE_UNKNOWN) {
+			synchronized (sCache) {
+				sCache.put(key, type);
+			}
+		}
+		if (USBMonitor.DEBUG) XLogWrapper.v(TAG, "classify:" + device.getDeviceName() + "=" + toString(type));
+		return type;
+	}
+
+	public static boolean isVideo(final UsbDevice device) {
+		return (classify(device) & TYPE_VIDEO) != 0;
+	}
+
+	public static boolean isSerial(final UsbDevice device) {
+		return (classify(device) & TYPE_SERIAL) != 0;
+	}
+
+	/**
+	 * @return true if the device may be a camera: has a video interface, or is neither
+	 * serial nor audio (hub cameras only show the video interface after opening)
+	 */
+	public static boolean mayBeCamera(final UsbDevice device) {
+		return mayBeCamera(classify(device));
+	}
+
+	public static boolean mayBeCamera(final int type) {
+		return (type & TYPE_VIDEO) != 0
+			|| (type & (TYPE_SERIAL | TYPE_AUDIO)) == 0;
+	}
+
+	/**
+	 * find the first device that has all bits of the type
+	 * @param devices
+	 * @param type TYPE_XXX
+	 * @return null if not found
+	 */
+	public static UsbDevice findFirst(final Collection<UsbDevice> devices, final int type) {
+		if (devices == null) return null;
+		for (final UsbDevice device: devices) {
+			if ((classify(device) & type) == type) {
+				return device;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * forget cached results, e.g. for a device whose firmware changed
+	 */
+	public static void clearCache() {
+		synchronized (sCache) {
+			sCache.clear();
+		}
+	}
+
+	public static String toString(final int type) {
+		if (type == TYPE_UNKNOWN) return "unknown";
+		final StringBuilder sb = new StringBuilder();
+		if ((type & TYPE_VIDEO) != 0) sb.append("video,");
+		if ((type & TYPE_AUDIO) != 0) sb.append("audio,");
+		if ((type & TYPE_SERIAL) != 0) sb.append("serial,");
+		if ((type & TYPE_HUB) != 0) sb.append("hub,");
+		sb.setLength(sb.length() - 1);
+		return sb.toString();
+	}
+}
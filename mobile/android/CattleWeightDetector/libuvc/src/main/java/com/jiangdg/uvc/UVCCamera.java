@@ -130,6 +130,7 @@ public class UVCCamera {
 	protected int mCurrentWidth = 640, mCurrentHeight = 480;
 	protected float mCurrentBandwidthFactor = DEFAULT_BANDWIDTH;
     protected String mSupportedSize;
+    protected UVCFormatModel mFormatModel;
     protected List<Size> mCurrentSizeList;
 	// these fields from here are accessed from native code and do not change name and remove
     protected long mNativePtr;
@@ -220,6 +221,8 @@ public class UVCCamera {
     	if (mNativePtr != 0 && TextUtils.isEmpty(mSupportedSize)) {
     		mSupportedSize = nativeGetSupportedSize(mNativePtr);
     	}
+		// parse once here, size queries below use the typed model
+		mFormatModel = UVCFormatModel.parse(mSupportedSize);
     	if (USBMonitor.DEBUG) {
     		XLogWrapper.i(TAG, "open camera status: " + mNativePtr +", size: " + mSupportedSize);
 		}
@@ -269,6 +272,7 @@ public class UVCCamera {
 		mCurrentFrameFormat = -1;
 		mCurrentBandwidthFactor = 0;
 		mSupportedSize = null;
+		mFormatModel = null;
 		mCurrentSizeList = null;
     	if (DEBUG) XLogWrapper.v(TAG, "close:finished");
     }
@@ -289,6 +293,17 @@ public class UVCCamera {
     	return !TextUtils.isEmpty(mSupportedSize) ? mSupportedSize : (mSupportedSize = nativeGetSupportedSize(mNativePtr));
     }
 
+	/**
+	 * get supported formats/frame sizes/frame rates, parsed when the camera was opened
+	 * @return model, UVCFormatModel.EMPTY if the camera is not opened
+	 */
+	public synchronized UVCFormatModel getFormatModel() {
+		if (mFormatModel == null) {
+			mFormatModel = UVCFormatModel.parse(getSupportedSize());
+		}
+		return mFormatModel;
+	}
+
 	public Size getPreviewSize() {
 		Size result = null;
 		final List<Size> list = getSupportedSizeList();
@@ -359,14 +374,24 @@ public class UVCCamera {
 		if (mCurrentFrameFormat < 0) {
 			mCurrentFrameFormat = FRAME_FORMAT_MJPEG;
 		}
-		return getSupportedSize((mCurrentFrameFormat > 0) ? 6 : 4, getSupportedSize());
+		return getFormatModel().getSizeList(toFormatType(mCurrentFrameFormat));
 	}
 
 	public List<Size> getSupportedSizeList(int frameFormat) {
-		return getSupportedSize((frameFormat > 0) ? 6 : 4, getSupportedSize());
+		return getFormatModel().getSizeList(toFormatType(frameFormat));
+	}
+
+	/**
+	 * FRAME_FORMAT_XXX to bDescriptorSubtype used in the supported size json
+	 */
+	public static int toFormatType(final int frameFormat) {
+		return (frameFormat > 0) ? UVCFormatModel.TYPE_MJPEG : UVCFormatModel.TYPE_UNCOMPRESSED;
 	}
 
 	public List<Size> getSupportedSize(final int type, final String supportedSize) {
+		if (supportedSize != null && supportedSize.equals(mSupportedSize)) {
+			return getFormatModel().getSizeList(type);
+		}
 		final List<Size> result = new ArrayList<Size>();
 		if (!TextUtils.isEmpty(supportedSize))
 		try {
@@ -0,0 +1,305 @@
+package com.jiangdg.uvc;
+
+import android.text.TextUtils;
+
+import com.jiangdg.utils.Size;
+import com.jiangdg.utils.XLogWrapper;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable model of the formats/frame sizes/frame intervals a UVC camera supports.
+ * Parsed once from the nativeGetSupportedSize json when the camera is opened,
+ * so callers can pick a preview mode without re-parsing or trial and error.
+ *
+ * The prebuilt libUVCCamera.so only reports a "size" array per format, so with it every
+ * FrameMode is size-only: no intervals, fps or frame size. select() then cannot check the
+ * frame rate, and bandwidth falls back to the YUYV w*h*2 estimate. A per-frame "frames"
+ * array is parsed when a native build provides one.
+ */
+public final class UVCFormatModel {
+	private static final String TAG = UVCFormatModel.class.getSimpleName();
+
+	/** bDescriptorSubtype of uncompressed(YUYV) format */
+	public static final int TYPE_UNCOMPRESSED = 4;
+	/** bDescriptorSubtype of MJPEG format */
+	public static final int TYPE_MJPEG = 6;
+
+	/** frame interval unit of UVC descriptors is 100ns */
+	private static final float INTERVALS_PER_SECOND = 10000000.0f;
+	/** bytes per pixel of uncompressed YUYV */
+	private static final int YUYV_BYTES_PER_PIXEL = 2;
+
+	public static final UVCFormatModel EMPTY = new UVCFormatModel(Collections.<Format>emptyList());
+
+	/**
+	 * One frame descriptor: a frame size and the frame rates it supports
+	 */
+	public static final class FrameMode {
+		public final int formatType;
+		public final int index;
+		public final int width;
+		public final int height;
+		/** frame intervals in 100ns unit, ascending(=fastest first); empty if unknown */
+		private final int[] intervals;
+		/** true if intervals are [min, max, step] of a continuous range */
+		public final boolean continuous;
+		public final long maxBitRate;
+		public final long maxFrameSize;
+
+		FrameMode(final int formatType, final int index, final int width, final int height,
+				  final int[] intervals, final boolean continuous,
+				  final long maxBitRate, final long maxFrameSize) {
+			this.formatType = formatType;
+			this.index = index;
+			this.width = width;
+			this.height = height;
+			this.intervals = intervals;
+			this.continuous = continuous;
+			this.maxBitRate = maxBitRate;
+			this.maxFrameSize = maxFrameSize;
+		}
+
+		/**
+		 * @return max frame rate of this mode, 0 if the descriptor has no interval info
+		 */
+		public float getMaxFps() {
+			return intervals.length > 0 && intervals[0] > 0 ? INTERVALS_PER_SECOND / intervals[0] : 0;
+		}
+
+		/**
+		 * @return min frame rate of this mode, 0 if the descriptor has no interval info
+		 */
+		public float getMinFps() {
+			if (intervals.length == 0) return 0;
+			final int slowest = continuous ? intervals[1] : intervals[intervals.length - 1];
+			return slowest > 0 ? INTERVALS_PER_SECOND / slowest : 0;
+		}
+
+		/**
+		 * @return supported frame rates, fastest first. for continuous range only min and max
+		 */
+		public float[] getFps() {
+			final int n = continuous ? 2 : intervals.length;
+			final float[] result = new float[n];
+			for (int i = 0; i < n; i++) {
+				result[i] = intervals[i] > 0 ? INTERVALS_PER_SECOND / intervals[i] : 0;
+			}
+			return result;
+		}
+
+		public boolean supportsFps(final float fps) {
+			return intervals.length == 0 || getMaxFps() >= fps;
+		}
+
+		/**
+		 * Estimated isochronous bandwidth at the given frame rate [bytes/s].
+		 * uncompressed: exact size of a YUYV frame, MJPEG: dwMaxVideoFrameBufferSize
+		 * (worst case), falling back to dwMaxBitRate when it is not set
+		 */
+		public long getBandwidth(final float fps) {
+			final long frameBytes;
+			if (formatType == TYPE_UNCOMPRESSED) {
+				frameBytes = (long)width * height * YUYV_BYTES_PER_PIXEL;
+			} else if (maxFrameSize > 0) {
+				frameBytes = maxFrameSize;
+			} else if (maxBitRate > 0 && getMaxFps() > 0) {
+				frameBytes = (long)(maxBitRate / 8 / getMaxFps());
+			} else {
+				frameBytes = (long)width * height * YUYV_BYTES_PER_PIXEL;
+			}
+			return (long)(frameBytes * fps);
+		}
+
+		public Size toSize() {
+			if (intervals.length == 0) {
+				return new Size(formatType, 0, index, width, height);
+			}
+			if (continuous) {
+				return new Size(formatType, 0, index, width, height, intervals[0], intervals[1], intervals[2]);
+			}
+			return new Size(formatType, 0, index, width, height, intervals);
+		}
+
+		@Override
+		public String toString() {
+			return width + "x" + height + "@" + getMaxFps() + "fps(type=" + formatType + ")";
+		}
+	}
+
+	/**
+	 * One format descriptor (uncompressed or MJPEG) and its frames
+	 */
+	public static final class Format {
+		public final int type;
+		public final int index;
+		public final int defaultFrameIndex;
+		public final List<FrameMode> frames;
+
+		Format(final int type, final int index, final int defaultFrameIndex, final List<FrameMode> frames) {
+			this.type = type;
+			this.index = index;
+			this.defaultFrameIndex = defaultFrameIndex;
+			this.frames = Collections.unmodifiableList(frames);
+		}
+	}
+
+	private final List<Format> mFormats;
+
+	private UVCFormatModel(final List<Format> formats) {
+		mFormats = Collections.unmodifiableList(formats);
+	}
+
+	/**
+	 * parse the json string returned from nativeGetSupportedSize
+	 * @param supportedSize json string, may be null
+	 * @return parsed model, EMPTY if the string is empty or broken
+	 */
+	public static UVCFormatModel parse(final String supportedSize) {
+		if (TextUtils.isEmpty(supportedSize)) return EMPTY;
+		try {
+			final JSONArray formats = new JSONObject(supportedSize).getJSONArray("formats");
+			final List<Format> result = new ArrayList<Format>(formats.length());
+			for (int i = 0; i < formats.length(); i++) {
+				final JSONObject format = formats.getJSONObject(i);
+				if (!format.has("type")) continue;
+				final int type = format.getInt("type");
+				final List<FrameMode> frames = format.has("frames")
+					? parseFrames(type, format.getJSONArray("frames"))
+					: parseSizes(type, format.optJSONArray("size"));
+				result.add(new Format(type, format.optInt("index"), format.optInt("default"), frames));
+			}
+			return new UVCFormatModel(result);
+		} catch (final JSONException e) {
+			XLogWrapper.w(TAG, "failed to parse supported size:" + supportedSize, e);
+			return EMPTY;
+		}
+	}
+
+	private static List<FrameMode> parseFrames(final int type, final JSONArray frames) throws JSONException {
+		final List<FrameMode> result = new ArrayList<FrameMode>(frames.length());
+		for (int j = 0; j < frames.length(); j++) {
+			final JSONObject frame = frames.getJSONObject(j);
+			final int[] intervals;
+			final boolean continuous;
+			final JSONArray list = frame.optJSONArray("intervals");
+			if (list != null) {
+				intervals = new int[list.length()];
+				for (int k = 0; k < intervals.length; k++) {
+					intervals[k] = list.getInt(k);
+				}
+				Arrays.sort(intervals);
+				continuous = false;
+			} else if (frame.has("minInterval")) {
+				intervals = new int[] {
+					frame.getInt("minInterval"), frame.getInt("maxInterval"), frame.optInt("intervalStep") };
+				continuous = true;
+			} else {
+				intervals = new int[0];
+				continuous = false;
+			}
+			result.add(new FrameMode(type, j, frame.getInt("width"), frame.getInt("height"),
+				intervals, continuous, frame.optLong("maxBitRate"), frame.optLong("maxFrameSize")));
+		}
+		return result;
+	}
+
+	/** older native library only returns "WxH" strings */
+	private static List<FrameMode> parseSizes(final int type, final JSONArray sizes) throws JSONException {
+		final List<FrameMode> result = new ArrayList<FrameMode>();
+		if (sizes == null) return result;
+		for (int j = 0; j < sizes.length(); j++) {
+			final String sz = sizes.getString(j);
+			final int x = sz.indexOf('x');
+			if (x <= 0) break;
+			try {
+				result.add(new FrameMode(type, j, Integer.parseInt(sz.substring(0, x)),
+					Integer.parseInt(sz.substring(x + 1)), new int[0], false, 0, 0));
+			} catch (final NumberFormatException e) {
+				break;
+			}
+		}
+		return result;
+	}
+
+	public List<Format> getFormats() {
+		return mFormats;
+	}
+
+	public boolean isEmpty() {
+		return mFormats.isEmpty();
+	}
+
+	/**
+	 * @param type TYPE_UNCOMPRESSED or TYPE_MJPEG, -1 for all formats
+	 */
+	public List<FrameMode> getFrameModes(final int type) {
+		final List<FrameMode> result = new ArrayList<FrameMode>();
+		for (final Format format: mFormats) {
+			if (type == -1 || format.type == type) {
+				result.addAll(format.frames);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * same result as UVCCamera#getSupportedSize(type, json) without parsing json again
+	 */
+	public List<Size> getSizeList(final int type) {
+		final List<Size> result = new ArrayList<Size>();
+		for (final FrameMode mode: getFrameModes(type)) {
+			result.add(mode.toSize());
+		}
+		return result;
+	}
+
+	public boolean isSupported(final int type, final int width, final int height) {
+		return find(type, width, height) != null;
+	}
+
+	public FrameMode find(final int type, final int width, final int height) {
+		for (final Format format: mFormats) {
+			if (type != -1 && format.type != type) continue;
+			for (final FrameMode mode: format.frames) {
+				if (mode.width == width && mode.height == height) return mode;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Select a preview mode: the smallest frame size that is at least minWidth x minHeight,
+	 * runs at least minFps and needs at most maxBandwidth at that rate.
+	 * Ties (same size) prefer the faster mode.
+	 * @param type TYPE_UNCOMPRESSED or TYPE_MJPEG, -1 for any format
+	 * @param maxBandwidth [bytes/s], 0 or negative for no limit
+	 * @return selected mode, null if no mode matches
+	 */
+	public FrameMode select(final int type, final int minWidth, final int minHeight,
+							final float minFps, final long maxBandwidth) {
+		FrameMode best = null;
+		for (final FrameMode mode: getFrameModes(type)) {
+			if (mode.width < minWidth || mode.height < minHeight) continue;
+			if (!mode.supportsFps(minFps)) continue;
+			if (maxBandwidth > 0 && mode.getBandwidth(minFps) > maxBandwidth) continue;
+			if (best == null) {
+				best = mode;
+				continue;
+			}
+			final long area = (long)mode.width * mode.height;
+			final long bestArea = (long)best.width * best.height;
+			if (area < bestArea || (area == bestArea && mode.getMaxFps() > best.getMaxFps())) {
+				best = mode;
+			}
+		}
+		return best;
+	}
+}
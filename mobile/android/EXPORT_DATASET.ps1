@@ -82,6 +82,8 @@ if (Test-Path "$exportDir\cattle_dataset.db") {
         $csvPath = "$exportDir\cattle_dataset.csv"
         sqlite3 -header -csv "$exportDir\cattle_dataset.db" $query > $csvPath
         Write-Host "  ✅ CSV exported: cattle_dataset.csv" -ForegroundColor Green
+        # Hasil re-scoring model di HP (untuk harness evaluasi)
+        sqlite3 -header -csv "$exportDir\cattle_dataset.db" "SELECT * FROM model_scores;" > "$exportDir\model_scores.csv"
     } else {
         Write-Host "  ⚠️  SQLite3 not found. Creating Python export script..." -ForegroundColor Yellow
         
@@ -97,6 +99,10 @@ try:
     conn = sqlite3.connect(db_path)
     df = pd.read_sql_query("SELECT * FROM dataset", conn)
     df.to_csv(csv_path, index=False)
+    try:
+        pd.read_sql_query("SELECT * FROM model_scores", conn).to_csv('model_scores.csv', index=False)
+    except Exception:
+        pass  # database lama tanpa tabel model_scores
     conn.close()
     
     print(f"✅ CSV exported: {csv_path}")